@@ -0,0 +1,52 @@
+package nl.bioinf.dgsea.benchmarks;
+
+import nl.bioinf.dgsea.EnrichmentAnalysisService;
+import nl.bioinf.dgsea.data_processing.EnrichmentResult;
+import nl.bioinf.dgsea.data_processing.PathwayIndex;
+import nl.bioinf.dgsea.table_outputs.EnrichmentTable;
+import nl.bioinf.dgsea.visualisations.EnrichmentBarChart;
+import nl.bioinf.dgsea.visualisations.EnrichmentDotPlot;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creating the enrichment charts of the top 20 pathways and rendering them to PNG.
+ * The enrichment is calculated once per trial; the database size only matters through the pathway index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class ChartBenchmark {
+    private List<EnrichmentResult> topResults;
+    private PathwayIndex pathwayIndex;
+
+    @Setup(Level.Trial)
+    public void setUp(PathwayData data) throws IOException {
+        EnrichmentTable enrichmentTable = new EnrichmentTable(data.pathways, data.degs, data.pathwayGenes);
+        enrichmentTable.calculateEnrichment(Writer.nullWriter());
+        topResults = EnrichmentAnalysisService.selectTopResults(enrichmentTable.getEnrichmentResults(), 20);
+        pathwayIndex = PathwayIndex.of(data.pathways);
+    }
+
+    @Benchmark
+    public EnrichmentBarChart barChart() throws IOException {
+        EnrichmentBarChart chart = new EnrichmentBarChart("Benchmark", topResults, pathwayIndex, null);
+        chart.writeChart(OutputStream.nullOutputStream(), "png");
+        return chart;
+    }
+
+    @Benchmark
+    public EnrichmentDotPlot dotPlot() throws IOException {
+        EnrichmentDotPlot chart = new EnrichmentDotPlot("Benchmark", topResults, pathwayIndex, null, 30.0, 0.8f);
+        chart.writeChart(OutputStream.nullOutputStream(), "png");
+        return chart;
+    }
+}
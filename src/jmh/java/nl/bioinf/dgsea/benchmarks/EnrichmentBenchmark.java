@@ -0,0 +1,65 @@
+package nl.bioinf.dgsea.benchmarks;
+
+import nl.bioinf.dgsea.data_processing.EnrichmentResult;
+import nl.bioinf.dgsea.data_processing.PercLfcPathways;
+import nl.bioinf.dgsea.table_outputs.EnrichmentArena;
+import nl.bioinf.dgsea.table_outputs.EnrichmentTable;
+import nl.bioinf.dgsea.table_outputs.TwoByTwoContingencyTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The analyses of a DEG list against a pathway database: enrichment, contingency table and percentage log-fold-change.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class EnrichmentBenchmark {
+
+    /**
+     * A table and arena reused over invocations, as by a worker analysing many contrasts.
+     */
+    @State(Scope.Thread)
+    public static class ReusedTable {
+        EnrichmentTable enrichmentTable;
+        EnrichmentArena arena;
+
+        @Setup(Level.Trial)
+        public void setUp(PathwayData data) {
+            enrichmentTable = new EnrichmentTable(data.pathways, data.degs, data.pathwayGenes);
+            arena = new EnrichmentArena(data.pathways.size());
+        }
+    }
+
+    /**
+     * Only the per-pathway loop; gc.alloc.rate.norm of the gc profiler should be about 0 B/op.
+     */
+    @Benchmark
+    public EnrichmentArena calculateRawResults(ReusedTable table) {
+        table.enrichmentTable.calculateRawResults(null, table.arena);
+        return table.arena;
+    }
+
+    @Benchmark
+    public List<EnrichmentResult> calculateEnrichment(PathwayData data) throws IOException {
+        EnrichmentTable enrichmentTable = new EnrichmentTable(data.pathways, data.degs, data.pathwayGenes);
+        enrichmentTable.calculateEnrichment(Writer.nullWriter());
+        return enrichmentTable.getEnrichmentResults();
+    }
+
+    @Benchmark
+    public String contingencyTable(PathwayData data) {
+        return new TwoByTwoContingencyTable(data.degs, data.pathways, data.pathwayGenes, 0.01).getTable();
+    }
+
+    @Benchmark
+    public double[] percAllPathways(PathwayData data) {
+        return new PercLfcPathways(data.degs, data.pathwayGenes).percAllPathways(data.pathwayIds);
+    }
+}
@@ -0,0 +1,37 @@
+package nl.bioinf.dgsea.benchmarks;
+
+import nl.bioinf.dgsea.data_processing.Deg;
+import nl.bioinf.dgsea.data_processing.FileParseUtils;
+import nl.bioinf.dgsea.data_processing.Pathway;
+import nl.bioinf.dgsea.data_processing.PathwayGene;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing the DEGs, pathway descriptions and pathway-genes files.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx3g", "-Djava.awt.headless=true"})
+public class ParseBenchmark {
+
+    @Benchmark
+    public List<Deg> parseDegsFile(PathwayFiles files) throws IOException {
+        return new FileParseUtils().parseDegsFile(files.degsFile);
+    }
+
+    @Benchmark
+    public List<Pathway> parsePathwayFile(PathwayFiles files) throws IOException {
+        return new FileParseUtils().parsePathwayFile(files.pathwaysFile);
+    }
+
+    @Benchmark
+    public List<PathwayGene> parsePathwayGeneFile(PathwayFiles files) throws IOException {
+        return new FileParseUtils().parsePathwayGeneFile(files.pathwayGenesFile);
+    }
+}
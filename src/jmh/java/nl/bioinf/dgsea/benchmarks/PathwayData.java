@@ -0,0 +1,35 @@
+package nl.bioinf.dgsea.benchmarks;
+
+import nl.bioinf.dgsea.data_processing.Deg;
+import nl.bioinf.dgsea.data_processing.Pathway;
+import nl.bioinf.dgsea.data_processing.PathwayGene;
+import nl.bioinf.dgsea.data_processing.SyntheticDataset;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+
+/**
+ * Synthetic DEGs and pathway database of a given number of pathway-gene rows, shared by all benchmarks of a trial.
+ * Generated by {@link SyntheticDataset} with its defaults, so pathway sizes follow a power law over a human-sized
+ * gene universe; a fixed seed makes every trial use the same data.
+ */
+@State(Scope.Benchmark)
+public class PathwayData {
+    @Param({"1000", "100000", "5000000"})
+    public int rows;
+
+    public SyntheticDataset dataset;
+    public List<Deg> degs;
+    public List<Pathway> pathways;
+    public List<PathwayGene> pathwayGenes;
+    public String[] pathwayIds;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataset = new SyntheticDataset.Builder().seed(42).pathwayGeneRows(rows).build();
+        degs = dataset.degs();
+        pathways = dataset.pathways();
+        pathwayGenes = dataset.pathwayGenes();
+        pathwayIds = pathways.stream().map(Pathway::pathwayId).toArray(String[]::new);
+    }
+}
@@ -0,0 +1,36 @@
+package nl.bioinf.dgsea.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The {@link PathwayData} written as DEGs, pathway descriptions and pathway-genes CSV files, for parsing benchmarks.
+ */
+@State(Scope.Benchmark)
+public class PathwayFiles {
+    public File degsFile;
+    public File pathwaysFile;
+    public File pathwayGenesFile;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp(PathwayData data) throws IOException {
+        directory = Files.createTempDirectory("dgsea-jmh");
+        degsFile = directory.resolve("degs.csv").toFile();
+        pathwaysFile = directory.resolve("hsa_pathways.csv").toFile();
+        pathwayGenesFile = directory.resolve("pathways.csv").toFile();
+        data.dataset.write(directory);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (File file : new File[]{degsFile, pathwaysFile, pathwayGenesFile}) {
+            Files.deleteIfExists(file.toPath());
+        }
+        Files.deleteIfExists(directory);
+    }
+}
@@ -0,0 +1,81 @@
+package nl.bioinf.dgsea.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Wall time of starting the fat jar in a new JVM and running a small command, with and without the AppCDS archive.
+ * Needs the fat jar and archive in build/libs, built first by: gradle jmh -Pjmh.include=StartupBenchmark, run from the project directory.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StartupBenchmark {
+    private static final Path LIBS = Path.of("build", "libs");
+    private static final String RESOURCES = "src/test/resources/";
+
+    @Param({"false", "true"})
+    public boolean cds;
+
+    @Param({"help", "con_table", "enrich_bar_chart"})
+    public String command;
+
+    private ProcessBuilder process;
+    private Path chart;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path archive = LIBS.resolve("dgsea.jsa");
+        if (cds && !Files.isRegularFile(archive)) {
+            throw new IllegalStateException("No AppCDS archive " + archive + ", build it with: gradle cdsArchive");
+        }
+        List<String> commandLine = new ArrayList<>();
+        commandLine.add(ProcessHandle.current().info().command().orElse("java"));
+        if (ManagementFactory.getRuntimeMXBean().getInputArguments().contains("--enable-preview")) {
+            commandLine.add("--enable-preview");
+        }
+        commandLine.add(cds ? "-XX:SharedArchiveFile=" + archive : "-Xshare:auto");
+        commandLine.addAll(List.of("-jar", fatJar().toString()));
+        chart = Files.createTempFile("startup", ".png");
+        commandLine.addAll(switch (command) {
+            case "help" -> List.of("--help");
+            case "con_table" -> List.of("con_table", "--no-cache", RESOURCES + "degs.csv",
+                    RESOURCES + "hsa_pathways.csv", RESOURCES + "pathways.csv", "-t", "print");
+            default -> List.of(command, "--no-cache", RESOURCES + "degs.csv", RESOURCES + "hsa_pathways.csv",
+                    RESOURCES + "pathways.csv", chart.toString(), "-o", chart.toString());
+        });
+        process = new ProcessBuilder(commandLine).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(chart);
+    }
+
+    @Benchmark
+    public int start() throws IOException, InterruptedException {
+        int exitCode = process.start().waitFor();
+        if (exitCode != 0) throw new IllegalStateException("Exit code " + exitCode + " of: " + process.command());
+        return exitCode;
+    }
+
+    private static Path fatJar() throws IOException {
+        try (Stream<Path> files = Files.list(LIBS)) {
+            return files.filter(file -> file.getFileName().toString().matches("dgsea-.*\\.jar"))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No fat jar in " + LIBS + ", build it with: gradle jar"));
+        }
+    }
+}
@@ -1,14 +1,33 @@
 /**
  * Manages the command-line interface of this application using Picocli.
- * This app is split into 4 custom subcommands starting from main.
+ * This app is split into 12 custom subcommands starting from main, added lazily by CommandlineController.newCommandLine.
  * The class from CommonCliOptions.java is used for inheritance of multiple options common in 2 or more sub-commands.
  *
  * @authors Jort Gommers & Willem Daniël Visser
  */
 package nl.bioinf.dgsea;
 
+import nl.bioinf.dgsea.data_processing.Deg;
+import nl.bioinf.dgsea.data_processing.EnrichmentResult;
+import nl.bioinf.dgsea.data_processing.FileParseUtils;
+import nl.bioinf.dgsea.data_processing.Pathway;
+import nl.bioinf.dgsea.data_processing.PathwayDatabase;
+import nl.bioinf.dgsea.data_processing.PathwayGene;
+import nl.bioinf.dgsea.data_processing.PathwayIndex;
+import nl.bioinf.dgsea.data_processing.SyntheticDataset;
+import nl.bioinf.dgsea.metrics.DgseaMetrics;
+import nl.bioinf.dgsea.metrics.MetricsServer;
+import nl.bioinf.dgsea.pipelines.BatchRunner;
+import nl.bioinf.dgsea.pipelines.ContrastAnalysis;
+import nl.bioinf.dgsea.pipelines.DirectoryWatcher;
+import nl.bioinf.dgsea.profiling.OutputWriteEvent;
+import nl.bioinf.dgsea.profiling.ProfileReport;
+import nl.bioinf.dgsea.profiling.Profiler;
+import nl.bioinf.dgsea.server.AnalysisServer;
 import nl.bioinf.dgsea.table_outputs.TwoByTwoContingencyTable;
+import nl.bioinf.dgsea.visualisations.LfcHeatmap;
 import nl.bioinf.dgsea.visualisations.PercLfcBarChart;
+import nl.bioinf.dgsea.visualisations.VolcanoPlot;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import picocli.CommandLine;
@@ -19,7 +38,15 @@ import picocli.CommandLine.Mixin;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
-import java.util.Arrays;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 
 /**
@@ -27,13 +54,52 @@ import java.util.Arrays;
  * Calls the sub-command. If no sub-command is given, it throws an error and provides global help.
  */
 @Command(name="main", version="main 1.0", mixinStandardHelpOptions = true,
-        subcommands = {CommandLine.HelpCommand.class, EnrichBarChart.class, EnrichDotChart.class,
-                PercLogFChangePerPathwayCmd.class, ContinuityTable.class})
+        subcommands = {CommandLine.HelpCommand.class})
 public class CommandlineController implements Runnable {
+    private static final int PROFILED_PATHWAYS = 10;
+    /**
+     * Sub-commands, added by {@link #newCommandLine(String...)} only when named on the command line,
+     * because building the picocli model of every sub-command is a large part of the startup time.
+     */
+    static final List<Class<?>> SUBCOMMANDS = List.of(EnrichBarChart.class, EnrichDotChart.class,
+            PercLogFChangePerPathwayCmd.class, ContinuityTable.class, ServeCmd.class, BatchCmd.class, WatchCmd.class,
+            MergeCmd.class, ReportCmd.class, VolcanoPlotCmd.class, LfcHeatmapCmd.class, GenerateCmd.class);
+    private final Logger logger = LogManager.getLogger(CommandlineController.class);
 
     @CommandLine.Spec
     CommandLine.Model.CommandSpec spec;
 
+    @Option(names = {"--profile"}, arity = "0..1", fallbackValue = "TEXT", paramLabel = "TEXT|JSON", scope = CommandLine.ScopeType.INHERIT,
+            description = "Profile wall time, CPU time, allocated bytes and peak heap per stage and the 10 slowest pathways, written at the end of the run as TEXT (default) or JSON")
+    private ProfileFormat profileFormat;
+    @Option(names = {"--profile-output"}, paramLabel = "FILE", scope = CommandLine.ScopeType.INHERIT,
+            description = "File to write the --profile report to, default: standard error")
+    private Path profileOutput;
+    @Option(names = {"--threads"}, paramLabel = "1-inf", scope = CommandLine.ScopeType.INHERIT,
+            description = "Maximum number of threads computing, parsing and rendering, default = number of processors")
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    enum ProfileFormat { TEXT, JSON }
+
+    /**
+     * Creates the command line of this command with the sub-commands named in the arguments,
+     * or with all sub-commands if none is named, e.g. for the global help.
+     * @param args command-line arguments about to be executed
+     * @return command line executing with {@link #execute(CommandLine.ParseResult)}
+     */
+    CommandLine newCommandLine(String... args) {
+        CommandLine commandLine = new CommandLine(this).setExecutionStrategy(this::execute);
+        Set<String> arguments = new HashSet<>(Arrays.asList(args));
+        List<Class<?>> named = new ArrayList<>();
+        for (Class<?> subcommand : SUBCOMMANDS) {
+            if (arguments.contains(subcommand.getAnnotation(Command.class).name())) named.add(subcommand);
+        }
+        for (Class<?> subcommand : named.isEmpty() ? SUBCOMMANDS : named) {
+            commandLine.addSubcommand(subcommand);
+        }
+        return commandLine;
+    }
+
     /**
      * Executes the command, throwing an exception if no sub-command is provided.
      */
@@ -41,6 +107,44 @@ public class CommandlineController implements Runnable {
     public void run() {
         throw new CommandLine.ParameterException(spec.commandLine(), "Missing required subcommand");
     }
+
+    /**
+     * Execution strategy running the sub-command like {@link CommandLine.RunLast} with the executors sized by --threads,
+     * profiled if --profile is given.
+     * @param parseResult parsed command line
+     * @return exit code of the sub-command
+     */
+    int execute(CommandLine.ParseResult parseResult) {
+        if (threads <= 0) {
+            List<CommandLine> commandLines = parseResult.asCommandLineList();
+            throw new CommandLine.ParameterException(commandLines.getLast(), "Threads(--threads) must be at least 1, given: " + threads);
+        }
+        DgseaExecutors.setThreads(threads);
+        if (profileFormat == null) return new CommandLine.RunLast().execute(parseResult);
+        Profiler.enable();
+        try (Profiler.Stage _ = Profiler.stage("total")) {
+            return new CommandLine.RunLast().execute(parseResult);
+        } finally {
+            writeProfile();
+        }
+    }
+
+    /**
+     * Writes the profile report to --profile-output, or to standard error.
+     */
+    private void writeProfile() {
+        ProfileReport report = Profiler.report(PROFILED_PATHWAYS);
+        String text = profileFormat == ProfileFormat.JSON ? report.toJson() + System.lineSeparator() : report.toText();
+        if (profileOutput == null) {
+            System.err.print(text);
+            return;
+        }
+        try {
+            Files.writeString(profileOutput, text);
+        } catch (IOException e) {
+            logger.error("Failed to write the profile to: {}, because: {}", profileOutput, e.getMessage());
+        }
+    }
 }
 
 /**
@@ -57,12 +161,18 @@ class EnrichBarChart implements Runnable {
     @Mixin
     private CommonToAll commonToAll;
     @Mixin
+    private RenderParams renderParams;
+    @Mixin
     private CommonFileParams commonFileParams;
     @Mixin
     private CommonChartParams commonChartParams;
+    @Mixin
+    private ShardParams shardParams;
+    @Mixin
+    private CacheParams cacheParams;
 
     @Option(names = {"--output-file", "-o", "-O"}, paramLabel = "FILE",
-            description = "Output file path for the bar chart (e.g., ./output/enrichment_bar_chart.png)")
+            description = "Output file path for the bar chart (e.g., ./output/enrichment_bar_chart.png), written as SVG or JPEG if the file ends with .svg or .jpg")
     private String outputFilePath;
 
 
@@ -75,12 +185,32 @@ class EnrichBarChart implements Runnable {
         validateOptions();
         commonToAll.validateOptions();
         commonChartParams.validateOptions();
+        shardParams.validateOptions();
+        cacheParams.validateOptions();
         commonToAll.setLoggingScope();
-        
+        renderParams.apply();
+
+        cacheParams.runCached(commonFileParams.getInputFiles(), getOutputs(), this::generateChart);
+    }
+
+    /**
+     * Calculates the enrichment and saves the chart, or only the raw results of a shard.
+     */
+    private void generateChart() {
         Color[] colorArray = commonChartParams.getColorManualAsColors();
 
         EnrichmentAnalysisService enrichmentService = new EnrichmentAnalysisService();
+        commonFileParams.parseConcurrently(null);
         try {
+            if (shardParams.isSharded()) {
+                enrichmentService.writeEnrichmentShard(
+                        commonFileParams.getDegs(),
+                        commonFileParams.getPathways(),
+                        commonFileParams.getPathwayGenes(),
+                        shardParams.getShard(),
+                        shardParams.getShardOutput());
+                return;
+            }
             enrichmentService.generateEnrichmentChart(
                     commonFileParams.getDegs(),
                     commonFileParams.getPathways(),
@@ -99,11 +229,19 @@ class EnrichBarChart implements Runnable {
     }
 
     /**
-     * validates this.outputFilePath not to be null
+     * @return the shard file if only a shard is calculated, otherwise the chart and the enrichment CSV
+     */
+    private List<Path> getOutputs() {
+        if (shardParams.isSharded()) return List.of(Path.of(shardParams.getShardOutput()));
+        return List.of(Path.of(outputFilePath), Path.of(EnrichmentAnalysisService.ENRICHMENT_CSV));
+    }
+
+    /**
+     * validates this.outputFilePath not to be null, unless only a shard is calculated
      * @throws CommandLine.ParameterException if any validation fails
      */
     private void validateOptions() {
-        if (outputFilePath == null) {
+        if (outputFilePath == null && !shardParams.isSharded()) {
             throw new CommandLine.ParameterException(spec.commandLine(), "Output file path -output-file must be specified");
         }
     }
@@ -123,9 +261,15 @@ class EnrichDotChart implements Runnable {
     @Mixin
     private CommonToAll commonToAll;
     @Mixin
+    private RenderParams renderParams;
+    @Mixin
     private CommonFileParams commonFileParams;
     @Mixin
     private CommonChartParams commonChartParams;
+    @Mixin
+    private ShardParams shardParams;
+    @Mixin
+    private CacheParams cacheParams;
 
     @Option(names = {"--dot-size", "-ds", "-DS"}, paramLabel = "[0.0-inf]",
             description = "Dot size, default = ${DEFAULT-VALUE}", defaultValue = "30.0")
@@ -134,7 +278,7 @@ class EnrichDotChart implements Runnable {
             description = "Dot transparency, default = ${DEFAULT-VALUE}", defaultValue = "1.0")
     private float dotTransparency;
     @Option(names = {"--output-file", "-o", "-O"}, paramLabel = "FILE",
-            description = "Output file path for the dot plot (e.g., ./output/enrichment_dot_plot.png)")
+            description = "Output file path for the dot plot (e.g., ./output/enrichment_dot_plot.png), written as SVG or JPEG if the file ends with .svg or .jpg")
     private String outputFilePath;
 
     /**
@@ -146,12 +290,32 @@ class EnrichDotChart implements Runnable {
         validateOptions();
         commonToAll.validateOptions();
         commonChartParams.validateOptions();
+        shardParams.validateOptions();
+        cacheParams.validateOptions();
         commonToAll.setLoggingScope();
+        renderParams.apply();
 
+        cacheParams.runCached(commonFileParams.getInputFiles(), getOutputs(), this::generateChart);
+    }
+
+    /**
+     * Calculates the enrichment and saves the chart, or only the raw results of a shard.
+     */
+    private void generateChart() {
         Color[] colorArray = commonChartParams.getColorManualAsColors();
 
         EnrichmentAnalysisService enrichmentService = new EnrichmentAnalysisService();
+        commonFileParams.parseConcurrently(null);
         try {
+            if (shardParams.isSharded()) {
+                enrichmentService.writeEnrichmentShard(
+                        commonFileParams.getDegs(),
+                        commonFileParams.getPathways(),
+                        commonFileParams.getPathwayGenes(),
+                        shardParams.getShard(),
+                        shardParams.getShardOutput());
+                return;
+            }
             enrichmentService.generateEnrichmentChart(
                     commonFileParams.getDegs(),
                     commonFileParams.getPathways(),
@@ -169,10 +333,18 @@ class EnrichDotChart implements Runnable {
         }
     }
 
+    /**
+     * @return the shard file if only a shard is calculated, otherwise the chart and the enrichment CSV
+     */
+    private List<Path> getOutputs() {
+        if (shardParams.isSharded()) return List.of(Path.of(shardParams.getShardOutput()));
+        return List.of(Path.of(outputFilePath), Path.of(EnrichmentAnalysisService.ENRICHMENT_CSV));
+    }
+
     /**
      * validates this.dotSize and this.dotTransparency to be positive.
      * validates this.dotTransparency to be lower than 1.0
-     * validates this.outputFilePath not to be null
+     * validates this.outputFilePath not to be null, unless only a shard is calculated
      * @throws CommandLine.ParameterException if any validation fails
      */
     private void validateOptions() {
@@ -185,7 +357,7 @@ class EnrichDotChart implements Runnable {
         if (dotTransparency >= 1.0) {
             throw new CommandLine.ParameterException(spec.commandLine(), "Dot transparency --dot-transparency cannot be greater than 1.0");
         }
-        if (outputFilePath == null) {
+        if (outputFilePath == null && !shardParams.isSharded()) {
             throw new CommandLine.ParameterException(spec.commandLine(), "Output file path -output-file must be specified");
         }
     }
@@ -205,10 +377,15 @@ class PercLogFChangePerPathwayCmd implements Runnable {
     @Mixin
     private CommonToAll commonToAll;
     @Mixin
+    private RenderParams renderParams;
+    @Mixin
     private CommonFileParams commonFileParams;
     @Mixin
     private CommonChartParams commonChartParams;
 
+    @Mixin
+    private CacheParams cacheParams;
+
     @Option(names = {"--pathway-ids", "-p-ids", "-P-IDS"}, paramLabel = "hsa123", arity = "0..*", split = ",",
             description = "Pathway ids of interest")
     private String[] pathwayIds;
@@ -222,15 +399,20 @@ class PercLogFChangePerPathwayCmd implements Runnable {
         validateOptions();
         commonToAll.validateOptions();
         commonChartParams.validateOptions();
+        cacheParams.validateOptions();
         commonToAll.setLoggingScope();
-        PercLfcBarChart percLfcBarChart = new PercLfcBarChart(getChartGeneratorsBuilder());
-        try {
-            percLfcBarChart.saveChart();
-        } catch (IOException e) {
-            logger.error(e.getMessage());
-        } catch (IllegalArgumentException e1) {
-            logger.fatal(e1.getMessage());
-        }
+        renderParams.apply();
+        cacheParams.runCached(commonFileParams.getInputFiles(), List.of(commonChartParams.getOutputPath().toPath()), () -> {
+            commonFileParams.parseConcurrently(getPathwayIdSet());
+            PercLfcBarChart percLfcBarChart = new PercLfcBarChart(getChartGeneratorsBuilder());
+            try {
+                percLfcBarChart.saveChart();
+            } catch (IOException e) {
+                logger.error(e.getMessage());
+            } catch (IllegalArgumentException e1) {
+                logger.fatal(e1.getMessage());
+            }
+        });
     }
 
     /**
@@ -244,7 +426,7 @@ class PercLogFChangePerPathwayCmd implements Runnable {
                 commonChartParams.getyAxisTitle(),
                 commonFileParams.getDegs(),
                 commonFileParams.getPathways(),
-                commonFileParams.getPathwayGenes(),
+                commonFileParams.getPathwayGenes(getPathwayIdSet()),
                 commonChartParams.getOutputPath())
                 .colorManual(commonChartParams.getColorManualAsColors())
                 .maxNPathways(commonChartParams.getMaxNPathways())
@@ -252,6 +434,15 @@ class PercLogFChangePerPathwayCmd implements Runnable {
                 .pathwayIds(pathwayIds);
     }
 
+    /**
+     * Gives the pathway-ids of interest as set, so only their pathway genes need to be parsed.
+     * @return set of pathway-ids, or null if none were given
+     */
+    private Set<String> getPathwayIdSet() {
+        if (pathwayIds == null || pathwayIds.length == 0) return null;
+        return new HashSet<>(Arrays.asList(pathwayIds));
+    }
+
     /**
      * validates if any string in this.pathwayIds is just a space-character: ' '
      * @throws CommandLine.ParameterException if any validation fails
@@ -282,6 +473,8 @@ class ContinuityTable implements Runnable {
     private CommonToAll commonToAll;
     @Mixin
     private CommonFileParams commonFileParams;
+    @Mixin
+    private CacheParams cacheParams;
 
     @Option(names = {"--outputType", "-t", "-T"}, paramLabel = "file|print",
             description = "Option on how to return output table. (csv-file or print to terminal)",
@@ -298,7 +491,20 @@ class ContinuityTable implements Runnable {
     public void run() {
         validateOptions();
         commonToAll.validateOptions();
+        cacheParams.validateOptions();
         commonToAll.setLoggingScope();
+        if ("file".equalsIgnoreCase(output)) {
+            cacheParams.runCached(commonFileParams.getInputFiles(), List.of(outputFilePath.toPath()), this::makeTable);
+        } else {
+            makeTable();
+        }
+    }
+
+    /**
+     * Calculates the continuity table and writes or prints it.
+     */
+    private void makeTable() {
+        commonFileParams.parseConcurrently(null);
         TwoByTwoContingencyTable twoByTwoContingencyTable = new TwoByTwoContingencyTable(
                 commonFileParams.getDegs(),
                 commonFileParams.getPathways(),
@@ -321,7 +527,11 @@ class ContinuityTable implements Runnable {
 
         if ("file".equalsIgnoreCase(output)) {
             try {
+                OutputWriteEvent event = new OutputWriteEvent();
+                event.begin();
                 java.nio.file.Files.write(outputFilePath.toPath(), outputTable.getBytes());
+                event.end(outputFilePath.toPath(), "contingency table");
+                DgseaMetrics.countWritten("contingency_table", outputFilePath.toPath());
                 logger.info("Continuity table written to: {}", outputFilePath.getPath());
             } catch (IOException e) {
                 logger.error("Error writing continuity table to file: {}", e.getMessage());
@@ -345,3 +555,725 @@ class ContinuityTable implements Runnable {
         }
     }
 }
+
+/**
+ * First-layer (CLI) sub-command for serving the analyses of the other sub-commands over HTTP.
+ * Pathway databases are loaded once and kept resident, so every posted DEG list is analysed without start-up or parsing costs.
+ */
+@Command(name = "serve", version = "Analysis server 1.0", mixinStandardHelpOptions = true,
+        description = "Loads pathway databases once and serves con_table, enrichment, log-fold-change and chart analyses of posted DEG lists over HTTP on localhost.")
+class ServeCmd implements Runnable {
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+    private final Logger logger = LogManager.getLogger(ServeCmd.class);
+
+    @Mixin
+    private CommonToAll commonToAll;
+    @Mixin
+    private RenderParams renderParams;
+
+    @Option(names = {"--database", "-d", "-D"}, paramLabel = "NAME=DESCRIPTIONS,GENES", required = true, arity = "1..*",
+            description = "One or more pathway databases to load: name, pathway descriptions file and pathway + genes file (e.g. hsa=hsa_pathways.csv,pathways.csv)")
+    private Map<String, String> databaseFiles;
+    @Option(names = {"--host"}, paramLabel = "ADDRESS",
+            description = "Loopback address to bind to, default = ${DEFAULT-VALUE}", defaultValue = "127.0.0.1")
+    private String host;
+    @Option(names = {"--port"}, paramLabel = "[0-65535]",
+            description = "Port to listen on, 0 picks a free port, default = ${DEFAULT-VALUE}", defaultValue = "8080")
+    private int port;
+
+    /**
+     * Loads every pathway database, starts the server and keeps serving until the process is stopped.
+     */
+    @Override
+    public void run() {
+        validateOptions();
+        commonToAll.validateOptions();
+        commonToAll.setLoggingScope();
+        renderParams.apply();
+        System.setProperty("java.awt.headless", "true");
+
+        Map<String, PathwayDatabase> databases = new LinkedHashMap<>();
+        for (Map.Entry<String, String> databaseFile : databaseFiles.entrySet()) {
+            String[] files = databaseFile.getValue().split(",");
+            try {
+                databases.put(databaseFile.getKey(), PathwayDatabase.load(databaseFile.getKey(), new File(files[0].trim()), new File(files[1].trim())));
+            } catch (IOException | NumberFormatException e) {
+                logger.fatal("Could not load pathway database '{}': {}", databaseFile.getKey(), e.getMessage());
+                return;
+            }
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        try {
+            AnalysisServer server = new AnalysisServer(new InetSocketAddress(host, port), databases, commonToAll.getPval());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                stopped.countDown();
+            }));
+            server.start();
+            stopped.await();
+        } catch (IOException e) {
+            logger.fatal("Could not start server on {}:{}: {}", host, port, e.getMessage());
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * validates if every database is given as name=descriptions-file,genes-file
+     * validates if this.host is a loopback address
+     * validates if this.port is between 0 and 65535
+     * @throws CommandLine.ParameterException if any validation fails
+     */
+    private void validateOptions() {
+        for (Map.Entry<String, String> databaseFile : databaseFiles.entrySet()) {
+            if (databaseFile.getKey().isBlank() || databaseFile.getValue().split(",").length != 2) {
+                throw new CommandLine.ParameterException(spec.commandLine(), "Database(--database) must be given as NAME=DESCRIPTIONS,GENES, given: " + databaseFile.getKey() + "=" + databaseFile.getValue());
+            }
+        }
+        try {
+            if (!InetAddress.getByName(host).isLoopbackAddress()) {
+                throw new CommandLine.ParameterException(spec.commandLine(), "Host(--host) must be a loopback address, given host: " + host);
+            }
+        } catch (UnknownHostException _) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Host(--host) is unknown, given host: " + host);
+        }
+        if (port < 0 || port > 65535) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Port(--port) must be between 0 and 65535, given port: " + port);
+        }
+    }
+}
+
+/**
+ * First-layer (CLI) sub-command for analysing many contrasts (DEG files) against one pathway database in a single run.
+ * The pathway database is loaded and indexed once, after which the contrasts are analysed in parallel.
+ */
+@Command(name = "batch", version = "Batch 1.0", mixinStandardHelpOptions = true,
+        description = "Analyses every DEG file of a manifest or directory against one pathway database, writing each contrast's outputs to its own directory plus a combined summary.csv.")
+class BatchCmd implements Runnable {
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+    private final Logger logger = LogManager.getLogger(BatchCmd.class);
+
+    @Mixin
+    private CommonToAll commonToAll;
+    @Mixin
+    private RenderParams renderParams;
+
+    @CommandLine.Parameters(index = "0", paramLabel = "<inputPathwayDescriptions.csv|tsv>",
+            description = "Input pathway descriptions file, columns: pathway ID and description of pathway.")
+    private File inputFilePathwayDescriptions;
+    @CommandLine.Parameters(index = "1", paramLabel = "<inputPathwayGenes.csv|tsv>",
+            description = "Input pathway + genes file, columns: pathway ID, Entrez gene ID, gene symbol, and Ensembl gene ID.")
+    private File inputFilePathwayGenes;
+
+    @CommandLine.ArgGroup(multiplicity = "1")
+    private ContrastSource contrastSource;
+
+    static class ContrastSource {
+        @Option(names = {"--manifest", "-m", "-M"}, paramLabel = "FILE",
+                description = "Manifest with one contrast per line: 'name,degs-file' or 'degs-file'")
+        private File manifest;
+        @Option(names = {"--degs-dir"}, paramLabel = "DIR",
+                description = "Directory of which every .csv and .tsv file is a DEG file of one contrast")
+        private File degsDir;
+    }
+
+    @Option(names = {"--output-dir", "-o", "-O"}, paramLabel = "DIR", required = true,
+            description = "Directory to write a directory per contrast and summary.csv to")
+    private File outputDir;
+    @Option(names = {"--max-n-pathways", "-p-max"}, paramLabel = "1-inf",
+            description = "Max number of pathways to include in charts. Default = ${DEFAULT-VALUE}", defaultValue = "20")
+    private int maxNPathways;
+    @Option(names = {"--outputs"}, split = ",", paramLabel = "OUTPUT",
+            description = "Outputs to write per contrast, default all: ${COMPLETION-CANDIDATES}")
+    private ContrastAnalysis.Output[] outputs;
+    @Option(names = {"--metrics-file"}, paramLabel = "FILE",
+            description = "File to write the run's metrics to in the Prometheus text format, e.g. for the node exporter's textfile collector")
+    private File metricsFile;
+
+    /**
+     * Loads the pathway database, analyses every contrast and writes the summary.
+     */
+    @Override
+    public void run() {
+        validateOptions();
+        commonToAll.validateOptions();
+        commonToAll.setLoggingScope();
+        renderParams.apply();
+        System.setProperty("java.awt.headless", "true");
+
+        try {
+            List<BatchRunner.Contrast> contrasts = contrastSource.manifest != null
+                    ? BatchRunner.readManifest(contrastSource.manifest.toPath())
+                    : BatchRunner.listDirectory(contrastSource.degsDir.toPath());
+            logger.info("Loading pathway database for {} contrast(s)", contrasts.size());
+            Dgsea dgsea = new Dgsea(PathwayDatabase.load("pathways", inputFilePathwayDescriptions, inputFilePathwayGenes));
+            ContrastAnalysis contrastAnalysis = new ContrastAnalysis(dgsea, new ContrastAnalysis.Settings(
+                    commonToAll.getPval(), maxNPathways, outputs == null ? null : Set.of(outputs)));
+            new BatchRunner(contrastAnalysis, DgseaExecutors.io()).run(contrasts, outputDir.toPath());
+            if (metricsFile != null) {
+                DgseaMetrics.REGISTRY.writeTextfile(metricsFile.toPath());
+                logger.info("Metrics written to: {}", metricsFile);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.fatal(e.getMessage());
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * validates if this.maxNPathways is at least 1
+     * @throws CommandLine.ParameterException if any validation fails
+     */
+    private void validateOptions() {
+        if (maxNPathways <= 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Max number pathways option(--max-n-pathway) must be at least 1, given: " + maxNPathways);
+        }
+    }
+}
+
+/**
+ * First-layer (CLI) sub-command for analysing DEG files as they arrive in a directory.
+ * The pathway database is loaded and indexed once and stays resident while watching.
+ */
+@Command(name = "watch", version = "Watch 1.0", mixinStandardHelpOptions = true,
+        description = "Watches a directory and analyses every complete DEG file arriving in it against one pathway database, appending to summary.csv. Stop with Ctrl+C.")
+class WatchCmd implements Runnable {
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+    private final Logger logger = LogManager.getLogger(WatchCmd.class);
+
+    @Mixin
+    private CommonToAll commonToAll;
+    @Mixin
+    private RenderParams renderParams;
+
+    @CommandLine.Parameters(index = "0", paramLabel = "<inputPathwayDescriptions.csv|tsv>",
+            description = "Input pathway descriptions file, columns: pathway ID and description of pathway.")
+    private File inputFilePathwayDescriptions;
+    @CommandLine.Parameters(index = "1", paramLabel = "<inputPathwayGenes.csv|tsv>",
+            description = "Input pathway + genes file, columns: pathway ID, Entrez gene ID, gene symbol, and Ensembl gene ID.")
+    private File inputFilePathwayGenes;
+
+    @Option(names = {"--watch-dir", "-w", "-W"}, paramLabel = "DIR", required = true,
+            description = "Directory to watch for .csv and .tsv DEG files")
+    private File watchDir;
+    @Option(names = {"--output-dir", "-o", "-O"}, paramLabel = "DIR", required = true,
+            description = "Directory to write a directory per DEG file, summary.csv and .processed to")
+    private File outputDir;
+    @Option(names = {"--settle-time"}, paramLabel = "0-inf",
+            description = "Milliseconds a file must be unchanged before it is analysed. Default = ${DEFAULT-VALUE}", defaultValue = "2000")
+    private long settleTimeMillis;
+    @Option(names = {"--skip-existing"},
+            description = "Only analyse files arriving after start, not files already in the watched directory")
+    private boolean skipExisting;
+    @Option(names = {"--max-n-pathways", "-p-max"}, paramLabel = "1-inf",
+            description = "Max number of pathways to include in charts. Default = ${DEFAULT-VALUE}", defaultValue = "20")
+    private int maxNPathways;
+    @Option(names = {"--outputs"}, split = ",", paramLabel = "OUTPUT",
+            description = "Outputs to write per DEG file, default all: ${COMPLETION-CANDIDATES}")
+    private ContrastAnalysis.Output[] outputs;
+    @Option(names = {"--metrics-port"}, paramLabel = "[0-65535]",
+            description = "Port to serve metrics on at http://127.0.0.1:PORT/metrics, 0 picks a free port, default = no metrics served")
+    private Integer metricsPort;
+
+    /**
+     * Loads the pathway database and watches until the JVM is shut down.
+     */
+    @Override
+    public void run() {
+        validateOptions();
+        commonToAll.validateOptions();
+        commonToAll.setLoggingScope();
+        renderParams.apply();
+        System.setProperty("java.awt.headless", "true");
+
+        try {
+            Dgsea dgsea = new Dgsea(PathwayDatabase.load("pathways", inputFilePathwayDescriptions, inputFilePathwayGenes));
+            ContrastAnalysis contrastAnalysis = new ContrastAnalysis(dgsea, new ContrastAnalysis.Settings(
+                    commonToAll.getPval(), maxNPathways, outputs == null ? null : Set.of(outputs)));
+            DirectoryWatcher watcher = new DirectoryWatcher(contrastAnalysis, watchDir.toPath(), outputDir.toPath(),
+                    DgseaExecutors.io(), Duration.ofMillis(settleTimeMillis));
+            MetricsServer metricsServer = metricsPort == null ? null
+                    : new MetricsServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), metricsPort), DgseaMetrics.REGISTRY);
+            CountDownLatch finished = new CountDownLatch(1);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                watcher.close(); // lets files being analysed finish before the JVM exits
+                try {
+                    finished.await();
+                } catch (InterruptedException _) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+            try {
+                watcher.run(!skipExisting);
+            } finally {
+                if (metricsServer != null) metricsServer.close();
+                finished.countDown();
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.fatal(e.getMessage());
+        } catch (InterruptedException _) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * validates if this.maxNPathways is at least 1, this.settleTimeMillis is not negative,
+     * this.watchDir is a directory and this.metricsPort, if given, is a valid port
+     * @throws CommandLine.ParameterException if any validation fails
+     */
+    private void validateOptions() {
+        if (settleTimeMillis < 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Settle time(--settle-time) cannot be negative, given: " + settleTimeMillis);
+        }
+        if (maxNPathways <= 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Max number pathways option(--max-n-pathway) must be at least 1, given: " + maxNPathways);
+        }
+        if (!watchDir.isDirectory()) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Watch directory(--watch-dir) must be an existing directory, given: " + watchDir);
+        }
+        if (metricsPort != null && (metricsPort < 0 || metricsPort > 65535)) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Metrics port(--metrics-port) must be between 0 and 65535, given port: " + metricsPort);
+        }
+    }
+}
+
+/**
+ * First-layer (CLI) sub-command for merging the shard files of enrich_bar_chart or enrich_dot_chart runs with --shard.
+ * The multiple-testing correction is applied over all pathways, so the outputs equal those of a single run.
+ */
+@Command(name = "merge", version = "Merge 1.0", mixinStandardHelpOptions = true,
+        description = "Merges the shard files of all shards into the enrichment CSV and, optionally, an enrichment chart.")
+class MergeCmd implements Runnable {
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+    private final Logger logger = LogManager.getLogger(MergeCmd.class);
+
+    @Mixin
+    private CommonToAll commonToAll;
+    @Mixin
+    private RenderParams renderParams;
+
+    @CommandLine.Parameters(index = "0", paramLabel = "<inputPathwayDescriptions.csv|tsv>",
+            description = "Input pathway descriptions file used for the shards, columns: pathway ID and description of pathway.")
+    private File inputFilePathwayDescriptions;
+    @CommandLine.Parameters(index = "1..*", arity = "1..*", paramLabel = "<shard.csv>",
+            description = "Shard files written with --shard, one for every shard.")
+    private List<File> shardFiles;
+
+    @Option(names = {"--output-csv"}, paramLabel = "FILE",
+            description = "Output file path for the enrichment CSV, default = ${DEFAULT-VALUE}", defaultValue = "output.csv")
+    private String outputCsvPath;
+    @Option(names = {"--chart"}, paramLabel = "BAR_CHART|DOT_CHART",
+            description = "Also save an enrichment chart of this type to --output-file")
+    private EnrichmentAnalysisService.ChartType chartType;
+    @Option(names = {"--output-file", "-o", "-O"}, paramLabel = "FILE",
+            description = "Output file path for the chart")
+    private String outputFilePath;
+    @Option(names = {"--title", "-t", "-T"},
+            description = "Title of the chart")
+    private String title;
+    @Option(names = {"--max-n-pathways", "-p-max"}, paramLabel = "1-inf",
+            description = "Max number of pathways to include in chart. Default = ${DEFAULT-VALUE}", defaultValue = "20")
+    private int maxNPathways;
+    @Option(names = {"--color-manual", "-cm"}, arity = "1..*", split = ";", paramLabel = "red|0xRRGGBB",
+            description = "One or more colors to apply to chart, see the enrichment chart sub-commands.")
+    private String[] colorManual;
+    @Option(names = {"--dot-size", "-ds", "-DS"}, paramLabel = "[0.0-inf]",
+            description = "Dot size, default = ${DEFAULT-VALUE}", defaultValue = "30.0")
+    private double dotSize;
+    @Option(names = {"--dot-transparency", "-dt", "-DT"}, paramLabel = "[0.0-1.0]",
+            description = "Dot transparency, default = ${DEFAULT-VALUE}", defaultValue = "1.0")
+    private float dotTransparency;
+
+    /**
+     * Merges the shards, writes the enrichment CSV and saves the chart if requested.
+     */
+    @Override
+    public void run() {
+        validateOptions();
+        commonToAll.validateOptions();
+        commonToAll.setLoggingScope();
+        renderParams.apply();
+
+        EnrichmentAnalysisService enrichmentService = new EnrichmentAnalysisService();
+        try {
+            List<Pathway> pathways = new FileParseUtils().parsePathwayFile(inputFilePathwayDescriptions);
+            List<EnrichmentResult> results = enrichmentService.mergeEnrichmentShards(
+                    pathways, shardFiles.stream().map(File::toPath).toList(), outputCsvPath);
+            if (chartType != null) {
+                enrichmentService.saveEnrichmentChart(
+                        EnrichmentAnalysisService.selectTopResults(results, maxNPathways),
+                        PathwayIndex.of(pathways),
+                        outputFilePath,
+                        title,
+                        CommonChartParams.toColors(colorManual, logger),
+                        chartType,
+                        dotSize,
+                        dotTransparency);
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            logger.fatal(e.getMessage());
+        }
+    }
+
+    /**
+     * validates if this.maxNPathways is at least 1, this.dotSize is positive and this.dotTransparency is between 0.0 and 1.0
+     * @throws CommandLine.ParameterException if any validation fails
+     */
+    private void validateOptions() {
+        if (maxNPathways <= 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Max number pathways option(--max-n-pathway) must be at least 1, given: " + maxNPathways);
+        }
+        if (dotSize < 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Dot size --dot-size must be a positive number");
+        }
+        if (dotTransparency < 0.0 || dotTransparency > 1.0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Dot transparency --dot-transparency must be between 0.0 and 1.0");
+        }
+    }
+}
+
+/**
+ * First-layer (CLI) sub-command for writing every output of one DEG list in a single run.
+ * The inputs are parsed and the enrichment is calculated once; the charts are rendered concurrently on the I/O pool of DgseaExecutors.
+ */
+@Command(name = "report", version = "Report 1.0", mixinStandardHelpOptions = true,
+        description = "Writes the continuity table, enrichment CSV and all charts of one DEG list to a directory, optionally with a self-contained index.html.")
+class ReportCmd implements Runnable {
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+    private final Logger logger = LogManager.getLogger(ReportCmd.class);
+
+    @Mixin
+    private CommonToAll commonToAll;
+    @Mixin
+    private RenderParams renderParams;
+    @Mixin
+    private CommonFileParams commonFileParams;
+
+    @Option(names = {"--output-dir", "-o", "-O"}, paramLabel = "DIR", required = true,
+            description = "Directory to write the outputs to")
+    private File outputDir;
+    @Option(names = {"--html"},
+            description = "Also write a self-contained index.html with all tables and charts")
+    private boolean html;
+    @Option(names = {"--outputs"}, split = ",", paramLabel = "OUTPUT",
+            description = "Outputs to write, default all: ${COMPLETION-CANDIDATES}")
+    private ContrastAnalysis.Output[] outputs;
+    @Option(names = {"--title", "-t", "-T"},
+            description = "Title of the charts and page, default = DEGs file name")
+    private String title;
+    @Option(names = {"--max-n-pathways", "-p-max"}, paramLabel = "1-inf",
+            description = "Max number of pathways to include in charts. Default = ${DEFAULT-VALUE}", defaultValue = "20")
+    private int maxNPathways;
+    @Option(names = {"--pathway-ids", "-p-ids", "-P-IDS"}, paramLabel = "hsa123", arity = "0..*", split = ",",
+            description = "Pathway ids of interest for the percentage log-fold-change chart")
+    private String[] pathwayIds;
+    @Option(names = {"--color-manual", "-cm"}, arity = "1..*", split = ";", paramLabel = "red|0xRRGGBB",
+            description = "One or more colors to apply to the charts, see the enrichment chart sub-commands.")
+    private String[] colorManual;
+    @Option(names = {"--dot-size", "-ds", "-DS"}, paramLabel = "[0.0-inf]",
+            description = "Dot size, default = ${DEFAULT-VALUE}", defaultValue = "30.0")
+    private double dotSize;
+    @Option(names = {"--dot-transparency", "-dt", "-DT"}, paramLabel = "[0.0-1.0]",
+            description = "Dot transparency, default = ${DEFAULT-VALUE}", defaultValue = "1.0")
+    private float dotTransparency;
+
+    /**
+     * Loads the inputs once and writes all requested outputs.
+     */
+    @Override
+    public void run() {
+        validateOptions();
+        commonToAll.validateOptions();
+        commonToAll.setLoggingScope();
+        renderParams.apply();
+        System.setProperty("java.awt.headless", "true");
+
+        commonFileParams.parseConcurrently(null);
+        Dgsea dgsea = new Dgsea(new PathwayDatabase("pathways", commonFileParams.getPathways(), commonFileParams.getPathwayGenes()));
+        String contrast = commonFileParams.getDegsFile().getName().replaceFirst("\\.[^.]*$", "");
+        try {
+            ContrastAnalysis contrastAnalysis = new ContrastAnalysis(dgsea,
+                    new ContrastAnalysis.Settings(commonToAll.getPval(), maxNPathways, outputs == null ? null : Set.of(outputs), html),
+                    new ContrastAnalysis.ChartOptions(title, CommonChartParams.toColors(colorManual, logger), dotSize, dotTransparency, pathwayIds),
+                    DgseaExecutors.io());
+            contrastAnalysis.run(contrast, commonFileParams.getDegs(), outputDir.toPath());
+            logger.info("Report written to: {}", outputDir);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.fatal(e.getMessage());
+        }
+    }
+
+    /**
+     * validates if this.maxNPathways is at least 1, this.dotSize is positive and this.dotTransparency is between 0.0 and 1.0
+     * @throws CommandLine.ParameterException if any validation fails
+     */
+    private void validateOptions() {
+        if (maxNPathways <= 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Max number pathways option(--max-n-pathway) must be at least 1, given: " + maxNPathways);
+        }
+        if (dotSize < 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Dot size --dot-size must be a positive number");
+        }
+        if (dotTransparency < 0.0 || dotTransparency > 1.0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Dot transparency --dot-transparency must be between 0.0 and 1.0");
+        }
+    }
+}
+
+/**
+ * First-layer (CLI) sub-command for generating a gene-level volcano plot of all DEGs.
+ * Genes are colored by membership of the given pathways, or of the pathways with the most significant DEGs.
+ */
+@Command(name = "volcano_plot", version = "Volcano plot 1.0", mixinStandardHelpOptions = true,
+        description = "Generates a volcano plot of all DEGs: log-fold-change against -log10 adjusted p-value, colored by pathway membership.")
+class VolcanoPlotCmd implements Runnable {
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+    private final Logger logger = LogManager.getLogger(VolcanoPlotCmd.class);
+
+    @Mixin
+    private CommonToAll commonToAll;
+    @Mixin
+    private RenderParams renderParams;
+    @Mixin
+    private CommonFileParams commonFileParams;
+    @Mixin
+    private CommonChartParams commonChartParams;
+
+    @Option(names = {"--pathway-ids", "-p-ids", "-P-IDS"}, paramLabel = "hsa123", arity = "0..*", split = ",",
+            description = "Pathway ids to color genes of, default: the --max-n-pathways pathways with most significant DEGs")
+    private String[] pathwayIds;
+    @Mixin
+    private CacheParams cacheParams;
+
+    /**
+     * Executes the command to generate and save the volcano plot.
+     */
+    @Override
+    public void run() {
+        validateOptions();
+        commonToAll.validateOptions();
+        commonChartParams.validateOptions();
+        cacheParams.validateOptions();
+        commonToAll.setLoggingScope();
+        renderParams.apply();
+        cacheParams.runCached(commonFileParams.getInputFiles(), List.of(commonChartParams.getOutputPath().toPath()), this::saveVolcanoPlot);
+    }
+
+    /**
+     * Colors the given pathways, or selects the pathways with the most significant DEGs, and saves the volcano plot.
+     */
+    private void saveVolcanoPlot() {
+        boolean pathwaysGiven = pathwayIds != null && pathwayIds.length != 0;
+        Set<String> pathwayIdSet = pathwaysGiven ? new HashSet<>(Arrays.asList(pathwayIds)) : null;
+        commonFileParams.parseConcurrently(pathwayIdSet);
+        List<Deg> degs = commonFileParams.getDegs();
+        List<PathwayGene> pathwayGenes = commonFileParams.getPathwayGenes(pathwayIdSet);
+        String[] coloredPathwayIds = pathwaysGiven ? pathwayIds
+                : VolcanoPlot.mostSignificantPathways(degs, pathwayGenes, commonToAll.getPval(), commonChartParams.getMaxNPathways());
+        try {
+            new VolcanoPlot.Builder(degs, PathwayIndex.of(commonFileParams.getPathways()), pathwayGenes, commonChartParams.getOutputPath())
+                    .title(commonChartParams.getTitle())
+                    .xAxis(commonChartParams.getxAxisTitle())
+                    .yAxis(commonChartParams.getyAxisTitle())
+                    .colorManual(commonChartParams.getColorManualAsColors())
+                    .imageFormat(commonChartParams.getImageFormat())
+                    .pathwayIds(coloredPathwayIds)
+                    .pvalThreshold(commonToAll.getPval())
+                    .build()
+                    .saveChart();
+        } catch (IOException e) {
+            logger.error("Failed to save volcano plot to: {}, because: {}", commonChartParams.getOutputPath(), e.getMessage());
+        }
+    }
+
+    /**
+     * validates that no pathway-id in this.pathwayIds is empty, and that at most 254 are given.
+     * @throws CommandLine.ParameterException if any validation fails
+     */
+    private void validateOptions() {
+        if (pathwayIds == null) return;
+        if (Arrays.stream(pathwayIds).anyMatch(String::isEmpty)) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Not any pathway-id in option --pathway-ids can be empty, given pathway-ids: " + Arrays.toString(pathwayIds));
+        }
+        if (pathwayIds.length > 254) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "At most 254 pathway-ids(--pathway-ids) can be colored. Given: " + pathwayIds.length);
+        }
+    }
+}
+
+/**
+ * First-layer (CLI) sub-command for generating a heatmap of the log-fold-change of every DEG per pathway.
+ * Rows are the given pathways, or those with the highest percentage average log-fold-change.
+ */
+@Command(name = "lfc_heatmap", version = "Log-fold-change heatmap 1.0", mixinStandardHelpOptions = true,
+        description = "Generates a heatmap of the log-fold-change of every DEG in the top pathways, genes clustered by pathway.")
+class LfcHeatmapCmd implements Runnable {
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+    private final Logger logger = LogManager.getLogger(LfcHeatmapCmd.class);
+
+    @Mixin
+    private CommonToAll commonToAll;
+    @Mixin
+    private RenderParams renderParams;
+    @Mixin
+    private CommonFileParams commonFileParams;
+    @Mixin
+    private CommonChartParams commonChartParams;
+
+    @Option(names = {"--pathway-ids", "-p-ids", "-P-IDS"}, paramLabel = "hsa123", arity = "0..*", split = ",",
+            description = "Pathway ids of the rows, default: the --max-n-pathways pathways with highest percentage average log-fold-change")
+    private String[] pathwayIds;
+    @Mixin
+    private CacheParams cacheParams;
+
+    /**
+     * Executes the command to generate and save the heatmap.
+     * Colors from --color-manual are used for negative and positive log-fold-change, if at least 2 are given.
+     */
+    @Override
+    public void run() {
+        validateOptions();
+        commonToAll.validateOptions();
+        commonChartParams.validateOptions();
+        cacheParams.validateOptions();
+        commonToAll.setLoggingScope();
+        renderParams.apply();
+        cacheParams.runCached(commonFileParams.getInputFiles(), List.of(commonChartParams.getOutputPath().toPath()), this::saveHeatmap);
+    }
+
+    /**
+     * Calculates the log-fold-change matrix of the pathways and saves the heatmap.
+     */
+    private void saveHeatmap() {
+        Set<String> pathwayIdSet = pathwayIds != null && pathwayIds.length != 0 ? new HashSet<>(Arrays.asList(pathwayIds)) : null;
+        commonFileParams.parseConcurrently(pathwayIdSet);
+        List<PathwayGene> pathwayGenes = commonFileParams.getPathwayGenes(pathwayIdSet);
+        try {
+            new LfcHeatmap.Builder(commonFileParams.getDegs(), PathwayIndex.of(commonFileParams.getPathways()), pathwayGenes, commonChartParams.getOutputPath())
+                    .title(commonChartParams.getTitle())
+                    .colorManual(commonChartParams.getColorManualAsColors())
+                    .imageFormat(commonChartParams.getImageFormat())
+                    .pathwayIds(pathwayIds)
+                    .maxNPathways(commonChartParams.getMaxNPathways())
+                    .build()
+                    .saveChart();
+        } catch (IOException e) {
+            logger.error("Failed to save heatmap to: {}, because: {}", commonChartParams.getOutputPath(), e.getMessage());
+        } catch (IllegalArgumentException e) {
+            logger.fatal(e.getMessage());
+        }
+    }
+
+    /**
+     * validates that no pathway-id in this.pathwayIds is empty.
+     * @throws CommandLine.ParameterException if any validation fails
+     */
+    private void validateOptions() {
+        if (pathwayIds != null && Arrays.stream(pathwayIds).anyMatch(String::isEmpty)) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Not any pathway-id in option --pathway-ids can be empty, given pathway-ids: " + Arrays.toString(pathwayIds));
+        }
+    }
+}
+
+/**
+ * First-layer (CLI) sub-command for writing a seeded synthetic dataset of any size, for scale and soak tests.
+ */
+@Command(name = "generate", version = "Generate 1.0", mixinStandardHelpOptions = true,
+        description = "Writes a synthetic DEG file, pathway descriptions file and pathway-genes file (degs.csv, hsa_pathways.csv, pathways.csv) to a directory.")
+class GenerateCmd implements Runnable {
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+    private final Logger logger = LogManager.getLogger(GenerateCmd.class);
+
+    @Mixin
+    private CommonToAll commonToAll;
+
+    @CommandLine.Parameters(index = "0", paramLabel = "<outputDirectory>",
+            description = "Directory to write the files to, created if needed.")
+    private Path outputDirectory;
+
+    @Option(names = {"--seed"}, description = "Seed of the random generator, default = ${DEFAULT-VALUE}", defaultValue = "42")
+    private long seed;
+    @Option(names = {"--genes"}, paramLabel = "1-inf",
+            description = "Number of genes in the gene universe, default = ${DEFAULT-VALUE}", defaultValue = "20000")
+    private int geneCount;
+    @Option(names = {"--pathways"}, paramLabel = "1-inf",
+            description = "Number of pathways, default = ${DEFAULT-VALUE}", defaultValue = "350")
+    private int pathwayCount;
+    @Option(names = {"--rows"}, paramLabel = "1-inf",
+            description = "Number of rows of the pathway-genes file, instead of a number of pathways")
+    private Long pathwayGeneRows;
+    @Option(names = {"--min-pathway-size"}, paramLabel = "1-inf",
+            description = "Minimum number of genes of a pathway, default = ${DEFAULT-VALUE}", defaultValue = "10")
+    private int minPathwaySize;
+    @Option(names = {"--max-pathway-size"}, paramLabel = "1-inf",
+            description = "Maximum number of genes of a pathway, default = ${DEFAULT-VALUE}", defaultValue = "1500")
+    private int maxPathwaySize;
+    @Option(names = {"--size-exponent"}, paramLabel = "(1.0-inf]",
+            description = "Exponent of the power law of pathway sizes, higher gives fewer large pathways, default = ${DEFAULT-VALUE}", defaultValue = "2.0")
+    private double sizeExponent;
+    @Option(names = {"--overlap"}, paramLabel = "[0.0-1.0]",
+            description = "Chance that a pathway gene is drawn from the shared hub genes, default = ${DEFAULT-VALUE}", defaultValue = "0.3")
+    private double overlap;
+    @Option(names = {"--deg-fraction"}, paramLabel = "[0.0-1.0]",
+            description = "Fraction of the gene universe in the DEG file, default = ${DEFAULT-VALUE}", defaultValue = "0.2")
+    private double degFraction;
+    @Option(names = {"--significant-fraction"}, paramLabel = "[0.0-1.0]",
+            description = "Fraction of the DEGs with adjusted p-value below 0.01, default = ${DEFAULT-VALUE}", defaultValue = "0.3")
+    private double significantFraction;
+
+    /**
+     * Builds the dataset and writes its files, logging the throughput.
+     */
+    @Override
+    public void run() {
+        commonToAll.validateOptions();
+        commonToAll.setLoggingScope();
+        SyntheticDataset dataset = buildDataset();
+        long start = System.nanoTime();
+        try {
+            long bytes = dataset.write(outputDirectory);
+            double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+            logger.info("Wrote {} DEGs, {} pathways and {} pathway-gene rows ({} MB) to {} in {} s, {} MB/s",
+                    dataset.getDegCount(), dataset.getPathwayCount(), dataset.getPathwayGeneRows(),
+                    "%.1f".formatted(bytes / 1e6), outputDirectory, "%.2f".formatted(seconds), "%.1f".formatted(bytes / 1e6 / seconds));
+        } catch (IOException e) {
+            logger.error("Failed to write the dataset to: {}, because: {}", outputDirectory, e.getMessage());
+        }
+    }
+
+    /**
+     * @return the dataset of the options
+     * @throws CommandLine.ParameterException if any option is out of range
+     */
+    private SyntheticDataset buildDataset() {
+        if (pathwayGeneRows != null && pathwayGeneRows <= 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Rows option(--rows) must be at least 1, given: " + pathwayGeneRows);
+        }
+        try {
+            SyntheticDataset.Builder builder = new SyntheticDataset.Builder()
+                    .seed(seed)
+                    .geneCount(geneCount)
+                    .pathwayCount(pathwayCount)
+                    .minPathwaySize(minPathwaySize)
+                    .maxPathwaySize(maxPathwaySize)
+                    .sizeExponent(sizeExponent)
+                    .overlap(overlap)
+                    .degFraction(degFraction)
+                    .significantFraction(significantFraction);
+            if (pathwayGeneRows != null) builder.pathwayGeneRows(pathwayGeneRows);
+            return builder.build();
+        } catch (IllegalArgumentException e) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Generate: " + e.getMessage());
+        }
+    }
+}
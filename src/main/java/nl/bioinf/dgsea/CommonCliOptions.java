@@ -5,10 +5,15 @@
  */
 package nl.bioinf.dgsea;
 
+import nl.bioinf.dgsea.cache.CacheKey;
+import nl.bioinf.dgsea.cache.OutputCache;
 import nl.bioinf.dgsea.data_processing.Deg;
 import nl.bioinf.dgsea.data_processing.FileParseUtils;
 import nl.bioinf.dgsea.data_processing.Pathway;
 import nl.bioinf.dgsea.data_processing.PathwayGene;
+import nl.bioinf.dgsea.data_processing.Shard;
+import nl.bioinf.dgsea.visualisations.ChartRenderService;
+import nl.bioinf.dgsea.visualisations.PngEncoder;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -21,10 +26,15 @@ import picocli.CommandLine.Parameters;
 
 import java.awt.*;
 import java.io.File;
-import java.lang.reflect.Field;
-import java.util.Arrays;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Dummy class to satisfy the application's structure.
@@ -61,20 +71,24 @@ class CommonToAll {
     /**
      * Sets the logging scope based on the verbosity option provided.
      * Adjusts the log level according to the verbosity array.
+     * Loggers are only updated if the level changes, as that revisits every logger of the context.
      */
     public void setLoggingScope() {
         LoggerContext ctx = (LoggerContext) LogManager.getContext(false);
         Configuration config = ctx.getConfiguration();
         LoggerConfig loggerConfig = config.getLoggerConfig(LogManager.ROOT_LOGGER_NAME);
+        Level level;
         if (verbose.length == 1) {
-            loggerConfig.setLevel(Level.ERROR);
+            level = Level.ERROR;
         } else if (verbose.length == 2) {
-            loggerConfig.setLevel(Level.WARN);
+            level = Level.WARN;
         } else if (verbose.length == 3) {
-            loggerConfig.setLevel(Level.INFO);
+            level = Level.INFO;
         } else {
-            loggerConfig.setLevel(Level.DEBUG);
+            level = Level.DEBUG;
         }
+        if (loggerConfig.getLevel() == level) return;
+        loggerConfig.setLevel(level);
         ctx.updateLoggers();
     }
 
@@ -104,6 +118,10 @@ class CommonToAll {
 class CommonFileParams {
     private final FileParseUtils fileParseUtils = new FileParseUtils();
     private final Logger logger = LogManager.getLogger(CommonFileParams.class);
+    private CompletableFuture<List<Deg>> degs;
+    private CompletableFuture<List<Pathway>> pathways;
+    private CompletableFuture<List<PathwayGene>> pathwayGenes;
+    private Set<String> parsedPathwayIds;
 
     @Parameters(
             index = "0",
@@ -122,19 +140,45 @@ class CommonFileParams {
             description = "Input pathway + genes file, columns: pathway ID, Entrez gene ID, gene symbol, and Ensembl gene ID.")
     private File inputFilePathwayGenes;
 
+    /**
+     * Parses a file, throwing any parse error.
+     */
+    @FunctionalInterface
+    private interface Parser<T> {
+        T parse() throws IOException;
+    }
+
+    /**
+     * Starts parsing the three input files concurrently on {@link DgseaExecutors#io()}, the getters then wait for
+     * these instead of parsing the files themselves. Call after any cache lookup, so hits parse nothing.
+     *
+     * @param pathwayIds pathway-ids of which to parse the pathway genes, all pathway genes if null or empty
+     */
+    public void parseConcurrently(Set<String> pathwayIds) {
+        parsedPathwayIds = pathwayIds == null || pathwayIds.isEmpty() ? null : pathwayIds;
+        degs = parseAsync(() -> fileParseUtils.parseDegsFile(inputFileDegs));
+        pathways = parseAsync(() -> fileParseUtils.parsePathwayFile(inputFilePathwayDescriptions));
+        pathwayGenes = parseAsync(() -> fileParseUtils.parsePathwayGeneFile(inputFilePathwayGenes, parsedPathwayIds));
+    }
+
     /**
      * Parses and retrieves a list of differentially expressed genes (DEGs).
      *
      * @return List of DEGs.
      */
     public List<Deg> getDegs() {
-        try {
-            return fileParseUtils.parseDegsFile(inputFileDegs);
-        } catch (Exception e) {
-            logger.fatal(e.getMessage());
-            System.exit(-1);
-            return null;
-        }
+        return degs != null ? join(degs) : parse(() -> fileParseUtils.parseDegsFile(inputFileDegs));
+    }
+
+    public File getDegsFile() {
+        return inputFileDegs;
+    }
+
+    /**
+     * @return the DEGs, pathway descriptions and pathway-genes files
+     */
+    public List<File> getInputFiles() {
+        return List.of(inputFileDegs, inputFilePathwayDescriptions, inputFilePathwayGenes);
     }
 
     /**
@@ -143,13 +187,7 @@ class CommonFileParams {
      * @return List of pathways.
      */
     public List<Pathway> getPathways() {
-        try {
-            return fileParseUtils.parsePathwayFile(inputFilePathwayDescriptions);
-        } catch (Exception e) {
-            logger.fatal(e.getMessage());
-            System.exit(-1);
-            return null;
-        }
+        return pathways != null ? join(pathways) : parse(() -> fileParseUtils.parsePathwayFile(inputFilePathwayDescriptions));
     }
 
     /**
@@ -158,8 +196,51 @@ class CommonFileParams {
      * @return List of pathway genes.
      */
     public List<PathwayGene> getPathwayGenes() {
+        return getPathwayGenes(null);
+    }
+
+    /**
+     * Parses and retrieves the pathway genes of the given pathways only from the input file.
+     *
+     * @param pathwayIds pathway-ids to keep, all pathway genes are returned if null or empty
+     * @return List of pathway genes belonging to the given pathways.
+     */
+    public List<PathwayGene> getPathwayGenes(Set<String> pathwayIds) {
+        Set<String> ids = pathwayIds == null || pathwayIds.isEmpty() ? null : pathwayIds;
+        if (pathwayGenes != null && Objects.equals(ids, parsedPathwayIds)) return join(pathwayGenes);
+        return parse(() -> fileParseUtils.parsePathwayGeneFile(inputFilePathwayGenes, ids));
+    }
+
+    private <T> CompletableFuture<T> parseAsync(Parser<T> parser) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return parser.parse();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, DgseaExecutors.io());
+    }
+
+    /**
+     * Waits for a file parsed by {@link #parseConcurrently(Set)}, exiting if it could not be parsed.
+     */
+    private <T> T join(CompletableFuture<T> parsing) {
+        try {
+            return parsing.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause() instanceof UncheckedIOException io ? io.getCause() : e.getCause();
+            logger.fatal(cause.getMessage());
+            System.exit(-1);
+            return null;
+        }
+    }
+
+    /**
+     * Parses a file on the calling thread, exiting if it could not be parsed.
+     */
+    private <T> T parse(Parser<T> parser) {
         try {
-            return fileParseUtils.parsePathwayGeneFile(inputFilePathwayGenes);
+            return parser.parse();
         } catch (Exception e) {
             logger.fatal(e.getMessage());
             System.exit(-1);
@@ -195,7 +276,7 @@ class CommonChartParams {
     private String yAxisTitle;
 
     @Option(names = {"--image-format", "-if"},
-            paramLabel = "png|jpg",
+            paramLabel = "png|jpg|svg",
             description = "Image format of the output image, default = '${DEFAULT-VALUE}'",
             defaultValue = "png")
     private String imageFormat;
@@ -212,6 +293,24 @@ class CommonChartParams {
     Options: red,green,blue,for more see: https://docs.oracle.com/javase/6/docs/java/awt/Color.html, 000000-FFFFFF, #000000-#FFFFFF, 0x000000-0xFFFFFF""")
     private String[] colorManual;
 
+    /**
+     * The java.awt.Color constants by field name, looked up without reflection.
+     */
+    private static final Map<String, Color> COLOR_NAMES = Map.ofEntries(
+            Map.entry("white", Color.white), Map.entry("WHITE", Color.WHITE),
+            Map.entry("lightGray", Color.lightGray), Map.entry("LIGHT_GRAY", Color.LIGHT_GRAY),
+            Map.entry("gray", Color.gray), Map.entry("GRAY", Color.GRAY),
+            Map.entry("darkGray", Color.darkGray), Map.entry("DARK_GRAY", Color.DARK_GRAY),
+            Map.entry("black", Color.black), Map.entry("BLACK", Color.BLACK),
+            Map.entry("red", Color.red), Map.entry("RED", Color.RED),
+            Map.entry("pink", Color.pink), Map.entry("PINK", Color.PINK),
+            Map.entry("orange", Color.orange), Map.entry("ORANGE", Color.ORANGE),
+            Map.entry("yellow", Color.yellow), Map.entry("YELLOW", Color.YELLOW),
+            Map.entry("green", Color.green), Map.entry("GREEN", Color.GREEN),
+            Map.entry("magenta", Color.magenta), Map.entry("MAGENTA", Color.MAGENTA),
+            Map.entry("cyan", Color.cyan), Map.entry("CYAN", Color.CYAN),
+            Map.entry("blue", Color.blue), Map.entry("BLUE", Color.BLUE));
+
     /**
      * Takes user color input(this.colorManual),
      *  translates those colors to Java compatible colors(java.awt.Color) and
@@ -219,17 +318,25 @@ class CommonChartParams {
      * @return all translated colors, non-translatable are ignored
      */
     public Color[] getColorManualAsColors() {
+        return toColors(colorManual, logger);
+    }
+
+    /**
+     * Translates user color input to Java compatible colors(java.awt.Color) and logs any non-translatable colors
+     * @param colorManual colors as hexadecimal or java.awt.Color field name, may be null
+     * @param logger logger to log non-translatable colors to
+     * @return all translated colors, non-translatable are ignored
+     */
+    static Color[] toColors(String[] colorManual, Logger logger) {
         if (colorManual == null) return new Color[0];
         Color[] colorManualAsColors = new Color[colorManual.length];
         for (int i = 0; i < colorManual.length; i++) {
             try {
                 colorManualAsColors[i] = Color.decode(colorManual[i]);
             } catch (Exception _) {
-                try {
-                    Field field = Class.forName("java.awt.Color").getField(colorManual[i % colorManual.length]);
-                    colorManualAsColors[i] = (Color) field.get(null);
-                } catch (Exception _) {
-                    logger.error("Given color was neither hexadecimal, nor a valid Java color string. Given color: {}", colorManual[i % colorManual.length]);
+                colorManualAsColors[i] = COLOR_NAMES.get(colorManual[i]);
+                if (colorManualAsColors[i] == null) {
+                    logger.error("Given color was neither hexadecimal, nor a valid Java color string. Given color: {}", colorManual[i]);
                 }
             }
         }
@@ -237,13 +344,13 @@ class CommonChartParams {
     }
 
     /**
-     * validates if this.imageFormat is either 'png' or 'jpg'.
+     * validates if this.imageFormat is either 'png', 'jpg' or 'svg'.
      * validates if this.maxNPathways is 0 or higher.
      * @throws CommandLine.ParameterException if any validation fails
      */
     public void validateOptions() {
-        if (!(Objects.equals(imageFormat, "png") || Objects.equals(imageFormat, "jpg"))) {
-            throw new CommandLine.ParameterException(spec.commandLine(), "Invalid image format option. Use '--image-format png or '--image-format jpg'.");
+        if (!(Objects.equals(imageFormat, "png") || Objects.equals(imageFormat, "jpg") || Objects.equals(imageFormat, "svg"))) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Invalid image format option. Use '--image-format png', '--image-format jpg' or '--image-format svg'.");
         }
         if (maxNPathways <= 0) {
             throw new CommandLine.ParameterException(spec.commandLine(), "Max number pathways option(--max-n-pathway) cannot be negative.");
@@ -279,3 +386,191 @@ class CommonChartParams {
         return maxNPathways;
     }
 }
+
+/**
+ * Options for computing only one shard of the pathways, so an analysis can be split over nodes.
+ * The shard files are combined by the merge sub-command.
+ */
+class ShardParams {
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+
+    @Option(names = {"--shard"}, paramLabel = "i/N",
+            description = "Only calculate the enrichment of shard i of N and write the raw results to --shard-output, instead of the chart")
+    private String shard;
+
+    @Option(names = {"--shard-output"}, paramLabel = "FILE",
+            description = "Output file of the shard's raw results, default = enrichment_shard_<i>_of_<N>.csv")
+    private String shardOutput;
+
+    /**
+     * validates if this.shard is formatted as i/N with 1 <= i <= N.
+     * @throws CommandLine.ParameterException if any validation fails
+     */
+    public void validateOptions() {
+        if (shard == null) return;
+        try {
+            Shard.parse(shard);
+        } catch (IllegalArgumentException e) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Shard(--shard): " + e.getMessage());
+        }
+    }
+
+    public boolean isSharded() {
+        return shard != null;
+    }
+
+    public Shard getShard() {
+        return shard == null ? null : Shard.parse(shard);
+    }
+
+    public String getShardOutput() {
+        if (shardOutput != null) return shardOutput;
+        Shard parsed = getShard();
+        return "enrichment_shard_" + parsed.index() + "_of_" + parsed.count() + ".csv";
+    }
+}
+
+/**
+ * Options on how charts are encoded, shared by all sub-commands writing charts.
+ */
+class RenderParams {
+    @Option(names = {"--png-compression"}, paramLabel = "STORE|FAST|DEFAULT|BEST",
+            description = "PNG compression, from fastest (STORE, uncompressed) to smallest (BEST). Large charts are compressed in parallel. Default: as before")
+    private PngEncoder.Compression pngCompression;
+
+    /**
+     * Applies the options to all charts written by this run.
+     */
+    public void apply() {
+        ChartRenderService.setPngCompression(pngCompression);
+    }
+}
+
+/**
+ * Options of the output cache, shared by all sub-commands writing outputs from input files.
+ * A run with the same input file contents and the same effective options as an earlier run restores that run's outputs.
+ */
+class CacheParams {
+    private static final Set<String> NOT_AFFECTING_OUTPUTS = Set.of("-verbosity");
+    private final Logger logger = LogManager.getLogger(CacheParams.class);
+    @CommandLine.Spec
+    private CommandLine.Model.CommandSpec spec;
+    @CommandLine.Spec(CommandLine.Spec.Target.MIXEE)
+    private CommandLine.Model.CommandSpec mixee;
+
+    @Option(names = {"--no-cache"},
+            description = "Always compute and render, without reusing or caching the outputs of earlier runs with the same inputs and options")
+    private boolean noCache;
+
+    @Option(names = {"--cache-dir"}, paramLabel = "DIR",
+            description = "Directory of the output cache, default = $XDG_CACHE_HOME/dgsea or ~/.cache/dgsea")
+    private File cacheDir;
+
+    @Option(names = {"--cache-max-size"}, paramLabel = "MB",
+            description = "Max total size of the output cache in megabytes, least recently used outputs are evicted. Default = ${DEFAULT-VALUE}",
+            defaultValue = "512")
+    private long cacheMaxSize;
+
+    @Option(names = {"--cache-link"},
+            description = "Restore cached outputs as hard links instead of copies")
+    private boolean cacheLink;
+
+    /**
+     * validates that this.cacheMaxSize is positive.
+     * @throws CommandLine.ParameterException if any validation fails
+     */
+    public void validateOptions() {
+        if (cacheMaxSize <= 0) {
+            throw new CommandLine.ParameterException(spec.commandLine(), "Cache size(--cache-max-size) must be a positive number of megabytes. Given: " + cacheMaxSize);
+        }
+    }
+
+    /**
+     * Restores the outputs from the cache if an earlier run had the same input file contents and effective options,
+     * otherwise runs and caches the outputs it wrote. Cache failures are logged and never fail the run.
+     * @param inputs input files, keyed by content
+     * @param outputs files the run writes, all of them are cached
+     * @param run run writing the outputs, expected to log its own errors
+     */
+    public void runCached(List<File> inputs, List<Path> outputs, Runnable run) {
+        try {
+            OutputCache.detach(outputs);
+        } catch (IOException e) {
+            logger.warn("Cannot replace linked output: {}", e.getMessage());
+        }
+        if (noCache) {
+            run.run();
+            return;
+        }
+        OutputCache cache = new OutputCache(cacheDir != null ? cacheDir.toPath() : OutputCache.defaultDirectory(),
+                cacheMaxSize * 1024 * 1024, cacheLink ? OutputCache.RestoreMode.LINK : OutputCache.RestoreMode.COPY);
+        String key;
+        try {
+            key = key(inputs);
+            if (cache.restore(key, outputs)) {
+                logger.info("Inputs and options unchanged, restored {} from cache entry {}", outputs, key);
+                return;
+            }
+        } catch (IOException e) {
+            logger.warn("Output cache not used: {}", e.getMessage());
+            run.run();
+            return;
+        }
+
+        List<FileTime> modifiedBefore = lastModifiedTimes(outputs);
+        run.run();
+        List<FileTime> modifiedAfter = lastModifiedTimes(outputs);
+        for (int i = 0; i < outputs.size(); i++) {
+            if (modifiedAfter.get(i) == null || modifiedAfter.get(i).equals(modifiedBefore.get(i))) {
+                logger.debug("Output {} was not written, not caching this run", outputs.get(i));
+                return;
+            }
+        }
+        try {
+            cache.store(key, outputs);
+        } catch (IOException e) {
+            logger.warn("Outputs could not be cached: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Keys the run by the command, the contents of the inputs and the values of all other options and parameters,
+     * including defaults, except those of this cache and others not affecting the outputs. The global options inherited
+     * from the main command, like --threads and --profile, only change how a run is executed, so are left out as well.
+     */
+    private String key(List<File> inputs) throws IOException {
+        Set<String> cacheOptions = new HashSet<>();
+        spec.options().forEach(option -> cacheOptions.add(option.longestName()));
+        CacheKey key = new CacheKey(mixee.qualifiedName());
+        for (CommandLine.Model.ArgSpec arg : mixee.args()) {
+            String name;
+            if (arg instanceof CommandLine.Model.OptionSpec option) {
+                if (option.usageHelp() || option.versionHelp() || option.inherited() || cacheOptions.contains(option.longestName())
+                        || NOT_AFFECTING_OUTPUTS.contains(option.longestName())) continue;
+                name = option.longestName();
+            } else {
+                name = "parameter " + ((CommandLine.Model.PositionalParamSpec) arg).index();
+            }
+            Object value = arg.getValue();
+            if (value instanceof File file && inputs.contains(file)) continue; // keyed by content below
+            key.option(name, value);
+        }
+        for (File input : inputs) {
+            key.file(input.toPath());
+        }
+        return key.toHex();
+    }
+
+    private static List<FileTime> lastModifiedTimes(List<Path> files) {
+        List<FileTime> times = new ArrayList<>(files.size());
+        for (Path file : files) {
+            try {
+                times.add(Files.getLastModifiedTime(file));
+            } catch (IOException _) {
+                times.add(null);
+            }
+        }
+        return times;
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Embeddable Java API of the DGSEA application, for running many analyses in one JVM.
+ */
+package nl.bioinf.dgsea;
+
+import nl.bioinf.dgsea.data_processing.*;
+import nl.bioinf.dgsea.table_outputs.EnrichmentTable;
+import nl.bioinf.dgsea.table_outputs.TwoByTwoContingencyTable;
+import nl.bioinf.dgsea.visualisations.EnrichmentBarChart;
+import nl.bioinf.dgsea.visualisations.EnrichmentDotPlot;
+import nl.bioinf.dgsea.visualisations.PercLfcBarChart;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Facade over the analyses of the sub-commands, bound to one loaded pathway database. <br>
+ * Unlike the sub-commands it never exits the JVM: unreadable input gives an IOException and invalid data or options
+ * give an IllegalArgumentException. Instances hold no mutable state, so one instance can be shared between threads
+ * to analyse any number of DEG lists (contrasts) concurrently against the same database.
+ */
+public final class Dgsea {
+    private final PathwayDatabase database;
+    private final String pathwayWithoutGenes;
+
+    /**
+     * Creates a facade for analyses against the given database.
+     * @param database loaded pathway database
+     */
+    public Dgsea(PathwayDatabase database) {
+        this.database = Objects.requireNonNull(database, "database cannot be null");
+        this.pathwayWithoutGenes = findPathwayWithoutGenes(database);
+    }
+
+    /**
+     * Loads a pathway database from a pathway descriptions file and a pathway-gene file.
+     * @param name name of the database
+     * @param pathwayDescriptions file with pathway-id, description columns
+     * @param pathwayGenes file with pathway-id, Entrez gene ID, gene symbol, Ensembl gene ID columns
+     * @return facade for analyses against the loaded database
+     * @throws IOException if either file cannot be read or has an invalid format
+     * @throws IllegalArgumentException if a numerical value cannot be parsed
+     */
+    public static Dgsea load(String name, Path pathwayDescriptions, Path pathwayGenes) throws IOException {
+        return new Dgsea(PathwayDatabase.load(name, pathwayDescriptions.toFile(), pathwayGenes.toFile()));
+    }
+
+    /**
+     * Loads a pathway database from streamed pathway descriptions and pathway-gene lines. The readers are not closed.
+     * @param name name of the database
+     * @param pathwayDescriptions reader giving lines with pathway-id, description columns
+     * @param pathwayGenes reader giving lines with pathway-id, Entrez gene ID, gene symbol, Ensembl gene ID columns
+     * @return facade for analyses against the loaded database
+     * @throws IOException if reading fails or the lines have an invalid format
+     * @throws IllegalArgumentException if a numerical value cannot be parsed
+     */
+    public static Dgsea load(String name, Reader pathwayDescriptions, Reader pathwayGenes) throws IOException {
+        FileParseUtils fileParseUtils = new FileParseUtils();
+        return new Dgsea(new PathwayDatabase(name,
+                fileParseUtils.parsePathways(toBuffered(pathwayDescriptions)),
+                fileParseUtils.parsePathwayGenes(toBuffered(pathwayGenes), null)));
+    }
+
+    /**
+     * Reads a DEG file.
+     * @param degsFile file with gene symbol, log-fold change, adjusted p-value columns
+     * @return DEGs in file order
+     * @throws IOException if the file cannot be read or has an invalid format
+     * @throws IllegalArgumentException if a numerical value cannot be parsed
+     */
+    public static List<Deg> readDegs(Path degsFile) throws IOException {
+        return new FileParseUtils().parseDegsFile(degsFile.toFile());
+    }
+
+    /**
+     * Reads streamed DEG lines. The reader is not closed.
+     * @param degs reader giving lines with gene symbol, log-fold change, adjusted p-value columns
+     * @return DEGs in stream order
+     * @throws IOException if reading fails or the lines have an invalid format
+     * @throws IllegalArgumentException if a numerical value cannot be parsed
+     */
+    public static List<Deg> readDegs(Reader degs) throws IOException {
+        return new FileParseUtils().parseDegs(toBuffered(degs));
+    }
+
+    /**
+     * @return the pathway database analyses are run against
+     */
+    public PathwayDatabase getDatabase() {
+        return database;
+    }
+
+    /**
+     * Counts DEGs on presence in every pathway against significance, like sub-command con_table.
+     * @param degs DEGs to count
+     * @param pval threshold on adjusted p-value for a DEG to be significant, between 0.0 and 1.0
+     * @return counts per pathway, in order of the database
+     * @throws IllegalArgumentException if pval is out of range or a pathway has no pathway genes
+     */
+    public List<ContingencyCounts> contingencyCounts(List<Deg> degs, double pval) {
+        return newContingencyTable(degs, pval).getCounts();
+    }
+
+    /**
+     * Assembles the contingency table text of sub-command con_table.
+     * @param degs DEGs to count
+     * @param pval threshold on adjusted p-value for a DEG to be significant, between 0.0 and 1.0
+     * @return contingency tables of every pathway, in order of the database
+     * @throws IllegalArgumentException if pval is out of range or a pathway has no pathway genes
+     */
+    public String contingencyTable(List<Deg> degs, double pval) {
+        return newContingencyTable(degs, pval).getTable();
+    }
+
+    /**
+     * Calculates enrichment for every pathway.
+     * @param degs DEGs to calculate enrichment for
+     * @return enrichment results, in order of the database
+     */
+    public List<EnrichmentResult> enrichment(List<Deg> degs) {
+        try {
+            return enrichment(degs, Writer.nullWriter());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // a null writer never fails
+        }
+    }
+
+    /**
+     * Calculates enrichment for every pathway and writes the results as CSV, like the enrichment charts' output.csv.
+     * @param degs DEGs to calculate enrichment for
+     * @param csv writer to write the CSV to, left open
+     * @return enrichment results, in order of the database
+     * @throws IOException if writing the CSV fails
+     */
+    public List<EnrichmentResult> enrichment(List<Deg> degs, Writer csv) throws IOException {
+        Objects.requireNonNull(degs, "degs cannot be null");
+        EnrichmentTable enrichmentTable = new EnrichmentTable(database, degs);
+        enrichmentTable.calculateEnrichment(csv);
+        return List.copyOf(enrichmentTable.getEnrichmentResults());
+    }
+
+    /**
+     * Selects the significant results with the highest enrichment scores, as charted by the enrichment charts.
+     * @param results enrichment results
+     * @param maxNPathways maximum number of results, at least 1
+     * @return selected results, highest enrichment score first
+     * @throws IllegalArgumentException if maxNPathways is below 1
+     */
+    public static List<EnrichmentResult> topResults(List<EnrichmentResult> results, int maxNPathways) {
+        requirePositive(maxNPathways);
+        return EnrichmentAnalysisService.selectTopResults(results, maxNPathways);
+    }
+
+    /**
+     * Calculates the percentage average absolute log-fold-change per pathway, like sub-command perc_lfc_per_pathway_chart.
+     * @param degs DEGs to calculate percentages for
+     * @param pathwayIds pathways to distribute the percentage over, all pathways of the database if null or empty
+     * @param maxNPathways maximum number of pathways to return, at least 1
+     * @return pathway-id, percentage pairs, highest percentage first
+     * @throws IllegalArgumentException if degs is empty, a pathway-id is not in the database or maxNPathways is below 1
+     */
+    public Map<String, Double> percLfc(List<Deg> degs, String[] pathwayIds, int maxNPathways) {
+        requirePositive(maxNPathways);
+        String[] selectedIds = pathwayIds == null || pathwayIds.length == 0 ? getAllPathwayIds() : pathwayIds;
+        PercLfcPathways percLfcPathways = new PercLfcPathways(degs, database.pathwayGenes());
+        Map<String, Double> percentages = percLfcPathways.filterMostInfluentialPathways(
+                maxNPathways, percLfcPathways.percAllPathways(selectedIds), selectedIds);
+        Map<String, Double> sortedPercentages = new LinkedHashMap<>();
+        percentages.entrySet().stream()
+                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
+                .forEach(entry -> sortedPercentages.put(entry.getKey(), entry.getValue()));
+        return sortedPercentages;
+    }
+
+    /**
+     * Writes an enrichment bar chart of the given results as PNG.
+     * @param topResults results to chart, see {@link #topResults(List, int)}
+     * @param title chart title, may be null
+     * @param colorManual bar colors, default colors if null or empty
+     * @param out stream to write the PNG to, left open
+     * @throws IOException if writing fails
+     */
+    public void writeEnrichmentBarChart(List<EnrichmentResult> topResults, String title, Color[] colorManual, OutputStream out) throws IOException {
+        new EnrichmentBarChart(title, topResults, database.pathwayIndex(), colorManual).writeChartAsPNG(out);
+    }
+
+    /**
+     * Writes an enrichment dot chart of the given results as PNG.
+     * @param topResults results to chart, see {@link #topResults(List, int)}
+     * @param title chart title, may be null
+     * @param colorManual dot colors, default colors if null or empty
+     * @param dotSize dot size, positive
+     * @param dotTransparency dot transparency, between 0.0 and 1.0
+     * @param out stream to write the PNG to, left open
+     * @throws IOException if writing fails
+     * @throws IllegalArgumentException if dot size or transparency are out of range
+     */
+    public void writeEnrichmentDotChart(List<EnrichmentResult> topResults, String title, Color[] colorManual,
+                                        double dotSize, float dotTransparency, OutputStream out) throws IOException {
+        new EnrichmentDotPlot(title, topResults, database.pathwayIndex(), colorManual, dotSize, dotTransparency).writeChartAsPNG(out);
+    }
+
+    /**
+     * Writes a bar chart of percentage average log-fold-change per pathway as PNG.
+     * @param degs DEGs to calculate percentages for
+     * @param pathwayIds pathways to distribute the percentage over, all pathways of the database if null or empty
+     * @param maxNPathways maximum number of pathways to chart, at least 1
+     * @param title chart title, may be null
+     * @param xAxisTitle x-axis title, may be null
+     * @param yAxisTitle y-axis title, may be null
+     * @param colorManual bar colors, default colors if null or empty
+     * @param out stream to write the PNG to, left open
+     * @throws IOException if writing fails
+     * @throws IllegalArgumentException if degs is empty, a pathway-id is not in the database or maxNPathways is below 1
+     */
+    public void writePercLfcChart(List<Deg> degs, String[] pathwayIds, int maxNPathways, String title,
+                                  String xAxisTitle, String yAxisTitle, Color[] colorManual, OutputStream out) throws IOException {
+        requirePositive(maxNPathways);
+        new PercLfcBarChart(new PercLfcBarChart.Builder(title, xAxisTitle, yAxisTitle,
+                degs, database.pathways(), database.pathwayGenes(), null)
+                .colorManual(colorManual)
+                .maxNPathways(maxNPathways)
+                .pathwayIds(pathwayIds == null || pathwayIds.length == 0 ? null : pathwayIds.clone()))
+                .writeChart(out);
+    }
+
+    private TwoByTwoContingencyTable newContingencyTable(List<Deg> degs, double pval) {
+        if (pval < 0 || pval > 1) throw new IllegalArgumentException("pval must be between 0.0 and 1.0. Given pval: " + pval);
+        if (pathwayWithoutGenes != null) {
+            throw new IllegalArgumentException("Every pathway-id in the pathway-descriptions of database '%s' needs at least one pathway-gene entry, '%s' has none."
+                    .formatted(database.name(), pathwayWithoutGenes));
+        }
+        try {
+            return new TwoByTwoContingencyTable(degs, database, pval);
+        } catch (IllegalStateException e) {
+            throw new IllegalArgumentException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the first pathway-id of the pathway descriptions without pathway genes, or null if every pathway has genes
+     */
+    private static String findPathwayWithoutGenes(PathwayDatabase database) {
+        for (Pathway pathway : database.pathways()) {
+            if (!database.geneSymbolsByPathway().containsKey(pathway.pathwayId())) return pathway.pathwayId();
+        }
+        return null;
+    }
+
+    private String[] getAllPathwayIds() {
+        return database.pathways().stream().map(Pathway::pathwayId).distinct().toArray(String[]::new);
+    }
+
+    private static void requirePositive(int maxNPathways) {
+        if (maxNPathways <= 0) throw new IllegalArgumentException("maxNPathways must be at least 1. Given: " + maxNPathways);
+    }
+
+    private static BufferedReader toBuffered(Reader reader) {
+        return reader instanceof BufferedReader bufferedReader ? bufferedReader : new BufferedReader(reader);
+    }
+}
@@ -0,0 +1,107 @@
+package nl.bioinf.dgsea;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executors shared by all sub-commands, sized by the global --threads option,
+ * so a run keeps to that many cores, for example the CPU quota of a shared cluster node: <br>
+ * - {@link #compute()}: fork/join pool for CPU-bound work, like the enrichment of many pathways and deflating PNGs <br>
+ * - {@link #io()}: bounded pool for blocking work that also takes CPU, like parsing input files and rendering charts <br>
+ * - {@link #newVirtualThreadExecutor()}: a virtual thread per task, for tasks that mostly wait, like HTTP requests <br>
+ * A thread of {@link #io()} already counts against the threads, so CPU-bound work started on it runs on that thread
+ * instead of on {@link #compute()}, see {@link #parallelism()}. So contrasts analysed concurrently on {@link #io()}
+ * together use at most {@link #threads()} cores. <br>
+ * The pools are created on first use with daemon threads, so they never keep the JVM running.
+ */
+public final class DgseaExecutors {
+    private static final ThreadLocal<Boolean> onIoThread = ThreadLocal.withInitial(() -> false);
+    private static final Set<Thread> computeThreads = ConcurrentHashMap.newKeySet();
+    private static int threads = Runtime.getRuntime().availableProcessors();
+    private static ForkJoinPool compute;
+    private static ExecutorService io;
+
+    private DgseaExecutors() {
+    }
+
+    /**
+     * Sets the number of threads of the pools. Pools created before with another number finish their queued tasks
+     * and are replaced on next use.
+     * @param threads number of threads, at least 1
+     * @throws IllegalArgumentException if threads is less than 1
+     */
+    public static synchronized void setThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be at least 1. Given: " + threads);
+        if (threads == DgseaExecutors.threads) return;
+        DgseaExecutors.threads = threads;
+        if (compute != null) compute.shutdown();
+        if (io != null) io.shutdown();
+        compute = null;
+        io = null;
+    }
+
+    /**
+     * @return number of threads of the pools, by default the number of available processors
+     */
+    public static synchronized int threads() {
+        return threads;
+    }
+
+    /**
+     * @return number of threads CPU-bound work started by the calling thread may use: 1 on a thread of {@link #io()},
+     * which already counts against {@link #threads()}, otherwise {@link #threads()}
+     */
+    public static int parallelism() {
+        return onIoThread.get() ? 1 : threads();
+    }
+
+    /**
+     * @return fork/join pool with a parallelism of {@link #threads()}, for CPU-bound tasks. Do not block in its tasks.
+     */
+    public static synchronized ForkJoinPool compute() {
+        if (compute == null) {
+            compute = new ForkJoinPool(threads, pool -> {
+                ForkJoinWorkerThread worker = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                worker.setName("dgsea-compute-" + worker.getPoolIndex());
+                computeThreads.add(worker);
+                return worker;
+            }, null, false);
+        }
+        return compute;
+    }
+
+    /**
+     * @return ids of the live threads of {@link #compute()}, e.g. to measure the CPU time of work handed to it
+     */
+    public static long[] computeThreadIds() {
+        computeThreads.removeIf(thread -> !thread.isAlive());
+        return computeThreads.stream().mapToLong(Thread::threadId).toArray();
+    }
+
+    /**
+     * @return pool of {@link #threads()} threads, for tasks that block on I/O in between computing. Do not close it.
+     */
+    public static synchronized ExecutorService io() {
+        if (io == null) {
+            ThreadFactory factory = Thread.ofPlatform().name("dgsea-io-", 0).daemon().factory();
+            io = Executors.newFixedThreadPool(threads, task -> factory.newThread(() -> {
+                onIoThread.set(true);
+                task.run();
+            }));
+        }
+        return io;
+    }
+
+    /**
+     * @return new executor starting a virtual thread per task, for tasks that mostly wait; close it when done.
+     * Bound the CPU-bound work of such tasks separately, e.g. by a semaphore of {@link #threads()} permits.
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("dgsea-virtual-", 0).factory());
+    }
+}
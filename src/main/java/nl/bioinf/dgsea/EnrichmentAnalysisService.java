@@ -1,6 +1,9 @@
 package nl.bioinf.dgsea;
 
 import nl.bioinf.dgsea.data_processing.*;
+import nl.bioinf.dgsea.metrics.DgseaMetrics;
+import nl.bioinf.dgsea.profiling.OutputWriteEvent;
+import nl.bioinf.dgsea.table_outputs.EnrichmentShardFile;
 import nl.bioinf.dgsea.table_outputs.EnrichmentTable;
 import nl.bioinf.dgsea.visualisations.EnrichmentBarChart;
 import nl.bioinf.dgsea.visualisations.EnrichmentDotPlot;
@@ -8,7 +11,12 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.awt.*;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -20,6 +28,8 @@ import java.util.stream.Collectors;
  * pathway enrichment results based on gene expression data.
  */
 public class EnrichmentAnalysisService {
+    /** File the enrichment charts write all enrichment results to, in the working directory. */
+    static final String ENRICHMENT_CSV = "output.csv";
     private final Logger logger = LogManager.getLogger(EnrichmentAnalysisService.class);
 
     /**
@@ -51,19 +61,36 @@ public class EnrichmentAnalysisService {
 
     ) throws IOException {
         EnrichmentTable enrichmentTable = new EnrichmentTable(pathways, degs, pathwayGenes);
-        enrichmentTable.calculateEnrichment("output.csv");
+        enrichmentTable.calculateEnrichment(ENRICHMENT_CSV);
 
-        List<EnrichmentResult> results = enrichmentTable.getEnrichmentResults();
+        List<EnrichmentResult> topResults = selectTopResults(enrichmentTable.getEnrichmentResults(), maxNPathways);
 
-        List<EnrichmentResult> significantResults = results.stream()
-                .filter(result -> !Double.isNaN(result.adjustedPValue()) && result.adjustedPValue() < 0.05)
-                .toList();
-
-        List<EnrichmentResult> topResults = significantResults.stream()
-                .sorted(Comparator.comparingDouble(EnrichmentResult::enrichmentScore).reversed())
-                .limit(maxNPathways)
-                .collect(Collectors.toList());
+        saveEnrichmentChart(topResults, PathwayIndex.of(pathways), outputFilePath, title, colorManual, chartType, dotSize, dotTransparency);
+    }
 
+    /**
+     * Saves an enrichment chart (bar-chart or dot-chart) of already calculated results.
+     *
+     * @param topResults      Results to show, see {@link #selectTopResults(List, int)}.
+     * @param pathwayIndex    Descriptions of the pathways of the results.
+     * @param outputFilePath  File path for the output image. Default based on chart type if null.
+     * @param title           Title of the plot
+     * @param colorManual     Array of colors for manual chart customization.
+     * @param chartType       The type of chart to generate (BAR_CHART or DOT_CHART).
+     * @param dotSize         Size of the dots (optional, relevant for dot-chart).
+     * @param dotTransparency Transparency of the dots (optional, relevant for dot-chart).
+     * @throws IOException If an error occurs during file writing.
+     */
+    public void saveEnrichmentChart(
+            List<EnrichmentResult> topResults,
+            PathwayIndex pathwayIndex,
+            String outputFilePath,
+            String title,
+            Color[] colorManual,
+            ChartType chartType,
+            Double dotSize,
+            Float dotTransparency
+    ) throws IOException {
         String outputFile = (outputFilePath != null && !outputFilePath.isEmpty()) ? outputFilePath
                 : (chartType == ChartType.BAR_CHART ? "pathway_enrichment_bar_chart.png" : "pathway_enrichment_dot_plot.png");
 
@@ -72,27 +99,99 @@ public class EnrichmentAnalysisService {
                 new EnrichmentBarChart(
                         title,
                         topResults,
-                        pathways,
+                        pathwayIndex,
                         outputFile,
                         colorManual
                 );
-                logger.info("Bar chart saved as PNG at: {}", outputFile);
+                logger.info("Bar chart saved at: {}", outputFile);
             }
             case DOT_CHART -> {
                 new EnrichmentDotPlot(
                         title,
                         topResults,
-                        pathways,
+                        pathwayIndex,
                         outputFile,
                         colorManual,
                         dotSize != null ? dotSize : 30.0,  // Default size
                         dotTransparency != null ? dotTransparency : 1.0f // Default transparency
                 );
-                logger.info("Dot plot saved as PNG at: {}", outputFile);
+                logger.info("Dot plot saved at: {}", outputFile);
             }
         }
     }
 
+    /**
+     * Calculates the raw enrichment results of one shard of the pathways and writes them to a shard file,
+     * to be combined with the other shards by {@link #mergeEnrichmentShards(List, List, String)}.
+     *
+     * @param degs            List of differentially expressed genes (DEGs).
+     * @param pathways        List of all pathways.
+     * @param pathwayGenes    List of all PathwayGene mappings.
+     * @param shard           Shard of the pathways to calculate.
+     * @param outputFilePath  File path for the shard file.
+     * @throws IOException If an error occurs during file writing.
+     */
+    public void writeEnrichmentShard(List<Deg> degs, List<Pathway> pathways, List<PathwayGene> pathwayGenes,
+                                     Shard shard, String outputFilePath) throws IOException {
+        EnrichmentTable enrichmentTable = new EnrichmentTable(pathways, degs, pathwayGenes);
+        OutputWriteEvent event = new OutputWriteEvent();
+        event.begin();
+        try (BufferedWriter writer = Files.newBufferedWriter(Path.of(outputFilePath), StandardCharsets.UTF_8)) {
+            EnrichmentShardFile.write(enrichmentTable, shard, writer);
+        }
+        event.end(Path.of(outputFilePath), "shard");
+        DgseaMetrics.countWritten("shard", Path.of(outputFilePath));
+        logger.info("Shard {} saved at: {}", shard, outputFilePath);
+    }
+
+    /**
+     * Merges the shard files of all shards, applies the multiple-testing correction over all pathways
+     * and writes the enrichment CSV, the same as a single run would.
+     *
+     * @param pathways        List of all pathways, the same as used for the shards.
+     * @param shardFiles      One shard file per shard.
+     * @param outputFilePath  File path for the enrichment CSV.
+     * @return Enrichment results of all pathways.
+     * @throws IOException If a shard file cannot be read or the CSV cannot be written.
+     * @throws IllegalArgumentException If the shards are incomplete or do not match each other or the pathways.
+     */
+    public List<EnrichmentResult> mergeEnrichmentShards(List<Pathway> pathways, List<Path> shardFiles,
+                                                        String outputFilePath) throws IOException {
+        List<EnrichmentShardFile.Part> parts = new ArrayList<>(shardFiles.size());
+        for (Path shardFile : shardFiles) {
+            parts.add(EnrichmentShardFile.read(shardFile));
+        }
+        EnrichmentShardFile.Part merged = EnrichmentShardFile.merge(parts);
+        if (merged.metadata().totalTests() != pathways.size()) {
+            throw new IllegalArgumentException("Shards were made with " + merged.metadata().totalTests()
+                    + " pathways, the pathway descriptions have " + pathways.size());
+        }
+        OutputWriteEvent event = new OutputWriteEvent();
+        event.begin();
+        try (BufferedWriter writer = Files.newBufferedWriter(Path.of(outputFilePath), StandardCharsets.UTF_8)) {
+            List<EnrichmentResult> results = EnrichmentTable.writeEnrichment(pathways, merged.results(), merged.metadata().totalTests(), writer);
+            event.end(Path.of(outputFilePath), "enrichment csv"); // flushed by writeEnrichment
+            DgseaMetrics.countWritten("enrichment_csv", Path.of(outputFilePath));
+            logger.info("Merged {} shard(s) into: {}", parts.size(), outputFilePath);
+            return results;
+        }
+    }
+
+    /**
+     * Selects the significant results (adjusted p-value below 0.05) with the highest enrichment scores.
+     *
+     * @param results      All enrichment results.
+     * @param maxNPathways Maximum number of results to select.
+     * @return The selected results, highest enrichment score first.
+     */
+    public static List<EnrichmentResult> selectTopResults(List<EnrichmentResult> results, int maxNPathways) {
+        return results.stream()
+                .filter(result -> !Double.isNaN(result.adjustedPValue()) && result.adjustedPValue() < 0.05)
+                .sorted(Comparator.comparingDouble(EnrichmentResult::enrichmentScore).reversed())
+                .limit(maxNPathways)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Enum to represent the type of chart to generate.
      */
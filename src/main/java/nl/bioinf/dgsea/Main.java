@@ -5,8 +5,6 @@
  */
 package nl.bioinf.dgsea;
 
-import picocli.CommandLine;
-
 /**
  * The Main class serves as the entry point for the DGSEA application.
  * It processes command-line arguments and delegates execution to the
@@ -22,8 +20,7 @@ public class Main {
      * @param args command-line arguments passed to the application.
      */
     public static void main(String[] args) {
-        int exitCode;
-        exitCode = new CommandLine(new CommandlineController()).execute(args);
-         System.exit(exitCode);
+        int exitCode = new CommandlineController().newCommandLine(args).execute(args);
+        System.exit(exitCode);
     }
 }
@@ -0,0 +1,102 @@
+package nl.bioinf.dgsea.cache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 key of a run: the command, the contents of its input files and its effective options, in the order added.
+ * Input files are keyed by content, not by path or modification time, so a touched or moved but unchanged file
+ * still hits the cache. Every part is written with its length, so different parts cannot produce the same bytes;
+ * file contents are written as their own SHA-256.
+ */
+public final class CacheKey {
+    /** Changes whenever the way outputs depend on inputs changes without a change of options, to retire old entries. */
+    static final int FORMAT_VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private final MessageDigest digest;
+
+    /**
+     * @param command name of the command the outputs are made by
+     */
+    public CacheKey(String command) {
+        this.digest = sha256();
+        update("format");
+        update(String.valueOf(FORMAT_VERSION));
+        update("command");
+        update(command);
+    }
+
+    /**
+     * Adds an option and its effective value.
+     * @param name option name
+     * @param value option value, may be null or an array
+     * @return this key
+     */
+    public CacheKey option(String name, Object value) {
+        update("option");
+        update(name);
+        update(value instanceof Object[] array ? Arrays.deepToString(array) : valueOf(value));
+        return this;
+    }
+
+    /**
+     * Adds the contents of an input file.
+     * @param file input file
+     * @return this key
+     * @throws IOException if the file cannot be read
+     */
+    public CacheKey file(Path file) throws IOException {
+        MessageDigest contentDigest = sha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                contentDigest.update(buffer, 0, read);
+            }
+        }
+        update("file");
+        update(HexFormat.of().formatHex(contentDigest.digest()));
+        return this;
+    }
+
+    /**
+     * @return the key as 64 lowercase hexadecimal characters; the key cannot be extended afterward
+     */
+    public String toHex() {
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // required of every Java platform
+        }
+    }
+
+    private static String valueOf(Object value) {
+        if (value == null) return "null";
+        if (value.getClass().isArray()) { // primitive arrays
+            if (value instanceof boolean[] booleans) return Arrays.toString(booleans);
+            if (value instanceof int[] ints) return Arrays.toString(ints);
+            if (value instanceof long[] longs) return Arrays.toString(longs);
+            if (value instanceof double[] doubles) return Arrays.toString(doubles);
+            if (value instanceof float[] floats) return Arrays.toString(floats);
+        }
+        return value.toString();
+    }
+
+    private void update(String part) {
+        byte[] bytes = part.getBytes(StandardCharsets.UTF_8);
+        digest.update(String.valueOf(bytes.length).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+}
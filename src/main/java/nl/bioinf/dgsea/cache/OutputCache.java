@@ -0,0 +1,236 @@
+package nl.bioinf.dgsea.cache;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Local on-disk cache of the output files of runs, by {@link CacheKey}. <br>
+ * Every entry is a directory named by its key, holding the outputs of one run as files 0, 1, ... in the order given.
+ * On a hit the outputs are copied or hard linked back to where the run wrote them, so the run is skipped entirely.
+ * The total size of the entries is kept below a bound by evicting the least recently used entries after every store;
+ * the modification time of an entry's directory is its last use. Entries are completed in a temporary directory
+ * and moved into place, so concurrent runs never see partial entries.
+ */
+public final class OutputCache {
+    /**
+     * How outputs are restored from the cache.
+     */
+    public enum RestoreMode {
+        /** Copies the cached files, the outputs are independent of the cache. */
+        COPY,
+        /** Hard links the cached files, falling back to copies where links are not supported. No data is copied. */
+        LINK
+    }
+
+    private static final String TEMPORARY_PREFIX = ".tmp-";
+    private final Logger logger = LogManager.getLogger(OutputCache.class);
+    private final Path directory;
+    private final long maxBytes;
+    private final RestoreMode restoreMode;
+
+    /**
+     * @param directory directory of the cache, created when the first entry is stored
+     * @param maxBytes upper bound of the total size of all entries, positive
+     * @param restoreMode how outputs are restored
+     * @throws IllegalArgumentException if maxBytes is not positive
+     */
+    public OutputCache(Path directory, long maxBytes, RestoreMode restoreMode) {
+        if (maxBytes <= 0) throw new IllegalArgumentException("maxBytes must be positive. Given: " + maxBytes);
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.restoreMode = restoreMode;
+    }
+
+    /**
+     * @return $XDG_CACHE_HOME/dgsea, or ~/.cache/dgsea if XDG_CACHE_HOME is not set
+     */
+    public static Path defaultDirectory() {
+        String cacheHome = System.getenv("XDG_CACHE_HOME");
+        Path base = cacheHome != null && !cacheHome.isBlank()
+                ? Path.of(cacheHome) : Path.of(System.getProperty("user.home"), ".cache");
+        return base.resolve("dgsea");
+    }
+
+    /**
+     * Restores the outputs of the entry of the key, replacing existing files, and marks the entry as used.
+     * @param key key of the run
+     * @param outputs paths to restore the outputs to, in the order they were stored
+     * @return true if the entry was found and restored, false if the run needs to be done
+     * @throws IOException if the entry exists but cannot be restored
+     */
+    public boolean restore(String key, List<Path> outputs) throws IOException {
+        Path entry = directory.resolve(key);
+        for (int i = 0; i < outputs.size(); i++) {
+            if (!Files.isRegularFile(entry.resolve(String.valueOf(i)))) return false;
+        }
+        for (int i = 0; i < outputs.size(); i++) {
+            restoreFile(entry.resolve(String.valueOf(i)), outputs.get(i));
+        }
+        touch(entry);
+        return true;
+    }
+
+    /**
+     * Stores the outputs as entry of the key, unless it exists already, then evicts least recently used entries
+     * until the cache fits its size bound again. Outputs larger than the bound on their own are not stored.
+     * @param key key of the run
+     * @param outputs output files of the run
+     * @throws IOException if the cache directory cannot be written
+     */
+    public void store(String key, List<Path> outputs) throws IOException {
+        Path entry = directory.resolve(key);
+        if (Files.isDirectory(entry)) {
+            touch(entry);
+            return;
+        }
+        long size = 0;
+        for (Path output : outputs) {
+            size += Files.size(output);
+        }
+        if (size > maxBytes) {
+            logger.info("Outputs of {} bytes exceed the cache size of {} bytes, not cached", size, maxBytes);
+            return;
+        }
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempDirectory(directory, TEMPORARY_PREFIX + key);
+        try {
+            for (int i = 0; i < outputs.size(); i++) {
+                Files.copy(outputs.get(i), temporary.resolve(String.valueOf(i)));
+            }
+            Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException | DirectoryNotEmptyException _) {
+            deleteEntry(temporary); // stored meanwhile by a concurrent run
+        } catch (IOException e) {
+            deleteEntry(temporary);
+            throw e;
+        }
+        evict(key);
+    }
+
+    /**
+     * Deletes outputs that are hard links, e.g. restored by {@link RestoreMode#LINK}, so writing the outputs anew
+     * does not write through to the cached file. Call before a run writes its outputs.
+     * @param outputs output files about to be written
+     * @throws IOException if a linked output cannot be deleted
+     */
+    public static void detach(List<Path> outputs) throws IOException {
+        for (Path output : outputs) {
+            if (!Files.isRegularFile(output, LinkOption.NOFOLLOW_LINKS)) continue;
+            try {
+                if ((Integer) Files.getAttribute(output, "unix:nlink") > 1) Files.delete(output);
+            } catch (UnsupportedOperationException | IllegalArgumentException _) {
+                return; // no link counts on this file system, so no links were made
+            }
+        }
+    }
+
+    /**
+     * @return total size in bytes of all entries
+     * @throws IOException if the cache directory cannot be read
+     */
+    public long size() throws IOException {
+        long size = 0;
+        for (Path entry : entries()) {
+            size += sizeOf(entry);
+        }
+        return size;
+    }
+
+    /**
+     * Evicts least recently used entries until the cache fits its size bound, keeping the given entry.
+     */
+    private void evict(String keep) throws IOException {
+        List<Path> entries = entries();
+        long size = 0;
+        List<Long> sizes = new ArrayList<>(entries.size());
+        for (Path entry : entries) {
+            long entrySize = sizeOf(entry);
+            sizes.add(entrySize);
+            size += entrySize;
+        }
+        if (size <= maxBytes) return;
+        List<Integer> order = new ArrayList<>(entries.size());
+        List<FileTime> lastUsed = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            order.add(i);
+            lastUsed.add(lastModified(entries.get(i)));
+        }
+        order.sort(Comparator.comparing(lastUsed::get));
+        for (int i : order) {
+            if (size <= maxBytes) break;
+            Path entry = entries.get(i);
+            if (entry.getFileName().toString().equals(keep)) continue;
+            deleteEntry(entry);
+            size -= sizes.get(i);
+            logger.debug("Evicted cache entry {} of {} bytes", entry.getFileName(), sizes.get(i));
+        }
+    }
+
+    private List<Path> entries() throws IOException {
+        if (!Files.isDirectory(directory)) return List.of();
+        try (Stream<Path> children = Files.list(directory)) {
+            return children
+                    .filter(child -> !child.getFileName().toString().startsWith(TEMPORARY_PREFIX))
+                    .filter(Files::isDirectory)
+                    .toList();
+        }
+    }
+
+    private void restoreFile(Path cached, Path output) throws IOException {
+        Path parent = output.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        if (restoreMode == RestoreMode.LINK) {
+            Files.deleteIfExists(output);
+            try {
+                Files.createLink(output, cached);
+                return;
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                logger.debug("Cannot hard link {}, copying instead: {}", output, e.getMessage());
+            }
+        }
+        Files.copy(cached, output, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static long sizeOf(Path entry) throws IOException {
+        try (Stream<Path> files = Files.list(entry)) {
+            long size = 0;
+            for (Path file : (Iterable<Path>) files::iterator) {
+                size += Files.size(file);
+            }
+            return size;
+        } catch (NoSuchFileException _) {
+            return 0; // evicted by a concurrent run
+        }
+    }
+
+    private static FileTime lastModified(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry);
+        } catch (IOException _) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static void touch(Path entry) throws IOException {
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+    }
+
+    private static void deleteEntry(Path entry) throws IOException {
+        try (Stream<Path> files = Files.list(entry)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.deleteIfExists(file);
+            }
+        } catch (NoSuchFileException _) {
+            return;
+        }
+        Files.deleteIfExists(entry);
+    }
+}
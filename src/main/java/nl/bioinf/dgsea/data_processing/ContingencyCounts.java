@@ -0,0 +1,35 @@
+package nl.bioinf.dgsea.data_processing;
+/**
+ * Represents the 2-by-2 contingency counts of DEGs for one pathway: presence in the pathway against significance.
+ *
+ * @param pathwayId The unique identifier for the pathway.
+ * @param description A brief description of the pathway.
+ * @param inPathwaySignificant Number of significant DEGs in the pathway.
+ * @param inPathwayNotSignificant Number of not significant DEGs in the pathway.
+ * @param notInPathwaySignificant Number of significant DEGs not in the pathway.
+ * @param notInPathwayNotSignificant Number of not significant DEGs not in the pathway.
+ */
+public record ContingencyCounts(String pathwayId, String description,
+                                int inPathwaySignificant, int inPathwayNotSignificant,
+                                int notInPathwaySignificant, int notInPathwayNotSignificant) {
+
+    public int inPathway() {
+        return inPathwaySignificant + inPathwayNotSignificant;
+    }
+
+    public int notInPathway() {
+        return notInPathwaySignificant + notInPathwayNotSignificant;
+    }
+
+    public int significant() {
+        return inPathwaySignificant + notInPathwaySignificant;
+    }
+
+    public int notSignificant() {
+        return inPathwayNotSignificant + notInPathwayNotSignificant;
+    }
+
+    public int total() {
+        return inPathway() + notInPathway();
+    }
+}
@@ -1,11 +1,16 @@
 package nl.bioinf.dgsea.data_processing;
 
+import nl.bioinf.dgsea.metrics.DgseaMetrics;
+import nl.bioinf.dgsea.profiling.FileParseEvent;
+import nl.bioinf.dgsea.profiling.Profiler;
+
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Utility class for parsing data files related to Differentially Expressed Genes (DEGs),
@@ -18,6 +23,7 @@ public class FileParseUtils {
     private static final String DEG_FORMAT_ERROR = "Invalid DEG file format. Expected at least 3 columns.";
     private static final String PATHWAY_FORMAT_ERROR = "Invalid Pathway file format. Expected at least 2 columns.";
     private static final String PATHWAY_GENE_FORMAT_ERROR = "Invalid PathwayGene file format. Expected at least 4 columns.";
+    private static final int MAX_IN_PLACE_PATHWAY_IDS = 32;
 
     /**
      * Parses a file containing DEGs and returns a list of {@link Deg} objects.
@@ -29,12 +35,31 @@ public class FileParseUtils {
      */
     public List<Deg> parseDegsFile(File file) throws IOException, NumberFormatException {
         validateFile(file);
-        List<Deg> degs = new ArrayList<>();
-
+        FileParseEvent event = new FileParseEvent();
+        event.begin();
         try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            List<Deg> degs = parseDegs(br);
+            event.end(file, "degs", degs.size());
+            return degs;
+        }
+    }
+
+    /**
+     * Parses DEGs from an already opened reader, e.g. a request body, and returns a list of {@link Deg} objects.
+     * The reader is read until its end, but not closed. Lines containing a tab are split on tabs (TSV), others on commas (CSV).
+     *
+     * @param br reader giving DEG lines in the same format as a DEG file
+     * @return a list of {@link Deg} objects
+     * @throws IOException if an I/O error occurs while reading or a line has too few columns
+     * @throws NumberFormatException if a numerical value cannot be parsed
+     */
+    public List<Deg> parseDegs(BufferedReader br) throws IOException, NumberFormatException {
+        try (Profiler.Stage _ = Profiler.stage("parse degs")) {
+            long start = System.nanoTime();
+            List<Deg> degs = new ArrayList<>();
             String line;
             while ((line = br.readLine()) != null) {
-                String[] values = line.split(",");
+                String[] values = line.split(line.indexOf('\t') >= 0 ? "\t" : ",");
                 if (values.length < 3) {
                     throw new IOException(DEG_FORMAT_ERROR);
                 }
@@ -43,8 +68,10 @@ public class FileParseUtils {
                 double adjustedPValue = Double.parseDouble(values[2].trim());
                 degs.add(new Deg(geneSymbol, logFoldChange, adjustedPValue));
             }
+            DgseaMetrics.DEG_ROWS.add(degs.size());
+            DgseaMetrics.DEG_PARSE_SECONDS.observeNanosSince(start);
+            return degs;
         }
-        return degs;
     }
 
     /**
@@ -56,9 +83,27 @@ public class FileParseUtils {
      */
     public List<Pathway> parsePathwayFile(File file) throws IOException {
         validateFile(file);
-        List<Pathway> pathways = new ArrayList<>();
-
+        FileParseEvent event = new FileParseEvent();
+        event.begin();
         try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            List<Pathway> pathways = parsePathways(br);
+            event.end(file, "pathways", pathways.size());
+            return pathways;
+        }
+    }
+
+    /**
+     * Parses pathways from an already opened reader and returns a list of {@link Pathway} objects.
+     * The reader is read until its end, but not closed.
+     *
+     * @param br reader giving pathway lines in the same format as a Pathway file
+     * @return a list of {@link Pathway} objects
+     * @throws IOException if an I/O error occurs while reading or a line has too few columns
+     */
+    public List<Pathway> parsePathways(BufferedReader br) throws IOException {
+        try (Profiler.Stage _ = Profiler.stage("parse pathways")) {
+            long start = System.nanoTime();
+            List<Pathway> pathways = new ArrayList<>();
             String line;
             while ((line = br.readLine()) != null) {
                 String[] values = line.split(",");
@@ -69,8 +114,10 @@ public class FileParseUtils {
                 String description = values[1].trim();
                 pathways.add(new Pathway(pathwayId, description));
             }
+            DgseaMetrics.PATHWAY_ROWS.add(pathways.size());
+            DgseaMetrics.PATHWAY_PARSE_SECONDS.observeNanosSince(start);
+            return pathways;
         }
-        return pathways;
     }
 
     /**
@@ -82,12 +129,56 @@ public class FileParseUtils {
      * @throws NumberFormatException if a numerical value cannot be parsed from the file
      */
     public List<PathwayGene> parsePathwayGeneFile(File file) throws IOException, NumberFormatException {
-        validateFile(file);
-        List<PathwayGene> pathwayGenes = new ArrayList<>();
+        return parsePathwayGeneFile(file, null);
+    }
 
+    /**
+     * Parses a file containing pathway-gene relationships, keeping only the rows of the given pathways.
+     * Rows of other pathways are rejected on their first column alone, so they are neither split nor allocated.
+     *
+     * @param file the PathwayGene file to parse
+     * @param pathwayIds pathway-ids to keep, all rows are kept if null or empty
+     * @return a list of {@link PathwayGene} objects belonging to the given pathways
+     * @throws IOException if an I/O error occurs while reading the file
+     * @throws NumberFormatException if a numerical value cannot be parsed from the file
+     */
+    public List<PathwayGene> parsePathwayGeneFile(File file, Set<String> pathwayIds) throws IOException, NumberFormatException {
+        validateFile(file);
+        FileParseEvent event = new FileParseEvent();
+        event.begin();
         try (BufferedReader br = new BufferedReader(new FileReader(file))) {
+            List<PathwayGene> pathwayGenes = parsePathwayGenes(br, pathwayIds);
+            event.end(file, "pathway genes", pathwayGenes.size());
+            return pathwayGenes;
+        }
+    }
+
+    /**
+     * Parses pathway-gene relationships from an already opened reader, keeping only the rows of the given pathways.
+     * The reader is read until its end, but not closed.
+     *
+     * @param br reader giving pathway-gene lines in the same format as a PathwayGene file
+     * @param pathwayIds pathway-ids to keep, all rows are kept if null or empty
+     * @return a list of {@link PathwayGene} objects belonging to the given pathways
+     * @throws IOException if an I/O error occurs while reading or a line has too few columns
+     * @throws NumberFormatException if a numerical value cannot be parsed
+     */
+    public List<PathwayGene> parsePathwayGenes(BufferedReader br, Set<String> pathwayIds) throws IOException, NumberFormatException {
+        try (Profiler.Stage _ = Profiler.stage("parse pathway genes")) {
+            long start = System.nanoTime();
+            List<PathwayGene> pathwayGenes = new ArrayList<>();
+            boolean selectAll = pathwayIds == null || pathwayIds.isEmpty();
+            String[] selectedIds = selectAll ? null : pathwayIds.toArray(String[]::new);
+
             String line;
             while ((line = br.readLine()) != null) {
+                if (!selectAll) {
+                    int firstComma = line.indexOf(',');
+                    if (firstComma < 0) {
+                        throw new IOException(PATHWAY_GENE_FORMAT_ERROR);
+                    }
+                    if (!isSelectedPathwayId(line, firstComma, selectedIds, pathwayIds)) continue;
+                }
                 String[] values = line.split(",");
                 if (values.length < 4) {
                     throw new IOException(PATHWAY_GENE_FORMAT_ERROR);
@@ -98,8 +189,34 @@ public class FileParseUtils {
                 String ensemblGeneId = values[3].trim();
                 pathwayGenes.add(new PathwayGene(pathwayId, entrezGeneId, geneSymbol, ensemblGeneId));
             }
+            DgseaMetrics.PATHWAY_GENE_ROWS.add(pathwayGenes.size());
+            DgseaMetrics.PATHWAY_GENE_PARSE_SECONDS.observeNanosSince(start);
+            return pathwayGenes;
+        }
+    }
+
+    /**
+     * Checks if the (trimmed) first column of a line is one of the selected pathway-ids.
+     * Small selections are compared in place, larger ones fall back to a set look-up on the extracted id.
+     *
+     * @param line line to check
+     * @param end index of the first column separator in line
+     * @param selectedIds selected pathway-ids as array, for in-place comparison
+     * @param pathwayIdSet selected pathway-ids as set, for large selections
+     * @return true if the first column is a selected pathway-id
+     */
+    private boolean isSelectedPathwayId(String line, int end, String[] selectedIds, Set<String> pathwayIdSet) {
+        int start = 0;
+        while (start < end && Character.isWhitespace(line.charAt(start))) start++;
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) end--;
+        int length = end - start;
+        if (selectedIds.length > MAX_IN_PLACE_PATHWAY_IDS) {
+            return pathwayIdSet.contains(line.substring(start, end));
+        }
+        for (String selectedId : selectedIds) {
+            if (selectedId.length() == length && line.regionMatches(start, selectedId, 0, length)) return true;
         }
-        return pathwayGenes;
+        return false;
     }
 
     /**
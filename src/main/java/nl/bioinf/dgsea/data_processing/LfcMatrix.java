@@ -0,0 +1,92 @@
+package nl.bioinf.dgsea.data_processing;
+
+import java.util.Arrays;
+
+/**
+ * Sparse pathway × gene matrix of log-fold-changes, in compressed sparse row (CSR) form. <br>
+ * Row r holds the DEGs of pathway r: their column indexes are columnIndexes[rowStarts[r]..rowStarts[r + 1]),
+ * with the log-fold-changes at the same positions in values. Genes not in a pathway have no entry in its row,
+ * so memory scales with the pathway-gene pairs instead of pathways × genes.
+ */
+public final class LfcMatrix {
+    private final String[] pathwayIds;
+    private final String[] geneSymbols;
+    private final int[] rowStarts;
+    private final int[] columnIndexes;
+    private final float[] values;
+
+    /**
+     * @param pathwayIds pathway-id per row
+     * @param geneSymbols gene-symbol per column
+     * @param rowStarts start of every row's entries, followed by the total number of entries
+     * @param columnIndexes column of every entry, ascending within a row
+     * @param values log-fold-change of every entry
+     * @throws IllegalArgumentException if the arrays do not form a valid matrix
+     */
+    public LfcMatrix(String[] pathwayIds, String[] geneSymbols, int[] rowStarts, int[] columnIndexes, float[] values) {
+        if (rowStarts.length != pathwayIds.length + 1 || rowStarts[0] != 0)
+            throw new IllegalArgumentException("rowStarts needs 1 start per row, starting at 0, followed by the number of entries");
+        if (columnIndexes.length != values.length || rowStarts[pathwayIds.length] != values.length)
+            throw new IllegalArgumentException("columnIndexes and values need 1 item per entry");
+        this.pathwayIds = pathwayIds;
+        this.geneSymbols = geneSymbols;
+        this.rowStarts = rowStarts;
+        this.columnIndexes = columnIndexes;
+        this.values = values;
+    }
+
+    public int getRowCount() {
+        return pathwayIds.length;
+    }
+
+    public int getColumnCount() {
+        return geneSymbols.length;
+    }
+
+    public int getEntryCount() {
+        return values.length;
+    }
+
+    public String getPathwayId(int row) {
+        return pathwayIds[row];
+    }
+
+    public String getGeneSymbol(int column) {
+        return geneSymbols[column];
+    }
+
+    public int getRowStart(int row) {
+        return rowStarts[row];
+    }
+
+    public int getRowEnd(int row) {
+        return rowStarts[row + 1];
+    }
+
+    public int getColumnIndex(int entry) {
+        return columnIndexes[entry];
+    }
+
+    public float getValue(int entry) {
+        return values[entry];
+    }
+
+    /**
+     * @return log-fold-change of the gene in the pathway, or NaN if the gene has no entry in the pathway
+     */
+    public float get(int row, int column) {
+        int entry = Arrays.binarySearch(columnIndexes, rowStarts[row], rowStarts[row + 1], column);
+        return entry < 0 ? Float.NaN : values[entry];
+    }
+
+    /**
+     * @return highest absolute log-fold-change of all entries, 0 if there are none
+     */
+    public float getMaxAbsValue() {
+        float max = 0f;
+        for (float value : values) {
+            max = Math.max(max, Math.abs(value));
+        }
+        return max;
+    }
+}
@@ -0,0 +1,94 @@
+package nl.bioinf.dgsea.data_processing;
+
+import nl.bioinf.dgsea.profiling.Profiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A loaded pathway database: the pathway descriptions and pathway-gene associations that DEG lists are analysed against.
+ * The gene symbols and the description of every pathway are indexed once on construction, so analyses of many DEG
+ * lists and their charts do not have to search the pathway lists per pathway. All contents are unmodifiable, so one
+ * database can be shared read-only between any number of concurrent analyses.
+ */
+public final class PathwayDatabase {
+    private final String name;
+    private final List<Pathway> pathways;
+    private final List<PathwayGene> pathwayGenes;
+    private final Map<String, List<String>> geneSymbolsByPathway;
+    private final PathwayIndex pathwayIndex;
+
+    /**
+     * Constructs a database and indexes the gene symbols and the description per pathway.
+     *
+     * @param name The name the database is known by.
+     * @param pathways The pathways with their descriptions.
+     * @param pathwayGenes The genes associated with each pathway.
+     */
+    public PathwayDatabase(String name, List<Pathway> pathways, List<PathwayGene> pathwayGenes) {
+        this.name = name;
+        this.pathways = List.copyOf(pathways);
+        this.pathwayGenes = List.copyOf(pathwayGenes);
+        this.geneSymbolsByPathway = indexGeneSymbols(this.pathwayGenes);
+        this.pathwayIndex = PathwayIndex.of(this.pathways);
+    }
+
+    /**
+     * Parses a pathway descriptions file and a pathway-gene file into a database.
+     *
+     * @param name the name of the database
+     * @param pathwayDescriptionsFile file with pathway-id, description columns
+     * @param pathwayGenesFile file with pathway-id, Entrez gene ID, gene symbol, Ensembl gene ID columns
+     * @return the loaded database
+     * @throws IOException if either file cannot be read or has an invalid format
+     * @throws NumberFormatException if a numerical value cannot be parsed from the pathway-gene file
+     */
+    public static PathwayDatabase load(String name, File pathwayDescriptionsFile, File pathwayGenesFile) throws IOException, NumberFormatException {
+        FileParseUtils fileParseUtils = new FileParseUtils();
+        return new PathwayDatabase(name,
+                fileParseUtils.parsePathwayFile(pathwayDescriptionsFile),
+                fileParseUtils.parsePathwayGeneFile(pathwayGenesFile));
+    }
+
+    /**
+     * Makes unmodifiable map for each pathway in pathwayGenes, with pathway-id as key
+     * @param pathwayGenes pathway-gene entries to index
+     * @return map containing pathway-id, gene-symbols pairs, with one gene-symbol per pathway-gene entry
+     */
+    public static Map<String, List<String>> indexGeneSymbols(List<PathwayGene> pathwayGenes) {
+        try (Profiler.Stage _ = Profiler.stage("index pathway genes")) {
+            final Map<String, List<String>> pathwayGeneMap = new HashMap<>();
+            for (PathwayGene gene : pathwayGenes) {
+                pathwayGeneMap
+                        .computeIfAbsent(gene.pathwayId(), _ -> new ArrayList<>())
+                        .add(gene.geneSymbol());
+            }
+            pathwayGeneMap.replaceAll((_, geneSymbols) -> List.copyOf(geneSymbols));
+            return Collections.unmodifiableMap(pathwayGeneMap);
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public List<Pathway> pathways() {
+        return pathways;
+    }
+
+    public List<PathwayGene> pathwayGenes() {
+        return pathwayGenes;
+    }
+
+    public PathwayIndex pathwayIndex() {
+        return pathwayIndex;
+    }
+
+    /**
+     * @return pathway-id, gene-symbols pairs, with one gene-symbol per pathway-gene entry in file order
+     */
+    public Map<String, List<String>> geneSymbolsByPathway() {
+        return geneSymbolsByPathway;
+    }
+}
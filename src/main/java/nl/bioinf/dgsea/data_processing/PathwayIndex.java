@@ -0,0 +1,59 @@
+package nl.bioinf.dgsea.data_processing;
+
+import nl.bioinf.dgsea.profiling.Profiler;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of pathway descriptions by pathway-id, built once per pathway list and shared by all charts,
+ * so looking up the description of a result costs O(1) instead of a search through all pathways.
+ * If a pathway-id occurs more than once, its first description is kept.
+ */
+public final class PathwayIndex {
+    private final Map<String, String> descriptions;
+
+    private PathwayIndex(Map<String, String> descriptions) {
+        this.descriptions = Collections.unmodifiableMap(descriptions);
+    }
+
+    /**
+     * @param pathways pathways to index
+     * @return index of the descriptions of the pathways
+     */
+    public static PathwayIndex of(List<Pathway> pathways) {
+        try (Profiler.Stage _ = Profiler.stage("index pathway descriptions")) {
+            Map<String, String> descriptions = new HashMap<>(pathways.size() * 2);
+            for (Pathway pathway : pathways) {
+                descriptions.putIfAbsent(pathway.pathwayId(), pathway.description());
+            }
+            return new PathwayIndex(descriptions);
+        }
+    }
+
+    /**
+     * @param pathwayId pathway-id to look up
+     * @return description of the pathway, or null if the pathway-id is not indexed
+     */
+    public String description(String pathwayId) {
+        return descriptions.get(pathwayId);
+    }
+
+    /**
+     * @param pathwayId pathway-id to look up
+     * @return description of the pathway, or the pathway-id itself if it is not indexed
+     */
+    public String label(String pathwayId) {
+        return descriptions.getOrDefault(pathwayId, pathwayId);
+    }
+
+    public boolean contains(String pathwayId) {
+        return descriptions.containsKey(pathwayId);
+    }
+
+    public int size() {
+        return descriptions.size();
+    }
+}
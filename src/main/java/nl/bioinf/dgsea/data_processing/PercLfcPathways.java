@@ -4,6 +4,8 @@
  */
 package nl.bioinf.dgsea.data_processing;
 
+import nl.bioinf.dgsea.profiling.Profiler;
+
 import java.util.*;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -40,21 +42,23 @@ public class PercLfcPathways {
      * @return pathway-id, percentage-value pairs
      */
     public double[] percAllPathways(String[] pathwayIds) throws IllegalArgumentException {
-        if (pathwayIds == null || pathwayIds.length == 0) throw new IllegalArgumentException("pathwayIds cannot be empty or null");
-        double[] pathwayPercentages = new double[pathwayIds.length]; // could receive averages and then be modified to percentages
-        final double[]  avgLfcAllPathways = new double[pathwayIds.length];
-        double totalLfc = getTotalLfc(pathwayIds, avgLfcAllPathways);
-        int pathwayIndex = 0;
-        for (String _ : pathwayIds) {
-            double avgLfcPathway = avgLfcAllPathways[pathwayIndex];
-            if(avgLfcPathway == 0.0) {
-                pathwayPercentages[pathwayIndex] = 0.0;
-            } else {
-                pathwayPercentages[pathwayIndex] = avgLfcPathway / totalLfc * 100;
+        try (Profiler.Stage _ = Profiler.stage("perc lfc")) {
+            if (pathwayIds == null || pathwayIds.length == 0) throw new IllegalArgumentException("pathwayIds cannot be empty or null");
+            double[] pathwayPercentages = new double[pathwayIds.length]; // could receive averages and then be modified to percentages
+            final double[]  avgLfcAllPathways = new double[pathwayIds.length];
+            double totalLfc = getTotalLfc(pathwayIds, avgLfcAllPathways);
+            int pathwayIndex = 0;
+            for (String _ : pathwayIds) {
+                double avgLfcPathway = avgLfcAllPathways[pathwayIndex];
+                if(avgLfcPathway == 0.0) {
+                    pathwayPercentages[pathwayIndex] = 0.0;
+                } else {
+                    pathwayPercentages[pathwayIndex] = avgLfcPathway / totalLfc * 100;
+                }
+                pathwayIndex++;
             }
-            pathwayIndex++;
+            return pathwayPercentages;
         }
-        return pathwayPercentages;
     }
 
     /**
@@ -71,6 +75,7 @@ public class PercLfcPathways {
         final Map<String, Deg> degMap = getDegMap();
 
         for (String pathwayId : pathwayIds) {
+            long start = System.nanoTime();
             double totalLfcPathway = 0.0;
             int countDegsInPathway = 0;
             List<PathwayGene> genesForPathway = pathwayGeneMap.getOrDefault(pathwayId, Collections.emptyList());
@@ -87,6 +92,7 @@ public class PercLfcPathways {
             avgLfcAllPathways[pathwayIndex] = avgPathway;
             totalLfcAllPathways += totalLfcPathway;
             pathwayIndex++;
+            Profiler.pathway(pathwayId, System.nanoTime() - start);
         }
         return totalLfcAllPathways;
     }
@@ -107,7 +113,7 @@ public class PercLfcPathways {
      * Makes map for each pathway in pathwayGenes, with pathway-id as key
      * @return pathways map containing pahtway-id, pathwayGene-entry pairs
      */
-    private Map<String, List<PathwayGene>> getPathwayGeneMap() {
+    public Map<String, List<PathwayGene>> getPathwayGeneMap() {
         final Map<String, List<PathwayGene>> pathwayGeneMap = new HashMap<>();
         for (PathwayGene gene : pathwayGenes) {
             pathwayGeneMap
@@ -117,6 +123,63 @@ public class PercLfcPathways {
         return pathwayGeneMap;
     }
 
+    /**
+     * Makes a sparse pathway × gene matrix of the log-fold-changes of the degs in the given pathways.
+     * Genes are clustered by pathway: the columns hold the degs of the first pathway, then the not yet included degs
+     * of the second pathway and so on, each pathway's degs ordered by log-fold-change, highest first.
+     * @param pathwayIds pathway-ids of the rows, in order
+     * @return log-fold-change matrix, with a row per pathway-id and a column per deg in any of the pathways
+     */
+    public LfcMatrix lfcMatrix(String[] pathwayIds) {
+        try (Profiler.Stage _ = Profiler.stage("lfc matrix")) {
+            final Map<String, List<PathwayGene>> pathwayGeneMap = getPathwayGeneMap();
+            final Map<String, Deg> degMap = getDegMap();
+            final Map<String, Integer> columns = new LinkedHashMap<>();
+            for (String pathwayId : pathwayIds) {
+                Map<String, Deg> rowDegs = new HashMap<>();
+                for (PathwayGene gene : pathwayGeneMap.getOrDefault(pathwayId, Collections.emptyList())) {
+                    Deg deg = degMap.get(gene.geneSymbol());
+                    if (deg != null && !columns.containsKey(deg.geneSymbol())) rowDegs.put(deg.geneSymbol(), deg);
+                }
+                List<Deg> newColumns = new ArrayList<>(rowDegs.values());
+                newColumns.sort(Comparator.comparingDouble(Deg::logFoldChange).reversed().thenComparing(Deg::geneSymbol));
+                for (Deg deg : newColumns) {
+                    columns.put(deg.geneSymbol(), columns.size());
+                }
+            }
+
+            int[] rowStarts = new int[pathwayIds.length + 1];
+            int[] columnIndexes = new int[16];
+            float[] values = new float[16];
+            int entryCount = 0;
+            for (int row = 0; row < pathwayIds.length; row++) {
+                int[] rowColumns = pathwayGeneMap.getOrDefault(pathwayIds[row], Collections.emptyList()).stream()
+                        .map(PathwayGene::geneSymbol)
+                        .filter(columns::containsKey)
+                        .mapToInt(columns::get)
+                        .distinct()
+                        .sorted()
+                        .toArray();
+                if (entryCount + rowColumns.length > columnIndexes.length) {
+                    int capacity = Math.max(columnIndexes.length * 2, entryCount + rowColumns.length);
+                    columnIndexes = Arrays.copyOf(columnIndexes, capacity);
+                    values = Arrays.copyOf(values, capacity);
+                }
+                for (int column : rowColumns) {
+                    columnIndexes[entryCount] = column;
+                    entryCount++;
+                }
+                rowStarts[row + 1] = entryCount;
+            }
+            String[] geneSymbols = columns.keySet().toArray(String[]::new);
+            for (int entry = 0; entry < entryCount; entry++) {
+                values[entry] = (float) degMap.get(geneSymbols[columnIndexes[entry]]).logFoldChange();
+            }
+            return new LfcMatrix(pathwayIds.clone(), geneSymbols, rowStarts,
+                    Arrays.copyOf(columnIndexes, entryCount), Arrays.copyOf(values, entryCount));
+        }
+    }
+
     /**
      * Filter maxNPathwys highest percentages in pathwayPercentages. Connects pathwayIds to percentages.
      * @param maxNPathways top this many highest percentage-amounts
@@ -0,0 +1,16 @@
+package nl.bioinf.dgsea.data_processing;
+/**
+ * Represents the enrichment statistics of one pathway before multiple-testing correction.
+ * These are the partial results of a shard; the adjusted p-value needs the number of tests over all shards.
+ *
+ * @param pathwayIndex The 0-based position of the pathway in the pathway descriptions file.
+ * @param pathwayId The unique identifier for the pathway.
+ * @param observedDegCount Number of DEGs in the pathway.
+ * @param totalGenesInPathway Number of genes in the pathway.
+ * @param expectedDegCount Expected number of DEGs in the pathway.
+ * @param enrichmentScore The score indicating the degree of enrichment for the pathway.
+ * @param pValue The p-value for the enrichment score's statistical significance.
+ */
+public record RawEnrichmentResult(int pathwayIndex, String pathwayId, int observedDegCount, int totalGenesInPathway,
+                                  double expectedDegCount, double enrichmentScore, double pValue) {
+}
@@ -0,0 +1,45 @@
+package nl.bioinf.dgsea.data_processing;
+/**
+ * Represents one of count deterministic subsets of the pathways of a database, for splitting an analysis over nodes.
+ * Pathways are dealt round-robin by their position in the pathway descriptions file,
+ * so large and small pathways are spread evenly over the shards.
+ *
+ * @param index The 1-based number of this shard.
+ * @param count The total number of shards.
+ */
+public record Shard(int index, int count) {
+
+    public Shard {
+        if (count < 1 || index < 1 || index > count) {
+            throw new IllegalArgumentException("Shard must be i/N with 1 <= i <= N. Given: " + index + "/" + count);
+        }
+    }
+
+    /**
+     * @param text shard as 'i/N', for example '2/4'
+     * @return the parsed shard
+     * @throws IllegalArgumentException if text is not a valid shard
+     */
+    public static Shard parse(String text) {
+        String[] values = text.trim().split("/");
+        try {
+            if (values.length == 2) return new Shard(Integer.parseInt(values[0].trim()), Integer.parseInt(values[1].trim()));
+        } catch (NumberFormatException _) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Shard must be formatted as i/N, for example 2/4. Given: " + text);
+    }
+
+    /**
+     * @param pathwayIndex 0-based position of the pathway in the pathway descriptions file
+     * @return true if the pathway belongs to this shard
+     */
+    public boolean contains(int pathwayIndex) {
+        return pathwayIndex % count == index - 1;
+    }
+
+    @Override
+    public String toString() {
+        return index + "/" + count;
+    }
+}
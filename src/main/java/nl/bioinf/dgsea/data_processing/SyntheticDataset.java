@@ -0,0 +1,393 @@
+package nl.bioinf.dgsea.data_processing;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded generator of synthetic DEG tables and pathway databases of any size, for scale tests and benchmarks. <br>
+ * Pathway sizes follow a power law between a minimum and maximum size, like real pathway databases: many small
+ * pathways and a few very large ones. Genes shared between pathways come from a pool of hub genes (the first 5% of
+ * the gene universe); the overlap is the chance that a pathway gene is drawn from that pool instead of from the whole
+ * universe. A fraction of the universe is in the DEG table, of which a fraction is significant (adjusted p-value below 0.01).
+ * Every output is generated from its own random stream, so the same seed always gives the same files, in any order.
+ * Files are written as ASCII bytes through a large buffer without intermediate strings per row, at about disk speed.
+ */
+public final class SyntheticDataset {
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final long SIZES_STREAM = 1;
+    private static final long GENES_STREAM = 2;
+    private static final long DEGS_STREAM = 3;
+
+    private final long seed;
+    private final int geneCount;
+    private final int hubGeneCount;
+    private final double overlap;
+    private final int degCount;
+    private final double significantFraction;
+    private final int[] pathwaySizes;
+
+    private SyntheticDataset(Builder builder) {
+        this.seed = builder.seed;
+        this.geneCount = builder.geneCount;
+        this.hubGeneCount = Math.max(1, geneCount / 20);
+        this.overlap = builder.overlap;
+        this.degCount = (int) Math.round(geneCount * builder.degFraction);
+        this.significantFraction = builder.significantFraction;
+        this.pathwaySizes = drawPathwaySizes(builder);
+    }
+
+    public static class Builder {
+        private long seed = 42;
+        private int geneCount = 20_000;
+        private int pathwayCount = 350;
+        private long pathwayGeneRows = -1;
+        private int minPathwaySize = 10;
+        private int maxPathwaySize = 1_500;
+        private double sizeExponent = 2.0;
+        private double overlap = 0.3;
+        private double degFraction = 0.2;
+        private double significantFraction = 0.3;
+
+        public Builder seed(long val) {                 seed = val; return this;}
+        public Builder geneCount(int val) {             geneCount = val; return this;}
+        public Builder pathwayCount(int val) {          pathwayCount = val; return this;}
+        /** Draws pathways until the pathway-genes file has this many rows, instead of a fixed number of pathways. */
+        public Builder pathwayGeneRows(long val) {      pathwayGeneRows = val; return this;}
+        public Builder minPathwaySize(int val) {        minPathwaySize = val; return this;}
+        public Builder maxPathwaySize(int val) {        maxPathwaySize = val; return this;}
+        /** Exponent of the power law of pathway sizes, above 1; higher gives fewer large pathways. */
+        public Builder sizeExponent(double val) {       sizeExponent = val; return this;}
+        public Builder overlap(double val) {            overlap = val; return this;}
+        public Builder degFraction(double val) {        degFraction = val; return this;}
+        public Builder significantFraction(double val) { significantFraction = val; return this;}
+
+        /**
+         * @return the dataset, of which the pathway sizes are drawn already
+         * @throws IllegalArgumentException if any setting is out of range
+         */
+        public SyntheticDataset build() {
+            if (geneCount <= 0) throw new IllegalArgumentException("Gene count must be positive. Given: " + geneCount);
+            if (pathwayGeneRows < 0 && pathwayCount <= 0) throw new IllegalArgumentException("Pathway count must be positive. Given: " + pathwayCount);
+            if (minPathwaySize <= 0 || minPathwaySize > maxPathwaySize)
+                throw new IllegalArgumentException("Pathway sizes must be positive, with the minimum at most the maximum. Given: %d-%d".formatted(minPathwaySize, maxPathwaySize));
+            if (minPathwaySize > geneCount) throw new IllegalArgumentException("Minimum pathway size cannot exceed the gene count. Given: " + minPathwaySize);
+            if (sizeExponent <= 1) throw new IllegalArgumentException("Size exponent must be above 1. Given: " + sizeExponent);
+            checkFraction("Overlap", overlap);
+            checkFraction("DEG fraction", degFraction);
+            checkFraction("Significant fraction", significantFraction);
+            return new SyntheticDataset(this);
+        }
+
+        private static void checkFraction(String name, double value) {
+            if (!(value >= 0 && value <= 1)) throw new IllegalArgumentException(name + " must be between 0.0 and 1.0. Given: " + value);
+        }
+    }
+
+    public int getGeneCount() {
+        return geneCount;
+    }
+
+    public int getPathwayCount() {
+        return pathwaySizes.length;
+    }
+
+    public int getDegCount() {
+        return degCount;
+    }
+
+    /**
+     * @return number of rows of the pathway-genes file
+     */
+    public long getPathwayGeneRows() {
+        long rows = 0;
+        for (int size : pathwaySizes) rows += size;
+        return rows;
+    }
+
+    /**
+     * Writes the DEGs, pathway descriptions and pathway-genes as degs.csv, hsa_pathways.csv and pathways.csv.
+     * @param directory directory to write the files to, created if needed
+     * @return number of bytes written
+     * @throws IOException if a file cannot be written
+     */
+    public long write(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        long bytes = 0;
+        try (OutputStream out = Files.newOutputStream(directory.resolve("degs.csv"))) {
+            bytes += writeDegs(out);
+        }
+        try (OutputStream out = Files.newOutputStream(directory.resolve("hsa_pathways.csv"))) {
+            bytes += writePathways(out);
+        }
+        try (OutputStream out = Files.newOutputStream(directory.resolve("pathways.csv"))) {
+            bytes += writePathwayGenes(out);
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes the DEG table, columns: gene symbol, log-fold-change, adjusted p-value. The stream is not closed.
+     * @return number of bytes written
+     */
+    public long writeDegs(OutputStream out) throws IOException {
+        AsciiWriter writer = new AsciiWriter(out);
+        try {
+            generateDegs((gene, logFoldChange, adjustedPValue) -> writer.append('G').append(gene + 1).append(", ")
+                    .append(Double.toString(logFoldChange)).append(", ")
+                    .append(Double.toString(adjustedPValue)).append('\n'));
+        } catch (SinkException e) {
+            throw e.getCause();
+        }
+        return writer.finish();
+    }
+
+    /**
+     * Writes the pathway descriptions, columns: pathway-id, description. The stream is not closed.
+     * @return number of bytes written
+     */
+    public long writePathways(OutputStream out) throws IOException {
+        AsciiWriter writer = new AsciiWriter(out);
+        for (int pathway = 0; pathway < pathwaySizes.length; pathway++) {
+            writer.append("hsa").appendPadded(pathway, 5).append(", Synthetic pathway ").append(pathway + 1)
+                    .append(" (").append(pathwaySizes[pathway]).append(" genes)\n");
+        }
+        return writer.finish();
+    }
+
+    /**
+     * Writes the pathway-genes, columns: pathway-id, Entrez gene-id, gene symbol, Ensembl gene-id. The stream is not closed.
+     * @return number of bytes written
+     */
+    public long writePathwayGenes(OutputStream out) throws IOException {
+        AsciiWriter writer = new AsciiWriter(out);
+        try {
+            generatePathwayGenes((pathway, gene) -> writer.append("hsa").appendPadded(pathway, 5).append(", ")
+                    .append(gene + 1).append(", G").append(gene + 1).append(", ENSG").appendPadded(gene + 1, 11).append('\n'));
+        } catch (SinkException e) {
+            throw e.getCause();
+        }
+        return writer.finish();
+    }
+
+    /**
+     * @return the DEG table as written by {@link #writeDegs(OutputStream)}
+     */
+    public List<Deg> degs() {
+        List<Deg> degs = new ArrayList<>(degCount);
+        generateDegs((gene, logFoldChange, adjustedPValue) -> degs.add(new Deg("G" + (gene + 1), logFoldChange, adjustedPValue)));
+        return degs;
+    }
+
+    /**
+     * @return the pathway descriptions as written by {@link #writePathways(OutputStream)}
+     */
+    public List<Pathway> pathways() {
+        List<Pathway> pathways = new ArrayList<>(pathwaySizes.length);
+        for (int pathway = 0; pathway < pathwaySizes.length; pathway++) {
+            pathways.add(new Pathway(pathwayId(pathway),
+                    "Synthetic pathway %d (%d genes)".formatted(pathway + 1, pathwaySizes[pathway])));
+        }
+        return pathways;
+    }
+
+    /**
+     * @return the pathway-genes as written by {@link #writePathwayGenes(OutputStream)}, sharing strings between rows
+     */
+    public List<PathwayGene> pathwayGenes() {
+        List<PathwayGene> pathwayGenes = new ArrayList<>((int) Math.min(Integer.MAX_VALUE - 8, getPathwayGeneRows()));
+        String[] pathwayIds = new String[pathwaySizes.length];
+        for (int pathway = 0; pathway < pathwayIds.length; pathway++) pathwayIds[pathway] = pathwayId(pathway);
+        String[] symbols = new String[geneCount];
+        String[] ensemblIds = new String[geneCount];
+        generatePathwayGenes((pathway, gene) -> {
+            if (symbols[gene] == null) {
+                symbols[gene] = "G" + (gene + 1);
+                ensemblIds[gene] = "ENSG%011d".formatted(gene + 1);
+            }
+            pathwayGenes.add(new PathwayGene(pathwayIds[pathway], gene + 1, symbols[gene], ensemblIds[gene]));
+        });
+        return pathwayGenes;
+    }
+
+    private static String pathwayId(int pathway) {
+        return "hsa%05d".formatted(pathway);
+    }
+
+    private interface DegSink {
+        void accept(int gene, double logFoldChange, double adjustedPValue) throws IOException;
+    }
+
+    private interface PathwayGeneSink {
+        void accept(int pathway, int gene) throws IOException;
+    }
+
+    /**
+     * Draws a random subset of the gene universe as DEGs, in random order. Significant DEGs get p-values
+     * between 1e-12 and 0.01 and larger log-fold-changes, the others p-values between 0.01 and 1.
+     */
+    private void generateDegs(DegSink sink) {
+        SplittableRandom random = new SplittableRandom(seed ^ DEGS_STREAM * 0x9E3779B97F4A7C15L);
+        int[] genes = new int[geneCount];
+        for (int i = 0; i < geneCount; i++) genes[i] = i;
+        try {
+            for (int i = 0; i < degCount; i++) {
+                int pick = i + random.nextInt(geneCount - i); // partial Fisher-Yates shuffle
+                int gene = genes[pick];
+                genes[pick] = genes[i];
+                genes[i] = gene;
+                boolean significant = random.nextDouble() < significantFraction;
+                double adjustedPValue = significant ? Math.pow(10, -2 - random.nextDouble() * 10) : 0.01 + random.nextDouble() * 0.99;
+                double logFoldChange = gaussian(random) * (significant ? 2.5 : 0.5);
+                sink.accept(gene, logFoldChange, adjustedPValue);
+            }
+        } catch (IOException e) {
+            throw new SinkException(e);
+        }
+    }
+
+    /**
+     * Draws the genes of every pathway without repeats: from the hub genes with chance overlap, otherwise from all genes.
+     */
+    private void generatePathwayGenes(PathwayGeneSink sink) {
+        SplittableRandom random = new SplittableRandom(seed ^ GENES_STREAM * 0x9E3779B97F4A7C15L);
+        long[] inPathway = new long[(geneCount + 63) / 64];
+        int[] drawn = new int[geneCount];
+        try {
+            for (int pathway = 0; pathway < pathwaySizes.length; pathway++) {
+                int size = pathwaySizes[pathway];
+                int hubLimit = Math.min(hubGeneCount, size / 2); // leaves room for drawing from all genes
+                int hubDrawn = 0;
+                for (int i = 0; i < size; i++) {
+                    int gene;
+                    do {
+                        boolean fromHub = hubDrawn < hubLimit && random.nextDouble() < overlap;
+                        gene = random.nextInt(fromHub ? hubGeneCount : geneCount);
+                    } while ((inPathway[gene >>> 6] & 1L << gene) != 0);
+                    if (gene < hubGeneCount) hubDrawn++;
+                    inPathway[gene >>> 6] |= 1L << gene;
+                    drawn[i] = gene;
+                    sink.accept(pathway, gene);
+                }
+                for (int i = 0; i < size; i++) inPathway[drawn[i] >>> 6] = 0;
+            }
+        } catch (IOException e) {
+            throw new SinkException(e);
+        }
+    }
+
+    /**
+     * Draws pathway sizes from a power law between the minimum and maximum size, by inverse transform sampling.
+     */
+    private static int[] drawPathwaySizes(Builder builder) {
+        SplittableRandom random = new SplittableRandom(builder.seed ^ SIZES_STREAM * 0x9E3779B97F4A7C15L);
+        int maxSize = Math.min(builder.maxPathwaySize, builder.geneCount);
+        double minimum = builder.minPathwaySize;
+        double maximum = maxSize + 1;
+        double power = 1 - builder.sizeExponent;
+        double minimumPower = Math.pow(minimum, power);
+        double rangePower = Math.pow(maximum, power) - minimumPower;
+        List<Integer> sizes = new ArrayList<>();
+        long rows = 0;
+        while (builder.pathwayGeneRows >= 0 ? rows < builder.pathwayGeneRows : sizes.size() < builder.pathwayCount) {
+            double value = Math.pow(minimumPower + random.nextDouble() * rangePower, 1 / power);
+            int size = Math.clamp((long) value, builder.minPathwaySize, maxSize);
+            if (builder.pathwayGeneRows >= 0) size = (int) Math.min(size, builder.pathwayGeneRows - rows);
+            sizes.add(size);
+            rows += size;
+        }
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static double gaussian(SplittableRandom random) {
+        double u = 1 - random.nextDouble(); // (0, 1]
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+
+    /**
+     * Carries an IOException of a sink out of a generator loop.
+     */
+    private static final class SinkException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SinkException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+
+    /**
+     * Buffered writer of ASCII text straight to bytes, with integers formatted in place.
+     */
+    private static final class AsciiWriter {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+        private int position = 0;
+        private long written = 0;
+
+        AsciiWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        AsciiWriter append(char c) throws IOException {
+            if (position == buffer.length) flush();
+            buffer[position++] = (byte) c;
+            return this;
+        }
+
+        AsciiWriter append(String s) throws IOException {
+            if (buffer.length - position < s.length()) flush();
+            for (int i = 0; i < s.length(); i++) {
+                buffer[position++] = (byte) s.charAt(i); // ASCII only
+            }
+            return this;
+        }
+
+        AsciiWriter append(int value) throws IOException {
+            return appendPadded(value, 1);
+        }
+
+        /**
+         * Appends a non-negative integer, left-padded with zeros to at least the given number of digits.
+         */
+        AsciiWriter appendPadded(int value, int digits) throws IOException {
+            int length = Math.max(digits, stringSize(value));
+            if (buffer.length - position < length) flush();
+            for (int i = position + length - 1; i >= position; i--) {
+                buffer[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            position += length;
+            return this;
+        }
+
+        long finish() throws IOException {
+            flush();
+            out.flush();
+            return written;
+        }
+
+        private void flush() throws IOException {
+            out.write(buffer, 0, position);
+            written += position;
+            position = 0;
+        }
+
+        private static int stringSize(int value) {
+            int size = 1;
+            while (value >= 10) {
+                value /= 10;
+                size++;
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package nl.bioinf.dgsea.logging;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Locale;
+
+/**
+ * Rate-limits a message that repeats inside a loop, e.g. one per skipped duplicate: the first few occurrences are
+ * logged as usual, the rest only counted, and one summary line such as "1,532 duplicate descriptions skipped"
+ * is logged on close. Occurrences cost a counter increment once the limit is reached or the level is disabled.
+ * Not thread-safe: use one per loop.
+ * <pre>
+ * try (RepeatedMessage duplicates = new RepeatedMessage(logger, Level.INFO, "duplicate descriptions skipped", 3)) {
+ *     for (...) if (duplicate) duplicates.log("Skipping duplicate description: '{}'", description);
+ * }
+ * </pre>
+ */
+public final class RepeatedMessage implements AutoCloseable {
+    private final Logger logger;
+    private final Level level;
+    private final String summary;
+    private final int maxLogged;
+    private int count;
+
+    /**
+     * @param logger logger to log to
+     * @param level level of the occurrences and the summary
+     * @param summary what the count in the summary line counts, e.g. "duplicate descriptions skipped"
+     * @param maxLogged number of occurrences to log one by one, at least 0
+     */
+    public RepeatedMessage(Logger logger, Level level, String summary, int maxLogged) {
+        if (maxLogged < 0) throw new IllegalArgumentException("maxLogged cannot be negative. Given: " + maxLogged);
+        this.logger = logger;
+        this.level = level;
+        this.summary = summary;
+        this.maxLogged = maxLogged;
+    }
+
+    /**
+     * Counts an occurrence and logs it if fewer than maxLogged were logged before.
+     * @param message message with one {} placeholder
+     * @param parameter value of the placeholder
+     */
+    public void log(String message, Object parameter) {
+        if (count++ < maxLogged) logger.log(level, message, parameter);
+    }
+
+    /**
+     * @return number of occurrences so far
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Logs the summary line if any occurrences were not logged one by one.
+     */
+    @Override
+    public void close() {
+        if (count > maxLogged) {
+            logger.log(level, "{} {} ({} shown)", String.format(Locale.ROOT, "%,d", count), summary, maxLogged);
+        }
+    }
+}
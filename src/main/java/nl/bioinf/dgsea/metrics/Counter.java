@@ -0,0 +1,29 @@
+package nl.bioinf.dgsea.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic count of one series, on a striped {@link LongAdder} so concurrent increments do not contend.
+ */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+    }
+
+    public void inc() {
+        value.increment();
+    }
+
+    /**
+     * @param amount amount to add, not negative
+     */
+    public void add(long amount) {
+        if (amount < 0) throw new IllegalArgumentException("Counters only increase. Given: " + amount);
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
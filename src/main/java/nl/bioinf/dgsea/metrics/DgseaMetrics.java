@@ -0,0 +1,61 @@
+package nl.bioinf.dgsea.metrics;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The metrics of this application, in one process-wide registry, exported by batch runs to a textfile and by
+ * long-running modes on /metrics. Series used on hot paths are looked up once, here.
+ */
+public final class DgseaMetrics {
+    public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+    private static final double[] SECONDS = {0.001, 0.005, 0.01, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60};
+
+    private static final MetricFamily<Counter> ROWS_PARSED = REGISTRY.counter("dgsea_rows_parsed_total",
+            "Rows parsed from DEG, pathway descriptions and pathway-genes input.", "kind");
+    private static final MetricFamily<Histogram> PARSE_SECONDS = REGISTRY.histogram("dgsea_parse_seconds",
+            "Time to parse one input, rows per second is dgsea_rows_parsed_total over dgsea_parse_seconds_sum.", SECONDS, "kind");
+    public static final Counter DEG_ROWS = ROWS_PARSED.labels("degs");
+    public static final Counter PATHWAY_ROWS = ROWS_PARSED.labels("pathways");
+    public static final Counter PATHWAY_GENE_ROWS = ROWS_PARSED.labels("pathway_genes");
+    public static final Histogram DEG_PARSE_SECONDS = PARSE_SECONDS.labels("degs");
+    public static final Histogram PATHWAY_PARSE_SECONDS = PARSE_SECONDS.labels("pathways");
+    public static final Histogram PATHWAY_GENE_PARSE_SECONDS = PARSE_SECONDS.labels("pathway_genes");
+
+    public static final Counter PATHWAYS_TESTED = REGISTRY.counter("dgsea_pathways_tested_total",
+            "Pathways tested for enrichment.").labels();
+    public static final Counter PVALUE_CACHE_HITS = REGISTRY.counter("dgsea_pvalue_cache_hits_total",
+            "Hypergeometric p-values reused from a pathway of the same size and observed DEG count.").labels();
+    public static final Counter PVALUE_CACHE_MISSES = REGISTRY.counter("dgsea_pvalue_cache_misses_total",
+            "Hypergeometric p-values calculated.").labels();
+
+    /** Time to draw and encode one chart, by format: png, jpeg or svg. */
+    public static final MetricFamily<Histogram> RENDER_SECONDS = REGISTRY.histogram("dgsea_render_seconds",
+            "Time to draw and encode one chart.", SECONDS, "format");
+    /** Bytes of output, by kind: chart, enrichment_csv, contingency_table, shard or http_response. */
+    public static final MetricFamily<Counter> BYTES_WRITTEN = REGISTRY.counter("dgsea_bytes_written_total",
+            "Bytes of charts, CSVs and tables written.", "kind");
+    /** Analysed contrasts or requests, by source: batch, watch or server. */
+    public static final MetricFamily<Counter> ANALYSES = REGISTRY.counter("dgsea_analyses_total",
+            "Contrasts or requests analysed, failed or not.", "source");
+    /** Failed contrasts or requests, by source: batch, watch or server. */
+    public static final MetricFamily<Counter> FAILURES = REGISTRY.counter("dgsea_failures_total",
+            "Contrasts or requests that failed.", "source");
+
+    private DgseaMetrics() {
+    }
+
+    /**
+     * Adds the size of a written output file to {@link #BYTES_WRITTEN}.
+     * @param kind kind of output
+     * @param file the output file, closed
+     */
+    public static void countWritten(String kind, Path file) {
+        try {
+            BYTES_WRITTEN.labels(kind).add(Files.size(file));
+        } catch (IOException _) {
+            // not counted, e.g. deleted meanwhile
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package nl.bioinf.dgsea.metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of observations of one series over fixed upper bounds, on striped adders so concurrent
+ * observations do not contend. Counts are kept per bucket and made cumulative when exported.
+ */
+public final class Histogram {
+    private final double[] upperBounds;
+    private final LongAdder[] buckets; // last bucket is +Inf
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(double[] upperBounds) {
+        this.upperBounds = upperBounds;
+        this.buckets = new LongAdder[upperBounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) buckets[i] = new LongAdder();
+    }
+
+    /**
+     * @param value observed value, e.g. a duration in seconds
+     */
+    public void observe(double value) {
+        int bucket = 0;
+        while (bucket < upperBounds.length && value > upperBounds[bucket]) bucket++;
+        buckets[bucket].increment();
+        sum.add(value);
+    }
+
+    /**
+     * Observes the seconds elapsed since a start time of {@link System#nanoTime()}.
+     */
+    public void observeNanosSince(long startNanos) {
+        observe((System.nanoTime() - startNanos) / 1e9);
+    }
+
+    double[] upperBounds() {
+        return upperBounds;
+    }
+
+    /**
+     * @return cumulative counts per upper bound, the last one of +Inf being the total count
+     */
+    long[] cumulativeCounts() {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < buckets.length; i++) {
+            total += buckets[i].sum();
+            counts[i] = total;
+        }
+        return counts;
+    }
+
+    double sum() {
+        return sum.sum();
+    }
+}
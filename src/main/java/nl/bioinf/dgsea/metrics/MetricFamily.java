@@ -0,0 +1,62 @@
+package nl.bioinf.dgsea.metrics;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Metric of one name and type, with a series per combination of label values.
+ * Look a series up once with {@link #labels(String...)} and keep it, so hot paths only touch its adders.
+ *
+ * @param <M> {@link Counter} or {@link Histogram}
+ */
+public final class MetricFamily<M> {
+    private final String name;
+    private final String help;
+    private final String type;
+    private final List<String> labelNames;
+    private final Supplier<M> newSeries;
+    private final Map<List<String>, M> series = new ConcurrentHashMap<>();
+
+    MetricFamily(String name, String help, String type, String[] labelNames, Supplier<M> newSeries) {
+        this.name = name;
+        this.help = help;
+        this.type = type;
+        this.labelNames = List.of(labelNames);
+        this.newSeries = newSeries;
+    }
+
+    /**
+     * @param labelValues one value per label name, in order
+     * @return the series of the label values, created on first use
+     * @throws IllegalArgumentException if the number of values does not match the label names
+     */
+    public M labels(String... labelValues) {
+        if (labelValues.length != labelNames.size()) {
+            throw new IllegalArgumentException("Metric %s has labels %s. Given: %s".formatted(name, labelNames, Arrays.toString(labelValues)));
+        }
+        return series.computeIfAbsent(List.of(labelValues), _ -> newSeries.get());
+    }
+
+    String name() {
+        return name;
+    }
+
+    String help() {
+        return help;
+    }
+
+    String type() {
+        return type;
+    }
+
+    List<String> labelNames() {
+        return labelNames;
+    }
+
+    Map<List<String>, M> series() {
+        return series;
+    }
+}
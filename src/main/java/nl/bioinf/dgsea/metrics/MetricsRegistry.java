@@ -0,0 +1,135 @@
+package nl.bioinf.dgsea.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of counters and histograms, exported in the Prometheus text exposition format (version 0.0.4). <br>
+ * Updating a metric is lock-free: every series is a set of striped adders. Exporting reads the adders without
+ * stopping updates, so an export taken while analyses run is a consistent-enough snapshot per series.
+ */
+public final class MetricsRegistry {
+    /** Content type of {@link #toText()} for HTTP responses. */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    private final List<MetricFamily<?>> families = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param name metric name, by convention ending in _total
+     * @param help description of the metric
+     * @param labelNames names of the labels of its series
+     * @return the new counter family
+     */
+    public MetricFamily<Counter> counter(String name, String help, String... labelNames) {
+        return register(new MetricFamily<>(name, help, "counter", labelNames, Counter::new));
+    }
+
+    /**
+     * @param name metric name, by convention ending in the unit, e.g. _seconds
+     * @param help description of the metric
+     * @param upperBounds increasing upper bounds of the buckets, without +Inf
+     * @param labelNames names of the labels of its series
+     * @return the new histogram family
+     */
+    public MetricFamily<Histogram> histogram(String name, String help, double[] upperBounds, String... labelNames) {
+        for (int i = 1; i < upperBounds.length; i++) {
+            if (upperBounds[i] <= upperBounds[i - 1]) throw new IllegalArgumentException("Bucket bounds must increase. Given: " + Arrays.toString(upperBounds));
+        }
+        double[] bounds = upperBounds.clone();
+        return register(new MetricFamily<>(name, help, "histogram", labelNames, () -> new Histogram(bounds)));
+    }
+
+    /**
+     * @return all metrics in the Prometheus text format, in order of registration
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder();
+        for (MetricFamily<?> family : families) {
+            text.append("# HELP ").append(family.name()).append(' ').append(family.help().replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            text.append("# TYPE ").append(family.name()).append(' ').append(family.type()).append('\n');
+            List<Map.Entry<List<String>, ?>> series = new ArrayList<>(family.series().entrySet());
+            series.sort(Comparator.comparing(entry -> String.join("\u0000", entry.getKey())));
+            for (Map.Entry<List<String>, ?> entry : series) {
+                String labels = labels(family.labelNames(), entry.getKey());
+                switch (entry.getValue()) {
+                    case Counter counter -> sample(text, family.name(), labels, null, counter.get());
+                    case Histogram histogram -> {
+                        double[] bounds = histogram.upperBounds();
+                        long[] counts = histogram.cumulativeCounts();
+                        for (int i = 0; i < counts.length; i++) {
+                            String le = i < bounds.length ? number(bounds[i]) : "+Inf";
+                            sample(text, family.name() + "_bucket", labels, "le=\"" + le + "\"", counts[i]);
+                        }
+                        text.append(family.name()).append("_sum").append(braced(labels, null)).append(' ').append(number(histogram.sum())).append('\n');
+                        sample(text, family.name() + "_count", labels, null, counts[counts.length - 1]);
+                    }
+                    default -> throw new IllegalStateException("Unknown metric type: " + entry.getValue());
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Writes all metrics to the writer, which is left open.
+     */
+    public void writeTo(Writer writer) throws IOException {
+        writer.write(toText());
+        writer.flush();
+    }
+
+    /**
+     * Writes all metrics to a file for the textfile collector of the Prometheus node exporter: to a temporary file
+     * in the same directory first, moved over the file atomically, so the collector never reads a partial file.
+     * @param file file to write, by convention ending in .prom
+     * @throws IOException if the file cannot be written
+     */
+    public void writeTextfile(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "." + file.getFileName(), ".tmp");
+        try {
+            Files.writeString(temporary, toText(), StandardCharsets.UTF_8);
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private <M> MetricFamily<M> register(MetricFamily<M> family) {
+        if (!family.name().matches("[a-zA-Z_:][a-zA-Z0-9_:]*")) throw new IllegalArgumentException("Invalid metric name: " + family.name());
+        if (families.stream().anyMatch(registered -> registered.name().equals(family.name()))) {
+            throw new IllegalArgumentException("Metric already registered: " + family.name());
+        }
+        families.add(family);
+        return family;
+    }
+
+    private static void sample(StringBuilder text, String name, String labels, String extraLabel, long value) {
+        text.append(name).append(braced(labels, extraLabel)).append(' ').append(value).append('\n');
+    }
+
+    private static String braced(String labels, String extraLabel) {
+        if (extraLabel != null) labels = labels.isEmpty() ? extraLabel : labels + "," + extraLabel;
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String labels(List<String> names, List<String> values) {
+        StringJoiner labels = new StringJoiner(",");
+        for (int i = 0; i < names.size(); i++) {
+            labels.add(names.get(i) + "=\"" + values.get(i).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n") + "\"");
+        }
+        return labels.toString();
+    }
+
+    private static String number(double value) {
+        if (value == Double.POSITIVE_INFINITY) return "+Inf";
+        if (value == (long) value) return Long.toString((long) value);
+        return Double.toString(value);
+    }
+}
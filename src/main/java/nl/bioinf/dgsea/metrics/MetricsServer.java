@@ -0,0 +1,65 @@
+package nl.bioinf.dgsea.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Local HTTP server exposing a registry on /metrics for Prometheus to scrape, for modes without an HTTP server of their own.
+ */
+public final class MetricsServer implements AutoCloseable {
+    private final HttpServer server;
+    private final Logger logger = LogManager.getLogger(MetricsServer.class);
+
+    /**
+     * Starts serving the registry on a single thread.
+     * @param address address to bind to
+     * @param registry registry to expose
+     * @throws IOException if the address cannot be bound
+     */
+    public MetricsServer(InetSocketAddress address, MetricsRegistry registry) throws IOException {
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/metrics", exchange -> send(exchange, registry));
+        server.start();
+        logger.info("Serving metrics on http://{}:{}/metrics", getAddress().getHostString(), getAddress().getPort());
+    }
+
+    /**
+     * @return address the server is bound to, with the actual port if port 0 was requested
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Answers a GET with the registry in the Prometheus text format, any other method with 405.
+     * @param exchange request to respond to, closed afterward
+     * @param registry registry to send
+     */
+    public static void send(HttpExchange exchange, MetricsRegistry registry) throws IOException {
+        try (exchange) {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = registry.toText().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", MetricsRegistry.CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length == 0 ? -1 : body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
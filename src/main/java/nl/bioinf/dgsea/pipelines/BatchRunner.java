@@ -0,0 +1,225 @@
+/**
+ * Analyses many contrasts (DEG lists) against one loaded pathway database in a single run.
+ */
+package nl.bioinf.dgsea.pipelines;
+
+import nl.bioinf.dgsea.Dgsea;
+import nl.bioinf.dgsea.DgseaExecutors;
+import nl.bioinf.dgsea.metrics.Counter;
+import nl.bioinf.dgsea.metrics.DgseaMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+/**
+ * Runs a {@link ContrastAnalysis} for every contrast on a bounded pool of worker threads, like {@link DgseaExecutors#io()}.
+ * Each contrast writes its outputs to its own directory, named after the contrast, under the output directory.
+ * A combined summary table (summary.csv) of all contrasts is written to the output directory, in input order.
+ * A contrast that fails is logged and reported in the summary, without stopping the other contrasts.
+ */
+public class BatchRunner {
+    static final String SUMMARY_FILE_NAME = "summary.csv";
+    static final String SUMMARY_HEADER = "Contrast,DEGs,Significant DEGs,Significant pathways,Top pathway,Top enrichment score,Status";
+    private final ContrastAnalysis contrastAnalysis;
+    private final ExecutorService workers;
+    private static final Counter ANALYSES = DgseaMetrics.ANALYSES.labels("batch");
+    private static final Counter FAILURES = DgseaMetrics.FAILURES.labels("batch");
+    private final Logger logger = LogManager.getLogger(BatchRunner.class);
+
+    /**
+     * A contrast to analyse.
+     * @param name name of the contrast, also used as its output directory name
+     * @param degsFile DEG file of the contrast
+     */
+    public record Contrast(String name, Path degsFile) {
+    }
+
+    /**
+     * @param contrastAnalysis analysis to run for every contrast
+     * @param workers pool to analyse the contrasts on, its size is the maximum number of contrasts analysed at the same time;
+     *                not shut down by this runner
+     */
+    public BatchRunner(ContrastAnalysis contrastAnalysis, ExecutorService workers) {
+        this.contrastAnalysis = contrastAnalysis;
+        this.workers = workers;
+    }
+
+    /**
+     * Reads a manifest with one contrast per line: either "name,path-to-degs-file" or just "path-to-degs-file",
+     * in which case the file name without extension is the name. Relative paths are resolved against the manifest's directory.
+     * Empty lines and lines starting with '#' are skipped.
+     * @param manifest manifest file
+     * @return contrasts in manifest order
+     * @throws IOException if the manifest cannot be read
+     * @throws IllegalArgumentException if two contrasts get the same name, or a name is not usable as directory name
+     */
+    public static List<Contrast> readManifest(Path manifest) throws IOException {
+        Path baseDir = manifest.toAbsolutePath().getParent();
+        List<Contrast> contrasts = new ArrayList<>();
+        try (BufferedReader br = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] values = line.split(",");
+                Path degsFile = baseDir.resolve(values[values.length - 1].trim());
+                String source = "line %d of manifest %s".formatted(lineNumber, manifest);
+                String name = values.length > 1 ? toSafeName(values[0].trim(), source) : toSafeName(getBaseName(degsFile), source);
+                contrasts.add(new Contrast(name, degsFile));
+            }
+        }
+        return requireUniqueNames(contrasts);
+    }
+
+    /**
+     * Lists every .csv and .tsv file in a directory as contrast, named after the file name without extension.
+     * @param degsDir directory with DEG files
+     * @return contrasts sorted on file name
+     * @throws IOException if the directory cannot be listed
+     * @throws IllegalArgumentException if a file name is not usable as directory name, like ".csv"
+     */
+    public static List<Contrast> listDirectory(Path degsDir) throws IOException {
+        try (Stream<Path> files = Files.list(degsDir)) {
+            return requireUniqueNames(files
+                    .filter(Files::isRegularFile)
+                    .filter(BatchRunner::isDegsFile)
+                    .sorted()
+                    .map(file -> new Contrast(getContrastName(file), file))
+                    .toList());
+        }
+    }
+
+    /**
+     * Analyses every contrast and writes the combined summary table.
+     * @param contrasts contrasts to analyse
+     * @param outputDir directory to write the contrast directories and summary table to
+     * @return summaries in contrast order
+     * @throws IOException if the output directory or summary table cannot be written
+     * @throws InterruptedException if interrupted while waiting for the contrasts
+     */
+    public List<ContrastSummary> run(List<Contrast> contrasts, Path outputDir) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        List<Callable<ContrastSummary>> tasks = contrasts.stream()
+                .<Callable<ContrastSummary>>map(contrast -> () -> runContrast(contrast, outputDir))
+                .toList();
+        List<ContrastSummary> summaries = new ArrayList<>(contrasts.size());
+        List<Future<ContrastSummary>> futures = workers.invokeAll(tasks);
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                summaries.add(futures.get(i).get());
+            } catch (ExecutionException e) {
+                FAILURES.inc();
+                summaries.add(ContrastSummary.failed(contrasts.get(i).name(), String.valueOf(e.getCause())));
+            }
+        }
+        writeSummary(summaries, outputDir.resolve(SUMMARY_FILE_NAME));
+        long failed = summaries.stream().filter(summary -> !summary.isOk()).count();
+        logger.info("Analysed {} contrast(s), {} failed. Summary written to: {}", summaries.size(), failed, outputDir.resolve(SUMMARY_FILE_NAME));
+        return summaries;
+    }
+
+    /**
+     * Reads and analyses one contrast, turning any failure into a failed summary.
+     */
+    private ContrastSummary runContrast(Contrast contrast, Path outputDir) {
+        ANALYSES.inc();
+        try {
+            ContrastSummary summary = contrastAnalysis.run(contrast.name(), Dgsea.readDegs(contrast.degsFile()), outputDir.resolve(contrast.name()));
+            logger.info("Contrast '{}' analysed", contrast.name());
+            return summary;
+        } catch (IOException | RuntimeException e) {
+            FAILURES.inc();
+            logger.error("Contrast '{}' failed: {}", contrast.name(), e.getMessage());
+            return ContrastSummary.failed(contrast.name(), String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * Writes summaries as CSV table, one row per contrast.
+     * @param summaries summaries to write
+     * @param summaryFile file to write to
+     * @throws IOException if writing fails
+     */
+    public static void writeSummary(List<ContrastSummary> summaries, Path summaryFile) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(summaryFile, StandardCharsets.UTF_8)) {
+            writer.write(SUMMARY_HEADER);
+            writer.newLine();
+            for (ContrastSummary summary : summaries) {
+                writer.write(toSummaryRow(summary));
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * @param summary summary of one contrast
+     * @return the summary as CSV row of the summary table, without line separator
+     */
+    static String toSummaryRow(ContrastSummary summary) {
+        return String.join(",",
+                summary.contrast(),
+                String.valueOf(summary.degCount()),
+                String.valueOf(summary.significantDegCount()),
+                String.valueOf(summary.significantPathwayCount()),
+                summary.topPathwayId(),
+                Double.isNaN(summary.topEnrichmentScore()) ? "" : String.valueOf(summary.topEnrichmentScore()),
+                summary.status().replace(',', ';'));
+    }
+
+    static boolean isDegsFile(Path file) {
+        String fileName = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return fileName.endsWith(".csv") || fileName.endsWith(".tsv");
+    }
+
+    /**
+     * @return file name without extension, made safe as directory name
+     * @throws IllegalArgumentException if the name is not usable as directory name
+     */
+    static String getContrastName(Path degsFile) {
+        return toSafeName(getBaseName(degsFile), "DEG file " + degsFile);
+    }
+
+    private static String getBaseName(Path degsFile) {
+        String fileName = degsFile.getFileName().toString();
+        int extension = fileName.lastIndexOf('.');
+        return extension > 0 ? fileName.substring(0, extension) : fileName;
+    }
+
+    /**
+     * Replaces characters unsafe for directory names by '_'. Names that are empty or start with '.', like "..",
+     * are rejected, so a contrast directory always is a visible directory inside the output directory.
+     * @param name contrast name
+     * @param source where the name comes from, used in the error message
+     * @return safe name
+     * @throws IllegalArgumentException if the name is empty or starts with '.'
+     */
+    static String toSafeName(String name, String source) {
+        String safeName = name.replaceAll("[^A-Za-z0-9._-]", "_");
+        if (safeName.isEmpty() || safeName.startsWith(".")) {
+            throw new IllegalArgumentException("Contrast name '%s' of %s cannot be used as directory name, it must not be empty or start with '.'"
+                    .formatted(name, source));
+        }
+        return safeName;
+    }
+
+    private static List<Contrast> requireUniqueNames(List<Contrast> contrasts) {
+        Set<String> names = new HashSet<>();
+        for (Contrast contrast : contrasts) {
+            if (!names.add(contrast.name())) {
+                throw new IllegalArgumentException("Contrast names must be unique, duplicate name: " + contrast.name());
+            }
+        }
+        return contrasts;
+    }
+}
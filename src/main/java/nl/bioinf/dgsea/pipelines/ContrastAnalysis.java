@@ -0,0 +1,231 @@
+/**
+ * Runs every analysis on one DEG list and writes the outputs to its own directory.
+ */
+package nl.bioinf.dgsea.pipelines;
+
+import nl.bioinf.dgsea.Dgsea;
+import nl.bioinf.dgsea.data_processing.Deg;
+import nl.bioinf.dgsea.data_processing.EnrichmentResult;
+import nl.bioinf.dgsea.metrics.DgseaMetrics;
+import nl.bioinf.dgsea.profiling.OutputWriteEvent;
+
+import java.awt.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Analyses one contrast (DEG list) against the pathway database of a {@link Dgsea} facade and writes the requested outputs.
+ * Enrichment is calculated once and shared by the enrichment CSV and both enrichment charts.
+ * Charts are rendered on the chart executor while the tables are written, so a small pool renders them concurrently.
+ * Instances hold no mutable state, so one instance can analyse many contrasts concurrently.
+ */
+public class ContrastAnalysis {
+    static final String HTML_INDEX_FILE_NAME = "index.html";
+    private final Dgsea dgsea;
+    private final Settings settings;
+    private final ChartOptions chartOptions;
+    private final Executor chartExecutor;
+
+    /**
+     * Output files that can be written per contrast.
+     */
+    public enum Output {
+        CON_TABLE("con_table.txt"),
+        ENRICHMENT("enrichment.csv"),
+        ENRICH_BAR_CHART("enrich_bar_chart.png"),
+        ENRICH_DOT_CHART("enrich_dot_chart.png"),
+        PERC_LFC_CHART("perc_lfc_chart.png");
+
+        private final String fileName;
+
+        Output(String fileName) {
+            this.fileName = fileName;
+        }
+
+        public String getFileName() {
+            return fileName;
+        }
+    }
+
+    /**
+     * Options applied to every contrast.
+     * @param pval threshold on adjusted p-value for a DEG to be significant
+     * @param maxNPathways maximum number of pathways in the charts
+     * @param outputs outputs to write
+     * @param htmlIndex if a self-contained index.html showing all outputs should be written as well
+     */
+    public record Settings(double pval, int maxNPathways, Set<Output> outputs, boolean htmlIndex) {
+        public Settings {
+            if (pval < 0 || pval > 1) throw new IllegalArgumentException("pval must be between 0.0 and 1.0. Given pval: " + pval);
+            if (maxNPathways <= 0) throw new IllegalArgumentException("maxNPathways must be at least 1. Given: " + maxNPathways);
+            outputs = outputs == null || outputs.isEmpty() ? EnumSet.allOf(Output.class) : EnumSet.copyOf(outputs);
+        }
+
+        public Settings(double pval, int maxNPathways, Set<Output> outputs) {
+            this(pval, maxNPathways, outputs, false);
+        }
+    }
+
+    /**
+     * Looks of the charts.
+     * @param title chart title, the contrast name if null
+     * @param colorManual chart colors, default colors if null or empty
+     * @param dotSize dot size of the dot chart, positive
+     * @param dotTransparency dot transparency of the dot chart, between 0.0 and 1.0
+     * @param pathwayIds pathways of the percentage log-fold-change chart, all pathways if null or empty
+     */
+    public record ChartOptions(String title, Color[] colorManual, double dotSize, float dotTransparency, String[] pathwayIds) {
+        public static final ChartOptions DEFAULT = new ChartOptions(null, null, 30.0, 1.0f, null);
+
+        public ChartOptions {
+            if (dotSize < 0) throw new IllegalArgumentException("dotSize must be positive. Given: " + dotSize);
+            if (dotTransparency < 0 || dotTransparency > 1) throw new IllegalArgumentException("dotTransparency must be between 0.0 and 1.0. Given: " + dotTransparency);
+        }
+    }
+
+    /**
+     * Writes a chart to a stream.
+     */
+    @FunctionalInterface
+    private interface ChartWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Creates an analysis with default charts, rendered on the calling thread.
+     */
+    public ContrastAnalysis(Dgsea dgsea, Settings settings) {
+        this(dgsea, settings, ChartOptions.DEFAULT, Runnable::run);
+    }
+
+    /**
+     * @param dgsea facade of the pathway database
+     * @param settings options applied to every contrast
+     * @param chartOptions looks of the charts
+     * @param chartExecutor executor to render the charts on, for example a small pool
+     */
+    public ContrastAnalysis(Dgsea dgsea, Settings settings, ChartOptions chartOptions, Executor chartExecutor) {
+        this.dgsea = dgsea;
+        this.settings = settings;
+        this.chartOptions = chartOptions;
+        this.chartExecutor = chartExecutor;
+    }
+
+    /**
+     * Analyses the DEGs and writes the requested outputs to the output directory, which is created if needed.
+     * @param contrast name of the contrast
+     * @param degs DEGs of the contrast
+     * @param outputDir directory to write the outputs to
+     * @return summary of the contrast
+     * @throws IOException if an output cannot be written
+     * @throws IllegalArgumentException if the DEGs cannot be analysed against the pathway database
+     */
+    public ContrastSummary run(String contrast, List<Deg> degs, Path outputDir) throws IOException {
+        Files.createDirectories(outputDir);
+        Set<Output> outputs = settings.outputs();
+        String title = chartOptions.title() == null ? contrast : chartOptions.title();
+        List<CompletableFuture<Void>> charts = new ArrayList<>();
+
+        if (outputs.contains(Output.PERC_LFC_CHART)) { // does not need the enrichment, so starts first
+            charts.add(writeChart(outputDir, Output.PERC_LFC_CHART, png -> dgsea.writePercLfcChart(degs, chartOptions.pathwayIds(),
+                    settings.maxNPathways(), title, "Pathways", "Percentage log-fold-change", chartOptions.colorManual(), png)));
+        }
+        try {
+            if (outputs.contains(Output.CON_TABLE)) {
+                Path conTable = outputDir.resolve(Output.CON_TABLE.getFileName());
+                OutputWriteEvent event = new OutputWriteEvent();
+                event.begin();
+                Files.writeString(conTable, dgsea.contingencyTable(degs, settings.pval()));
+                event.end(conTable, "contingency table");
+                DgseaMetrics.countWritten("contingency_table", conTable);
+            }
+            List<EnrichmentResult> results;
+            if (outputs.contains(Output.ENRICHMENT)) {
+                Path enrichmentCsv = outputDir.resolve(Output.ENRICHMENT.getFileName());
+                OutputWriteEvent event = new OutputWriteEvent();
+                event.begin();
+                try (Writer csv = Files.newBufferedWriter(enrichmentCsv, StandardCharsets.UTF_8)) {
+                    results = dgsea.enrichment(degs, csv);
+                }
+                event.end(enrichmentCsv, "enrichment csv");
+                DgseaMetrics.countWritten("enrichment_csv", enrichmentCsv);
+            } else {
+                results = dgsea.enrichment(degs);
+            }
+            List<EnrichmentResult> topResults = Dgsea.topResults(results, settings.maxNPathways());
+            if (outputs.contains(Output.ENRICH_BAR_CHART)) {
+                charts.add(writeChart(outputDir, Output.ENRICH_BAR_CHART,
+                        png -> dgsea.writeEnrichmentBarChart(topResults, title, chartOptions.colorManual(), png)));
+            }
+            if (outputs.contains(Output.ENRICH_DOT_CHART)) {
+                charts.add(writeChart(outputDir, Output.ENRICH_DOT_CHART, png -> dgsea.writeEnrichmentDotChart(topResults, title,
+                        chartOptions.colorManual(), chartOptions.dotSize(), chartOptions.dotTransparency(), png)));
+            }
+            awaitCharts(charts);
+            ContrastSummary summary = summarize(contrast, degs, results, topResults);
+            if (settings.htmlIndex()) {
+                ReportPage.write(outputDir.resolve(HTML_INDEX_FILE_NAME), title, summary, topResults,
+                        dgsea.getDatabase().pathwayIndex(), outputDir, outputs);
+            }
+            return summary;
+        } finally {
+            // never leave charts writing into the output directory after returning, also not on failure
+            CompletableFuture.allOf(charts.toArray(CompletableFuture[]::new)).exceptionally(_ -> null).join();
+        }
+    }
+
+    private CompletableFuture<Void> writeChart(Path outputDir, Output output, ChartWriter chartWriter) {
+        return CompletableFuture.runAsync(() -> {
+            OutputWriteEvent event = new OutputWriteEvent();
+            event.begin();
+            try (OutputStream png = newOutputStream(outputDir, output)) {
+                chartWriter.write(png);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            event.end(outputDir.resolve(output.getFileName()), "chart");
+            DgseaMetrics.countWritten("chart", outputDir.resolve(output.getFileName()));
+        }, chartExecutor);
+    }
+
+    /**
+     * Waits for all charts and rethrows the failure of the first failed chart.
+     */
+    private static void awaitCharts(List<CompletableFuture<Void>> charts) throws IOException {
+        for (CompletableFuture<Void> chart : charts) {
+            try {
+                chart.join();
+            } catch (CompletionException e) {
+                switch (e.getCause()) {
+                    case UncheckedIOException ioException -> throw ioException.getCause();
+                    case RuntimeException runtimeException -> throw runtimeException;
+                    case Error error -> throw error;
+                    default -> throw e;
+                }
+            }
+        }
+    }
+
+    private ContrastSummary summarize(String contrast, List<Deg> degs, List<EnrichmentResult> results, List<EnrichmentResult> topResults) {
+        int significantDegCount = (int) degs.stream().filter(deg -> deg.adjustedPValue() <= settings.pval()).count();
+        int significantPathwayCount = (int) results.stream()
+                .filter(result -> !Double.isNaN(result.adjustedPValue()) && result.adjustedPValue() < 0.05)
+                .count();
+        EnrichmentResult top = topResults.isEmpty() ? null : topResults.getFirst();
+        return new ContrastSummary(contrast, degs.size(), significantDegCount, significantPathwayCount,
+                top == null ? "" : top.pathwayId(), top == null ? Double.NaN : top.enrichmentScore(), "ok");
+    }
+
+    private OutputStream newOutputStream(Path outputDir, Output output) throws IOException {
+        return new BufferedOutputStream(Files.newOutputStream(outputDir.resolve(output.getFileName())));
+    }
+}
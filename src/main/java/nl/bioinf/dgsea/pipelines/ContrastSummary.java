@@ -0,0 +1,31 @@
+package nl.bioinf.dgsea.pipelines;
+/**
+ * Represents the summary of one analysed contrast (DEG list), as a row of a combined summary table.
+ *
+ * @param contrast The name of the contrast.
+ * @param degCount Number of DEGs in the contrast.
+ * @param significantDegCount Number of DEGs with an adjusted p-value at or below the p-value threshold.
+ * @param significantPathwayCount Number of pathways with an adjusted enrichment p-value below 0.05.
+ * @param topPathwayId Pathway-id of the significant pathway with the highest enrichment score, empty if none.
+ * @param topEnrichmentScore Enrichment score of the top pathway, NaN if none.
+ * @param status "ok", or the reason the contrast failed.
+ */
+public record ContrastSummary(String contrast, int degCount, int significantDegCount, int significantPathwayCount,
+                              String topPathwayId, double topEnrichmentScore, String status) {
+
+    /**
+     * @param contrast name of the failed contrast
+     * @param reason reason of failure
+     * @return summary of a contrast that could not be analysed
+     */
+    public static ContrastSummary failed(String contrast, String reason) {
+        return new ContrastSummary(contrast, 0, 0, 0, "", Double.NaN, "failed: " + reason);
+    }
+
+    /**
+     * @return true if the contrast was analysed without failure
+     */
+    public boolean isOk() {
+        return "ok".equals(status);
+    }
+}
@@ -0,0 +1,265 @@
+/**
+ * Watches a directory and analyses every DEG file that arrives in it, while keeping the pathway database loaded.
+ */
+package nl.bioinf.dgsea.pipelines;
+
+import nl.bioinf.dgsea.Dgsea;
+import nl.bioinf.dgsea.DgseaExecutors;
+import nl.bioinf.dgsea.data_processing.Deg;
+import nl.bioinf.dgsea.metrics.Counter;
+import nl.bioinf.dgsea.metrics.DgseaMetrics;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Runs a {@link ContrastAnalysis} for every .csv or .tsv file written to the watched directory, using a {@link WatchService}.
+ * A file counts as complete once its size and modification time have not changed for the settle time,
+ * so files that are still being written upstream are not analysed half-way. <br>
+ * Complete files are analysed in parallel on a bounded pool, like {@link DgseaExecutors#io()}, each into its own directory named after the file and
+ * the start of its content hash, and a row is appended to summary.csv in the output directory when it finishes.
+ * Files are deduplicated by the SHA-256 hash of their content: a copy or re-write with identical content is skipped.
+ * Hashes of processed files are kept in .processed in the output directory, so a restarted watcher skips them as well.
+ */
+public class DirectoryWatcher implements AutoCloseable {
+    static final String PROCESSED_FILE_NAME = ".processed";
+    private static final Counter ANALYSES = DgseaMetrics.ANALYSES.labels("watch");
+    private static final Counter FAILURES = DgseaMetrics.FAILURES.labels("watch");
+    private final ContrastAnalysis contrastAnalysis;
+    private final Path watchDir;
+    private final Path outputDir;
+    private final long settleNanos;
+    private final ExecutorService workers;
+    private final List<Future<?>> running = new ArrayList<>();
+    private final Set<String> processedHashes = ConcurrentHashMap.newKeySet();
+    private final Map<Path, PendingFile> pendingFiles = new HashMap<>();
+    private final Object outputLock = new Object();
+    private volatile boolean closed = false;
+    private final Logger logger = LogManager.getLogger(DirectoryWatcher.class);
+
+    /**
+     * State of a file that is not yet known to be complete.
+     * @param size last seen size
+     * @param lastModified last seen modification time
+     * @param lastChangeNanos time size or modification time last changed
+     */
+    private record PendingFile(long size, long lastModified, long lastChangeNanos) {
+    }
+
+    /**
+     * @param contrastAnalysis analysis to run for every arriving file
+     * @param watchDir directory to watch
+     * @param outputDir directory to write the contrast directories, summary.csv and .processed to
+     * @param workers pool to analyse the files on, its size is the maximum number of files analysed at the same time;
+     *                not shut down by this watcher
+     * @param settleTime time a file's size and modification time must be unchanged to count as complete
+     */
+    public DirectoryWatcher(ContrastAnalysis contrastAnalysis, Path watchDir, Path outputDir, ExecutorService workers, Duration settleTime) {
+        if (settleTime.isNegative()) throw new IllegalArgumentException("settleTime cannot be negative. Given: " + settleTime);
+        this.contrastAnalysis = contrastAnalysis;
+        this.watchDir = watchDir;
+        this.outputDir = outputDir;
+        this.settleNanos = settleTime.toNanos();
+        this.workers = workers;
+    }
+
+    /**
+     * Watches the directory until closed or interrupted, then waits for the files being analysed.
+     * @param processExisting if files already in the directory should be analysed as well
+     * @throws IOException if the directory cannot be watched or the output directory cannot be written
+     * @throws InterruptedException if interrupted while waiting for the running analyses
+     */
+    public void run(boolean processExisting) throws IOException, InterruptedException {
+        Files.createDirectories(outputDir);
+        loadProcessedHashes();
+        long pollMillis = Math.max(50, TimeUnit.NANOSECONDS.toMillis(settleNanos) / 4);
+        try (WatchService watchService = watchDir.getFileSystem().newWatchService()) {
+            watchDir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+            if (processExisting) addAllPending();
+            logger.info("Watching {} for DEG files, writing results to {}", watchDir, outputDir);
+
+            while (!closed && !Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW) {
+                            addAllPending();
+                        } else {
+                            addPending(watchDir.resolve((Path) event.context()));
+                        }
+                    }
+                    if (!key.reset()) {
+                        logger.error("Watched directory {} is no longer accessible", watchDir);
+                        break;
+                    }
+                }
+                submitCompleteFiles();
+            }
+        } catch (ClosedWatchServiceException _) {
+            // closed while polling
+        } finally {
+            awaitRunning();
+        }
+    }
+
+    /**
+     * Stops watching. Files already being analysed are finished.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Waits for the files submitted by this watcher to be analysed.
+     */
+    private void awaitRunning() throws InterruptedException {
+        for (Future<?> analysis : running) {
+            try {
+                analysis.get();
+            } catch (ExecutionException e) {
+                logger.error("Analysis failed: {}", e.getCause().getMessage());
+            }
+        }
+        running.clear();
+    }
+
+    private void addAllPending() throws IOException {
+        try (Stream<Path> files = Files.list(watchDir)) {
+            files.forEach(this::addPending);
+        }
+    }
+
+    /**
+     * Starts or restarts the settle time of a file, if it looks like a DEG file.
+     */
+    private void addPending(Path file) {
+        String fileName = file.getFileName().toString();
+        if (fileName.startsWith(".") || !BatchRunner.isDegsFile(file)) return;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            if (!attributes.isRegularFile()) return;
+            pendingFiles.put(file, new PendingFile(attributes.size(), attributes.lastModifiedTime().toMillis(), System.nanoTime()));
+        } catch (IOException _) {
+            pendingFiles.remove(file); // removed again before it could be read
+        }
+    }
+
+    /**
+     * Submits every pending file whose size and modification time did not change during the settle time.
+     */
+    private void submitCompleteFiles() {
+        long now = System.nanoTime();
+        running.removeIf(Future::isDone);
+        Iterator<Map.Entry<Path, PendingFile>> iterator = pendingFiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Path, PendingFile> entry = iterator.next();
+            Path file = entry.getKey();
+            PendingFile pending = entry.getValue();
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                if (attributes.size() != pending.size() || attributes.lastModifiedTime().toMillis() != pending.lastModified()) {
+                    entry.setValue(new PendingFile(attributes.size(), attributes.lastModifiedTime().toMillis(), now));
+                } else if (now - pending.lastChangeNanos() >= settleNanos) {
+                    iterator.remove();
+                    running.add(workers.submit(() -> process(file)));
+                }
+            } catch (IOException _) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Hashes, deduplicates and analyses one complete file.
+     * The DEGs are parsed from the hashed bytes, so the analysed content is exactly the hashed content.
+     */
+    private void process(Path file) {
+        String contrast = file.getFileName().toString();
+        ContrastSummary summary;
+        String hash = null;
+        try {
+            contrast = BatchRunner.getContrastName(file);
+            byte[] content = Files.readAllBytes(file);
+            String contentHash = sha256(content);
+            if (!processedHashes.add(contentHash)) {
+                logger.info("Skipping {}: identical content was already processed", file.getFileName());
+                return;
+            }
+            hash = contentHash;
+            List<Deg> degs = Dgsea.readDegs(new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8));
+            String contrastDir = contrast + "_" + hash.substring(0, 8);
+            summary = contrastAnalysis.run(contrast, degs, outputDir.resolve(contrastDir));
+            logger.info("Contrast '{}' analysed into {}", contrast, outputDir.resolve(contrastDir));
+        } catch (IOException | RuntimeException e) {
+            FAILURES.inc();
+            logger.error("Contrast '{}' failed: {}", contrast, e.getMessage());
+            summary = ContrastSummary.failed(contrast, String.valueOf(e.getMessage()));
+            if (hash != null) processedHashes.remove(hash); // not processed, so a file with this content is analysed again
+            hash = null;
+        }
+        ANALYSES.inc();
+        recordProcessed(summary, hash, file);
+    }
+
+    /**
+     * Appends the summary row, and the hash if the file could be hashed, to the output files.
+     */
+    private void recordProcessed(ContrastSummary summary, String hash, Path file) {
+        synchronized (outputLock) {
+            try {
+                Path summaryFile = outputDir.resolve(BatchRunner.SUMMARY_FILE_NAME);
+                boolean newSummary = Files.notExists(summaryFile);
+                try (BufferedWriter writer = Files.newBufferedWriter(summaryFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    if (newSummary) {
+                        writer.write(BatchRunner.SUMMARY_HEADER);
+                        writer.newLine();
+                    }
+                    writer.write(BatchRunner.toSummaryRow(summary));
+                    writer.newLine();
+                }
+                if (hash != null) {
+                    Files.writeString(outputDir.resolve(PROCESSED_FILE_NAME), hash + "," + file.getFileName() + System.lineSeparator(),
+                            StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                }
+            } catch (IOException e) {
+                logger.error("Could not record result of {}: {}", file.getFileName(), e.getMessage());
+            }
+        }
+    }
+
+    private void loadProcessedHashes() throws IOException {
+        Path processedFile = outputDir.resolve(PROCESSED_FILE_NAME);
+        if (Files.notExists(processedFile)) return;
+        for (String line : Files.readAllLines(processedFile, StandardCharsets.UTF_8)) {
+            int separator = line.indexOf(',');
+            if (separator > 0) processedHashes.add(line.substring(0, separator));
+        }
+        logger.info("{} previously processed file(s) will be skipped", processedHashes.size());
+    }
+
+    /**
+     * @param content bytes to hash
+     * @return lowercase hexadecimal SHA-256 hash
+     */
+    static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // required on every Java platform
+        }
+    }
+}
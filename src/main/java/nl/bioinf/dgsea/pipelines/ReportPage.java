@@ -0,0 +1,102 @@
+package nl.bioinf.dgsea.pipelines;
+
+import nl.bioinf.dgsea.data_processing.EnrichmentResult;
+import nl.bioinf.dgsea.data_processing.PathwayIndex;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Writes a self-contained HTML page of the outputs of one contrast.
+ * Charts are embedded as base64 data URIs and tables as HTML, so the page can be shared as a single file.
+ */
+final class ReportPage {
+
+    private ReportPage() {
+    }
+
+    /**
+     * @param htmlFile file to write the page to
+     * @param title page title
+     * @param summary summary of the contrast
+     * @param topResults top enriched pathways, highest enrichment score first
+     * @param pathwayIndex pathway descriptions of the database, for descriptions of the top pathways
+     * @param outputDir directory the outputs were written to
+     * @param outputs outputs that were written
+     * @throws IOException if an output cannot be read or the page cannot be written
+     */
+    static void write(Path htmlFile, String title, ContrastSummary summary, List<EnrichmentResult> topResults,
+                      PathwayIndex pathwayIndex, Path outputDir, Set<ContrastAnalysis.Output> outputs) throws IOException {
+        try (BufferedWriter html = Files.newBufferedWriter(htmlFile, StandardCharsets.UTF_8)) {
+            html.write("""
+                    <!DOCTYPE html>
+                    <html lang="en">
+                    <head>
+                    <meta charset="utf-8">
+                    <title>%1$s</title>
+                    <style>
+                    body { font-family: sans-serif; margin: 2em; }
+                    table { border-collapse: collapse; }
+                    th, td { border: 1px solid #ccc; padding: 0.2em 0.6em; text-align: left; }
+                    img { max-width: 100%%; display: block; margin: 1em 0; }
+                    </style>
+                    </head>
+                    <body>
+                    <h1>%1$s</h1>
+                    <p>%2$d DEGs, %3$d significant; %4$d significantly enriched pathways.</p>
+                    """.formatted(escape(title), summary.degCount(), summary.significantDegCount(), summary.significantPathwayCount()));
+
+            html.write("<h2>Top enriched pathways</h2>\n");
+            if (topResults.isEmpty()) {
+                html.write("<p>No pathway has an adjusted p-value below 0.05.</p>\n");
+            } else {
+                html.write("<table>\n<tr><th>Pathway</th><th>Description</th><th>Enrichment score</th><th>P-value</th><th>Adjusted p-value</th></tr>\n");
+                for (EnrichmentResult result : topResults) {
+                    html.write(String.format(Locale.ROOT, "<tr><td>%s</td><td>%s</td><td>%.3f</td><td>%.3g</td><td>%.3g</td></tr>\n",
+                            escape(result.pathwayId()), escape(Objects.requireNonNullElse(pathwayIndex.description(result.pathwayId()), "")),
+                            result.enrichmentScore(), result.pValue(), result.adjustedPValue()));
+                }
+                html.write("</table>\n");
+            }
+            if (outputs.contains(ContrastAnalysis.Output.ENRICHMENT)) {
+                html.write("<p><a href=\"%s\">All enrichment results (CSV)</a></p>\n".formatted(ContrastAnalysis.Output.ENRICHMENT.getFileName()));
+            }
+
+            for (ContrastAnalysis.Output chart : List.of(ContrastAnalysis.Output.ENRICH_BAR_CHART,
+                    ContrastAnalysis.Output.ENRICH_DOT_CHART, ContrastAnalysis.Output.PERC_LFC_CHART)) {
+                if (!outputs.contains(chart)) continue;
+                byte[] png = Files.readAllBytes(outputDir.resolve(chart.getFileName()));
+                html.write("<img alt=\"%s\" src=\"data:image/png;base64,%s\">\n".formatted(
+                        chart.getFileName(), Base64.getEncoder().encodeToString(png)));
+            }
+
+            if (outputs.contains(ContrastAnalysis.Output.CON_TABLE)) {
+                html.write("<h2>Contingency table</h2>\n<pre>");
+                html.write(escape(Files.readString(outputDir.resolve(ContrastAnalysis.Output.CON_TABLE.getFileName()))));
+                html.write("</pre>\n");
+            }
+            html.write("</body>\n</html>\n");
+        }
+    }
+
+    /**
+     * @return text with the HTML special characters escaped
+     */
+    static String escape(String text) {
+        StringBuilder escaped = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            switch (c) {
+                case '<' -> escaped.append("&lt;");
+                case '>' -> escaped.append("&gt;");
+                case '&' -> escaped.append("&amp;");
+                case '"' -> escaped.append("&quot;");
+                default -> escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package nl.bioinf.dgsea.profiling;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event of drawing and encoding one chart.
+ */
+@Name("nl.bioinf.dgsea.ChartRender")
+@Label("Chart Render")
+@Category({"DGSEA", "Charts"})
+@Description("Drawing a chart and encoding it as PNG, JPEG or SVG")
+@StackTrace(false)
+public final class ChartRenderEvent extends Event {
+    @Label("Format")
+    public String format;
+    @Label("Width")
+    public int width;
+    @Label("Height")
+    public int height;
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    /**
+     * Ends the event and commits it if enabled and above its threshold.
+     */
+    public void end(String format, int width, int height, long bytes) {
+        if (!shouldCommit()) return;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.bytes = bytes;
+        commit();
+    }
+}
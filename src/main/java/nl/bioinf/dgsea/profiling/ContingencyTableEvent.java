@@ -0,0 +1,31 @@
+package nl.bioinf.dgsea.profiling;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event of counting the contingency tables of all pathways.
+ */
+@Name("nl.bioinf.dgsea.ContingencyTable")
+@Label("Contingency Table")
+@Category({"DGSEA", "Enrichment"})
+@Description("Counting DEGs on presence in every pathway against significance")
+@StackTrace(false)
+public final class ContingencyTableEvent extends Event {
+    @Label("Pathways")
+    public int pathways;
+    @Label("DEGs")
+    public int degs;
+    @Label("Significant DEGs")
+    public int significantDegs;
+
+    /**
+     * Ends the event and commits it if enabled and above its threshold.
+     */
+    public void end(int pathways, int degs, int significantDegs) {
+        if (!shouldCommit()) return;
+        this.pathways = pathways;
+        this.degs = degs;
+        this.significantDegs = significantDegs;
+        commit();
+    }
+}
@@ -0,0 +1,38 @@
+package nl.bioinf.dgsea.profiling;
+
+import jdk.jfr.*;
+
+import java.io.File;
+
+/**
+ * JFR event of parsing one input file.
+ */
+@Name("nl.bioinf.dgsea.FileParse")
+@Label("File Parse")
+@Category({"DGSEA", "Parsing"})
+@Description("Parsing of a DEG, pathway descriptions or pathway-genes file")
+@StackTrace(false)
+public final class FileParseEvent extends Event {
+    @Label("File")
+    public String file;
+    @Label("Kind")
+    @Description("degs, pathways or pathway genes")
+    public String kind;
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+    @Label("Rows")
+    public int rows;
+
+    /**
+     * Ends the event and commits it if enabled and above its threshold.
+     */
+    public void end(File file, String kind, int rows) {
+        if (!shouldCommit()) return;
+        this.file = file.getPath();
+        this.kind = kind;
+        this.bytes = file.length();
+        this.rows = rows;
+        commit();
+    }
+}
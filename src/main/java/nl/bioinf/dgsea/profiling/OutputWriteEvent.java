@@ -0,0 +1,40 @@
+package nl.bioinf.dgsea.profiling;
+
+import jdk.jfr.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * JFR event of writing one output file, measured from opening until closing it.
+ */
+@Name("nl.bioinf.dgsea.OutputWrite")
+@Label("Output Write")
+@Category({"DGSEA", "Output"})
+@Description("Writing a chart, enrichment CSV, shard or contingency table file")
+@StackTrace(false)
+public final class OutputWriteEvent extends Event {
+    @Label("File")
+    public String file;
+    @Label("Kind")
+    public String kind;
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    /**
+     * Ends the event and commits it if enabled and above its threshold.
+     */
+    public void end(Path file, String kind) {
+        if (!shouldCommit()) return;
+        this.file = file.toString();
+        this.kind = kind;
+        try {
+            this.bytes = Files.size(file);
+        } catch (IOException _) {
+            this.bytes = -1;
+        }
+        commit();
+    }
+}
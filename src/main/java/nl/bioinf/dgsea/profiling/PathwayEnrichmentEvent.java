@@ -0,0 +1,49 @@
+package nl.bioinf.dgsea.profiling;
+
+import jdk.jfr.*;
+
+/**
+ * JFR event of the enrichment calculation of one pathway. Only pathways taking at least 1 ms are recorded by default,
+ * so a recording shows the large pathways next to the GC pauses they cause; set the threshold to 0 ms to record all.
+ */
+@Name("nl.bioinf.dgsea.PathwayEnrichment")
+@Label("Pathway Enrichment")
+@Category({"DGSEA", "Enrichment"})
+@Description("Enrichment score and hypergeometric p-value of one pathway")
+@Threshold("1 ms")
+@StackTrace(false)
+public final class PathwayEnrichmentEvent extends Event {
+    private static final EventType TYPE = EventType.getEventType(PathwayEnrichmentEvent.class);
+    @Label("Pathway Id")
+    public String pathwayId;
+    @Label("Gene Count")
+    @Description("Number of pathway-gene entries of the pathway")
+    public int geneCount;
+    @Label("Observed DEGs")
+    public int observedDegCount;
+    @Label("P-value")
+    public double pValue;
+
+    /**
+     * Begins an event only if a recording has it enabled, so the enrichment loop allocates no events otherwise.
+     * @return the begun event, or null if disabled
+     */
+    public static PathwayEnrichmentEvent beginIfEnabled() {
+        if (!TYPE.isEnabled()) return null;
+        PathwayEnrichmentEvent event = new PathwayEnrichmentEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event and commits it if enabled and above its threshold.
+     */
+    public void end(String pathwayId, int geneCount, int observedDegCount, double pValue) {
+        if (!shouldCommit()) return;
+        this.pathwayId = pathwayId;
+        this.geneCount = geneCount;
+        this.observedDegCount = observedDegCount;
+        this.pValue = pValue;
+        commit();
+    }
+}
@@ -0,0 +1,95 @@
+package nl.bioinf.dgsea.profiling;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Snapshot of the {@link Profiler}: totals per stage and the pathways with the most compute time.
+ * Times are in nanoseconds and memory in bytes; -1 where the JVM does not support the measurement.
+ *
+ * @param stages totals per stage name, in order of first start
+ * @param slowestPathways pathways with the most compute time, slowest first
+ */
+public record ProfileReport(List<StageStats> stages, List<PathwayTime> slowestPathways) {
+    /**
+     * Totals of the stages of one name.
+     */
+    public record StageStats(String name, long count, long wallNanos, long cpuNanos, long allocatedBytes, long peakHeapBytes) {
+    }
+
+    /**
+     * Total compute time of one pathway.
+     */
+    public record PathwayTime(String pathwayId, long nanos) {
+    }
+
+    /**
+     * @return aligned table of the stages, followed by the slowest pathways
+     */
+    public String toText() {
+        StringBuilder text = new StringBuilder("Profile\n");
+        text.append("%-28s %6s %11s %11s %13s %13s%n".formatted("stage", "count", "wall ms", "cpu ms", "allocated MB", "peak heap MB"));
+        for (StageStats stage : stages) {
+            text.append("%-28s %6d %11s %11s %13s %13s%n".formatted(stage.name(), stage.count(),
+                    millis(stage.wallNanos()), millis(stage.cpuNanos()),
+                    megabytes(stage.allocatedBytes()), megabytes(stage.peakHeapBytes())));
+        }
+        if (!slowestPathways.isEmpty()) {
+            text.append("Slowest pathways\n");
+            for (PathwayTime pathway : slowestPathways) {
+                text.append("%-28s %11s ms%n".formatted(pathway.pathwayId(), String.format(Locale.ROOT, "%.3f", pathway.nanos() / 1e6)));
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * @return the report as one JSON object with arrays "stages" and "slowestPathways"
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"stages\":[");
+        for (int i = 0; i < stages.size(); i++) {
+            StageStats stage = stages.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"name\":").append(quote(stage.name()))
+                    .append(",\"count\":").append(stage.count())
+                    .append(",\"wallNanos\":").append(stage.wallNanos())
+                    .append(",\"cpuNanos\":").append(stage.cpuNanos())
+                    .append(",\"allocatedBytes\":").append(stage.allocatedBytes())
+                    .append(",\"peakHeapBytes\":").append(stage.peakHeapBytes())
+                    .append('}');
+        }
+        json.append("],\"slowestPathways\":[");
+        for (int i = 0; i < slowestPathways.size(); i++) {
+            PathwayTime pathway = slowestPathways.get(i);
+            if (i > 0) json.append(',');
+            json.append("{\"pathwayId\":").append(quote(pathway.pathwayId()))
+                    .append(",\"nanos\":").append(pathway.nanos())
+                    .append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String millis(long nanos) {
+        return nanos < 0 ? "-" : String.format(Locale.ROOT, "%.1f", nanos / 1e6);
+    }
+
+    private static String megabytes(long bytes) {
+        return bytes < 0 ? "-" : String.format(Locale.ROOT, "%.1f", bytes / 1e6);
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (char c : value.toCharArray()) {
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                default -> {
+                    if (c < 0x20) quoted.append("\\u%04x".formatted((int) c));
+                    else quoted.append(c);
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,227 @@
+package nl.bioinf.dgsea.profiling;
+
+import nl.bioinf.dgsea.DgseaExecutors;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide profiler of pipeline stages and per-pathway compute time, off unless {@link #enable()} is called. <br>
+ * A stage measures wall time, CPU time and allocated bytes of the thread running it plus those of the threads of
+ * {@link DgseaExecutors#compute()} during it, as work like the enrichment ranges is handed to them, and the peak heap during it:
+ * the sum of the peaks of the heap memory pools, which are reset when a stage starts. Stages of the same name are
+ * summed, nested stages are counted in their parent too. While disabled, {@link #stage(String)} returns a shared
+ * no-op stage and {@link #pathway(String, long)} returns at once, so instrumented code costs a volatile read.
+ */
+public final class Profiler {
+    private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private static final List<MemoryPoolMXBean> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+            .filter(pool -> pool.getType() == MemoryType.HEAP)
+            .toList();
+    private static final Stage NO_STAGE = new Stage(null, null);
+    private static final Map<String, StageTotals> stages = Collections.synchronizedMap(new LinkedHashMap<>());
+    private static final Map<String, LongAdder> pathwayNanos = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Stage> currentStage = new ThreadLocal<>();
+    private static volatile boolean enabled = false;
+
+    private Profiler() {
+    }
+
+    /**
+     * Starts collecting stages and pathway times, enabling CPU time measurement where supported.
+     */
+    public static void enable() {
+        if (threads.isThreadCpuTimeSupported() && !threads.isThreadCpuTimeEnabled()) threads.setThreadCpuTimeEnabled(true);
+        if (threads instanceof com.sun.management.ThreadMXBean sunThreads && sunThreads.isThreadAllocatedMemorySupported()
+                && !sunThreads.isThreadAllocatedMemoryEnabled()) {
+            sunThreads.setThreadAllocatedMemoryEnabled(true);
+        }
+        enabled = true;
+    }
+
+    /**
+     * Stops collecting and discards everything collected.
+     */
+    public static void reset() {
+        enabled = false;
+        stages.clear();
+        pathwayNanos.clear();
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Starts a stage on the calling thread, to be closed by the same thread, e.g. by try-with-resources.
+     * @param name name of the stage, stages of the same name are summed
+     * @return the running stage
+     */
+    public static Stage stage(String name) {
+        if (!enabled) return NO_STAGE;
+        return new Stage(name, currentStage.get());
+    }
+
+    /**
+     * Adds compute time to a pathway.
+     * @param pathwayId pathway the time was spent on
+     * @param nanos time in nanoseconds
+     */
+    public static void pathway(String pathwayId, long nanos) {
+        if (!enabled) return;
+        pathwayNanos.computeIfAbsent(pathwayId, _ -> new LongAdder()).add(nanos);
+    }
+
+    /**
+     * @param maxPathways number of slowest pathways to include
+     * @return the stages in order of first start and the slowest pathways, slowest first
+     */
+    public static ProfileReport report(int maxPathways) {
+        List<ProfileReport.StageStats> stageStats;
+        synchronized (stages) {
+            stageStats = stages.entrySet().stream().map(entry -> entry.getValue().toStats(entry.getKey())).toList();
+        }
+        List<ProfileReport.PathwayTime> slowest = pathwayNanos.entrySet().stream()
+                .map(entry -> new ProfileReport.PathwayTime(entry.getKey(), entry.getValue().sum()))
+                .sorted(Comparator.comparingLong(ProfileReport.PathwayTime::nanos).reversed()
+                        .thenComparing(ProfileReport.PathwayTime::pathwayId))
+                .limit(maxPathways)
+                .toList();
+        return new ProfileReport(stageStats, slowest);
+    }
+
+    private static long cpuTime() {
+        return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1;
+    }
+
+    private static long allocatedBytes() {
+        return threads instanceof com.sun.management.ThreadMXBean sunThreads && sunThreads.isThreadAllocatedMemoryEnabled()
+                ? sunThreads.getCurrentThreadAllocatedBytes() : -1;
+    }
+
+    /**
+     * CPU time and allocated bytes of each compute thread at one moment, -1 where not measurable.
+     */
+    private record WorkerSnapshot(long[] ids, long[] cpu, long[] allocated) {
+        static final WorkerSnapshot NONE = new WorkerSnapshot(new long[0], new long[0], new long[0]);
+
+        static WorkerSnapshot take() {
+            long[] ids = DgseaExecutors.computeThreadIds();
+            long[] cpu = new long[ids.length];
+            long[] allocated = new long[ids.length];
+            for (int i = 0; i < ids.length; i++) {
+                cpu[i] = threads.isThreadCpuTimeEnabled() ? threads.getThreadCpuTime(ids[i]) : -1;
+            }
+            if (threads instanceof com.sun.management.ThreadMXBean sunThreads && sunThreads.isThreadAllocatedMemoryEnabled()) {
+                allocated = sunThreads.getThreadAllocatedBytes(ids);
+            } else {
+                Arrays.fill(allocated, -1);
+            }
+            return new WorkerSnapshot(ids, cpu, allocated);
+        }
+
+        /**
+         * @return CPU time and allocated bytes of the compute threads since the earlier snapshot,
+         * counting threads started since then from 0
+         */
+        long[] since(WorkerSnapshot earlier) {
+            Map<Long, Integer> earlierIndex = new HashMap<>();
+            for (int i = 0; i < earlier.ids.length; i++) {
+                earlierIndex.put(earlier.ids[i], i);
+            }
+            long cpuDelta = 0;
+            long allocatedDelta = 0;
+            for (int i = 0; i < ids.length; i++) {
+                Integer before = earlierIndex.get(ids[i]);
+                cpuDelta += delta(cpu[i], before == null ? 0 : earlier.cpu[before]);
+                allocatedDelta += delta(allocated[i], before == null ? 0 : earlier.allocated[before]);
+            }
+            return new long[]{cpuDelta, allocatedDelta};
+        }
+
+        private static long delta(long now, long before) {
+            return now < 0 || before < 0 ? 0 : now - before;
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            peak += pool.getPeakUsage().getUsed();
+        }
+        return peak;
+    }
+
+    /**
+     * A running stage, measured from its creation until it is closed.
+     */
+    public static final class Stage implements AutoCloseable {
+        private final String name;
+        private final Stage parent;
+        private final long startWall;
+        private final long startCpu;
+        private final long startAllocated;
+        private final WorkerSnapshot startWorkers;
+        private long peakHeap;
+
+        private Stage(String name, Stage parent) {
+            this.name = name;
+            this.parent = parent;
+            if (name == null) {
+                startWall = startCpu = startAllocated = 0;
+                startWorkers = WorkerSnapshot.NONE;
+                return;
+            }
+            currentStage.set(this);
+            heapPools.forEach(MemoryPoolMXBean::resetPeakUsage);
+            startWall = System.nanoTime();
+            startCpu = cpuTime();
+            startAllocated = allocatedBytes();
+            startWorkers = WorkerSnapshot.take();
+        }
+
+        /**
+         * Ends the stage and adds its measurements to the totals of its name.
+         */
+        @Override
+        public void close() {
+            if (name == null) return;
+            long wall = System.nanoTime() - startWall;
+            long[] workers = WorkerSnapshot.take().since(startWorkers);
+            long cpu = startCpu < 0 ? -1 : cpuTime() - startCpu + workers[0];
+            long allocated = startAllocated < 0 ? -1 : allocatedBytes() - startAllocated + workers[1];
+            peakHeap = Math.max(peakHeap, peakHeap());
+            if (parent != null) parent.peakHeap = Math.max(parent.peakHeap, peakHeap); // its pool peaks were reset by this stage
+            currentStage.set(parent);
+            stages.computeIfAbsent(name, _ -> new StageTotals()).add(wall, cpu, allocated, peakHeap);
+        }
+    }
+
+    /**
+     * Sums of the stages of one name.
+     */
+    private static final class StageTotals {
+        private long count;
+        private long wallNanos;
+        private long cpuNanos;
+        private long allocatedBytes;
+        private long peakHeapBytes;
+
+        synchronized void add(long wall, long cpu, long allocated, long peakHeap) {
+            count++;
+            wallNanos += wall;
+            cpuNanos = cpu < 0 || cpuNanos < 0 ? -1 : cpuNanos + cpu;
+            allocatedBytes = allocated < 0 || allocatedBytes < 0 ? -1 : allocatedBytes + allocated;
+            peakHeapBytes = Math.max(peakHeapBytes, peakHeap);
+        }
+
+        synchronized ProfileReport.StageStats toStats(String name) {
+            return new ProfileReport.StageStats(name, count, wallNanos, cpuNanos, allocatedBytes, peakHeapBytes);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * Local HTTP server that keeps pathway databases resident and runs the DGSEA analyses on posted DEG lists.
+ */
+package nl.bioinf.dgsea.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import nl.bioinf.dgsea.Dgsea;
+import nl.bioinf.dgsea.DgseaExecutors;
+import nl.bioinf.dgsea.data_processing.*;
+import nl.bioinf.dgsea.metrics.Counter;
+import nl.bioinf.dgsea.metrics.DgseaMetrics;
+import nl.bioinf.dgsea.metrics.MetricsServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * Serves the analyses of the sub-commands over the JDK's built-in HTTP server. <br>
+ * Pathway databases are loaded once and shared read-only between requests, which are each handled on their own virtual thread.
+ * At most {@link DgseaExecutors#threads()} analyses run at once, further requests wait for a free one.
+ * The analyses themselves are run through the {@link Dgsea} facade.
+ * Every analysis is requested with a POST of a DEG list (same format as a DEG file) to one of these paths:
+ * <pre>
+ * GET  /databases                    names and sizes of the loaded databases
+ * POST /con_table                    contingency tables as text,       query: db, pval
+ * POST /enrichment                   enrichment results as CSV,        query: db
+ * POST /perc_lfc                     lfc percentages as CSV,           query: db, pathway-ids, max-n-pathways
+ * POST /enrich_bar_chart             enrichment bar chart as PNG,      query: db, max-n-pathways, title
+ * POST /enrich_dot_chart             enrichment dot chart as PNG,      query: db, max-n-pathways, title, dot-size, dot-transparency
+ * POST /perc_lfc_per_pathway_chart   lfc percentage bar chart as PNG,  query: db, pathway-ids, max-n-pathways, title, x-axis-label, y-axis-label
+ * GET  /metrics                      metrics in the Prometheus text format
+ * </pre>
+ * Query parameter db may be left out when only one database is loaded.
+ */
+public class AnalysisServer implements AutoCloseable {
+    private static final Counter ANALYSES = DgseaMetrics.ANALYSES.labels("server");
+    private static final Counter FAILURES = DgseaMetrics.FAILURES.labels("server");
+    private static final Counter BYTES_SENT = DgseaMetrics.BYTES_WRITTEN.labels("http_response");
+    private final Map<String, Dgsea> databases;
+    private final double defaultPval;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore analysisPermits = new Semaphore(DgseaExecutors.threads());
+    private final FileParseUtils fileParseUtils = new FileParseUtils();
+    private final Logger logger = LogManager.getLogger(AnalysisServer.class);
+
+    /**
+     * Creates a server bound to the given address, that is not accepting requests until started.
+     * @param address address to bind to
+     * @param databases loaded pathway databases by name, with at least one database
+     * @param defaultPval p-value threshold used when a request does not give one
+     * @throws IOException if the address cannot be bound
+     * @throws IllegalArgumentException if no databases were given
+     */
+    public AnalysisServer(InetSocketAddress address, Map<String, PathwayDatabase> databases, double defaultPval) throws IOException {
+        if (databases == null || databases.isEmpty()) throw new IllegalArgumentException("At least one pathway database must be loaded");
+        this.databases = databases.entrySet().stream()
+                .collect(Collectors.toUnmodifiableMap(Map.Entry::getKey, entry -> new Dgsea(entry.getValue())));
+        this.defaultPval = defaultPval;
+        this.server = HttpServer.create(address, 0);
+        this.executor = DgseaExecutors.newVirtualThreadExecutor();
+        server.setExecutor(executor);
+        server.createContext("/databases", this::handleDatabases);
+        server.createContext("/con_table", exchange -> handleAnalysis(exchange, this::contingencyTable));
+        server.createContext("/enrichment", exchange -> handleAnalysis(exchange, this::enrichment));
+        server.createContext("/perc_lfc", exchange -> handleAnalysis(exchange, this::percLfc));
+        server.createContext("/enrich_bar_chart", exchange -> handleAnalysis(exchange, this::enrichBarChart));
+        server.createContext("/enrich_dot_chart", exchange -> handleAnalysis(exchange, this::enrichDotChart));
+        server.createContext("/perc_lfc_per_pathway_chart", exchange -> handleAnalysis(exchange, this::percLfcChart));
+        server.createContext("/metrics", exchange -> MetricsServer.send(exchange, DgseaMetrics.REGISTRY));
+    }
+
+    /**
+     * Starts accepting requests.
+     */
+    public void start() {
+        server.start();
+        logger.info("Serving {} pathway database(s) {} on http://{}:{}", databases.size(), databases.keySet(),
+                getAddress().getHostString(), getAddress().getPort());
+    }
+
+    /**
+     * @return address the server is bound to, with the actual port if port 0 was requested
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    /**
+     * Stops accepting requests, waits shortly for running requests and releases the request threads.
+     */
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+    }
+
+    /**
+     * A single analysis on a posted DEG list.
+     */
+    @FunctionalInterface
+    private interface Analysis {
+        Response run(Dgsea dgsea, List<Deg> degs, Map<String, String> query) throws IOException;
+    }
+
+    /**
+     * Response of an analysis.
+     * @param contentType MIME type of body
+     * @param body response body
+     */
+    private record Response(String contentType, byte[] body) {
+        static Response text(String contentType, String body) {
+            return new Response(contentType + "; charset=utf-8", body.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Lists the loaded databases with their number of pathways and pathway-gene entries.
+     * @param exchange request to respond to
+     */
+    private void handleDatabases(HttpExchange exchange) throws IOException {
+        StringBuilder body = new StringBuilder("Database,Pathways,Pathway genes").append(System.lineSeparator());
+        databases.values().stream()
+                .map(Dgsea::getDatabase)
+                .sorted(Comparator.comparing(PathwayDatabase::name))
+                .forEach(database -> body.append(String.join(",", database.name(),
+                        String.valueOf(database.pathways().size()),
+                        String.valueOf(database.pathwayGenes().size()))).append(System.lineSeparator()));
+        send(exchange, 200, Response.text("text/csv", body.toString()));
+    }
+
+    /**
+     * Parses the posted DEG list, runs the analysis against the requested database and sends its result.
+     * Invalid input is answered with 400, an unknown database with 404 and any other method than POST with 405.
+     * @param exchange request to respond to
+     * @param analysis analysis to run
+     */
+    private void handleAnalysis(HttpExchange exchange, Analysis analysis) throws IOException {
+        try (exchange) {
+            if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "POST");
+                sendError(exchange, 405, "Post a DEG list to this path.");
+                return;
+            }
+            ANALYSES.inc();
+            Map<String, String> query = parseQuery(exchange.getRequestURI());
+            Dgsea dgsea = getDatabase(query.get("db"));
+            if (dgsea == null) {
+                FAILURES.inc();
+                sendError(exchange, 404, "Unknown pathway database: '%s', loaded databases: %s".formatted(query.get("db"), databases.keySet()));
+                return;
+            }
+            try {
+                List<Deg> degs = fileParseUtils.parseDegs(new BufferedReader(
+                        new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8)));
+                Response response;
+                analysisPermits.acquireUninterruptibly();
+                try {
+                    response = analysis.run(dgsea, degs, query);
+                } finally {
+                    analysisPermits.release();
+                }
+                send(exchange, 200, response);
+            } catch (IOException | IllegalArgumentException e) {
+                FAILURES.inc();
+                sendError(exchange, 400, e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            FAILURES.inc();
+            logger.error("Failed to handle request {}: {}", exchange.getRequestURI(), e.getMessage());
+            throw e;
+        }
+    }
+
+    private Response contingencyTable(Dgsea dgsea, List<Deg> degs, Map<String, String> query) {
+        return Response.text("text/plain", dgsea.contingencyTable(degs, getDouble(query, "pval", defaultPval)));
+    }
+
+    private Response enrichment(Dgsea dgsea, List<Deg> degs, Map<String, String> query) throws IOException {
+        StringWriter csv = new StringWriter();
+        dgsea.enrichment(degs, csv);
+        return Response.text("text/csv", csv.toString());
+    }
+
+    private Response percLfc(Dgsea dgsea, List<Deg> degs, Map<String, String> query) {
+        Map<String, Double> percentages = dgsea.percLfc(degs, getPathwayIds(query), getMaxNPathways(query, Integer.MAX_VALUE));
+        PathwayIndex pathwayIndex = dgsea.getDatabase().pathwayIndex();
+
+        StringBuilder csv = new StringBuilder("Pathway id,Pathway,Percentage log-fold-change").append(System.lineSeparator());
+        percentages.forEach((pathwayId, percentage) -> csv.append(String.join(",", pathwayId,
+                Objects.requireNonNullElse(pathwayIndex.description(pathwayId), ""),
+                String.valueOf(percentage))).append(System.lineSeparator()));
+        return Response.text("text/csv", csv.toString());
+    }
+
+    private Response enrichBarChart(Dgsea dgsea, List<Deg> degs, Map<String, String> query) throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        dgsea.writeEnrichmentBarChart(getTopResults(dgsea, degs, query), query.get("title"), null, png);
+        return new Response("image/png", png.toByteArray());
+    }
+
+    private Response enrichDotChart(Dgsea dgsea, List<Deg> degs, Map<String, String> query) throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        dgsea.writeEnrichmentDotChart(getTopResults(dgsea, degs, query), query.get("title"), null,
+                getDouble(query, "dot-size", 30.0), (float) getDouble(query, "dot-transparency", 1.0), png);
+        return new Response("image/png", png.toByteArray());
+    }
+
+    private Response percLfcChart(Dgsea dgsea, List<Deg> degs, Map<String, String> query) throws IOException {
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        dgsea.writePercLfcChart(degs, getPathwayIds(query), getMaxNPathways(query, 20), query.get("title"),
+                query.get("x-axis-label"), query.get("y-axis-label"), null, png);
+        return new Response("image/png", png.toByteArray());
+    }
+
+    private List<EnrichmentResult> getTopResults(Dgsea dgsea, List<Deg> degs, Map<String, String> query) {
+        return Dgsea.topResults(dgsea.enrichment(degs), getMaxNPathways(query, 20));
+    }
+
+    /**
+     * @return requested pathway-ids, or null if none were requested
+     */
+    private String[] getPathwayIds(Map<String, String> query) {
+        String pathwayIds = query.get("pathway-ids");
+        if (pathwayIds == null || pathwayIds.isBlank()) return null;
+        return Arrays.stream(pathwayIds.split(",")).map(String::trim).filter(id -> !id.isEmpty()).toArray(String[]::new);
+    }
+
+    private int getMaxNPathways(Map<String, String> query, int defaultValue) {
+        int maxNPathways = (int) getDouble(query, "max-n-pathways", defaultValue);
+        if (maxNPathways <= 0) throw new IllegalArgumentException("max-n-pathways must be at least 1. Given: " + maxNPathways);
+        return maxNPathways;
+    }
+
+    private double getDouble(Map<String, String> query, String name, double defaultValue) {
+        String value = query.get(name);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException _) {
+            throw new IllegalArgumentException("Query parameter %s must be a number. Given: %s".formatted(name, value));
+        }
+    }
+
+    /**
+     * @param name requested database name, may be null if only one database is loaded
+     * @return facade of the requested database, or null if it is not loaded
+     */
+    private Dgsea getDatabase(String name) {
+        if (name == null && databases.size() == 1) return databases.values().iterator().next();
+        return name == null ? null : databases.get(name);
+    }
+
+    /**
+     * Decodes the query string of an URI into name, value pairs. Later duplicates overwrite earlier ones.
+     * @param uri request URI
+     * @return query parameters
+     */
+    static Map<String, String> parseQuery(URI uri) {
+        Map<String, String> query = new HashMap<>();
+        String rawQuery = uri.getRawQuery();
+        if (rawQuery == null || rawQuery.isEmpty()) return query;
+        for (String parameter : rawQuery.split("&")) {
+            int separator = parameter.indexOf('=');
+            String name = separator < 0 ? parameter : parameter.substring(0, separator);
+            String value = separator < 0 ? "" : parameter.substring(separator + 1);
+            query.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return query;
+    }
+
+    private void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        logger.warn("{} {} -> {}: {}", exchange.getRequestMethod(), exchange.getRequestURI(), status, message);
+        // an unread request body makes the server close the connection, which a client may be reusing already
+        exchange.getRequestBody().transferTo(OutputStream.nullOutputStream());
+        send(exchange, status, Response.text("text/plain", message + System.lineSeparator()));
+    }
+
+    private void send(HttpExchange exchange, int status, Response response) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", response.contentType());
+        exchange.sendResponseHeaders(status, response.body().length == 0 ? -1 : response.body().length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(response.body());
+        }
+        BYTES_SENT.add(response.body().length);
+    }
+}
@@ -0,0 +1,127 @@
+package nl.bioinf.dgsea.table_outputs;
+
+import nl.bioinf.dgsea.data_processing.Pathway;
+import nl.bioinf.dgsea.data_processing.RawEnrichmentResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Column-wise store of raw enrichment results, one row per tested pathway in pathway order. <br>
+ * The enrichment loop appends rows to primitive arrays instead of creating a record per pathway, so an arena that is
+ * reused, e.g. by a worker over many contrasts, makes the per-pathway calculation allocation-free once it has grown
+ * to the number of pathways. Records are only made from it at the API boundary.
+ */
+public final class EnrichmentArena {
+    private int size;
+    private int[] pathwayIndex;
+    private int[] observedDegCount;
+    private int[] totalGenesInPathway;
+    private double[] expectedDegCount;
+    private double[] enrichmentScore;
+    private double[] pValue;
+
+    /**
+     * @param capacity number of rows to allocate up front, e.g. the number of pathways
+     */
+    public EnrichmentArena(int capacity) {
+        pathwayIndex = new int[capacity];
+        observedDegCount = new int[capacity];
+        totalGenesInPathway = new int[capacity];
+        expectedDegCount = new double[capacity];
+        enrichmentScore = new double[capacity];
+        pValue = new double[capacity];
+    }
+
+    /**
+     * Removes all rows, keeping the allocated arrays.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Grows the arrays to hold at least the given number of rows, so appending them does not allocate.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity <= pathwayIndex.length) return;
+        capacity = Math.max(capacity, pathwayIndex.length * 2);
+        pathwayIndex = Arrays.copyOf(pathwayIndex, capacity);
+        observedDegCount = Arrays.copyOf(observedDegCount, capacity);
+        totalGenesInPathway = Arrays.copyOf(totalGenesInPathway, capacity);
+        expectedDegCount = Arrays.copyOf(expectedDegCount, capacity);
+        enrichmentScore = Arrays.copyOf(enrichmentScore, capacity);
+        pValue = Arrays.copyOf(pValue, capacity);
+    }
+
+    void add(int pathwayIndex, int observedDegCount, int totalGenesInPathway,
+             double expectedDegCount, double enrichmentScore, double pValue) {
+        ensureCapacity(size + 1);
+        this.pathwayIndex[size] = pathwayIndex;
+        this.observedDegCount[size] = observedDegCount;
+        this.totalGenesInPathway[size] = totalGenesInPathway;
+        this.expectedDegCount[size] = expectedDegCount;
+        this.enrichmentScore[size] = enrichmentScore;
+        this.pValue[size] = pValue;
+        size++;
+    }
+
+    /**
+     * Appends all rows of another arena, e.g. of a range of pathways calculated on another thread.
+     */
+    void addAll(EnrichmentArena rows) {
+        ensureCapacity(size + rows.size);
+        System.arraycopy(rows.pathwayIndex, 0, pathwayIndex, size, rows.size);
+        System.arraycopy(rows.observedDegCount, 0, observedDegCount, size, rows.size);
+        System.arraycopy(rows.totalGenesInPathway, 0, totalGenesInPathway, size, rows.size);
+        System.arraycopy(rows.expectedDegCount, 0, expectedDegCount, size, rows.size);
+        System.arraycopy(rows.enrichmentScore, 0, enrichmentScore, size, rows.size);
+        System.arraycopy(rows.pValue, 0, pValue, size, rows.size);
+        size += rows.size;
+    }
+
+    /**
+     * @return Number of rows.
+     */
+    public int size() {
+        return size;
+    }
+
+    public int pathwayIndex(int row) {
+        return pathwayIndex[row];
+    }
+
+    public int observedDegCount(int row) {
+        return observedDegCount[row];
+    }
+
+    public int totalGenesInPathway(int row) {
+        return totalGenesInPathway[row];
+    }
+
+    public double expectedDegCount(int row) {
+        return expectedDegCount[row];
+    }
+
+    public double enrichmentScore(int row) {
+        return enrichmentScore[row];
+    }
+
+    public double pValue(int row) {
+        return pValue[row];
+    }
+
+    /**
+     * @param pathways The pathways the rows were calculated for, to look up pathway-ids by pathway index.
+     * @return The rows as records, in row order.
+     */
+    public List<RawEnrichmentResult> toRawResults(List<Pathway> pathways) {
+        List<RawEnrichmentResult> rawResults = new ArrayList<>(size);
+        for (int row = 0; row < size; row++) {
+            rawResults.add(new RawEnrichmentResult(pathwayIndex[row], pathways.get(pathwayIndex[row]).pathwayId(),
+                    observedDegCount[row], totalGenesInPathway[row], expectedDegCount[row], enrichmentScore[row], pValue[row]));
+        }
+        return rawResults;
+    }
+}
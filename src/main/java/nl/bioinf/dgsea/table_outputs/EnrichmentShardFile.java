@@ -0,0 +1,175 @@
+package nl.bioinf.dgsea.table_outputs;
+
+import nl.bioinf.dgsea.data_processing.RawEnrichmentResult;
+import nl.bioinf.dgsea.data_processing.Shard;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Reads, writes and merges the partial enrichment results of shards.
+ * A shard file starts with a metadata line, followed by a CSV table of raw results:
+ * <pre>
+ * #dgsea-shard,2/4,350,1000,30000
+ * Index,Pathway ID,Observed DEGs,Genes in pathway,Expected DEGs,Enrichment Score,P-value
+ * 1,hsa00010,3,67,2.1,0.62,0.35
+ * </pre>
+ * Doubles are written with {@link String#valueOf(double)}, which reads back to the exact same value,
+ * so merged results are identical to those of a single run.
+ */
+public final class EnrichmentShardFile {
+    static final String METADATA_PREFIX = "#dgsea-shard";
+    static final String HEADER = "Index,Pathway ID,Observed DEGs,Genes in pathway,Expected DEGs,Enrichment Score,P-value";
+
+    /**
+     * Describes the run a shard file was made by; shards can only be merged if all but the shard are equal.
+     *
+     * @param shard The shard of the pathways in the file.
+     * @param totalTests Number of pathways over all shards.
+     * @param degCount Number of DEGs.
+     * @param pathwayGeneCount Number of pathway genes.
+     */
+    public record Metadata(Shard shard, int totalTests, int degCount, int pathwayGeneCount) {
+    }
+
+    /**
+     * The contents of a shard file, or of merged shard files.
+     *
+     * @param metadata Metadata of the run.
+     * @param results Raw results, in pathway order.
+     */
+    public record Part(Metadata metadata, List<RawEnrichmentResult> results) {
+    }
+
+    private EnrichmentShardFile() {
+    }
+
+    /**
+     * Calculates the raw results of a shard of an enrichment table and writes them to the writer, which is left open.
+     *
+     * @param table Enrichment table to calculate.
+     * @param shard Shard of the pathways to calculate.
+     * @param writer Writer to write to.
+     * @throws IOException if writing fails.
+     */
+    public static void write(EnrichmentTable table, Shard shard, Writer writer) throws IOException {
+        write(new Part(new Metadata(shard, table.getTotalTests(), table.getDegCount(), table.getPathwayGeneCount()),
+                table.calculateRawResults(shard)), writer);
+    }
+
+    /**
+     * Writes a part as shard file to the writer, which is left open.
+     *
+     * @param part Part to write.
+     * @param writer Writer to write to.
+     * @throws IOException if writing fails.
+     */
+    public static void write(Part part, Writer writer) throws IOException {
+        Metadata metadata = part.metadata();
+        writer.write(String.join(",", METADATA_PREFIX, metadata.shard().toString(), String.valueOf(metadata.totalTests()),
+                String.valueOf(metadata.degCount()), String.valueOf(metadata.pathwayGeneCount())));
+        writer.write(System.lineSeparator());
+        writer.write(HEADER);
+        writer.write(System.lineSeparator());
+        for (RawEnrichmentResult result : part.results()) {
+            writer.write(String.join(",",
+                    String.valueOf(result.pathwayIndex()),
+                    result.pathwayId(),
+                    String.valueOf(result.observedDegCount()),
+                    String.valueOf(result.totalGenesInPathway()),
+                    String.valueOf(result.expectedDegCount()),
+                    String.valueOf(result.enrichmentScore()),
+                    String.valueOf(result.pValue())));
+            writer.write(System.lineSeparator());
+        }
+        writer.flush();
+    }
+
+    /**
+     * @param file Shard file to read.
+     * @return The part in the file.
+     * @throws IOException if reading fails or the file is not a valid shard file.
+     */
+    public static Part read(Path file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return read(reader);
+        } catch (IOException e) {
+            throw new IOException("Invalid shard file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param reader Reader of a shard file, which is left open.
+     * @return The part in the file.
+     * @throws IOException if reading fails or the content is not a valid shard file.
+     */
+    public static Part read(BufferedReader reader) throws IOException {
+        String[] metadataValues = Objects.requireNonNullElse(reader.readLine(), "").split(",");
+        if (metadataValues.length != 5 || !metadataValues[0].equals(METADATA_PREFIX)) {
+            throw new IOException("missing '" + METADATA_PREFIX + "' metadata line");
+        }
+        if (!HEADER.equals(reader.readLine())) throw new IOException("missing header: " + HEADER);
+        try {
+            Metadata metadata = new Metadata(Shard.parse(metadataValues[1]), Integer.parseInt(metadataValues[2]),
+                    Integer.parseInt(metadataValues[3]), Integer.parseInt(metadataValues[4]));
+            List<RawEnrichmentResult> results = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                String[] values = line.split(",");
+                if (values.length != 7) throw new IOException("expected 7 columns in line: " + line);
+                results.add(new RawEnrichmentResult(Integer.parseInt(values[0]), values[1], Integer.parseInt(values[2]),
+                        Integer.parseInt(values[3]), Double.parseDouble(values[4]), Double.parseDouble(values[5]),
+                        Double.parseDouble(values[6])));
+            }
+            return new Part(metadata, results);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Merges the parts of all shards of one run into the results of all pathways.
+     *
+     * @param parts One part for each shard.
+     * @return Part of shard 1/1 with the results of all pathways, in pathway order.
+     * @throws IllegalArgumentException if shards are missing or duplicated, or come from different runs.
+     */
+    public static Part merge(List<Part> parts) {
+        if (parts.isEmpty()) throw new IllegalArgumentException("No shards to merge");
+        Metadata first = parts.getFirst().metadata();
+        int shardCount = first.shard().count();
+        Set<Integer> shardIndices = new HashSet<>();
+        RawEnrichmentResult[] results = new RawEnrichmentResult[first.totalTests()];
+        for (Part part : parts) {
+            Metadata metadata = part.metadata();
+            if (metadata.shard().count() != shardCount || metadata.totalTests() != first.totalTests()
+                    || metadata.degCount() != first.degCount() || metadata.pathwayGeneCount() != first.pathwayGeneCount()) {
+                throw new IllegalArgumentException("Shard " + metadata.shard() + " was made by a different run than shard " + first.shard());
+            }
+            if (!shardIndices.add(metadata.shard().index())) {
+                throw new IllegalArgumentException("Shard " + metadata.shard() + " was given more than once");
+            }
+            for (RawEnrichmentResult result : part.results()) {
+                int index = result.pathwayIndex();
+                if (index < 0 || index >= results.length || !metadata.shard().contains(index) || results[index] != null) {
+                    throw new IllegalArgumentException("Shard " + metadata.shard() + " has an unexpected result for pathway index " + index);
+                }
+                results[index] = result;
+            }
+        }
+        if (shardIndices.size() != shardCount) {
+            throw new IllegalArgumentException("Expected " + shardCount + " shards, given: " + shardIndices.size());
+        }
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] == null) throw new IllegalArgumentException("Missing result for pathway index " + i);
+        }
+        return new Part(new Metadata(new Shard(1, 1), first.totalTests(), first.degCount(), first.pathwayGeneCount()),
+                List.of(results));
+    }
+}
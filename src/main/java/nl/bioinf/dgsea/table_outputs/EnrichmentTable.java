@@ -1,28 +1,47 @@
 package nl.bioinf.dgsea.table_outputs;
 
+import nl.bioinf.dgsea.DgseaExecutors;
 import nl.bioinf.dgsea.data_processing.Deg;
 import nl.bioinf.dgsea.data_processing.Pathway;
+import nl.bioinf.dgsea.data_processing.PathwayDatabase;
 import nl.bioinf.dgsea.data_processing.PathwayGene;
 import nl.bioinf.dgsea.data_processing.EnrichmentResult;
+import nl.bioinf.dgsea.data_processing.RawEnrichmentResult;
+import nl.bioinf.dgsea.data_processing.Shard;
+import nl.bioinf.dgsea.metrics.DgseaMetrics;
+import nl.bioinf.dgsea.profiling.OutputWriteEvent;
+import nl.bioinf.dgsea.profiling.PathwayEnrichmentEvent;
+import nl.bioinf.dgsea.profiling.Profiler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Class to calculate and store enrichment results for gene pathways based on differentially expressed genes (DEGs).
  * This class supports methods for calculating enrichment scores, p-values, and adjusted p-values
  * using hypergeometric testing and Bonferroni correction.
+ * The per-pathway calculation writes into an {@link EnrichmentArena} and a primitive p-value memo that are reused
+ * between calculations, so it does not allocate; {@link EnrichmentResult}s are only made when asked for.
+ * {@link #calculateEnrichment(Writer)} calculates large databases in ranges of pathways on {@link DgseaExecutors#compute()}.
+ * Not thread-safe: use one table per thread.
  */
 public class EnrichmentTable {
+    private static final int MIN_PATHWAYS_PER_RANGE = 1024;
     private final List<Pathway> pathways;
     private final List<Deg> degs;
     private final List<PathwayGene> pathwayGenes;
-    private final List<EnrichmentResult> enrichmentResults;
+    private final Map<String, List<String>> geneSymbolsByPathway;
+    private final Set<String> degGeneSymbols;
+    private final EnrichmentArena arena = new EnrichmentArena(0);
+    private final PValueMemo pValueMemo = new PValueMemo();
+    private List<EnrichmentResult> enrichmentResults;
     private final Logger logger = LogManager.getLogger(EnrichmentTable.class);
 
     /**
@@ -33,10 +52,27 @@ public class EnrichmentTable {
      * @param pathwayGenes  List of genes associated with pathways.
      */
     public EnrichmentTable(List<Pathway> pathways, List<Deg> degs, List<PathwayGene> pathwayGenes) {
+        this(pathways, degs, pathwayGenes, PathwayDatabase.indexGeneSymbols(pathwayGenes));
+    }
+
+    /**
+     * Constructs an EnrichmentTable for the DEGs against a loaded pathway database, reusing its gene-symbol index.
+     *
+     * @param database      Loaded pathway database.
+     * @param degs          List of differentially expressed genes (DEGs).
+     */
+    public EnrichmentTable(PathwayDatabase database, List<Deg> degs) {
+        this(database.pathways(), degs, database.pathwayGenes(), database.geneSymbolsByPathway());
+    }
+
+    private EnrichmentTable(List<Pathway> pathways, List<Deg> degs, List<PathwayGene> pathwayGenes,
+                            Map<String, List<String>> geneSymbolsByPathway) {
         this.pathways = pathways;
         this.degs = degs;
         this.pathwayGenes = pathwayGenes;
-        this.enrichmentResults = new ArrayList<>();
+        this.geneSymbolsByPathway = geneSymbolsByPathway;
+        this.degGeneSymbols = new HashSet<>(degs.size() * 2);
+        degs.forEach(deg -> degGeneSymbols.add(deg.geneSymbol()));
     }
 
     /**
@@ -47,41 +83,232 @@ public class EnrichmentTable {
      * @param outputFilePath Path to the output CSV file.
      */
     public void calculateEnrichment(String outputFilePath) {
-        // Write header to CSV
+        OutputWriteEvent event = new OutputWriteEvent();
+        event.begin();
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(outputFilePath))) {
-            writer.write("Pathway,Observed DEGs,Expected DEGs,Enrichment Score,P-value,Adjusted P-value");
-            writer.newLine();
-
-            for (Pathway pathway : pathways) {
-                String pathwayId = pathway.pathwayId();
-                String description = pathway.description();
-
-                int observedDegCount = calculateObservedDegCount(pathwayId);
-                int totalGenesInPathway = countTotalGenesInPathway(pathwayId);
-                double expectedDegCount = calculateExpectedDegCount(totalGenesInPathway);
-                double enrichmentScore = calculateEnrichmentScore(observedDegCount, expectedDegCount);
-                double pValue = (observedDegCount > 0)
-                        ? calculateHypergeometricPValue(observedDegCount, totalGenesInPathway, pathwayGenes.size(), degs.size())
-                        : 1.0;
-                double adjustedPValue = adjustPValue(pValue);
-
-                enrichmentResults.add(new EnrichmentResult(pathwayId, enrichmentScore, pValue, adjustedPValue));
-
-                // Write the results to the CSV file
-                writer.write(String.join(",",
-                        description,
-                        String.valueOf(observedDegCount),
-                        String.valueOf(expectedDegCount),
-                        String.valueOf(enrichmentScore),
-                        String.valueOf(pValue),
-                        String.valueOf(adjustedPValue)));
-                writer.newLine();
-            }
+            calculateEnrichment(writer);
+            event.end(Path.of(outputFilePath), "enrichment csv"); // flushed by calculateEnrichment
+            DgseaMetrics.countWritten("enrichment_csv", Path.of(outputFilePath));
         } catch (IOException e) {
             logger.error("Error writing to CSV file: {}", e.getMessage());
         }
     }
 
+    /**
+     * Calculates enrichment scores and p-values for each pathway, replacing the results of an earlier calculation.
+     * Writes results as CSV to the given writer, which is left open.
+     *
+     * @param writer Writer to write the CSV header and one line per pathway to.
+     * @throws IOException if writing to the writer fails.
+     */
+    public void calculateEnrichment(Writer writer) throws IOException {
+        enrichmentResults = null;
+        calculateAllRawResults();
+        writeEnrichment(pathways, arena, getTotalTests(), writer);
+    }
+
+    /**
+     * Calculates the raw results of all pathways into the arena. With enough pathways for more than one range,
+     * contiguous ranges of pathways are calculated in parallel, each into its own arena and p-value memo,
+     * and appended in pathway order, so the results equal those of a sequential calculation.
+     */
+    private void calculateAllRawResults() {
+        int ranges = Math.min(DgseaExecutors.parallelism(), pathways.size() / MIN_PATHWAYS_PER_RANGE);
+        if (ranges <= 1) {
+            calculateRawResults(null, arena);
+            return;
+        }
+        try (Profiler.Stage _ = Profiler.stage("enrichment")) {
+            List<ForkJoinTask<EnrichmentArena>> tasks = new ArrayList<>(ranges);
+            for (int range = 0; range < ranges; range++) {
+                int from = (int) ((long) pathways.size() * range / ranges);
+                int to = (int) ((long) pathways.size() * (range + 1) / ranges);
+                tasks.add(DgseaExecutors.compute().submit(() -> {
+                    EnrichmentArena rangeResults = new EnrichmentArena(to - from);
+                    calculateRange(null, from, to, rangeResults, new PValueMemo());
+                    return rangeResults;
+                }));
+            }
+            arena.clear();
+            arena.ensureCapacity(pathways.size());
+            for (ForkJoinTask<EnrichmentArena> task : tasks) {
+                arena.addAll(task.join());
+            }
+        }
+    }
+
+    /**
+     * Calculates enrichment scores and p-values, without multiple-testing correction, for the pathways of a shard.
+     *
+     * @param shard Shard of which to calculate the pathways, or null for all pathways.
+     * @return Raw results in pathway order.
+     */
+    public List<RawEnrichmentResult> calculateRawResults(Shard shard) {
+        EnrichmentArena rawResults = new EnrichmentArena(0);
+        calculateRawResults(shard, rawResults);
+        return rawResults.toRawResults(pathways);
+    }
+
+    /**
+     * Calculates enrichment scores and p-values, without multiple-testing correction, for the pathways of a shard
+     * into an arena. Allocates nothing per pathway: reuse the arena to not allocate at all once it has grown.
+     *
+     * @param shard Shard of which to calculate the pathways, or null for all pathways.
+     * @param rawResults Arena to replace the contents of with the raw results, in pathway order.
+     */
+    public void calculateRawResults(Shard shard, EnrichmentArena rawResults) {
+        try (Profiler.Stage _ = Profiler.stage("enrichment")) {
+            rawResults.clear();
+            rawResults.ensureCapacity(shard == null ? pathways.size() : pathways.size() / shard.count() + 1);
+            calculateRange(shard, 0, pathways.size(), rawResults, pValueMemo);
+        }
+    }
+
+    /**
+     * Appends the raw results of the pathways from index from (inclusive) to index to (exclusive) of a shard to an arena.
+     * Only reads the table, so ranges can be calculated concurrently with their own arena and memo.
+     */
+    private void calculateRange(Shard shard, int from, int to, EnrichmentArena rawResults, PValueMemo pValueMemo) {
+        // p-values only depend on pathway size and observed DEGs here, which many pathways share
+        pValueMemo.clear();
+        long pValueHits = 0;
+        int tested = rawResults.size();
+        for (int i = from; i < to; i++) {
+            if (shard != null && !shard.contains(i)) continue;
+            String pathwayId = pathways.get(i).pathwayId();
+            long start = System.nanoTime();
+            PathwayEnrichmentEvent event = PathwayEnrichmentEvent.beginIfEnabled();
+
+            List<String> geneSymbols = geneSymbolsByPathway.getOrDefault(pathwayId, List.of());
+            int observedDegCount = countDegs(geneSymbols);
+            int totalGenesInPathway = geneSymbols.size();
+            double expectedDegCount = calculateExpectedDegCount(totalGenesInPathway);
+            double enrichmentScore = calculateEnrichmentScore(observedDegCount, expectedDegCount);
+            double pValue = 1.0;
+            if (observedDegCount > 0) {
+                pValue = pValueMemo.get(observedDegCount, totalGenesInPathway);
+                if (Double.isNaN(pValue)) {
+                    pValue = calculateHypergeometricPValue(observedDegCount, totalGenesInPathway, pathwayGenes.size(), degs.size());
+                    pValueMemo.put(observedDegCount, totalGenesInPathway, pValue);
+                } else {
+                    pValueHits++;
+                }
+            }
+            rawResults.add(i, observedDegCount, totalGenesInPathway, expectedDegCount, enrichmentScore, pValue);
+            if (event != null) event.end(pathwayId, totalGenesInPathway, observedDegCount, pValue);
+            Profiler.pathway(pathwayId, System.nanoTime() - start);
+        }
+        DgseaMetrics.PATHWAYS_TESTED.add(rawResults.size() - tested);
+        DgseaMetrics.PVALUE_CACHE_HITS.add(pValueHits);
+        DgseaMetrics.PVALUE_CACHE_MISSES.add(pValueMemo.size());
+    }
+
+    /**
+     * Applies the Bonferroni correction to raw results and writes them as CSV, one line per pathway.
+     * Used for a single run as well as for merging shards, so both give the same output.
+     *
+     * @param pathways   All pathways, to look up descriptions by pathway index.
+     * @param rawResults Raw results in pathway order.
+     * @param totalTests Number of pathways tested over all shards.
+     * @param writer     Writer to write the CSV header and one line per result to, which is left open.
+     * @return The corrected results, in the order of rawResults.
+     * @throws IOException if writing to the writer fails.
+     * @throws IllegalArgumentException if a raw result does not match the pathway at its index.
+     */
+    public static List<EnrichmentResult> writeEnrichment(List<Pathway> pathways, List<RawEnrichmentResult> rawResults,
+                                                         int totalTests, Writer writer) throws IOException {
+        List<EnrichmentResult> results = new ArrayList<>(rawResults.size());
+        CsvRows csvRows = new CsvRows(writer);
+
+        for (RawEnrichmentResult raw : rawResults) {
+            Pathway pathway = raw.pathwayIndex() < pathways.size() ? pathways.get(raw.pathwayIndex()) : null;
+            if (pathway == null || !pathway.pathwayId().equals(raw.pathwayId())) {
+                throw new IllegalArgumentException("Pathway " + raw.pathwayId() + " is not at position " + raw.pathwayIndex()
+                        + " of the pathway descriptions; results were calculated with other pathway descriptions");
+            }
+            double adjustedPValue = adjustPValue(raw.pValue(), totalTests);
+            results.add(new EnrichmentResult(raw.pathwayId(), raw.enrichmentScore(), raw.pValue(), adjustedPValue));
+
+            csvRows.write(pathway.description(), raw.observedDegCount(), raw.expectedDegCount(), raw.enrichmentScore(),
+                    raw.pValue(), adjustedPValue);
+        }
+        writer.flush();
+        return results;
+    }
+
+    /**
+     * Applies the Bonferroni correction to the raw results of an arena and writes them as CSV, one line per pathway,
+     * like {@link #writeEnrichment(List, List, int, Writer)} but without making a record per pathway.
+     *
+     * @param pathways   All pathways, to look up descriptions by pathway index.
+     * @param rawResults Raw results in pathway order.
+     * @param totalTests Number of pathways tested over all shards.
+     * @param writer     Writer to write the CSV header and one line per result to, which is left open.
+     * @throws IOException if writing to the writer fails.
+     */
+    public static void writeEnrichment(List<Pathway> pathways, EnrichmentArena rawResults, int totalTests,
+                                       Writer writer) throws IOException {
+        CsvRows csvRows = new CsvRows(writer);
+        for (int row = 0; row < rawResults.size(); row++) {
+            double pValue = rawResults.pValue(row);
+            csvRows.write(pathways.get(rawResults.pathwayIndex(row)).description(), rawResults.observedDegCount(row),
+                    rawResults.expectedDegCount(row), rawResults.enrichmentScore(row), pValue, adjustPValue(pValue, totalTests));
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the CSV header, then formats rows into a reused builder and buffer, so a row creates no strings.
+     * Numbers are formatted like {@link String#valueOf(double)}.
+     */
+    private static final class CsvRows {
+        private final Writer writer;
+        private final StringBuilder row = new StringBuilder(256);
+        private char[] chars = new char[256];
+
+        CsvRows(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write("Pathway,Observed DEGs,Expected DEGs,Enrichment Score,P-value,Adjusted P-value");
+            writer.write(System.lineSeparator());
+        }
+
+        void write(String description, int observedDegCount, double expectedDegCount, double enrichmentScore,
+                   double pValue, double adjustedPValue) throws IOException {
+            row.setLength(0);
+            row.append(description).append(',')
+                    .append(observedDegCount).append(',')
+                    .append(expectedDegCount).append(',')
+                    .append(enrichmentScore).append(',')
+                    .append(pValue).append(',')
+                    .append(adjustedPValue)
+                    .append(System.lineSeparator());
+            if (chars.length < row.length()) chars = new char[row.length() * 2];
+            row.getChars(0, row.length(), chars, 0);
+            writer.write(chars, 0, row.length());
+        }
+    }
+
+    /**
+     * @return Number of tests for the multiple-testing correction: the number of pathways.
+     */
+    public int getTotalTests() {
+        return pathways.size();
+    }
+
+    /**
+     * @return Number of DEGs, the sample size of the hypergeometric test.
+     */
+    public int getDegCount() {
+        return degs.size();
+    }
+
+    /**
+     * @return Number of pathway genes, the population size of the hypergeometric test.
+     */
+    public int getPathwayGeneCount() {
+        return pathwayGenes.size();
+    }
+
         /**
          * Calculates the observed count of DEGs in the specified pathway.
          *
@@ -89,10 +316,15 @@ public class EnrichmentTable {
          * @return Count of observed DEGs within the pathway.
          */
         public int calculateObservedDegCount(String pathwayId) {
-            return (int) pathwayGenes.stream()
-                    .filter(pg -> pg.pathwayId().equals(pathwayId))
-                    .filter(pg -> isDeg(pg.geneSymbol()))
-                    .count();
+            return countDegs(geneSymbolsByPathway.getOrDefault(pathwayId, List.of()));
+        }
+
+        private int countDegs(List<String> geneSymbols) {
+            int observedDegCount = 0;
+            for (int i = 0; i < geneSymbols.size(); i++) { // no iterator
+                if (isDeg(geneSymbols.get(i))) observedDegCount++;
+            }
+            return observedDegCount;
         }
 
         /**
@@ -102,9 +334,7 @@ public class EnrichmentTable {
          * @return Total number of genes in the pathway.
          */
         public int countTotalGenesInPathway(String pathwayId) {
-            return (int) pathwayGenes.stream()
-                    .filter(pg -> pg.pathwayId().equals(pathwayId))
-                    .count();
+            return geneSymbolsByPathway.getOrDefault(pathwayId, List.of()).size();
         }
 
         /**
@@ -142,7 +372,7 @@ public class EnrichmentTable {
          * @return True if the gene is a DEG; false otherwise.
          */
         private boolean isDeg(String geneSymbol) {
-            return degs.stream().anyMatch(deg -> deg.geneSymbol().equals(geneSymbol));
+            return degGeneSymbols.contains(geneSymbol);
         }
 
         /**
@@ -212,7 +442,17 @@ public class EnrichmentTable {
          * @return Adjusted p-value.
          */
         public double adjustPValue(double pValue) {
-            int totalTests = pathways.size();
+            return adjustPValue(pValue, getTotalTests());
+        }
+
+        /**
+         * Adjusts a p-value using the Bonferroni correction for the given number of tests.
+         *
+         * @param pValue Original p-value.
+         * @param totalTests Number of tests, over all shards.
+         * @return Adjusted p-value.
+         */
+        public static double adjustPValue(double pValue, int totalTests) {
             if (Double.isNaN(pValue)) {
                 return 1.0;
             }
@@ -220,11 +460,19 @@ public class EnrichmentTable {
         }
 
         /**
-         * Retrieves the list of enrichment results.
+         * Retrieves the list of enrichment results, made from the last calculation on the first call after it.
          *
-         * @return List of {@link EnrichmentResult} objects.
+         * @return List of {@link EnrichmentResult} objects, empty if nothing was calculated yet.
          */
         public List<EnrichmentResult> getEnrichmentResults() {
+            if (enrichmentResults == null) {
+                enrichmentResults = new ArrayList<>(arena.size());
+                for (int row = 0; row < arena.size(); row++) {
+                    double pValue = arena.pValue(row);
+                    enrichmentResults.add(new EnrichmentResult(pathways.get(arena.pathwayIndex(row)).pathwayId(),
+                            arena.enrichmentScore(row), pValue, adjustPValue(pValue, getTotalTests())));
+                }
+            }
             return enrichmentResults;
         }
     }
@@ -0,0 +1,75 @@
+package nl.bioinf.dgsea.table_outputs;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing map from (observed DEGs, pathway size) to hypergeometric p-value, on primitive arrays so
+ * lookups neither box keys nor values. Only holds positive observed counts, so key 0 marks an empty slot.
+ */
+final class PValueMemo {
+    private long[] keys = new long[256];
+    private double[] values = new double[256];
+    private int size;
+
+    /**
+     * Removes all p-values, keeping the allocated arrays.
+     */
+    void clear() {
+        if (size == 0) return;
+        Arrays.fill(keys, 0);
+        size = 0;
+    }
+
+    /**
+     * @return The p-value, or NaN if none was stored for the key.
+     */
+    double get(int observedDegCount, int totalGenesInPathway) {
+        long key = key(observedDegCount, totalGenesInPathway);
+        int mask = keys.length - 1;
+        for (int slot = slot(key, mask); keys[slot] != 0; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return values[slot];
+        }
+        return Double.NaN;
+    }
+
+    void put(int observedDegCount, int totalGenesInPathway, double pValue) {
+        if (2 * (size + 1) > keys.length) grow();
+        insert(key(observedDegCount, totalGenesInPathway), pValue);
+    }
+
+    /**
+     * @return Number of stored p-values.
+     */
+    int size() {
+        return size;
+    }
+
+    private void insert(long key, double value) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (keys[slot] != 0 && keys[slot] != key) slot = (slot + 1) & mask;
+        if (keys[slot] == 0) size++;
+        keys[slot] = key;
+        values[slot] = value;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new double[oldValues.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) insert(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static long key(int observedDegCount, int totalGenesInPathway) {
+        if (observedDegCount <= 0) throw new IllegalArgumentException("Only positive observed DEG counts are memoized. Given: " + observedDegCount);
+        return (long) observedDegCount << 32 | totalGenesInPathway;
+    }
+
+    private static int slot(long key, int mask) {
+        return Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+    }
+}
@@ -5,9 +5,13 @@
 
 package nl.bioinf.dgsea.table_outputs;
 
+import nl.bioinf.dgsea.data_processing.ContingencyCounts;
 import nl.bioinf.dgsea.data_processing.Deg;
 import nl.bioinf.dgsea.data_processing.Pathway;
+import nl.bioinf.dgsea.data_processing.PathwayDatabase;
 import nl.bioinf.dgsea.data_processing.PathwayGene;
+import nl.bioinf.dgsea.profiling.ContingencyTableEvent;
+import nl.bioinf.dgsea.profiling.Profiler;
 
 import java.util.*;
 
@@ -33,7 +37,23 @@ public class TwoByTwoContingencyTable {
         }
         this.degs = degs;
         this.pathways = pathways;
-        this.mapPathwayGenes = getPathwayGeneMap(pathwayGenes);
+        this.mapPathwayGenes = PathwayDatabase.indexGeneSymbols(pathwayGenes);
+        this.pval = pval;
+    }
+
+    /**
+     * Constructs a 2- by- 2- contingency table class for the degs against a loaded pathway database, reusing its gene-symbol index
+     * @param degs differential expressed genes
+     * @param database loaded pathway database
+     * @param pval threshold for significance
+     */
+    public TwoByTwoContingencyTable(List<Deg> degs, PathwayDatabase database, double pval) {
+        if (degs == null || database == null) {
+            throw new IllegalStateException("Data lists must be initialized before use.");
+        }
+        this.degs = degs;
+        this.pathways = database.pathways();
+        this.mapPathwayGenes = database.geneSymbolsByPathway();
         this.pval = pval;
     }
 
@@ -50,22 +70,7 @@ public class TwoByTwoContingencyTable {
     public String getTable() throws NullPointerException {
         StringBuilder output = new StringBuilder();
 
-        for (Pathway pathway : pathways) {
-            String pathwayId = pathway.pathwayId();
-            Set<String> allGeneSymbols = getPathwaySpecificGeneSymbols(pathwayId, mapPathwayGenes);
-
-            int countTotal = getCountTotal();
-
-            int countInPathway = getCountInPathway(allGeneSymbols);
-            int countNotInPathway = countTotal - countInPathway;
-            int countSignificant = getCountSignificant();
-            int countNotSignificant = countTotal - countSignificant;
-
-            int countInPathwaySignificant = getCountInPathwaySignificant(allGeneSymbols); // Significant = all subtracted by not significant
-            int countNotInPathwaySignificant = countSignificant - countInPathwaySignificant;
-            int countInPathwayNotSignificant = countInPathway - countInPathwaySignificant;
-            int countNotInPathwayNotSignificant = countNotInPathway - countNotInPathwaySignificant;
-
+        for (ContingencyCounts counts : getCounts()) {
             output.append("""
 
                     %s (%s)
@@ -75,16 +80,52 @@ public class TwoByTwoContingencyTable {
                     C*\t | %s\t | %s\t | %s
                     Sum\t | %s\t | %s\t | %s
                     """.formatted(
-                    pathway.description(), pathway.pathwayId(),
-                    countInPathwaySignificant, countInPathwayNotSignificant, countInPathway,
-                    countNotInPathwaySignificant, countNotInPathwayNotSignificant, countNotInPathway,
-                    countSignificant, countNotSignificant, countTotal
+                    counts.description(), counts.pathwayId(),
+                    counts.inPathwaySignificant(), counts.inPathwayNotSignificant(), counts.inPathway(),
+                    counts.notInPathwaySignificant(), counts.notInPathwayNotSignificant(), counts.notInPathway(),
+                    counts.significant(), counts.notSignificant(), counts.total()
             ));
         }
         output.append("\nD=is.. D*=is not.., Significant deg C=in.. C*=not in.., ..pathway.");
         return output.toString();
     }
 
+    /**
+     * Collects count data for every pathway, in order of this.pathways
+     * @throws NullPointerException if this.pathways has an id that's not in this.mapPathwayGenes
+     * @return counts per pathway
+     */
+    public List<ContingencyCounts> getCounts() throws NullPointerException {
+        try (Profiler.Stage _ = Profiler.stage("contingency table")) {
+            ContingencyTableEvent event = new ContingencyTableEvent();
+            event.begin();
+            List<ContingencyCounts> allCounts = new ArrayList<>(pathways.size());
+            int countTotal = getCountTotal();
+            int countSignificant = getCountSignificant();
+
+            for (Pathway pathway : pathways) {
+                String pathwayId = pathway.pathwayId();
+                long start = System.nanoTime();
+                Set<String> allGeneSymbols = getPathwaySpecificGeneSymbols(pathwayId, mapPathwayGenes);
+
+                int countInPathway = getCountInPathway(allGeneSymbols);
+                int countNotInPathway = countTotal - countInPathway;
+
+                int countInPathwaySignificant = getCountInPathwaySignificant(allGeneSymbols); // Significant = all subtracted by not significant
+                int countNotInPathwaySignificant = countSignificant - countInPathwaySignificant;
+                int countInPathwayNotSignificant = countInPathway - countInPathwaySignificant;
+                int countNotInPathwayNotSignificant = countNotInPathway - countNotInPathwaySignificant;
+
+                allCounts.add(new ContingencyCounts(pathwayId, pathway.description(),
+                        countInPathwaySignificant, countInPathwayNotSignificant,
+                        countNotInPathwaySignificant, countNotInPathwayNotSignificant));
+                Profiler.pathway(pathwayId, System.nanoTime() - start);
+            }
+            event.end(pathways.size(), countTotal, countSignificant);
+            return allCounts;
+        }
+    }
+
     /**
      * Counts any deg
      * @return number of degs
@@ -128,18 +169,4 @@ public class TwoByTwoContingencyTable {
         return new HashSet<>(mapPathwayGenes.get(pathwayId));
     }
 
-    /**
-     * Makes map for each pathway in pathwayGenes, with pathway-id as key
-     * @return pathways map containing pahtway-id, gene-symbol pairs
-     */
-    private Map<String, List<String>> getPathwayGeneMap(List<PathwayGene> pathwayGenes) {
-        final Map<String, List<String>> pathwayGeneMap = new HashMap<>();
-        for (PathwayGene gene : pathwayGenes) {
-            pathwayGeneMap
-                    .computeIfAbsent(gene.pathwayId(), _ -> new ArrayList<>())
-                    .add(gene.geneSymbol());
-        }
-        return pathwayGeneMap;
-    }
-
-}
\ No newline at end of file
+}
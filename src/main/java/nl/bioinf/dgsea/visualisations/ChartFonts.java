@@ -0,0 +1,16 @@
+package nl.bioinf.dgsea.visualisations;
+
+import java.awt.*;
+
+/**
+ * Fonts used by the charts. Fonts are immutable, so one instance of each is shared by all charts and threads,
+ * instead of every chart looking up and creating its own.
+ */
+final class ChartFonts {
+    static final Font TICK_LABEL = new Font("SansSerif", Font.PLAIN, 12);
+    static final Font CATEGORY_LABEL = new Font("Arial", Font.PLAIN, 12);
+    static final Font ITEM_LABEL = new Font("SansSerif", Font.PLAIN, 14);
+
+    private ChartFonts() {
+    }
+}
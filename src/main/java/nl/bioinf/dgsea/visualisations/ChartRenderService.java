@@ -0,0 +1,231 @@
+package nl.bioinf.dgsea.visualisations;
+
+import nl.bioinf.dgsea.DgseaExecutors;
+import nl.bioinf.dgsea.metrics.DgseaMetrics;
+import nl.bioinf.dgsea.profiling.ChartRenderEvent;
+import nl.bioinf.dgsea.profiling.OutputWriteEvent;
+import nl.bioinf.dgsea.profiling.Profiler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jfree.chart.ChartUtils;
+import org.jfree.chart.JFreeChart;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Renders and encodes charts in headless mode, on the calling thread. <br>
+ * Charts are built (datasets and styling) by the caller and only drawn and encoded here.
+ * The image buffers charts are drawn into are pooled per size and type: a buffer is cleared and reused by the next chart of the same size instead of allocating a new image per chart.
+ * The encoded images are identical to those of {@link ChartUtils#writeChartAsPNG(OutputStream, JFreeChart, int, int)}
+ * and {@link ChartUtils#writeChartAsJPEG(OutputStream, float, JFreeChart, int, int)},
+ * unless a PNG compression is set, in which case PNGs are encoded by {@link PngEncoder}.
+ * SVGs are not rasterized: the chart is drawn on a {@link SvgGraphics2D} streaming elements to the output.
+ * Bytes written and encode time are logged per chart.
+ */
+public final class ChartRenderService {
+    private static final float JPEG_QUALITY = 1.0f;
+    private static final Map<ImageKey, Queue<BufferedImage>> imagePool = new ConcurrentHashMap<>();
+    private static final Logger logger = LogManager.getLogger(ChartRenderService.class);
+    private static volatile PngEncoder.Compression pngCompression = null;
+
+    static {
+        // must be set before AWT initializes, charts are never displayed
+        if (System.getProperty("java.awt.headless") == null) System.setProperty("java.awt.headless", "true");
+    }
+
+    /**
+     * Size and type of a pooled image buffer.
+     */
+    private record ImageKey(int width, int height, int type) {
+    }
+
+    private ChartRenderService() {
+    }
+
+    /**
+     * Renders the chart on the calling thread into a pooled buffer and writes it to a file.
+     *
+     * @param chart chart to render
+     * @param width image width
+     * @param height image height
+     * @param imageFormat "png", "jpg" or "svg"
+     * @param file file to write the image to
+     * @throws IOException if writing fails
+     */
+    public static void save(JFreeChart chart, int width, int height, String imageFormat, Path file) throws IOException {
+        OutputWriteEvent event = new OutputWriteEvent();
+        event.begin();
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file))) {
+            write(chart, width, height, imageFormat, out);
+        }
+        event.end(file, "chart");
+        DgseaMetrics.countWritten("chart", file);
+    }
+
+    /**
+     * Renders the chart on the calling thread into a pooled buffer and writes it to the stream, which is left open.
+     *
+     * @param chart chart to render
+     * @param width image width
+     * @param height image height
+     * @param imageFormat "png", "jpg" or "svg"
+     * @param out stream to write the image to
+     * @throws IOException if writing fails
+     */
+    public static void write(JFreeChart chart, int width, int height, String imageFormat, OutputStream out) throws IOException {
+        ChartRenderEvent event = new ChartRenderEvent();
+        event.begin();
+        long start = System.nanoTime();
+        if (isSvg(imageFormat)) {
+            try (Profiler.Stage _ = Profiler.stage("render svg")) {
+                event.end("svg", width, height, writeSvg(chart, width, height, out));
+            }
+            DgseaMetrics.RENDER_SECONDS.labels("svg").observeNanosSince(start);
+            return;
+        }
+        boolean png = isPng(imageFormat);
+        ImageKey key = new ImageKey(width, height, png ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        BufferedImage image = borrowImage(key);
+        try {
+            try (Profiler.Stage _ = Profiler.stage("render")) {
+                Graphics2D g2 = image.createGraphics();
+                try {
+                    chart.draw(g2, new Rectangle2D.Double(0, 0, width, height), null, null);
+                } finally {
+                    g2.dispose();
+                }
+            }
+            try (Profiler.Stage _ = Profiler.stage(png ? "encode png" : "encode jpeg")) {
+                event.end(png ? "png" : "jpeg", width, height, encode(image, png, out));
+            }
+            DgseaMetrics.RENDER_SECONDS.labels(png ? "png" : "jpeg").observeNanosSince(start);
+        } finally {
+            returnImage(key, image);
+        }
+    }
+
+    /**
+     * @param fileName name or path of an image file
+     * @return image format by the file extension: "svg", "jpg" or otherwise "png"
+     */
+    public static String imageFormatOf(String fileName) {
+        String lowerCase = fileName.toLowerCase(Locale.ROOT);
+        if (lowerCase.endsWith(".svg")) return "svg";
+        if (lowerCase.endsWith(".jpg") || lowerCase.endsWith(".jpeg")) return "jpg";
+        return "png";
+    }
+
+    /**
+     * Sets the compression of all PNGs written from now on.
+     * @param compression deflate level for {@link PngEncoder}, or null to encode like {@link ChartUtils}
+     */
+    public static void setPngCompression(PngEncoder.Compression compression) {
+        pngCompression = compression;
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    private static long encode(BufferedImage image, boolean png, OutputStream out) throws IOException {
+        PngEncoder.Compression compression = pngCompression;
+        CountingOutputStream counted = new CountingOutputStream(out);
+        long start = System.nanoTime();
+        if (!png) {
+            ChartUtils.writeBufferedImageAsJPEG(counted, JPEG_QUALITY, image);
+        } else if (compression == null) {
+            ChartUtils.writeBufferedImageAsPNG(counted, image);
+        } else {
+            PngEncoder.encode(image, compression, counted);
+        }
+        counted.flush();
+        logger.info("Encoded {}x{} {} ({}): {} bytes in {} ms", image.getWidth(), image.getHeight(), png ? "PNG" : "JPEG",
+                png && compression != null ? compression : "default", counted.count,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return counted.count;
+    }
+
+    /**
+     * @return number of bytes written
+     */
+    private static long writeSvg(JFreeChart chart, int width, int height, OutputStream out) throws IOException {
+        CountingOutputStream counted = new CountingOutputStream(out);
+        long start = System.nanoTime();
+        // not closed, that would close the caller's stream
+        Writer writer = new BufferedWriter(new OutputStreamWriter(counted, StandardCharsets.UTF_8), 1 << 16);
+        SvgGraphics2D g2 = new SvgGraphics2D(writer, width, height);
+        chart.draw(g2, new Rectangle2D.Double(0, 0, width, height), null, null);
+        g2.finish();
+        logger.info("Encoded {}x{} SVG: {} bytes in {} ms", width, height, counted.count,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return counted.count;
+    }
+
+    /**
+     * Counts the bytes written through it.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+
+    private static boolean isSvg(String imageFormat) {
+        return "svg".equals(imageFormat);
+    }
+
+    private static boolean isPng(String imageFormat) {
+        return switch (imageFormat) {
+            case "png" -> true;
+            case "jpg", "jpeg" -> false;
+            default -> throw new IllegalArgumentException("Image format must be png, jpg or svg. Given: " + imageFormat);
+        };
+    }
+
+    /**
+     * @return a cleared image of the key's size and type, pooled if available
+     */
+    private static BufferedImage borrowImage(ImageKey key) {
+        BufferedImage image = imagePool.computeIfAbsent(key, _ -> new ConcurrentLinkedQueue<>()).poll();
+        if (image == null) return new BufferedImage(key.width(), key.height(), key.type());
+        Graphics2D g2 = image.createGraphics();
+        try {
+            g2.setComposite(AlphaComposite.Clear); // back to all zero, the same as a new image
+            g2.fillRect(0, 0, key.width(), key.height());
+        } finally {
+            g2.dispose();
+        }
+        return image;
+    }
+
+    private static void returnImage(ImageKey key, BufferedImage image) {
+        Queue<BufferedImage> pooled = imagePool.get(key);
+        // at most --threads charts are rendered at once
+        if (pooled.size() < Math.max(2, DgseaExecutors.threads())) pooled.offer(image);
+    }
+}
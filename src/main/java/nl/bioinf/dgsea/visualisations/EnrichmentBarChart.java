@@ -1,5 +1,6 @@
 package nl.bioinf.dgsea.visualisations;
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jfree.chart.ChartFactory;
@@ -9,17 +10,19 @@ import org.jfree.chart.axis.CategoryLabelPositions;
 import org.jfree.chart.plot.CategoryPlot;
 import org.jfree.chart.renderer.category.BarRenderer;
 import org.jfree.data.category.DefaultCategoryDataset;
-import org.jfree.chart.ChartUtils;
 
 import java.awt.*;
-import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
-import nl.bioinf.dgsea.data_processing.Pathway;
+import nl.bioinf.dgsea.data_processing.PathwayIndex;
 import nl.bioinf.dgsea.data_processing.EnrichmentResult;
+import nl.bioinf.dgsea.logging.RepeatedMessage;
+import nl.bioinf.dgsea.profiling.Profiler;
 
 /**
  * Class for creating and saving an enrichment bar chart using JFreeChart.
@@ -29,32 +32,67 @@ public class EnrichmentBarChart {
     private final String title;
     private final List<EnrichmentResult> enrichmentResults;
     private final Color[] colorManual; // User-defined colors
+    private final JFreeChart barChart;
     private final Logger logger = LogManager.getLogger();
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
 
     /**
-     * Constructor for EnrichmentBarChart.
+     * Constructor for EnrichmentBarChart, builds the chart without saving it.
      *
      * @param title            The title of the chart.
      * @param enrichmentResults The enrichment results to be displayed.
-     * @param pathways         The pathways corresponding to the enrichment results.
-     * @param outputFilePath   The path where the chart image will be saved.
+     * @param pathwayIndex     The descriptions of the pathways of the enrichment results.
      * @param colorManual      User-defined colors for the bars.
-     * @throws IOException if an error occurs while saving the chart.
      */
-    public EnrichmentBarChart(String title, List<EnrichmentResult> enrichmentResults, List<Pathway> pathways,
-                              String outputFilePath, Color[] colorManual) throws IOException {
+    public EnrichmentBarChart(String title, List<EnrichmentResult> enrichmentResults, PathwayIndex pathwayIndex,
+                              Color[] colorManual) {
         this.title = title;
         this.enrichmentResults = enrichmentResults;
         this.colorManual = colorManual;
 
-        DefaultCategoryDataset dataset = createDataset(enrichmentResults, pathways);
-        JFreeChart barChart = createChart(dataset);
-        applyColors(barChart);
+        try (Profiler.Stage _ = Profiler.stage("chart dataset")) {
+            DefaultCategoryDataset dataset = createDataset(enrichmentResults, pathwayIndex);
+            this.barChart = createChart(dataset);
+            applyColors(barChart);
+        }
+    }
+
+    /**
+     * Constructor for EnrichmentBarChart, builds the chart and saves it as PNG, or as SVG or JPEG by the file extension.
+     *
+     * @param title            The title of the chart.
+     * @param enrichmentResults The enrichment results to be displayed.
+     * @param pathwayIndex     The descriptions of the pathways of the enrichment results.
+     * @param outputFilePath   The path where the chart image will be saved.
+     * @param colorManual      User-defined colors for the bars.
+     * @throws IOException if an error occurs while saving the chart.
+     */
+    public EnrichmentBarChart(String title, List<EnrichmentResult> enrichmentResults, PathwayIndex pathwayIndex,
+                              String outputFilePath, Color[] colorManual) throws IOException {
+        this(title, enrichmentResults, pathwayIndex, colorManual);
+        ChartRenderService.save(barChart, WIDTH, HEIGHT, ChartRenderService.imageFormatOf(outputFilePath), Path.of(outputFilePath));
+    }
+
+    /**
+     * Writes the chart as PNG to the given stream, which is left open.
+     *
+     * @param out stream to write the PNG image to.
+     * @throws IOException if writing to the stream fails.
+     */
+    public void writeChartAsPNG(OutputStream out) throws IOException {
+        ChartRenderService.write(barChart, WIDTH, HEIGHT, "png", out);
+    }
 
-        int width = 800;
-        int height = 600;
-        File file = new File(outputFilePath);
-        ChartUtils.saveChartAsPNG(file, barChart, width, height);
+    /**
+     * Writes the chart to the given stream, which is left open.
+     *
+     * @param out stream to write the image to.
+     * @param imageFormat "png", "jpg" or "svg".
+     * @throws IOException if writing to the stream fails.
+     */
+    public void writeChart(OutputStream out, String imageFormat) throws IOException {
+        ChartRenderService.write(barChart, WIDTH, HEIGHT, imageFormat, out);
     }
 
     /**
@@ -77,7 +115,7 @@ public class EnrichmentBarChart {
 
         // Rotate labels 90 degrees if needed (set to NONE if you don't want any labels)
         domainAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_90);
-        domainAxis.setTickLabelFont(new Font("Arial", Font.PLAIN, 12)); // Reduce font size or remove
+        domainAxis.setTickLabelFont(ChartFonts.CATEGORY_LABEL); // Reduce font size or remove
 
         // Increase the thickness of the bars
         renderer.setMaximumBarWidth(0.4);  // Adjust the value for thicker bars
@@ -123,31 +161,29 @@ public class EnrichmentBarChart {
     }
 
     /**
-     * Creates a dataset for the bar chart from the enrichment results and pathways.
+     * Creates a dataset for the bar chart from the enrichment results and pathway descriptions.
+     * Results of pathways without a description are left out.
      *
      * @param enrichmentResults The enrichment results.
-     * @param pathways         The pathways corresponding to the enrichment results.
+     * @param pathwayIndex     The descriptions of the pathways of the enrichment results.
      * @return The dataset for the bar chart.
      */
-    DefaultCategoryDataset createDataset(List<EnrichmentResult> enrichmentResults, List<Pathway> pathways) {
+    DefaultCategoryDataset createDataset(List<EnrichmentResult> enrichmentResults, PathwayIndex pathwayIndex) {
         DefaultCategoryDataset dataset = new DefaultCategoryDataset();
         Set<String> addedSeriesNames = new HashSet<>(); // Set to track unique series names
 
-        for (EnrichmentResult result : enrichmentResults) {
-            Pathway matchingPathway = pathways.stream()
-                    .filter(pathway -> pathway.pathwayId().equals(result.pathwayId()))
-                    .findFirst()
-                    .orElse(null);
-
-            if (matchingPathway != null) {
-                String description = matchingPathway.description();
-
-                // Check if the description has already been added
-                if (!addedSeriesNames.contains(description)) {
-                    dataset.addValue(result.enrichmentScore(), description, description);  // Use description as series and category name
-                    addedSeriesNames.add(description); // Add description to the set
-                } else {
-                    logger.info("Pathway with description: '{}' already exists. Will not be added to bar-chart.", description);
+        try (RepeatedMessage duplicates = new RepeatedMessage(logger, Level.INFO, "duplicate descriptions not added to bar-chart", 3)) {
+            for (EnrichmentResult result : enrichmentResults) {
+                String description = pathwayIndex.description(result.pathwayId());
+
+                if (description != null) {
+                    // Check if the description has already been added
+                    if (!addedSeriesNames.contains(description)) {
+                        dataset.addValue(result.enrichmentScore(), description, description);  // Use description as series and category name
+                        addedSeriesNames.add(description); // Add description to the set
+                    } else {
+                        duplicates.log("Pathway with description: '{}' already exists. Will not be added to bar-chart.", description);
+                    }
                 }
             }
         }
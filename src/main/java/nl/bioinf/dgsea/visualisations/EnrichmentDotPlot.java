@@ -1,31 +1,35 @@
 package nl.bioinf.dgsea.visualisations;
 
+import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jfree.chart.ChartFactory;
 import org.jfree.chart.JFreeChart;
-import org.jfree.chart.labels.ItemLabelPosition;
 import org.jfree.chart.plot.PlotOrientation;
 import org.jfree.chart.plot.XYPlot;
 import org.jfree.chart.renderer.xy.XYLineAndShapeRenderer;
 import org.jfree.chart.ui.RectangleInsets;
 import org.jfree.chart.labels.XYItemLabelGenerator;
-import org.jfree.chart.ChartUtils;
 import org.jfree.chart.axis.NumberAxis;
-import org.jfree.chart.ui.TextAnchor;
 import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
-import org.jfree.chart.labels.ItemLabelAnchor;
+import org.jfree.chart.plot.PlotRenderingInfo;
+import org.jfree.chart.renderer.xy.XYItemRendererState;
+import org.jfree.data.xy.XYDataset;
 
 import java.awt.*;
 import java.awt.geom.Ellipse2D;
-import java.io.File;
+import java.awt.geom.Rectangle2D;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.List;
 
-import nl.bioinf.dgsea.data_processing.Pathway;
+import nl.bioinf.dgsea.data_processing.PathwayIndex;
 import nl.bioinf.dgsea.data_processing.EnrichmentResult;
+import nl.bioinf.dgsea.logging.RepeatedMessage;
+import nl.bioinf.dgsea.profiling.Profiler;
 
 /**
  * Class to create a dot plot for enrichment results using JFreeChart.
@@ -35,43 +39,79 @@ import nl.bioinf.dgsea.data_processing.EnrichmentResult;
 public class EnrichmentDotPlot {
     private final String title;
     private final List<EnrichmentResult> enrichmentResults;
-    private final List<Pathway> pathways;
     private final Color[] colorManual; // User-defined colors\
     private double dotSize;       // Size of the dots
     private float dotTransparency; // Transparency of the dots
+    private final JFreeChart dotPlot;
     private final Logger logger = LogManager.getLogger(EnrichmentDotPlot.class);
+    private static final int WIDTH = 1200;
+    private static final int HEIGHT = 800;
 
     /**
-     * Constructor for EnrichmentDotPlot.
+     * Constructor for EnrichmentDotPlot, builds the plot without saving it.
      *
      * @param title              The title of the plot.
      * @param enrichmentResults  The list of enrichment results.
-     * @param pathways           The list of pathways corresponding to the enrichment results.
-     * @param outputFilePath     The file path to save the plot.
+     * @param pathwayIndex       The descriptions of the pathways of the enrichment results.
      * @param colorManual        User-defined colors for the dots.
      * @param dotSize            Size of the dots.
      * @param dotTransparency    Transparency of the dots.
-     * @throws IOException If an error occurs while saving the chart.
      */
     public EnrichmentDotPlot(String title, List<EnrichmentResult> enrichmentResults,
-                             List<Pathway> pathways, String outputFilePath,
-                             Color[] colorManual,
-                             double dotSize, float dotTransparency) throws IOException {
+                             PathwayIndex pathwayIndex, Color[] colorManual,
+                             double dotSize, float dotTransparency) {
         this.title = title;
         this.enrichmentResults = enrichmentResults;
-        this.pathways = pathways;
         this.colorManual = colorManual;
         setDotSize(dotSize);
         setDotTransparency(dotTransparency);
 
-        XYSeriesCollection dataset = createDataset(enrichmentResults, pathways);
-        JFreeChart dotPlot = createChart(dataset);
+        try (Profiler.Stage _ = Profiler.stage("chart dataset")) {
+            XYSeriesCollection dataset = createDataset(enrichmentResults, pathwayIndex);
+            this.dotPlot = createChart(dataset);
+        }
+    }
+
+    /**
+     * Constructor for EnrichmentDotPlot, builds the plot and saves it as PNG, or as SVG or JPEG by the file extension.
+     *
+     * @param title              The title of the plot.
+     * @param enrichmentResults  The list of enrichment results.
+     * @param pathwayIndex       The descriptions of the pathways of the enrichment results.
+     * @param outputFilePath     The file path to save the plot.
+     * @param colorManual        User-defined colors for the dots.
+     * @param dotSize            Size of the dots.
+     * @param dotTransparency    Transparency of the dots.
+     * @throws IOException If an error occurs while saving the chart.
+     */
+    public EnrichmentDotPlot(String title, List<EnrichmentResult> enrichmentResults,
+                             PathwayIndex pathwayIndex, String outputFilePath,
+                             Color[] colorManual,
+                             double dotSize, float dotTransparency) throws IOException {
+        this(title, enrichmentResults, pathwayIndex, colorManual, dotSize, dotTransparency);
+
+        ChartRenderService.save(dotPlot, WIDTH, HEIGHT, ChartRenderService.imageFormatOf(outputFilePath), Path.of(outputFilePath));
+    }
 
-        // Save the chart as a PNG file
-        int width = 1200;
-        int height = 800;
-        File file = new File(outputFilePath);
-        ChartUtils.saveChartAsPNG(file, dotPlot, width, height);
+    /**
+     * Writes the plot as PNG to the given stream, which is left open.
+     *
+     * @param out stream to write the PNG image to.
+     * @throws IOException if writing to the stream fails.
+     */
+    public void writeChartAsPNG(OutputStream out) throws IOException {
+        ChartRenderService.write(dotPlot, WIDTH, HEIGHT, "png", out);
+    }
+
+    /**
+     * Writes the plot to the given stream, which is left open.
+     *
+     * @param out stream to write the image to.
+     * @param imageFormat "png", "jpg" or "svg".
+     * @throws IOException if writing to the stream fails.
+     */
+    public void writeChart(OutputStream out, String imageFormat) throws IOException {
+        ChartRenderService.write(dotPlot, WIDTH, HEIGHT, imageFormat, out);
     }
 
     /**
@@ -119,7 +159,7 @@ public class EnrichmentDotPlot {
         );
 
         XYPlot plot = dotPlot.getXYPlot();
-        XYLineAndShapeRenderer renderer = new XYLineAndShapeRenderer(false, true);
+        XYLineAndShapeRenderer renderer = new LabelPlacingRenderer(dotSize);
         plot.setRenderer(renderer);
 
         // Set the shape for the dots using the specified dot size and transparency
@@ -154,12 +194,12 @@ public class EnrichmentDotPlot {
     private void customizeAxes(XYPlot plot) {
         NumberAxis domainAxis = (NumberAxis) plot.getDomainAxis();
         domainAxis.setVerticalTickLabels(false);
-        domainAxis.setTickLabelFont(new Font("SansSerif", Font.PLAIN, 12));
+        domainAxis.setTickLabelFont(ChartFonts.TICK_LABEL);
         domainAxis.setTickLabelPaint(Color.BLACK);
         domainAxis.setTickLabelInsets(new RectangleInsets(5, 5, 5, 5));
 
         NumberAxis rangeAxis = (NumberAxis) plot.getRangeAxis();
-        rangeAxis.setTickLabelFont(new Font("SansSerif", Font.PLAIN, 12));
+        rangeAxis.setTickLabelFont(ChartFonts.TICK_LABEL);
         rangeAxis.setTickLabelPaint(Color.BLACK);
         plot.setDomainGridlinePaint(Color.GRAY);
         plot.setRangeGridlinePaint(Color.GRAY);
@@ -186,33 +226,34 @@ public class EnrichmentDotPlot {
     }
 
     /**
-     * Creates a dataset for the dot plot from the enrichment results and pathways.
+     * Creates a dataset for the dot plot from the enrichment results and pathway descriptions,
+     * with a series per significant result, named by the description of its pathway, or its pathway-id if it has none.
      *
      * @param enrichmentResults The enrichment results to be plotted.
-     * @param pathways         The pathways corresponding to the enrichment results.
+     * @param pathwayIndex     The descriptions of the pathways of the enrichment results.
      * @return An XYSeriesCollection containing the dataset.
      */
-    XYSeriesCollection createDataset(List<EnrichmentResult> enrichmentResults, List<Pathway> pathways) {
+    XYSeriesCollection createDataset(List<EnrichmentResult> enrichmentResults, PathwayIndex pathwayIndex) {
         XYSeriesCollection dataset = new XYSeriesCollection();
         Set<String> addedSeriesNames = new HashSet<>(); // Set for unique series names
 
-        for (int i = 0; i < enrichmentResults.size(); i++) {
-            EnrichmentResult result = enrichmentResults.get(i);
-            double adjustedPValue = result.adjustedPValue();
-            double enrichmentScore = result.enrichmentScore();
-
-            if (!Double.isNaN(adjustedPValue) && adjustedPValue < 0.05) {
-                String seriesName = pathways.get(i).description();
-
-                // Check if the series has already been added
-                if (!addedSeriesNames.contains(seriesName)) {
-                    XYSeries series = new XYSeries(seriesName);
-                    series.add(adjustedPValue, enrichmentScore);
-                    dataset.addSeries(series);
-                    addedSeriesNames.add(seriesName); // Add name to the set
-                } else {
-                    // Optional: log the duplicate series name
-                    logDuplicateSeries(seriesName);
+        try (RepeatedMessage duplicates = new RepeatedMessage(logger, Level.ERROR, "duplicate series skipped", 3)) {
+            for (EnrichmentResult result : enrichmentResults) {
+                double adjustedPValue = result.adjustedPValue();
+                double enrichmentScore = result.enrichmentScore();
+
+                if (!Double.isNaN(adjustedPValue) && adjustedPValue < 0.05) {
+                    String seriesName = pathwayIndex.label(result.pathwayId());
+
+                    // Check if the series has already been added
+                    if (!addedSeriesNames.contains(seriesName)) {
+                        XYSeries series = new XYSeries(seriesName);
+                        series.add(adjustedPValue, enrichmentScore);
+                        dataset.addSeries(series);
+                        addedSeriesNames.add(seriesName); // Add name to the set
+                    } else {
+                        logDuplicateSeries(duplicates, seriesName);
+                    }
                 }
             }
         }
@@ -222,29 +263,114 @@ public class EnrichmentDotPlot {
 
     /**
      * Logs a message if a duplicate series name is encountered.
+     * Only the first few duplicates are logged one by one, the rest are summarized.
      *
+     * @param duplicates The duplicates of the dataset being created.
      * @param seriesName The name of the series that is a duplicate.
      */
-    private void logDuplicateSeries(String seriesName) {
-        // Placeholder for logging duplicates, can be enhanced with a logging framework
-        logger.error("Series with the name '{}' already exists. Skipping.", seriesName);
+    private static void logDuplicateSeries(RepeatedMessage duplicates, String seriesName) {
+        duplicates.log("Series with the name '{}' already exists. Skipping.", seriesName);
     }
 
     /**
-     * Adds item labels to the points in the plot, indicating the pathway description.
+     * Adds item labels to the points in the plot, indicating the pathway description, which is the key of their series.
+     * Where each label goes, or if it is left out, is decided while drawing by {@link LabelPlacingRenderer}.
      *
      * @param renderer The renderer to which the item labels are added.
      */
     private void addItemLabels(XYLineAndShapeRenderer renderer) {
-        XYItemLabelGenerator labelGenerator = (_, series, _) -> pathways.get(series).description();
+        XYItemLabelGenerator labelGenerator = (dataset, series, _) -> dataset.getSeriesKey(series).toString();
         renderer.setDefaultItemLabelGenerator(labelGenerator);
         renderer.setDefaultItemLabelsVisible(true);
-        renderer.setDefaultItemLabelFont(new Font("SansSerif", Font.PLAIN, 14));
+        renderer.setDefaultItemLabelFont(ChartFonts.ITEM_LABEL);
         renderer.setDefaultItemLabelPaint(Color.BLACK);
+    }
+
+    JFreeChart getChart() {
+        return dotPlot;
+    }
 
-        renderer.setDefaultPositiveItemLabelPosition(new ItemLabelPosition(
-                ItemLabelAnchor.OUTSIDE12,
-                TextAnchor.TOP_LEFT
-        ));
+    /**
+     * Dot renderer placing every item label next to its dot, where it overlaps neither other labels nor dots.
+     * Candidate positions around the dot are tried in order; a label that fits nowhere is left out.
+     * Labels are placed in series order, so the top results keep theirs. Overlap is checked with a {@link LabelLayout}
+     * over the data area, which is reset on every draw, so many pathways are laid out in about linear time.
+     */
+    static final class LabelPlacingRenderer extends XYLineAndShapeRenderer {
+        private static final long serialVersionUID = 1L;
+        private static final double LABEL_GAP = 2;
+        private final double dotSize;
+        private transient LabelLayout layout;
+        private int suppressedLabelCount = 0;
+
+        LabelPlacingRenderer(double dotSize) {
+            super(false, true);
+            this.dotSize = dotSize;
+        }
+
+        /**
+         * Starts a new layout over the data area, in which all dots are reserved before any label is placed.
+         */
+        @Override
+        public XYItemRendererState initialise(Graphics2D g2, Rectangle2D dataArea, XYPlot plot, XYDataset dataset,
+                                              PlotRenderingInfo info) {
+            layout = new LabelLayout(dataArea, getDefaultItemLabelFont().getSize2D() * 1.5);
+            suppressedLabelCount = 0;
+            if (dataset != null) {
+                for (int series = 0; series < dataset.getSeriesCount(); series++) {
+                    for (int item = 0; item < dataset.getItemCount(series); item++) {
+                        double x = plot.getDomainAxis().valueToJava2D(dataset.getXValue(series, item), dataArea, plot.getDomainAxisEdge());
+                        double y = plot.getRangeAxis().valueToJava2D(dataset.getYValue(series, item), dataArea, plot.getRangeAxisEdge());
+                        if (plot.getOrientation() == PlotOrientation.HORIZONTAL) {
+                            double swap = x;
+                            x = y;
+                            y = swap;
+                        }
+                        layout.reserve(new Rectangle2D.Double(x - dotSize / 2, y - dotSize / 2, dotSize, dotSize));
+                    }
+                }
+            }
+            return super.initialise(g2, dataArea, plot, dataset, info);
+        }
+
+        @Override
+        protected void drawItemLabel(Graphics2D g2, PlotOrientation orientation, XYDataset dataset, int series, int item,
+                                     double x, double y, boolean negative) {
+            XYItemLabelGenerator generator = getItemLabelGenerator(series, item);
+            if (generator == null || layout == null) return;
+            String label = generator.generateLabel(dataset, series, item);
+            if (label == null || label.isEmpty()) return;
+            g2.setFont(getItemLabelFont(series, item));
+            FontMetrics metrics = g2.getFontMetrics();
+            double width = metrics.stringWidth(label);
+            double height = metrics.getAscent() + metrics.getDescent();
+            double radius = dotSize / 2 + LABEL_GAP;
+            double diagonal = radius * 0.7;
+            double[][] candidates = { // top-left corners: right, above-right, below-right, left, above-left, below-left, above, below
+                    {x + radius, y - height / 2},
+                    {x + diagonal, y - diagonal - height},
+                    {x + diagonal, y + diagonal},
+                    {x - radius - width, y - height / 2},
+                    {x - diagonal - width, y - diagonal - height},
+                    {x - diagonal - width, y + diagonal},
+                    {x - width / 2, y - radius - height},
+                    {x - width / 2, y + radius}};
+            for (double[] candidate : candidates) {
+                Rectangle2D box = new Rectangle2D.Double(candidate[0], candidate[1], width, height);
+                if (layout.tryPlace(box)) {
+                    g2.setPaint(getItemLabelPaint(series, item));
+                    g2.drawString(label, (float) box.getX(), (float) (box.getY() + metrics.getAscent()));
+                    return;
+                }
+            }
+            suppressedLabelCount++;
+        }
+
+        /**
+         * @return number of labels left out in the last draw, because they fit nowhere
+         */
+        int getSuppressedLabelCount() {
+            return suppressedLabelCount;
+        }
     }
 }
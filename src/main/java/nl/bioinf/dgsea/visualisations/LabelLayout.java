@@ -0,0 +1,106 @@
+package nl.bioinf.dgsea.visualisations;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Places label bounding boxes without overlap, using a uniform grid over the layout area as spatial index. <br>
+ * Every placed box is registered in the grid cells it covers, so checking a new box only compares it with the boxes
+ * in its own cells instead of with all placed boxes: placing n labels costs about O(n) instead of O(n²).
+ * Boxes are placed first come, first served; callers try the most important labels first.
+ */
+final class LabelLayout {
+    private final Rectangle2D bounds;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final List<List<Rectangle2D>> cells;
+    private int placedCount = 0;
+
+    /**
+     * @param bounds area all boxes must be placed in
+     * @param cellSize width and height of a grid cell, about the height of a label works well
+     */
+    LabelLayout(Rectangle2D bounds, double cellSize) {
+        if (cellSize <= 0) throw new IllegalArgumentException("cellSize must be positive. Given: " + cellSize);
+        this.bounds = bounds;
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (int) Math.ceil(bounds.getWidth() / cellSize));
+        this.rows = Math.max(1, (int) Math.ceil(bounds.getHeight() / cellSize));
+        this.cells = new ArrayList<>(columns * rows);
+        for (int i = 0; i < columns * rows; i++) {
+            cells.add(null); // created when the first box is placed in it
+        }
+    }
+
+    /**
+     * Places the box if it lies within the bounds and overlaps no placed box.
+     * @param box box to place, not copied, so it must not be changed afterward
+     * @return true if placed, false if not
+     */
+    boolean tryPlace(Rectangle2D box) {
+        if (!bounds.contains(box) || overlapsPlaced(box)) return false;
+        reserve(box);
+        return true;
+    }
+
+    /**
+     * Places the box even if it overlaps placed boxes, to keep labels off it, e.g. for a dot.
+     * The part outside the bounds is ignored.
+     * @param box box to place, not copied, so it must not be changed afterward
+     */
+    void reserve(Rectangle2D box) {
+        int fromColumn = column(box.getMinX());
+        int toColumn = column(box.getMaxX());
+        int fromRow = row(box.getMinY());
+        int toRow = row(box.getMaxY());
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int column = fromColumn; column <= toColumn; column++) {
+                int index = row * columns + column;
+                List<Rectangle2D> cell = cells.get(index);
+                if (cell == null) {
+                    cell = new ArrayList<>(4);
+                    cells.set(index, cell);
+                }
+                cell.add(box);
+            }
+        }
+        placedCount++;
+    }
+
+    /**
+     * @return true if the box overlaps any placed box
+     */
+    boolean overlapsPlaced(Rectangle2D box) {
+        int fromColumn = column(box.getMinX());
+        int toColumn = column(box.getMaxX());
+        int fromRow = row(box.getMinY());
+        int toRow = row(box.getMaxY());
+        for (int row = fromRow; row <= toRow; row++) {
+            for (int column = fromColumn; column <= toColumn; column++) {
+                List<Rectangle2D> cell = cells.get(row * columns + column);
+                if (cell == null) continue;
+                for (Rectangle2D placed : cell) {
+                    if (placed.intersects(box)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return number of boxes placed or reserved
+     */
+    int getPlacedCount() {
+        return placedCount;
+    }
+
+    private int column(double x) {
+        return Math.clamp((long) Math.floor((x - bounds.getX()) / cellSize), 0, columns - 1);
+    }
+
+    private int row(double y) {
+        return Math.clamp((long) Math.floor((y - bounds.getY()) / cellSize), 0, rows - 1);
+    }
+}
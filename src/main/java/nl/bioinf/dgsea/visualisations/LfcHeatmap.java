@@ -0,0 +1,313 @@
+package nl.bioinf.dgsea.visualisations;
+
+import nl.bioinf.dgsea.data_processing.*;
+import nl.bioinf.dgsea.profiling.Profiler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.LegendItemCollection;
+import org.jfree.chart.plot.Plot;
+import org.jfree.chart.plot.PlotRenderingInfo;
+import org.jfree.chart.plot.PlotState;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Heatmap of the log-fold-change of every DEG in the top pathways: a row per pathway, a column per gene,
+ * with the genes clustered by pathway (see {@link PercLfcPathways#lfcMatrix(String[])}). <br>
+ * The sparse matrix is rasterized straight into the int[] pixels of one image instead of drawing a shape per cell,
+ * so hundreds of pathways × thousands of genes render in milliseconds. When there are more genes than pixel columns,
+ * a pixel shows the gene with the largest absolute log-fold-change.
+ * Builder LfcHeatmap.Builder is available for selective field assignation.
+ */
+public class LfcHeatmap {
+    private static final int WIDTH = 1200;
+    private static final int HEIGHT = 900;
+    private static final Color NEGATIVE = new Color(0x2166ac);
+    private static final Color POSITIVE = new Color(0xb2182b);
+    private static final Color ABSENT = new Color(0xf0f0f0); // gene is not in the pathway
+    private final JFreeChart chart;
+    private final LfcMatrix matrix;
+    private final String imageFormat;
+    private final File outputFilePath;
+    private final Logger logger = LogManager.getLogger(LfcHeatmap.class);
+
+    private LfcHeatmap(Builder builder) {
+        try (Profiler.Stage _ = Profiler.stage("chart dataset")) {
+            this.imageFormat = builder.imageFormat;
+            this.outputFilePath = builder.outputFilePath;
+            PercLfcPathways percLfcPathways = new PercLfcPathways(builder.degs, builder.pathwayGenes);
+            String[] pathwayIds = builder.pathwayIds != null && builder.pathwayIds.length != 0
+                    ? builder.pathwayIds : topPathwayIds(percLfcPathways, builder.maxNPathways);
+            this.matrix = percLfcPathways.lfcMatrix(pathwayIds);
+            String[] rowLabels = new String[matrix.getRowCount()];
+            for (int row = 0; row < rowLabels.length; row++) {
+                rowLabels[row] = builder.pathwayIndex.label(matrix.getPathwayId(row));
+            }
+            Color negative = builder.colorManual != null && builder.colorManual.length >= 2 ? builder.colorManual[0] : NEGATIVE;
+            Color positive = builder.colorManual != null && builder.colorManual.length >= 2 ? builder.colorManual[1] : POSITIVE;
+            this.chart = new JFreeChart(builder.title, JFreeChart.DEFAULT_TITLE_FONT,
+                    new HeatmapPlot(matrix, rowLabels, negative, positive), false);
+            chart.setBackgroundPaint(Color.WHITE);
+        }
+    }
+
+    public static class Builder {
+        private final List<Deg> degs;
+        private final PathwayIndex pathwayIndex;
+        private final List<PathwayGene> pathwayGenes;
+        private final File outputFilePath;
+
+        private String title = "Log-fold-change per pathway";
+        private Color[] colorManual = null;
+        private String imageFormat = "png";
+        private String[] pathwayIds = null;
+        private int maxNPathways = 20;
+
+        public Builder(List<Deg> degs, PathwayIndex pathwayIndex, List<PathwayGene> pathwayGenes, File outputFilePath) {
+            this.degs = degs;
+            this.pathwayIndex = pathwayIndex;
+            this.pathwayGenes = pathwayGenes;
+            this.outputFilePath = outputFilePath;
+        }
+
+        public Builder title(String val) {          if (val != null) title = val; return this;}
+        public Builder colorManual(Color[] val) {   colorManual = val; return this;}
+        public Builder imageFormat(String val) {    imageFormat = val; return this;}
+        public Builder pathwayIds(String[] val) {   pathwayIds = val; return this;}
+        public Builder maxNPathways(int val) {      maxNPathways = val; return this;}
+
+        /**
+         * @throws IllegalArgumentException if there are no degs or pathway genes
+         */
+        public LfcHeatmap build() throws IllegalArgumentException {
+            return new LfcHeatmap(this);
+        }
+    }
+
+    /**
+     * Renders the heatmap and saves it to the output file in the image format.
+     * @throws IOException if the image file cannot be written
+     */
+    public void saveChart() throws IOException {
+        ChartRenderService.save(chart, WIDTH, HEIGHT, imageFormat, outputFilePath.toPath());
+        logger.info("Heatmap of {} pathways × {} genes was saved to file: {}", matrix.getRowCount(), matrix.getColumnCount(), outputFilePath);
+    }
+
+    /**
+     * Renders the heatmap and writes it in the image format to the given stream, which is left open.
+     * @param out stream to write the image to
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeChart(OutputStream out) throws IOException {
+        ChartRenderService.write(chart, WIDTH, HEIGHT, imageFormat, out);
+    }
+
+    LfcMatrix getMatrix() {
+        return matrix;
+    }
+
+    JFreeChart getChart() {
+        return chart;
+    }
+
+    /**
+     * Selects the pathways with the highest percentage average log-fold-change, like the perc-lfc bar-chart.
+     * @return pathway-ids, highest percentage first
+     */
+    private static String[] topPathwayIds(PercLfcPathways percLfcPathways, int maxNPathways) {
+        String[] allPathwayIds = percLfcPathways.getPathwayGeneMap().keySet().stream().sorted().toArray(String[]::new);
+        double[] percentages = percLfcPathways.percAllPathways(allPathwayIds);
+        return percLfcPathways.filterMostInfluentialPathways(maxNPathways, percentages, allPathwayIds).entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .map(Map.Entry::getKey)
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Plot drawing the matrix as one raster image, with pathway labels on the left and a color scale on the right.
+     * Gene labels are only drawn if every gene gets enough pixels.
+     */
+    static final class HeatmapPlot extends Plot {
+        private static final long serialVersionUID = 1L;
+        private static final int SCALE_WIDTH = 16;
+        private static final int GAP = 6;
+        private static final int MAX_LABEL_HEIGHT = 12;
+        private final transient LfcMatrix matrix; // charts are never serialized
+        private final String[] rowLabels;
+        private final int[] colorScale = new int[256]; // from -max (0) over 0 (127.5) to +max (255)
+        private final float maxAbsValue;
+
+        HeatmapPlot(LfcMatrix matrix, String[] rowLabels, Color negative, Color positive) {
+            this.matrix = matrix;
+            this.rowLabels = rowLabels;
+            this.maxAbsValue = matrix.getMaxAbsValue();
+            for (int i = 0; i < colorScale.length; i++) {
+                double t = (i - 127.5) / 127.5;
+                colorScale[i] = interpolate(Color.WHITE, t < 0 ? negative : positive, Math.abs(t));
+            }
+        }
+
+        private static int interpolate(Color from, Color to, double fraction) {
+            int r = (int) Math.round(from.getRed() + (to.getRed() - from.getRed()) * fraction);
+            int g = (int) Math.round(from.getGreen() + (to.getGreen() - from.getGreen()) * fraction);
+            int b = (int) Math.round(from.getBlue() + (to.getBlue() - from.getBlue()) * fraction);
+            return 0xff000000 | r << 16 | g << 8 | b;
+        }
+
+        @Override
+        public String getPlotType() {
+            return "Heatmap";
+        }
+
+        @Override
+        public LegendItemCollection getLegendItems() {
+            return new LegendItemCollection();
+        }
+
+        @Override
+        public void draw(Graphics2D g2, Rectangle2D area, Point2D anchor, PlotState parentState, PlotRenderingInfo info) {
+            getInsets().trim(area);
+            drawBackground(g2, area);
+            int rows = matrix.getRowCount();
+            int columns = matrix.getColumnCount();
+            if (rows == 0 || columns == 0) {
+                drawNoDataMessage(g2, area);
+                return;
+            }
+            double rowHeight = area.getHeight() / rows;
+            Font rowFont = ChartFonts.TICK_LABEL.deriveFont((float) Math.min(MAX_LABEL_HEIGHT, rowHeight * 0.8));
+            boolean drawRowLabels = rowHeight >= 6;
+            double labelWidth = 0;
+            if (drawRowLabels) {
+                FontMetrics metrics = g2.getFontMetrics(rowFont);
+                for (String label : rowLabels) {
+                    labelWidth = Math.max(labelWidth, metrics.stringWidth(label));
+                }
+                labelWidth = Math.min(labelWidth, area.getWidth() * 0.3) + GAP;
+            }
+            FontMetrics scaleMetrics = g2.getFontMetrics(ChartFonts.TICK_LABEL);
+            double scaleLabelWidth = scaleMetrics.stringWidth(formatValue(-maxAbsValue));
+            double columnWidth = (area.getWidth() - labelWidth - GAP - SCALE_WIDTH - GAP - scaleLabelWidth) / columns;
+            boolean drawColumnLabels = columnWidth >= 8;
+            Font columnFont = ChartFonts.TICK_LABEL.deriveFont((float) Math.min(MAX_LABEL_HEIGHT, columnWidth * 0.8));
+            double columnLabelHeight = 0;
+            if (drawColumnLabels) {
+                FontMetrics metrics = g2.getFontMetrics(columnFont);
+                for (int column = 0; column < columns; column++) {
+                    columnLabelHeight = Math.max(columnLabelHeight, metrics.stringWidth(matrix.getGeneSymbol(column)));
+                }
+                columnLabelHeight = Math.min(columnLabelHeight, area.getHeight() * 0.2) + GAP;
+                rowHeight = (area.getHeight() - columnLabelHeight) / rows;
+            }
+
+            int dataX = (int) Math.round(area.getX() + labelWidth);
+            int dataY = (int) Math.round(area.getY());
+            int dataWidth = (int) Math.floor(columnWidth * columns);
+            int dataHeight = (int) Math.floor(rowHeight * rows);
+            if (dataWidth <= 0 || dataHeight <= 0) return;
+            BufferedImage image = new BufferedImage(dataWidth, dataHeight, BufferedImage.TYPE_INT_RGB);
+            rasterize(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), dataWidth, dataHeight);
+            g2.drawImage(image, dataX, dataY, null);
+
+            g2.setPaint(Color.DARK_GRAY);
+            if (drawRowLabels) {
+                g2.setFont(rowFont);
+                FontMetrics metrics = g2.getFontMetrics();
+                for (int row = 0; row < rows; row++) {
+                    String label = fit(rowLabels[row], metrics, labelWidth - GAP);
+                    float y = (float) (dataY + (row + 0.5) * dataHeight / rows + metrics.getAscent() / 2.0 - 1);
+                    g2.drawString(label, (float) (dataX - GAP - metrics.stringWidth(label)), y);
+                }
+            }
+            if (drawColumnLabels) {
+                g2.setFont(columnFont);
+                FontMetrics metrics = g2.getFontMetrics();
+                AffineTransform saved = g2.getTransform();
+                for (int column = 0; column < columns; column++) {
+                    String label = fit(matrix.getGeneSymbol(column), metrics, columnLabelHeight - GAP);
+                    double x = dataX + (column + 0.5) * dataWidth / columns + metrics.getAscent() / 2.0 - 1;
+                    double y = dataY + dataHeight + GAP + metrics.stringWidth(label);
+                    g2.rotate(-Math.PI / 2, x, y);
+                    g2.drawString(label, (float) x, (float) y);
+                    g2.setTransform(saved);
+                }
+            }
+            drawColorScale(g2, dataX + dataWidth + GAP, dataY, Math.min(dataHeight, 300), scaleMetrics);
+        }
+
+        /**
+         * Draws every row of the matrix into the RGB pixels of the data area.
+         */
+        void rasterize(int[] pixels, int width, int height) {
+            int rows = matrix.getRowCount();
+            int columns = matrix.getColumnCount();
+            float[] pixelValues = new float[width]; // strongest value per pixel column of the current row
+            int absent = ABSENT.getRGB();
+            double scale = maxAbsValue == 0 ? 0 : 127.5 / maxAbsValue;
+            for (int row = 0; row < rows; row++) {
+                Arrays.fill(pixelValues, Float.NaN);
+                for (int entry = matrix.getRowStart(row); entry < matrix.getRowEnd(row); entry++) {
+                    int column = matrix.getColumnIndex(entry);
+                    float value = matrix.getValue(entry);
+                    int fromX = (int) ((long) column * width / columns);
+                    int toX = Math.max(fromX + 1, (int) ((long) (column + 1) * width / columns));
+                    for (int x = fromX; x < toX; x++) {
+                        if (Float.isNaN(pixelValues[x]) || Math.abs(value) > Math.abs(pixelValues[x])) pixelValues[x] = value;
+                    }
+                }
+                int fromY = (int) ((long) row * height / rows);
+                int toY = (int) ((long) (row + 1) * height / rows);
+                for (int x = 0; x < width; x++) {
+                    float value = pixelValues[x];
+                    pixels[fromY * width + x] = Float.isNaN(value) ? absent
+                            : colorScale[(int) Math.min(255, Math.max(0, value * scale + 127.5))];
+                }
+                for (int y = fromY + 1; y < toY; y++) {
+                    System.arraycopy(pixels, fromY * width, pixels, y * width, width);
+                }
+            }
+        }
+
+        private void drawColorScale(Graphics2D g2, int x, int y, int height, FontMetrics metrics) {
+            if (height <= 0) return;
+            for (int i = 0; i < height; i++) {
+                g2.setPaint(new Color(colorScale[255 - i * 255 / Math.max(1, height - 1)]));
+                g2.fillRect(x, y + i, SCALE_WIDTH, 1);
+            }
+            g2.setPaint(Color.DARK_GRAY);
+            g2.drawRect(x, y, SCALE_WIDTH, height);
+            g2.setFont(ChartFonts.TICK_LABEL);
+            int labelX = x + SCALE_WIDTH + GAP;
+            g2.drawString(formatValue(maxAbsValue), labelX, y + metrics.getAscent());
+            g2.drawString(formatValue(0), labelX, y + (height + metrics.getAscent()) / 2);
+            g2.drawString(formatValue(-maxAbsValue), labelX, y + height);
+        }
+
+        private static String formatValue(float value) {
+            return String.format(Locale.ROOT, "%.2f", value);
+        }
+
+        /**
+         * @return the label, shortened with "..." if wider than maxWidth
+         */
+        private static String fit(String label, FontMetrics metrics, double maxWidth) {
+            if (metrics.stringWidth(label) <= maxWidth) return label;
+            int end = label.length();
+            while (end > 0 && metrics.stringWidth(label.substring(0, end) + "...") > maxWidth) {
+                end--;
+            }
+            return label.substring(0, end) + "...";
+        }
+    }
+}
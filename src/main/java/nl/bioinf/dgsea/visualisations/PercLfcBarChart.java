@@ -6,10 +6,10 @@
 package nl.bioinf.dgsea.visualisations;
 
 import nl.bioinf.dgsea.data_processing.*;
+import nl.bioinf.dgsea.profiling.Profiler;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.jfree.chart.ChartFactory;
-import org.jfree.chart.ChartUtils;
 import org.jfree.chart.JFreeChart;
 import org.jfree.chart.plot.CategoryPlot;
 import org.jfree.chart.plot.PlotOrientation;
@@ -18,6 +18,7 @@ import org.jfree.data.category.DefaultCategoryDataset;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 import java.util.List;
 
@@ -42,6 +43,8 @@ public class PercLfcBarChart {
     private final List<PathwayGene>      pathwayGenes;
     private final List<Deg>              degs;//<<
     private final Logger logger = LogManager.getLogger(PercLfcBarChart.class.getName());
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 1000;
 
     public PercLfcBarChart(Builder builder) {
         title             = builder.title;
@@ -92,32 +95,48 @@ public class PercLfcBarChart {
      *  Then makes bar-chart and saves this to an image.
      */
     public void saveChart() throws IOException, IllegalArgumentException {
-        DefaultCategoryDataset objDataset = getDefaultCategoryDataset();
-
-        JFreeChart objChart = ChartFactory.createBarChart(
-                title,
-                xAxis,
-                yAxis,
-                objDataset, //Chart Data
-                PlotOrientation.VERTICAL,
-                true,
-                true,
-                false
-        );
-        CategoryPlot cplot = (CategoryPlot)objChart.getPlot();
-        applyColors(cplot); // Apply user-defined colors to the chart
+        JFreeChart objChart = createChart();
         try {
-            if (imageFormat.equals("png")) {
-                ChartUtils.saveChartAsPNG(outputFilePath, objChart, 1000, 1000);
-            } else {
-                ChartUtils.saveChartAsJPEG(outputFilePath, 1.0f, objChart, 1000, 1000);
-            }
+            ChartRenderService.save(objChart, WIDTH, HEIGHT, imageFormat, outputFilePath.toPath());
             logger.info("Chart was saved to file: {}", outputFilePath);
         } catch(IOException e) {
             throw new IOException("Failed to save chart to image file, given file path: %s".formatted(outputFilePath));
         }
     }
 
+    /**
+     * Gets calculated data then transforms it to bar-chart/categorical data.
+     *  Then makes bar-chart and writes this as image to the given stream, which is left open.
+     * @param out stream to write the image in this.imageFormat to
+     */
+    public void writeChart(OutputStream out) throws IOException, IllegalArgumentException {
+        ChartRenderService.write(createChart(), WIDTH, HEIGHT, imageFormat, out);
+    }
+
+    /**
+     * Gets calculated data then transforms it to bar-chart/categorical data and makes the bar-chart.
+     * @return styled bar-chart
+     */
+    private JFreeChart createChart() throws IllegalArgumentException {
+        try (Profiler.Stage _ = Profiler.stage("chart dataset")) {
+            DefaultCategoryDataset objDataset = getDefaultCategoryDataset();
+
+            JFreeChart objChart = ChartFactory.createBarChart(
+                    title,
+                    xAxis,
+                    yAxis,
+                    objDataset, //Chart Data
+                    PlotOrientation.VERTICAL,
+                    true,
+                    true,
+                    false
+            );
+            CategoryPlot cplot = (CategoryPlot)objChart.getPlot();
+            applyColors(cplot); // Apply user-defined colors to the chart
+            return objChart;
+        }
+    }
+
     /**
      * Gets calculated data then transforms it into bar-chart/categorical data.
      * @return bar-chart/categorical data
@@ -132,7 +151,7 @@ public class PercLfcBarChart {
 
         Map<String, Double> percentageSomePathways = percLfcPathways.filterMostInfluentialPathways(maxNPathways, percentageAllPathways, pathwayIds);
         for(Pathway pathway:pathways) {
-            if(isInSelectedPathways(pathway.pathwayId(), percentageSomePathways.keySet().stream().toList())) {
+            if(isInSelectedPathways(pathway.pathwayId(), percentageSomePathways.keySet())) {
                 objDataset.setValue(percentageSomePathways.get(pathway.pathwayId()),pathway.description(),"");
             }
         }
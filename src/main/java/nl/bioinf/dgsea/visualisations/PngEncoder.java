@@ -0,0 +1,209 @@
+package nl.bioinf.dgsea.visualisations;
+
+import nl.bioinf.dgsea.DgseaExecutors;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * PNG encoder with a selectable speed/size trade-off, for chart images. <br>
+ * Images without transparent pixels are written as RGB, others as RGBA, 8 bits per channel.
+ * Large images are deflated in independent chunks in parallel, like pigz: every chunk is a raw deflate stream primed
+ * with the last 32 KiB of the previous chunk as preset dictionary and ended with a sync flush, so the concatenated chunks
+ * form one valid zlib stream, compressing almost as well as a single stream.
+ */
+public final class PngEncoder {
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final int DICTIONARY_SIZE = 32 * 1024;
+    private static final int MIN_CHUNK_SIZE = 256 * 1024;
+    private static final byte FILTER_NONE = 0;
+    private static final byte FILTER_SUB = 1;
+
+    /**
+     * Deflate level of the image data.
+     */
+    public enum Compression {
+        STORE(Deflater.NO_COMPRESSION),
+        FAST(Deflater.BEST_SPEED),
+        DEFAULT(Deflater.DEFAULT_COMPRESSION),
+        BEST(Deflater.BEST_COMPRESSION);
+
+        private final int level;
+
+        Compression(int level) {
+            this.level = level;
+        }
+    }
+
+    private PngEncoder() {
+    }
+
+    /**
+     * Encodes the image as PNG to the stream, which is left open. Images of at least 2 chunks are deflated in parallel,
+     * on {@link DgseaExecutors#compute()}, in at most {@link DgseaExecutors#parallelism()} chunks.
+     *
+     * @param image image to encode
+     * @param compression deflate level
+     * @param out stream to write the PNG to
+     * @throws IOException if writing fails
+     */
+    public static void encode(BufferedImage image, Compression compression, OutputStream out) throws IOException {
+        int rawSize = (image.getWidth() * 4 + 1) * image.getHeight();
+        encode(image, compression, out, Math.max(MIN_CHUNK_SIZE, rawSize / DgseaExecutors.parallelism() + 1));
+    }
+
+    /**
+     * @param chunkSize number of raw bytes deflated per chunk, rounded down to whole rows
+     * @see #encode(BufferedImage, Compression, OutputStream)
+     */
+    static void encode(BufferedImage image, Compression compression, OutputStream out, int chunkSize) throws IOException {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        boolean alpha = image.getColorModel().hasAlpha() && hasTransparentPixel(image);
+        int bytesPerPixel = alpha ? 4 : 3;
+        byte[] raw = toFilteredScanlines(image, bytesPerPixel, compression == Compression.STORE ? FILTER_NONE : FILTER_SUB);
+
+        DataOutputStream png = new DataOutputStream(out);
+        png.write(SIGNATURE);
+        ByteArrayOutputStream header = new ByteArrayOutputStream(13);
+        DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(8); // bit depth
+        headerData.writeByte(alpha ? 6 : 2); // color type RGBA or RGB
+        headerData.writeByte(0); // deflate
+        headerData.writeByte(0); // adaptive filtering
+        headerData.writeByte(0); // not interlaced
+        writeChunk(png, "IHDR", header.toByteArray());
+
+        List<byte[]> deflated = deflate(raw, compression.level, bytesPerPixel * width + 1, chunkSize);
+        for (byte[] part : deflated) {
+            writeChunk(png, "IDAT", part);
+        }
+        writeChunk(png, "IEND", new byte[0]);
+        png.flush();
+    }
+
+    /**
+     * Deflates the raw data into a zlib stream, split over chunks deflated in parallel if raw is large enough.
+     * @return parts of the zlib stream, the first starting with the zlib header and the last ending with the Adler-32 checksum
+     */
+    private static List<byte[]> deflate(byte[] raw, int level, int rowSize, int chunkSize) {
+        chunkSize = Math.max(rowSize, chunkSize - chunkSize % rowSize); // whole rows, for readable chunk boundaries
+        int chunkCount = Math.max(1, Math.ceilDiv(raw.length, chunkSize));
+
+        List<CompletableFuture<byte[]>> chunks = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            int offset = i * chunkSize;
+            int length = Math.min(chunkSize, raw.length - offset);
+            boolean last = i == chunkCount - 1;
+            chunks.add(chunkCount == 1
+                    ? CompletableFuture.completedFuture(deflateChunk(raw, offset, length, level, true))
+                    : CompletableFuture.supplyAsync(() -> deflateChunk(raw, offset, length, level, last), DgseaExecutors.compute()));
+        }
+        Adler32 adler32 = new Adler32();
+        adler32.update(raw);
+
+        List<byte[]> parts = new ArrayList<>(chunkCount + 2);
+        parts.add(new byte[]{0x78, (byte) 0x01}); // zlib header: deflate with 32 KiB window, no dictionary
+        for (CompletableFuture<byte[]> chunk : chunks) {
+            try {
+                parts.add(chunk.join());
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException runtimeException ? runtimeException : e;
+            }
+        }
+        long checksum = adler32.getValue();
+        parts.add(new byte[]{(byte) (checksum >>> 24), (byte) (checksum >>> 16), (byte) (checksum >>> 8), (byte) checksum});
+        return parts;
+    }
+
+    /**
+     * @return raw deflate data of raw[offset, offset + length), ending with a sync flush or, for the last chunk, the final block
+     */
+    private static byte[] deflateChunk(byte[] raw, int offset, int length, int level, boolean last) {
+        Deflater deflater = new Deflater(level, true);
+        try {
+            if (offset > 0) { // back-references into the previous chunk stay valid, the inflater has it in its window
+                int dictionaryLength = Math.min(DICTIONARY_SIZE, offset);
+                deflater.setDictionary(raw, offset - dictionaryLength, dictionaryLength);
+            }
+            deflater.setInput(raw, offset, length);
+            if (last) deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(level == Deflater.NO_COMPRESSION ? length + length / 8 + 64 : length / 4 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            int flush = last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH;
+            while (true) {
+                int written = deflater.deflate(buffer, 0, buffer.length, flush);
+                out.write(buffer, 0, written);
+                if (last ? deflater.finished() : written < buffer.length && deflater.needsInput()) break;
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * @return the scanlines of the image, each prefixed by its filter type
+     */
+    private static byte[] toFilteredScanlines(BufferedImage image, int bytesPerPixel, byte filter) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        int rowSize = width * bytesPerPixel + 1;
+        byte[] raw = new byte[rowSize * height];
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            int start = y * rowSize;
+            raw[start] = filter;
+            int i = start + 1;
+            for (int argb : row) {
+                raw[i++] = (byte) (argb >>> 16);
+                raw[i++] = (byte) (argb >>> 8);
+                raw[i++] = (byte) argb;
+                if (bytesPerPixel == 4) raw[i++] = (byte) (argb >>> 24);
+            }
+            if (filter == FILTER_SUB) { // right to left, so every byte is reduced by the unfiltered byte to its left
+                for (int j = start + rowSize - 1; j > start + bytesPerPixel; j--) {
+                    raw[j] -= raw[j - bytesPerPixel];
+                }
+            }
+        }
+        return raw;
+    }
+
+    private static boolean hasTransparentPixel(BufferedImage image) {
+        int width = image.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.getRGB(0, y, width, 1, row, 0, width);
+            for (int argb : row) {
+                if (argb >>> 24 != 0xff) return true;
+            }
+        }
+        return false;
+    }
+
+    private static void writeChunk(DataOutputStream png, String type, byte[] data) throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+        png.writeInt(data.length);
+        png.write(typeBytes);
+        png.write(data);
+        png.writeInt((int) crc.getValue());
+    }
+}
@@ -0,0 +1,870 @@
+package nl.bioinf.dgsea.visualisations;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.awt.geom.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.BufferedImageOp;
+import java.awt.image.ImageObserver;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.RenderableImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.AttributedCharacterIterator;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Streaming {@link Graphics2D} writing SVG elements straight to a writer while a chart is drawn, without building a DOM. <br>
+ * Shapes are written as paths in device coordinates, text as text elements with the current transform, so text stays
+ * selectable and is not converted to outlines. Colors, gradients, strokes, transparency and clips are supported;
+ * images are embedded as PNG data URIs. Font metrics are those of the Java fonts, so text is laid out as in a PNG. <br>
+ * Write errors are kept and thrown by {@link #finish()}, as Graphics2D methods cannot throw checked exceptions.
+ */
+public final class SvgGraphics2D extends Graphics2D {
+    private static final Graphics2D METRICS = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).createGraphics();
+    private static final Map<String, String> GENERIC_FAMILIES = Map.of(
+            "sansserif", "sans-serif", "dialog", "sans-serif", "dialoginput", "monospace",
+            "serif", "serif", "monospaced", "monospace");
+    private static final Map<Font, Map<Integer, Character>> GLYPH_CHARACTERS = new ConcurrentHashMap<>();
+
+    private final Document document;
+    private AffineTransform transform = new AffineTransform();
+    private Paint paint = Color.BLACK;
+    private Color background = Color.WHITE;
+    private Stroke stroke = new BasicStroke(1f);
+    private Font font = new Font(Font.SANS_SERIF, Font.PLAIN, 12);
+    private Composite composite = AlphaComposite.SrcOver;
+    private final RenderingHints hints = new RenderingHints(null);
+    private Shape clip = null; // device space, null if not clipped
+    private String clipId = null; // id of the clip path element of clip, null if not written yet
+
+    /**
+     * State shared by this graphics and all graphics created from it.
+     */
+    private static final class Document {
+        private final Writer writer;
+        private final StringBuilder element = new StringBuilder(256);
+        private int nextId = 0;
+        private String openGroupClipId = null; // clip of the group elements are written in, null if none is open
+        private IOException error = null;
+        private boolean finished = false;
+
+        private Document(Writer writer) {
+            this.writer = writer;
+        }
+
+        private void write(CharSequence text) {
+            if (error != null) return;
+            try {
+                writer.append(text);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+    }
+
+    /**
+     * Starts an SVG document of the given size on the writer.
+     *
+     * @param writer writer to write the document to, preferably buffered; left open
+     * @param width document width in pixels
+     * @param height document height in pixels
+     */
+    public SvgGraphics2D(Writer writer, int width, int height) {
+        this.document = new Document(writer);
+        document.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<svg xmlns=\"http://www.w3.org/2000/svg\" width=\""
+                + width + "\" height=\"" + height + "\" viewBox=\"0 0 " + width + " " + height + "\">\n");
+    }
+
+    private SvgGraphics2D(SvgGraphics2D parent) {
+        this.document = parent.document;
+        this.transform = new AffineTransform(parent.transform);
+        this.paint = parent.paint;
+        this.background = parent.background;
+        this.stroke = parent.stroke;
+        this.font = parent.font;
+        this.composite = parent.composite;
+        this.hints.putAll(parent.hints);
+        this.clip = parent.clip;
+        this.clipId = parent.clipId;
+    }
+
+    /**
+     * Ends the document and flushes the writer, which is left open.
+     *
+     * @throws IOException if writing any part of the document failed
+     */
+    public void finish() throws IOException {
+        if (!document.finished) {
+            document.finished = true;
+            if (document.openGroupClipId != null) document.write("</g>\n");
+            document.write("</svg>\n");
+            if (document.error == null) document.writer.flush();
+        }
+        if (document.error != null) throw document.error;
+    }
+
+    // ----- drawing -----
+
+    @Override
+    public void draw(Shape shape) {
+        if (stroke instanceof BasicStroke basicStroke) {
+            writePath(transform.createTransformedShape(shape), false, basicStroke);
+        } else {
+            fill(stroke.createStrokedShape(shape));
+        }
+    }
+
+    @Override
+    public void fill(Shape shape) {
+        writePath(transform.createTransformedShape(shape), true, null);
+    }
+
+    private void writePath(Shape deviceShape, boolean filled, BasicStroke basicStroke) {
+        StringBuilder element = startElement();
+        element.append("<path d=\"");
+        PathIterator iterator = deviceShape.getPathIterator(null);
+        int windingRule = iterator.getWindingRule();
+        appendPathData(element, iterator);
+        element.append('"');
+        if (filled) {
+            appendPaint(element, "fill");
+            if (windingRule == PathIterator.WIND_EVEN_ODD) element.append(" fill-rule=\"evenodd\"");
+        } else {
+            element.append(" fill=\"none\"");
+            appendPaint(element, "stroke");
+            appendStroke(element, basicStroke);
+        }
+        element.append("/>");
+        endElement(element);
+    }
+
+    @Override
+    public void drawString(String text, float x, float y) {
+        if (text == null || text.isEmpty()) return;
+        StringBuilder element = startElement();
+        element.append("<text");
+        if (!transform.isIdentity()) {
+            element.append(" transform=\"");
+            appendMatrix(element, transform);
+            element.append('"');
+        }
+        element.append(" x=\"");
+        appendNumber(element, x);
+        element.append("\" y=\"");
+        appendNumber(element, y);
+        element.append("\" font-family=\"");
+        appendEscaped(element, toFontFamily(font));
+        element.append("\" font-size=\"");
+        appendNumber(element, font.getSize2D());
+        element.append('"');
+        if (font.isBold()) element.append(" font-weight=\"bold\"");
+        if (font.isItalic()) element.append(" font-style=\"italic\"");
+        element.append(" xml:space=\"preserve\"");
+        appendPaint(element, "fill");
+        element.append('>');
+        appendEscaped(element, text);
+        element.append("</text>");
+        endElement(element);
+    }
+
+    @Override
+    public void drawString(String text, int x, int y) {
+        drawString(text, (float) x, (float) y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, float x, float y) {
+        StringBuilder text = new StringBuilder();
+        for (char c = iterator.first(); c != AttributedCharacterIterator.DONE; c = iterator.next()) {
+            text.append(c);
+        }
+        drawString(text.toString(), x, y);
+    }
+
+    @Override
+    public void drawString(AttributedCharacterIterator iterator, int x, int y) {
+        drawString(iterator, (float) x, (float) y);
+    }
+
+    /**
+     * Draws the glyphs as text if all can be mapped back to characters, otherwise as outlines.
+     * JFreeChart draws rotated labels through a TextLayout, which draws glyph vectors instead of strings.
+     */
+    @Override
+    public void drawGlyphVector(GlyphVector glyphs, float x, float y) {
+        String text = toText(glyphs);
+        if (text == null) {
+            fill(glyphs.getOutline(x, y));
+            return;
+        }
+        Font previous = font;
+        font = glyphs.getFont();
+        drawString(text, x, y);
+        font = previous;
+    }
+
+    /**
+     * @return the characters of the glyphs, or null if the glyphs are not laid out as a plain string of mapped characters
+     */
+    private static String toText(GlyphVector glyphs) {
+        if ((glyphs.getLayoutFlags() & (GlyphVector.FLAG_HAS_TRANSFORMS | GlyphVector.FLAG_RUN_RTL)) != 0) return null;
+        Map<Integer, Character> characters = GLYPH_CHARACTERS.computeIfAbsent(glyphs.getFont(), SvgGraphics2D::mapGlyphCharacters);
+        char[] text = new char[glyphs.getNumGlyphs()];
+        for (int i = 0; i < text.length; i++) {
+            Character c = characters.get(glyphs.getGlyphCode(i));
+            if (c == null) return null;
+            text[i] = c;
+        }
+        return new String(text);
+    }
+
+    /**
+     * @return glyph codes of the font mapped to the printable Latin characters they display
+     */
+    private static Map<Integer, Character> mapGlyphCharacters(Font font) {
+        StringBuilder latin = new StringBuilder();
+        for (char c = 0x20; c < 0x250; c++) {
+            if (!Character.isISOControl(c) && font.canDisplay(c)) latin.append(c);
+        }
+        GlyphVector glyphs = font.createGlyphVector(new FontRenderContext(null, false, false), latin.toString());
+        Map<Integer, Character> characters = new HashMap<>();
+        for (int i = 0; i < glyphs.getNumGlyphs(); i++) {
+            characters.putIfAbsent(glyphs.getGlyphCode(i), latin.charAt(glyphs.getGlyphCharIndex(i)));
+        }
+        return characters;
+    }
+
+    @Override
+    public boolean drawImage(Image image, AffineTransform xform, ImageObserver observer) {
+        BufferedImage bufferedImage = toBufferedImage(image, observer);
+        if (bufferedImage == null) return false;
+        AffineTransform imageTransform = new AffineTransform(transform);
+        if (xform != null) imageTransform.concatenate(xform);
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        try {
+            PngEncoder.encode(bufferedImage, PngEncoder.Compression.FAST, png);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not thrown by an in-memory stream
+        }
+        StringBuilder element = startElement();
+        element.append("<image transform=\"");
+        appendMatrix(element, imageTransform);
+        element.append("\" width=\"").append(bufferedImage.getWidth())
+                .append("\" height=\"").append(bufferedImage.getHeight())
+                .append("\" href=\"data:image/png;base64,").append(Base64.getEncoder().encodeToString(png.toByteArray()))
+                .append("\"/>");
+        endElement(element);
+        return true;
+    }
+
+    @Override
+    public void drawImage(BufferedImage image, BufferedImageOp op, int x, int y) {
+        drawImage(op == null ? image : op.filter(image, null), x, y, null);
+    }
+
+    @Override
+    public void drawRenderedImage(RenderedImage image, AffineTransform xform) {
+        if (image instanceof BufferedImage bufferedImage) {
+            drawImage(bufferedImage, xform, null);
+        }
+    }
+
+    @Override
+    public void drawRenderableImage(RenderableImage image, AffineTransform xform) {
+        drawRenderedImage(image.createDefaultRendering(), xform);
+    }
+
+    @Override
+    public boolean drawImage(Image image, int x, int y, ImageObserver observer) {
+        return drawImage(image, AffineTransform.getTranslateInstance(x, y), observer);
+    }
+
+    @Override
+    public boolean drawImage(Image image, int x, int y, int width, int height, ImageObserver observer) {
+        int imageWidth = image.getWidth(observer);
+        int imageHeight = image.getHeight(observer);
+        if (imageWidth <= 0 || imageHeight <= 0) return false;
+        AffineTransform xform = AffineTransform.getTranslateInstance(x, y);
+        xform.scale(width / (double) imageWidth, height / (double) imageHeight);
+        return drawImage(image, xform, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image image, int x, int y, Color bgcolor, ImageObserver observer) {
+        return drawImage(image, x, y, image.getWidth(observer), image.getHeight(observer), bgcolor, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image image, int x, int y, int width, int height, Color bgcolor, ImageObserver observer) {
+        if (bgcolor != null) {
+            Paint previous = paint;
+            setPaint(bgcolor);
+            fillRect(x, y, width, height);
+            setPaint(previous);
+        }
+        return drawImage(image, x, y, width, height, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image image, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+                             ImageObserver observer) {
+        BufferedImage bufferedImage = toBufferedImage(image, observer);
+        if (bufferedImage == null || sx2 <= sx1 || sy2 <= sy1) return false;
+        BufferedImage part = bufferedImage.getSubimage(sx1, sy1, sx2 - sx1, sy2 - sy1);
+        return drawImage(part, dx1, dy1, dx2 - dx1, dy2 - dy1, observer);
+    }
+
+    @Override
+    public boolean drawImage(Image image, int dx1, int dy1, int dx2, int dy2, int sx1, int sy1, int sx2, int sy2,
+                             Color bgcolor, ImageObserver observer) {
+        if (bgcolor != null) {
+            Paint previous = paint;
+            setPaint(bgcolor);
+            fillRect(Math.min(dx1, dx2), Math.min(dy1, dy2), Math.abs(dx2 - dx1), Math.abs(dy2 - dy1));
+            setPaint(previous);
+        }
+        return drawImage(image, dx1, dy1, dx2, dy2, sx1, sy1, sx2, sy2, observer);
+    }
+
+    private static BufferedImage toBufferedImage(Image image, ImageObserver observer) {
+        if (image instanceof BufferedImage bufferedImage) return bufferedImage;
+        int width = image.getWidth(observer);
+        int height = image.getHeight(observer);
+        if (width <= 0 || height <= 0) return null;
+        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = bufferedImage.createGraphics();
+        g2.drawImage(image, 0, 0, observer);
+        g2.dispose();
+        return bufferedImage;
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        draw(new Line2D.Double(x1, y1, x2, y2));
+    }
+
+    @Override
+    public void fillRect(int x, int y, int width, int height) {
+        fill(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void clearRect(int x, int y, int width, int height) {
+        Paint previousPaint = paint;
+        Composite previousComposite = composite;
+        paint = background;
+        composite = AlphaComposite.SrcOver;
+        fillRect(x, y, width, height);
+        paint = previousPaint;
+        composite = previousComposite;
+    }
+
+    @Override
+    public void drawRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        draw(new RoundRectangle2D.Double(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void fillRoundRect(int x, int y, int width, int height, int arcWidth, int arcHeight) {
+        fill(new RoundRectangle2D.Double(x, y, width, height, arcWidth, arcHeight));
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        draw(new Ellipse2D.Double(x, y, width, height));
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        fill(new Ellipse2D.Double(x, y, width, height));
+    }
+
+    @Override
+    public void drawArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        draw(new Arc2D.Double(x, y, width, height, startAngle, arcAngle, Arc2D.OPEN));
+    }
+
+    @Override
+    public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+        fill(new Arc2D.Double(x, y, width, height, startAngle, arcAngle, Arc2D.PIE));
+    }
+
+    @Override
+    public void drawPolyline(int[] xPoints, int[] yPoints, int nPoints) {
+        if (nPoints <= 0) return;
+        Path2D.Double path = new Path2D.Double();
+        path.moveTo(xPoints[0], yPoints[0]);
+        for (int i = 1; i < nPoints; i++) {
+            path.lineTo(xPoints[i], yPoints[i]);
+        }
+        draw(path);
+    }
+
+    @Override
+    public void drawPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        draw(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    @Override
+    public void fillPolygon(int[] xPoints, int[] yPoints, int nPoints) {
+        fill(new Polygon(xPoints, yPoints, nPoints));
+    }
+
+    @Override
+    public void copyArea(int x, int y, int width, int height, int dx, int dy) {
+        // not possible on a stream of elements, not used by charts
+    }
+
+    @Override
+    public boolean hit(Rectangle rect, Shape shape, boolean onStroke) {
+        Shape deviceShape = transform.createTransformedShape(onStroke ? stroke.createStrokedShape(shape) : shape);
+        return deviceShape.intersects(rect);
+    }
+
+    // ----- state -----
+
+    @Override
+    public Graphics create() {
+        return new SvgGraphics2D(this);
+    }
+
+    @Override
+    public void dispose() {
+        // nothing to release, the document is ended by finish()
+    }
+
+    @Override
+    public GraphicsConfiguration getDeviceConfiguration() {
+        return METRICS.getDeviceConfiguration();
+    }
+
+    @Override
+    public void setComposite(Composite composite) {
+        this.composite = composite;
+    }
+
+    @Override
+    public Composite getComposite() {
+        return composite;
+    }
+
+    @Override
+    public void setPaint(Paint paint) {
+        if (paint != null) this.paint = paint;
+    }
+
+    @Override
+    public Paint getPaint() {
+        return paint;
+    }
+
+    @Override
+    public Color getColor() {
+        return paint instanceof Color color ? color : Color.BLACK;
+    }
+
+    @Override
+    public void setColor(Color color) {
+        setPaint(color);
+    }
+
+    @Override
+    public void setPaintMode() {
+        composite = AlphaComposite.SrcOver;
+    }
+
+    @Override
+    public void setXORMode(Color color) {
+        // XOR has no SVG equivalent, painting continues normally
+    }
+
+    @Override
+    public void setBackground(Color color) {
+        this.background = color;
+    }
+
+    @Override
+    public Color getBackground() {
+        return background;
+    }
+
+    @Override
+    public void setStroke(Stroke stroke) {
+        this.stroke = stroke;
+    }
+
+    @Override
+    public Stroke getStroke() {
+        return stroke;
+    }
+
+    @Override
+    public Font getFont() {
+        return font;
+    }
+
+    @Override
+    public void setFont(Font font) {
+        if (font != null) this.font = font;
+    }
+
+    @Override
+    public FontMetrics getFontMetrics(Font font) {
+        synchronized (METRICS) {
+            return METRICS.getFontMetrics(font);
+        }
+    }
+
+    @Override
+    public FontRenderContext getFontRenderContext() {
+        return new FontRenderContext(null,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON.equals(hints.get(RenderingHints.KEY_TEXT_ANTIALIASING)),
+                RenderingHints.VALUE_FRACTIONALMETRICS_ON.equals(hints.get(RenderingHints.KEY_FRACTIONALMETRICS)));
+    }
+
+    @Override
+    public void setRenderingHint(RenderingHints.Key key, Object value) {
+        hints.put(key, value);
+    }
+
+    @Override
+    public Object getRenderingHint(RenderingHints.Key key) {
+        return hints.get(key);
+    }
+
+    @Override
+    public void setRenderingHints(Map<?, ?> hints) {
+        this.hints.clear();
+        this.hints.putAll(hints);
+    }
+
+    @Override
+    public void addRenderingHints(Map<?, ?> hints) {
+        this.hints.putAll(hints);
+    }
+
+    @Override
+    public RenderingHints getRenderingHints() {
+        return (RenderingHints) hints.clone();
+    }
+
+    @Override
+    public void translate(int x, int y) {
+        transform.translate(x, y);
+    }
+
+    @Override
+    public void translate(double tx, double ty) {
+        transform.translate(tx, ty);
+    }
+
+    @Override
+    public void rotate(double theta) {
+        transform.rotate(theta);
+    }
+
+    @Override
+    public void rotate(double theta, double x, double y) {
+        transform.rotate(theta, x, y);
+    }
+
+    @Override
+    public void scale(double sx, double sy) {
+        transform.scale(sx, sy);
+    }
+
+    @Override
+    public void shear(double shx, double shy) {
+        transform.shear(shx, shy);
+    }
+
+    @Override
+    public void transform(AffineTransform tx) {
+        transform.concatenate(tx);
+    }
+
+    @Override
+    public void setTransform(AffineTransform tx) {
+        transform = new AffineTransform(tx);
+    }
+
+    @Override
+    public AffineTransform getTransform() {
+        return new AffineTransform(transform);
+    }
+
+    // ----- clipping, kept in device space -----
+
+    @Override
+    public Shape getClip() {
+        if (clip == null) return null;
+        try {
+            return transform.createInverse().createTransformedShape(clip);
+        } catch (NoninvertibleTransformException _) {
+            return null;
+        }
+    }
+
+    @Override
+    public Rectangle getClipBounds() {
+        Shape userClip = getClip();
+        return userClip == null ? null : userClip.getBounds();
+    }
+
+    @Override
+    public void setClip(Shape shape) {
+        clip = shape == null ? null : transform.createTransformedShape(shape);
+        clipId = null;
+    }
+
+    @Override
+    public void setClip(int x, int y, int width, int height) {
+        setClip(new Rectangle(x, y, width, height));
+    }
+
+    @Override
+    public void clip(Shape shape) {
+        if (shape == null) {
+            setClip(null);
+            return;
+        }
+        Shape deviceShape = transform.createTransformedShape(shape);
+        if (clip == null) {
+            clip = deviceShape;
+        } else if (clip instanceof Rectangle2D current && deviceShape instanceof Rectangle2D added) {
+            clip = current.createIntersection(added);
+        } else {
+            Area area = new Area(clip);
+            area.intersect(new Area(deviceShape));
+            clip = area;
+        }
+        clipId = null;
+    }
+
+    @Override
+    public void clipRect(int x, int y, int width, int height) {
+        clip(new Rectangle(x, y, width, height));
+    }
+
+    // ----- SVG writing -----
+
+    /**
+     * Writes the clip path if the clip changed, and opens a clipped group if the element is clipped differently
+     * than the previous one. Consecutive elements with the same clip share a group.
+     * @return the cleared buffer to build the element in
+     */
+    private StringBuilder startElement() {
+        StringBuilder element = document.element;
+        element.setLength(0);
+        if (clip != null && clipId == null) {
+            clipId = "c" + document.nextId++;
+            element.append("<clipPath id=\"").append(clipId).append("\"><path d=\"");
+            appendPathData(element, clip.getPathIterator(null));
+            element.append("\"/></clipPath>\n");
+        }
+        String elementClipId = clip == null ? null : clipId;
+        if (!Objects.equals(elementClipId, document.openGroupClipId)) {
+            if (document.openGroupClipId != null) element.insert(0, "</g>\n");
+            if (elementClipId != null) element.append("<g clip-path=\"url(#").append(elementClipId).append(")\">\n");
+            document.openGroupClipId = elementClipId;
+        }
+        return element;
+    }
+
+    private void endElement(StringBuilder element) {
+        element.append('\n');
+        document.write(element);
+    }
+
+    private void appendPaint(StringBuilder element, String attribute) {
+        float alpha = composite instanceof AlphaComposite alphaComposite ? alphaComposite.getAlpha() : 1f;
+        switch (paint) {
+            case Color color -> {
+                element.append(' ').append(attribute).append("=\"");
+                appendColor(element, color);
+                element.append('"');
+                alpha *= color.getAlpha() / 255f;
+            }
+            case GradientPaint gradient -> {
+                String id = "g" + document.nextId++;
+                Point2D p1 = transform.transform(gradient.getPoint1(), null);
+                Point2D p2 = transform.transform(gradient.getPoint2(), null);
+                // written in front of the element, definitions may appear anywhere in the document
+                StringBuilder definition = new StringBuilder(200);
+                definition.append("<linearGradient id=\"").append(id).append("\" gradientUnits=\"userSpaceOnUse\" x1=\"");
+                appendNumber(definition, p1.getX());
+                definition.append("\" y1=\"");
+                appendNumber(definition, p1.getY());
+                definition.append("\" x2=\"");
+                appendNumber(definition, p2.getX());
+                definition.append("\" y2=\"");
+                appendNumber(definition, p2.getY());
+                definition.append('"');
+                if (gradient.isCyclic()) definition.append(" spreadMethod=\"reflect\"");
+                definition.append('>');
+                appendStop(definition, 0, gradient.getColor1());
+                appendStop(definition, 1, gradient.getColor2());
+                definition.append("</linearGradient>\n");
+                element.insert(0, definition);
+                element.append(' ').append(attribute).append("=\"url(#").append(id).append(")\"");
+            }
+            default -> element.append(' ').append(attribute).append("=\"gray\"");
+        }
+        if (alpha < 1f) {
+            element.append(' ').append(attribute).append("-opacity=\"");
+            appendNumber(element, alpha);
+            element.append('"');
+        }
+    }
+
+    private static void appendStop(StringBuilder definition, int offset, Color color) {
+        definition.append("<stop offset=\"").append(offset).append("\" stop-color=\"");
+        appendColor(definition, color);
+        definition.append('"');
+        if (color.getAlpha() < 255) {
+            definition.append(" stop-opacity=\"");
+            appendNumber(definition, color.getAlpha() / 255.0);
+            definition.append('"');
+        }
+        definition.append("/>");
+    }
+
+    private void appendStroke(StringBuilder element, BasicStroke basicStroke) {
+        // shapes are written in device space, so the stroke is scaled by the transform instead of the shape
+        double scale = Math.sqrt(Math.abs(transform.getDeterminant()));
+        element.append(" stroke-width=\"");
+        appendNumber(element, basicStroke.getLineWidth() * scale);
+        element.append('"');
+        switch (basicStroke.getEndCap()) {
+            case BasicStroke.CAP_ROUND -> element.append(" stroke-linecap=\"round\"");
+            case BasicStroke.CAP_SQUARE -> element.append(" stroke-linecap=\"square\"");
+            default -> { } // butt, the SVG default
+        }
+        switch (basicStroke.getLineJoin()) {
+            case BasicStroke.JOIN_ROUND -> element.append(" stroke-linejoin=\"round\"");
+            case BasicStroke.JOIN_BEVEL -> element.append(" stroke-linejoin=\"bevel\"");
+            default -> {
+                if (basicStroke.getMiterLimit() != 4f) {
+                    element.append(" stroke-miterlimit=\"");
+                    appendNumber(element, basicStroke.getMiterLimit());
+                    element.append('"');
+                }
+            }
+        }
+        float[] dashes = basicStroke.getDashArray();
+        if (dashes != null && dashes.length > 0) {
+            element.append(" stroke-dasharray=\"");
+            for (int i = 0; i < dashes.length; i++) {
+                if (i > 0) element.append(',');
+                appendNumber(element, dashes[i] * scale);
+            }
+            element.append('"');
+            if (basicStroke.getDashPhase() != 0) {
+                element.append(" stroke-dashoffset=\"");
+                appendNumber(element, basicStroke.getDashPhase() * scale);
+                element.append('"');
+            }
+        }
+    }
+
+    private static void appendPathData(StringBuilder element, PathIterator iterator) {
+        double[] coords = new double[6];
+        while (!iterator.isDone()) {
+            int segment = iterator.currentSegment(coords);
+            switch (segment) {
+                case PathIterator.SEG_MOVETO -> appendPoints(element, 'M', coords, 1);
+                case PathIterator.SEG_LINETO -> appendPoints(element, 'L', coords, 1);
+                case PathIterator.SEG_QUADTO -> appendPoints(element, 'Q', coords, 2);
+                case PathIterator.SEG_CUBICTO -> appendPoints(element, 'C', coords, 3);
+                default -> element.append('Z');
+            }
+            iterator.next();
+        }
+    }
+
+    private static void appendPoints(StringBuilder element, char command, double[] coords, int points) {
+        element.append(command);
+        for (int i = 0; i < points * 2; i++) {
+            if (i > 0) element.append(' ');
+            appendNumber(element, coords[i]);
+        }
+    }
+
+    private static void appendMatrix(StringBuilder element, AffineTransform matrix) {
+        element.append("matrix(");
+        appendNumber(element, matrix.getScaleX());
+        element.append(' ');
+        appendNumber(element, matrix.getShearY());
+        element.append(' ');
+        appendNumber(element, matrix.getShearX());
+        element.append(' ');
+        appendNumber(element, matrix.getScaleY());
+        element.append(' ');
+        appendNumber(element, matrix.getTranslateX());
+        element.append(' ');
+        appendNumber(element, matrix.getTranslateY());
+        element.append(')');
+    }
+
+    private static void appendColor(StringBuilder element, Color color) {
+        int rgb = color.getRGB() & 0xffffff;
+        element.append('#');
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            element.append(Character.forDigit(rgb >> shift & 0xf, 16));
+        }
+    }
+
+    /**
+     * Appends the value rounded to 3 decimals, without trailing zeros, for compact output.
+     */
+    static void appendNumber(StringBuilder element, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            element.append('0');
+            return;
+        }
+        long thousandths = Math.round(value * 1000);
+        if (thousandths < 0) {
+            element.append('-');
+            thousandths = -thousandths;
+        }
+        element.append(thousandths / 1000);
+        int fraction = (int) (thousandths % 1000);
+        if (fraction != 0) {
+            element.append('.');
+            if (fraction < 100) element.append('0');
+            if (fraction < 10) element.append('0');
+            while (fraction % 10 == 0) fraction /= 10;
+            element.append(fraction);
+        }
+    }
+
+    private static void appendEscaped(StringBuilder element, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<' -> element.append("&lt;");
+                case '>' -> element.append("&gt;");
+                case '&' -> element.append("&amp;");
+                case '"' -> element.append("&quot;");
+                default -> {
+                    if (c >= 0x20 || c == '\t' || c == '\n' || c == '\r') element.append(c); // others are invalid in XML
+                }
+            }
+        }
+    }
+
+    private static String toFontFamily(Font font) {
+        String family = font.getFamily();
+        String generic = GENERIC_FAMILIES.get(family.toLowerCase(Locale.ROOT));
+        if (generic != null) return generic;
+        return "'" + family.replace("'", "") + "', sans-serif";
+    }
+}
@@ -0,0 +1,307 @@
+package nl.bioinf.dgsea.visualisations;
+
+import nl.bioinf.dgsea.data_processing.Deg;
+import nl.bioinf.dgsea.data_processing.PathwayGene;
+import nl.bioinf.dgsea.data_processing.PathwayIndex;
+import nl.bioinf.dgsea.profiling.Profiler;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.LegendItem;
+import org.jfree.chart.LegendItemCollection;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.axis.ValueAxis;
+import org.jfree.chart.plot.CrosshairState;
+import org.jfree.chart.plot.FastScatterPlot;
+import org.jfree.chart.plot.PlotRenderingInfo;
+import org.jfree.chart.ui.RectangleEdge;
+import org.jfree.data.Range;
+
+import java.awt.*;
+import java.awt.geom.Line2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+import java.util.List;
+
+/**
+ * Gene-level volcano plot of all DEGs: log-fold-change against -log10 of the adjusted p-value. <br>
+ * Genes are colored by membership of the selected pathways; genes in none of them are grey, darker if significant.
+ * Tens of thousands of genes are drawn straight into an int[] raster of the data area instead of as a shape per gene,
+ * which is then drawn as one image, so rendering time hardly depends on the number of genes.
+ * Builder VolcanoPlot.Builder is available for selective field assignation.
+ */
+public class VolcanoPlot {
+    private static final int WIDTH = 1000;
+    private static final int HEIGHT = 800;
+    private static final int POINT_RADIUS = 1; // points are squares of 2 * radius + 1 pixels
+    private static final Color NOT_SIGNIFICANT = new Color(0xcccccc);
+    private static final Color SIGNIFICANT = new Color(0x777777);
+    private final JFreeChart chart;
+    private final String imageFormat;
+    private final File outputFilePath;
+    private final Logger logger = LogManager.getLogger(VolcanoPlot.class);
+
+    private VolcanoPlot(Builder builder) {
+        try (Profiler.Stage _ = Profiler.stage("chart dataset")) {
+            this.imageFormat = builder.imageFormat;
+            this.outputFilePath = builder.outputFilePath;
+            this.chart = createChart(builder);
+        }
+    }
+
+    public static class Builder {
+        private final List<Deg> degs;
+        private final PathwayIndex pathwayIndex;
+        private final List<PathwayGene> pathwayGenes;
+        private final File outputFilePath;
+
+        private String title = "Volcano plot";
+        private String xAxis = "log2 fold change";
+        private String yAxis = "-log10 adjusted p-value";
+        private Color[] colorManual = null;
+        private String imageFormat = "png";
+        private String[] pathwayIds = new String[0];
+        private double pvalThreshold = 0.01;
+
+        public Builder(List<Deg> degs, PathwayIndex pathwayIndex, List<PathwayGene> pathwayGenes, File outputFilePath) {
+            this.degs = degs;
+            this.pathwayIndex = pathwayIndex;
+            this.pathwayGenes = pathwayGenes;
+            this.outputFilePath = outputFilePath;
+        }
+
+        public Builder title(String val) {          if (val != null) title = val; return this;}
+        public Builder xAxis(String val) {          if (val != null) xAxis = val; return this;}
+        public Builder yAxis(String val) {          if (val != null) yAxis = val; return this;}
+        public Builder colorManual(Color[] val) {   colorManual = val; return this;}
+        public Builder imageFormat(String val) {    imageFormat = val; return this;}
+        public Builder pathwayIds(String[] val) {   if (val != null) pathwayIds = val; return this;}
+        public Builder pvalThreshold(double val) {  pvalThreshold = val; return this;}
+
+        public VolcanoPlot build() {
+            return new VolcanoPlot(this);
+        }
+    }
+
+    /**
+     * Renders the plot and saves it to the output file in the image format.
+     * @throws IOException if the image file cannot be written
+     */
+    public void saveChart() throws IOException {
+        ChartRenderService.save(chart, WIDTH, HEIGHT, imageFormat, outputFilePath.toPath());
+        logger.info("Volcano plot was saved to file: {}", outputFilePath);
+    }
+
+    /**
+     * Renders the plot and writes it in the image format to the given stream, which is left open.
+     * @param out stream to write the image to
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeChart(OutputStream out) throws IOException {
+        ChartRenderService.write(chart, WIDTH, HEIGHT, imageFormat, out);
+    }
+
+    JFreeChart getChart() {
+        return chart;
+    }
+
+    private static JFreeChart createChart(Builder builder) {
+        List<Deg> degs = builder.degs;
+        Map<String, Integer> pathwayIndexes = new HashMap<>();
+        for (int i = 0; i < builder.pathwayIds.length; i++) {
+            pathwayIndexes.putIfAbsent(builder.pathwayIds[i], i);
+        }
+        // a gene in several selected pathways gets the first one's color
+        Map<String, Integer> genePathwayIndexes = new HashMap<>();
+        for (PathwayGene pathwayGene : builder.pathwayGenes) {
+            Integer index = pathwayIndexes.get(pathwayGene.pathwayId());
+            if (index != null) genePathwayIndexes.merge(pathwayGene.geneSymbol(), index, Math::min);
+        }
+
+        float[][] data = new float[2][degs.size()];
+        byte[] groups = new byte[degs.size()];
+        int groupCount = RasterScatterPlot.PATHWAY_GROUP_OFFSET + builder.pathwayIds.length;
+        if (groupCount > 256) throw new IllegalArgumentException("At most 254 pathway-ids can be colored. Given: " + builder.pathwayIds.length);
+        for (int i = 0; i < degs.size(); i++) {
+            Deg deg = degs.get(i);
+            data[0][i] = (float) deg.logFoldChange();
+            data[1][i] = (float) toMinusLog10(deg.adjustedPValue());
+            Integer pathwayIndex = genePathwayIndexes.get(deg.geneSymbol());
+            if (pathwayIndex != null) {
+                groups[i] = (byte) (RasterScatterPlot.PATHWAY_GROUP_OFFSET + pathwayIndex);
+            } else {
+                groups[i] = (byte) (deg.adjustedPValue() <= builder.pvalThreshold ? 1 : 0);
+            }
+        }
+
+        Color[] colors = new Color[groupCount];
+        String[] labels = new String[groupCount];
+        colors[0] = NOT_SIGNIFICANT;
+        labels[0] = "p > " + builder.pvalThreshold;
+        colors[1] = SIGNIFICANT;
+        labels[1] = "p <= " + builder.pvalThreshold;
+        for (int i = 0; i < builder.pathwayIds.length; i++) {
+            colors[RasterScatterPlot.PATHWAY_GROUP_OFFSET + i] = getColor(builder.colorManual, i);
+            labels[RasterScatterPlot.PATHWAY_GROUP_OFFSET + i] = builder.pathwayIndex.label(builder.pathwayIds[i]);
+        }
+
+        NumberAxis xAxis = new NumberAxis(builder.xAxis);
+        NumberAxis yAxis = new NumberAxis(builder.yAxis);
+        xAxis.setAutoRangeIncludesZero(false);
+        RasterScatterPlot plot = new RasterScatterPlot(data, groups, colors, labels, xAxis, yAxis,
+                toMinusLog10(builder.pvalThreshold));
+        JFreeChart chart = new JFreeChart(builder.title, JFreeChart.DEFAULT_TITLE_FONT, plot, true);
+        chart.setBackgroundPaint(Color.WHITE);
+        return chart;
+    }
+
+    /**
+     * Selects the pathways with the most significant DEGs, to color when no pathways are selected by the user.
+     * @param degs all DEGs
+     * @param pathwayGenes genes of all pathways
+     * @param pvalThreshold adjusted p-value at or below which a DEG is significant
+     * @param maxNPathways max number of pathways to select
+     * @return pathway-ids, most significant DEGs first, ties by pathway-id
+     */
+    public static String[] mostSignificantPathways(List<Deg> degs, List<PathwayGene> pathwayGenes,
+                                                   double pvalThreshold, int maxNPathways) {
+        Set<String> significantGenes = new HashSet<>();
+        for (Deg deg : degs) {
+            if (deg.adjustedPValue() <= pvalThreshold) significantGenes.add(deg.geneSymbol());
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        for (PathwayGene pathwayGene : pathwayGenes) {
+            if (significantGenes.contains(pathwayGene.geneSymbol())) counts.merge(pathwayGene.pathwayId(), 1, Integer::sum);
+        }
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(maxNPathways)
+                .map(Map.Entry::getKey)
+                .toArray(String[]::new);
+    }
+
+    /**
+     * @return -log10 of the p-value, p-values of 0 are taken as the smallest double so they stay on the plot
+     */
+    static double toMinusLog10(double pValue) {
+        return -Math.log10(Math.max(pValue, Double.MIN_VALUE));
+    }
+
+    /**
+     * Provides the color of a selected pathway, from user input or defaults.
+     * @param colorManual user-defined colors, cycled through, may be null or empty
+     * @param index index of the pathway in the selected pathways
+     * @return color of the pathway
+     */
+    private static Color getColor(Color[] colorManual, int index) {
+        if (colorManual != null && colorManual.length > 0) return colorManual[index % colorManual.length];
+        return switch (index % 5) {
+            case 0 -> Color.RED;
+            case 1 -> Color.BLUE;
+            case 2 -> Color.GREEN;
+            case 3 -> Color.ORANGE;
+            default -> Color.BLACK;
+        };
+    }
+
+    /**
+     * Scatter plot drawing all points into one raster per render, colored per group.
+     * Groups are drawn in order, so pathway genes are drawn over the grey background genes.
+     */
+    static final class RasterScatterPlot extends FastScatterPlot {
+        private static final long serialVersionUID = 1L;
+        static final int PATHWAY_GROUP_OFFSET = 2;
+        private final int[] drawOrder; // point indexes sorted by group
+        private final byte[] groups;
+        private final Color[] colors;
+        private final String[] labels;
+        private final int[] groupSizes;
+        private final double thresholdY;
+
+        RasterScatterPlot(float[][] data, byte[] groups, Color[] colors, String[] labels,
+                          ValueAxis xAxis, ValueAxis yAxis, double thresholdY) {
+            super(data, xAxis, yAxis);
+            this.groups = groups;
+            this.colors = colors;
+            this.labels = labels;
+            this.thresholdY = thresholdY;
+            this.groupSizes = new int[colors.length];
+            for (byte group : groups) {
+                groupSizes[group & 0xff]++;
+            }
+            // counting sort of the points by group
+            int[] starts = new int[colors.length];
+            for (int group = 1; group < colors.length; group++) {
+                starts[group] = starts[group - 1] + groupSizes[group - 1];
+            }
+            this.drawOrder = new int[groups.length];
+            for (int i = 0; i < groups.length; i++) {
+                drawOrder[starts[groups[i] & 0xff]++] = i;
+            }
+        }
+
+        @Override
+        public void render(Graphics2D g2, Rectangle2D dataArea, PlotRenderingInfo info, CrosshairState crosshairState) {
+            int width = (int) Math.ceil(dataArea.getWidth());
+            int height = (int) Math.ceil(dataArea.getHeight());
+            if (width <= 0 || height <= 0) return;
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            rasterize(pixels, width, height);
+            g2.drawImage(image, (int) Math.round(dataArea.getX()), (int) Math.round(dataArea.getY()), null);
+
+            double y = getRangeAxis().valueToJava2D(thresholdY, dataArea, RectangleEdge.LEFT);
+            if (y >= dataArea.getMinY() && y <= dataArea.getMaxY()) {
+                g2.setPaint(Color.DARK_GRAY);
+                g2.setStroke(new BasicStroke(1f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_MITER, 10f, new float[]{4f, 4f}, 0f));
+                g2.draw(new Line2D.Double(dataArea.getMinX(), y, dataArea.getMaxX(), y));
+            }
+        }
+
+        /**
+         * Draws every point as a square into the ARGB pixels of the data area.
+         */
+        void rasterize(int[] pixels, int width, int height) {
+            float[][] data = getData();
+            Range xRange = getDomainAxis().getRange();
+            Range yRange = getRangeAxis().getRange();
+            double xScale = width / xRange.getLength();
+            double yScale = height / yRange.getLength();
+            double xLower = xRange.getLowerBound();
+            double yUpper = yRange.getUpperBound();
+            int[] argb = new int[colors.length];
+            for (int group = 0; group < colors.length; group++) {
+                argb[group] = colors[group].getRGB();
+            }
+            for (int i : drawOrder) {
+                int px = (int) ((data[0][i] - xLower) * xScale);
+                int py = (int) ((yUpper - data[1][i]) * yScale);
+                int color = argb[groups[i] & 0xff];
+                int fromY = Math.max(0, py - POINT_RADIUS);
+                int toY = Math.min(height - 1, py + POINT_RADIUS);
+                int fromX = Math.max(0, px - POINT_RADIUS);
+                int toX = Math.min(width - 1, px + POINT_RADIUS);
+                for (int row = fromY; row <= toY; row++) {
+                    int offset = row * width;
+                    for (int column = fromX; column <= toX; column++) {
+                        pixels[offset + column] = color;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public LegendItemCollection getLegendItems() {
+            LegendItemCollection items = new LegendItemCollection();
+            for (int group = 0; group < colors.length; group++) {
+                items.add(new LegendItem(labels[group] + " (" + groupSizes[group] + ")", colors[group]));
+            }
+            return items;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package nl.bioinf.dgsea;
+
+import org.junit.jupiter.api.Test;
+import picocli.CommandLine;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommandlineControllerTest {
+
+    @Test
+    void newCommandLine_onlyNamedSubcommand() {
+        CommandLine commandLine = new CommandlineController().newCommandLine("--profile", "con_table", "degs.csv");
+        assertEquals(Set.of("help", "con_table"), commandLine.getSubcommands().keySet());
+        assertEquals(CommandlineController.ProfileFormat.TEXT,
+                commandLine.parseArgs("--profile", "con_table", "--help").matchedOptionValue("--profile", null));
+    }
+
+    @Test
+    void newCommandLine_allSubcommandsForHelp() {
+        assertEquals(CommandlineController.SUBCOMMANDS.size() + 1,
+                new CommandlineController().newCommandLine("--help").getSubcommands().size());
+        assertEquals(CommandlineController.SUBCOMMANDS.size() + 1,
+                new CommandlineController().newCommandLine().getSubcommands().size());
+        assertEquals(0, new CommandlineController().newCommandLine("help", "merge").execute("help", "merge"));
+    }
+}
@@ -30,6 +30,13 @@ class CommonChartParamsTest {
         assertEquals(Color.green, params.getColorManualAsColors()[3]);
     }
 
+    @Test
+    void getColorManualAsColors_constantName() {
+        CommonChartParams params = new CommonChartParams();
+        params.setColorManual(new String[] {"RED", "LIGHT_GRAY", "darkGray", "OPAQUE"});
+        assertArrayEquals(new Color[] {Color.red, Color.lightGray, Color.darkGray}, params.getColorManualAsColors());
+    }
+
     @Test
     void getColorManualAsColors_removedInvalidColors() {
         CommonChartParams params = new CommonChartParams();
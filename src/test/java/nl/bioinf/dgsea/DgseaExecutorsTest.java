@@ -0,0 +1,46 @@
+package nl.bioinf.dgsea;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DgseaExecutorsTest {
+
+    @Test
+    void setThreads_resizesPools() throws Exception {
+        int threads = DgseaExecutors.threads();
+        try {
+            DgseaExecutors.setThreads(2);
+            ForkJoinPool compute = DgseaExecutors.compute();
+            assertEquals(2, compute.getParallelism());
+            assertSame(compute, DgseaExecutors.compute());
+            assertTrue(DgseaExecutors.compute().submit(() -> Thread.currentThread().getName()).get().startsWith("dgsea-compute-"));
+            assertTrue(DgseaExecutors.io().submit(() -> Thread.currentThread().getName()).get().startsWith("dgsea-io-"));
+
+            DgseaExecutors.setThreads(3);
+            assertTrue(compute.isShutdown());
+            assertEquals(3, DgseaExecutors.compute().getParallelism());
+            assertThrows(IllegalArgumentException.class, () -> DgseaExecutors.setThreads(0));
+            assertEquals(3, DgseaExecutors.threads());
+        } finally {
+            DgseaExecutors.setThreads(threads);
+        }
+    }
+
+    @Test
+    void parallelism_oneOnIoThreads() throws Exception {
+        assertEquals(DgseaExecutors.threads(), DgseaExecutors.parallelism());
+        assertEquals(1, DgseaExecutors.io().submit(DgseaExecutors::parallelism).get());
+        assertEquals(DgseaExecutors.threads(), DgseaExecutors.compute().submit(DgseaExecutors::parallelism).get());
+    }
+
+    @Test
+    void newVirtualThreadExecutor_virtualThreads() throws Exception {
+        try (ExecutorService executor = DgseaExecutors.newVirtualThreadExecutor()) {
+            assertTrue(executor.submit(() -> Thread.currentThread().isVirtual()).get());
+        }
+    }
+}
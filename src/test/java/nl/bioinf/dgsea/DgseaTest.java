@@ -0,0 +1,110 @@
+package nl.bioinf.dgsea;
+
+import nl.bioinf.dgsea.data_processing.*;
+import nl.bioinf.dgsea.table_outputs.EnrichmentTable;
+import nl.bioinf.dgsea.table_outputs.TwoByTwoContingencyTable;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks if the facade gives the same results as the sub-commands' classes, and throws instead of exiting.
+ */
+class DgseaTest {
+    static final Path testResourcesFolder = Path.of("src/test/resources");
+    static Dgsea dgsea;
+    static List<Deg> degs;
+
+    @BeforeAll
+    static void load() throws IOException {
+        dgsea = Dgsea.load("hsa", testResourcesFolder.resolve("hsa_pathways.csv"), testResourcesFolder.resolve("pathways.csv"));
+        degs = Dgsea.readDegs(testResourcesFolder.resolve("degs.csv"));
+    }
+
+    /**
+     * Are the enrichment results the same as those of EnrichmentTable?
+     */
+    @Test
+    void enrichment_sameAsEnrichmentTable() throws IOException {
+        PathwayDatabase database = dgsea.getDatabase();
+        EnrichmentTable enrichmentTable = new EnrichmentTable(database.pathways(), degs, database.pathwayGenes());
+        enrichmentTable.calculateEnrichment(Writer.nullWriter());
+        assertEquals(enrichmentTable.getEnrichmentResults(), dgsea.enrichment(degs));
+    }
+
+    /**
+     * Does the typed contingency counts agree with the contingency table text?
+     */
+    @Test
+    void contingencyCounts_sameAsTable() {
+        PathwayDatabase database = dgsea.getDatabase();
+        TwoByTwoContingencyTable table = new TwoByTwoContingencyTable(degs, database.pathways(), database.pathwayGenes(), 0.01);
+        assertEquals(table.getTable(), dgsea.contingencyTable(degs, 0.01));
+        List<ContingencyCounts> counts = dgsea.contingencyCounts(degs, 0.01);
+        assertEquals(database.pathways().size(), counts.size());
+        assertEquals(degs.size(), counts.getFirst().total());
+    }
+
+    /**
+     * Do concurrent analyses on a shared instance give the same results as a single one?
+     */
+    @Test
+    void enrichment_concurrent() throws Exception {
+        List<EnrichmentResult> expected = dgsea.enrichment(degs);
+        try (ExecutorService executor = Executors.newFixedThreadPool(4)) {
+            List<Future<List<EnrichmentResult>>> futures = executor.invokeAll(List.of(
+                    () -> dgsea.enrichment(degs), () -> dgsea.enrichment(degs), () -> dgsea.enrichment(degs)));
+            for (Future<List<EnrichmentResult>> future : futures) {
+                assertEquals(expected, future.get());
+            }
+        }
+    }
+
+    /**
+     * Are invalid inputs and options thrown as exceptions instead of exiting?
+     */
+    @Test
+    void invalidInput_throws() {
+        assertThrows(IOException.class, () -> Dgsea.readDegs(testResourcesFolder.resolve("whooo.csv")));
+        assertThrows(IOException.class, () -> Dgsea.readDegs(new StringReader("GENE1,1.0")));
+        assertThrows(IllegalArgumentException.class, () -> Dgsea.readDegs(new StringReader("GENE1,x,0.01")));
+        assertThrows(IllegalArgumentException.class, () -> dgsea.contingencyTable(degs, 1.5));
+        assertThrows(IllegalArgumentException.class, () -> dgsea.percLfc(degs, new String[]{"hsa_missing"}, 5));
+        assertThrows(IllegalArgumentException.class, () -> Dgsea.topResults(dgsea.enrichment(degs), 0));
+    }
+
+    /**
+     * Is a pathway without pathway genes reported by id for the contingency table, while enrichment still works?
+     */
+    @Test
+    void contingencyTable_pathwayWithoutGenes_throws() throws IOException {
+        Dgsea withoutGenes = Dgsea.load("hsa", new StringReader("hsa1,Pathway one\nhsa2,Pathway two"),
+                new StringReader("hsa1,1,GENE1,ENSG1"));
+        List<Deg> genes = List.of(new Deg("GENE1", 1.0, 0.01));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> withoutGenes.contingencyCounts(genes, 0.05));
+        assertTrue(e.getMessage().contains("'hsa2'"));
+        assertEquals(2, withoutGenes.enrichment(genes).size());
+    }
+
+    /**
+     * Are the percentages sorted from high to low and limited?
+     */
+    @Test
+    void percLfc_sortedAndLimited() {
+        List<Double> percentages = List.copyOf(dgsea.percLfc(degs, null, 5).values());
+        assertEquals(5, percentages.size());
+        for (int i = 1; i < percentages.size(); i++) {
+            assertTrue(percentages.get(i - 1) >= percentages.get(i));
+        }
+    }
+}
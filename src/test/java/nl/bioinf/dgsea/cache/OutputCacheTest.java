@@ -0,0 +1,93 @@
+package nl.bioinf.dgsea.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests keying runs by input contents and options, restoring cached outputs and evicting least recently used entries.
+ */
+public class OutputCacheTest {
+    @TempDir
+    Path tempDir;
+
+    private Path write(String name, String content) throws IOException {
+        return Files.writeString(tempDir.resolve(name), content);
+    }
+
+    @Test
+    public void cacheKey_byContentAndOptions() throws IOException {
+        Path degs = write("degs.csv", "A,1.0,0.01");
+        Path moved = write("moved.csv", "A,1.0,0.01");
+        Path changed = write("changed.csv", "A,1.5,0.01");
+        String key = new CacheKey("enrich_bar_chart").option("--title", "t").file(degs).toHex();
+
+        assertEquals(64, key.length());
+        assertEquals(key, new CacheKey("enrich_bar_chart").option("--title", "t").file(moved).toHex());
+        assertNotEquals(key, new CacheKey("enrich_bar_chart").option("--title", "t").file(changed).toHex());
+        assertNotEquals(key, new CacheKey("enrich_bar_chart").option("--title", "u").file(degs).toHex());
+        assertNotEquals(key, new CacheKey("enrich_dot_chart").option("--title", "t").file(degs).toHex());
+        assertNotEquals(new CacheKey("c").option("a", "bc").toHex(), new CacheKey("c").option("ab", "c").toHex());
+        assertNotEquals(new CacheKey("c").option("ids", new String[]{"a", "b"}).toHex(),
+                new CacheKey("c").option("ids", new String[]{"a,b"}).toHex());
+    }
+
+    @Test
+    public void restore_storedOutputs() throws IOException {
+        OutputCache cache = new OutputCache(tempDir.resolve("cache"), 1 << 20, OutputCache.RestoreMode.COPY);
+        Path chart = write("chart.png", "png bytes");
+        Path csv = write("output.csv", "csv bytes");
+        assertFalse(cache.restore("key", List.of(chart, csv)));
+
+        cache.store("key", List.of(chart, csv));
+        Files.delete(chart);
+        Files.writeString(csv, "overwritten");
+        assertTrue(cache.restore("key", List.of(chart, csv)));
+        assertEquals("png bytes", Files.readString(chart));
+        assertEquals("csv bytes", Files.readString(csv));
+        assertEquals(18, cache.size());
+    }
+
+    @Test
+    public void restore_linkedAndDetached() throws IOException {
+        OutputCache cache = new OutputCache(tempDir.resolve("cache"), 1 << 20, OutputCache.RestoreMode.LINK);
+        Path chart = write("chart.png", "png bytes");
+        cache.store("key", List.of(chart));
+        assertTrue(cache.restore("key", List.of(chart)));
+        assertTrue(Files.isSameFile(chart, tempDir.resolve("cache").resolve("key").resolve("0")));
+
+        OutputCache.detach(List.of(chart));
+        assertFalse(Files.exists(chart));
+        Files.writeString(chart, "new png bytes");
+        assertTrue(cache.restore("key", List.of(chart)));
+        assertEquals("png bytes", Files.readString(chart)); // cached file was not written through
+    }
+
+    @Test
+    public void store_evictsLeastRecentlyUsed() throws IOException {
+        Path cacheDir = tempDir.resolve("cache");
+        OutputCache cache = new OutputCache(cacheDir, 1000, OutputCache.RestoreMode.COPY);
+        Path output = write("output.csv", "x".repeat(400));
+        cache.store("first", List.of(output));
+        cache.store("second", List.of(output));
+        Files.setLastModifiedTime(cacheDir.resolve("first"), FileTime.fromMillis(2000));
+        Files.setLastModifiedTime(cacheDir.resolve("second"), FileTime.fromMillis(1000)); // used longest ago
+
+        cache.store("third", List.of(output));
+        assertTrue(Files.isDirectory(cacheDir.resolve("first")));
+        assertFalse(Files.exists(cacheDir.resolve("second")));
+        assertTrue(Files.isDirectory(cacheDir.resolve("third")));
+        assertEquals(800, cache.size());
+
+        cache.store("too large", List.of(write("large.csv", "x".repeat(1001))));
+        assertFalse(Files.exists(cacheDir.resolve("too large")));
+        assertEquals(800, cache.size());
+    }
+}
@@ -4,6 +4,8 @@ import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 class FileParseUtilsTest {
@@ -37,6 +39,31 @@ class FileParseUtilsTest {
         }
     }
 
+    /**
+     * Does parsing with selected pathway-ids give exactly the rows of those pathways?
+     */
+    @Test
+    void parsePathwayGeneFile_selectedPathwayIds() throws IOException {
+        File file = new File("src/test/resources/pathways.csv");
+        Set<String> pathwayIds = Set.of("hsa00010", "hsa00190", "hsa99999");
+        List<PathwayGene> expected = fileParseUtils.parsePathwayGeneFile(file).stream()
+                .filter(pathwayGene -> pathwayIds.contains(pathwayGene.pathwayId()))
+                .toList();
+        List<PathwayGene> selected = fileParseUtils.parsePathwayGeneFile(file, pathwayIds);
+        assertFalse(selected.isEmpty());
+        assertEquals(expected, selected);
+    }
+
+    /**
+     * Does parsing without selected pathway-ids keep every row?
+     */
+    @Test
+    void parsePathwayGeneFile_noSelectedPathwayIds() throws IOException {
+        File file = new File("src/test/resources/pathways.csv");
+        assertEquals(fileParseUtils.parsePathwayGeneFile(file), fileParseUtils.parsePathwayGeneFile(file, null));
+        assertEquals(fileParseUtils.parsePathwayGeneFile(file), fileParseUtils.parsePathwayGeneFile(file, Set.of()));
+    }
+
     @Test
     void parseDegsFile_wrongNColumns() {
         FileParseUtils fpu = new FileParseUtils();
@@ -200,6 +200,36 @@ class PercLfcPathwaysTest {
         assertTrue(awnserRange.contains(percAllPathways[3]));
     }
 
+    /**
+     * Are genes clustered by pathway, and only present in the rows of their pathways?
+     */
+    @Test
+    void lfcMatrix_clusteredSparseRows() {
+        degs1.add(new Deg("gene1", 1.0, 0.0));
+        degs1.add(new Deg("gene2", -2.0, 0.0));
+        degs1.add(new Deg("gene3", 3.0, 0.0));
+        degs1.add(new Deg("gene4", 4.0, 0.0));
+        pathwayGenes1.add(new PathwayGene("hsa10", 1, "gene1", ""));
+        pathwayGenes1.add(new PathwayGene("hsa10", 1, "gene2", ""));
+        pathwayGenes1.add(new PathwayGene("hsa11", 1, "gene2", ""));
+        pathwayGenes1.add(new PathwayGene("hsa11", 1, "gene3", ""));
+        pathwayGenes1.add(new PathwayGene("hsa11", 1, "gene3", "")); // duplicate pair
+        pathwayGenes1.add(new PathwayGene("hsa11", 1, "notADeg", ""));
+        pathwayGenes1.add(new PathwayGene("hsa12", 1, "gene4", ""));
+        LfcMatrix matrix = new PercLfcPathways(degs1, pathwayGenes1).lfcMatrix(new String[]{"hsa11", "hsa10"});
+
+        assertEquals(2, matrix.getRowCount());
+        assertEquals(3, matrix.getColumnCount());
+        assertEquals(4, matrix.getEntryCount());
+        assertEquals("gene3", matrix.getGeneSymbol(0)); // hsa11 first, highest lfc first
+        assertEquals("gene2", matrix.getGeneSymbol(1));
+        assertEquals("gene1", matrix.getGeneSymbol(2));
+        assertEquals(3.0f, matrix.get(0, 0));
+        assertEquals(-2.0f, matrix.get(1, 1));
+        assertTrue(Float.isNaN(matrix.get(0, 2)));
+        assertEquals(3.0f, matrix.getMaxAbsValue());
+    }
+
     private PercLfcPathways getIdealCaseData() {
         degs1.add(new Deg("gene1", 1.0, 0.0));
         degs1.add(new Deg("gene2", 2.0, 0.0));
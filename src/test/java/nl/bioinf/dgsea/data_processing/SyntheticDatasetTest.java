@@ -0,0 +1,87 @@
+package nl.bioinf.dgsea.data_processing;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that synthetic datasets are reproducible, parse as real input files and follow their settings.
+ */
+class SyntheticDatasetTest {
+    @TempDir
+    Path tempDir;
+
+    private final SyntheticDataset dataset = new SyntheticDataset.Builder().seed(7).geneCount(2_000).pathwayCount(100).build();
+
+    @Test
+    void write_sameSeedSameFiles() throws IOException {
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        dataset.writePathwayGenes(first);
+        new SyntheticDataset.Builder().seed(7).geneCount(2_000).pathwayCount(100).build().writePathwayGenes(second);
+        assertArrayEquals(first.toByteArray(), second.toByteArray());
+
+        ByteArrayOutputStream otherSeed = new ByteArrayOutputStream();
+        new SyntheticDataset.Builder().seed(8).geneCount(2_000).pathwayCount(100).build().writePathwayGenes(otherSeed);
+        assertFalse(Arrays.equals(first.toByteArray(), otherSeed.toByteArray()));
+    }
+
+    @Test
+    void write_parsesAsInMemory() throws IOException {
+        long bytes = dataset.write(tempDir);
+        FileParseUtils fileParseUtils = new FileParseUtils();
+        assertEquals(dataset.degs(), fileParseUtils.parseDegsFile(tempDir.resolve("degs.csv").toFile()));
+        assertEquals(dataset.pathways(), fileParseUtils.parsePathwayFile(tempDir.resolve("hsa_pathways.csv").toFile()));
+        assertEquals(dataset.pathwayGenes(), fileParseUtils.parsePathwayGeneFile(tempDir.resolve("pathways.csv").toFile()));
+        assertEquals(bytes, Files.size(tempDir.resolve("degs.csv")) + Files.size(tempDir.resolve("hsa_pathways.csv"))
+                + Files.size(tempDir.resolve("pathways.csv")));
+    }
+
+    @Test
+    void pathwayGenes_powerLawSizesWithoutRepeats() {
+        Map<String, List<PathwayGene>> byPathway = dataset.pathwayGenes().stream()
+                .collect(Collectors.groupingBy(PathwayGene::pathwayId));
+        assertEquals(100, byPathway.size());
+        List<Integer> sizes = byPathway.values().stream().map(List::size).sorted().toList();
+        assertTrue(sizes.getFirst() >= 10 && sizes.getLast() <= 1_500);
+        assertTrue(sizes.get(50) < 40, "median of a power law is close to the minimum, given: " + sizes.get(50));
+        assertTrue(sizes.getLast() > 3 * sizes.get(50), "largest pathway should be far above the median, given: " + sizes);
+        for (List<PathwayGene> genes : byPathway.values()) {
+            assertEquals(genes.size(), new HashSet<>(genes.stream().map(PathwayGene::geneSymbol).toList()).size());
+        }
+    }
+
+    @Test
+    void degs_fractions() {
+        List<Deg> degs = dataset.degs();
+        assertEquals(400, degs.size());
+        assertEquals(400, degs.stream().map(Deg::geneSymbol).distinct().count());
+        long significant = degs.stream().filter(deg -> deg.adjustedPValue() < 0.01).count();
+        assertTrue(significant > 80 && significant < 160, "expected about 30% significant, given: " + significant);
+    }
+
+    @Test
+    void pathwayGeneRows_exact() {
+        SyntheticDataset byRows = new SyntheticDataset.Builder().pathwayGeneRows(12_345).build();
+        assertEquals(12_345, byRows.getPathwayGeneRows());
+        assertEquals(12_345, byRows.pathwayGenes().size());
+    }
+
+    @Test
+    void build_invalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new SyntheticDataset.Builder().overlap(1.5).build());
+        assertThrows(IllegalArgumentException.class, () -> new SyntheticDataset.Builder().sizeExponent(1.0).build());
+        assertThrows(IllegalArgumentException.class, () -> new SyntheticDataset.Builder().minPathwaySize(20).maxPathwaySize(10).build());
+    }
+}
@@ -0,0 +1,67 @@
+package nl.bioinf.dgsea.logging;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.core.config.Property;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests logging the first occurrences of a repeated message and summarizing the rest.
+ */
+class RepeatedMessageTest {
+    private static final String LOGGER_NAME = "nl.bioinf.dgsea.logging.RepeatedMessageTest";
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+    private final LoggerContext context = (LoggerContext) LogManager.getContext(false);
+
+    @BeforeEach
+    void addAppender() {
+        AbstractAppender appender = new AbstractAppender("messages", null, null, true, Property.EMPTY_ARRAY) {
+            @Override
+            public void append(LogEvent event) {
+                messages.add(event.getMessage().getFormattedMessage());
+            }
+        };
+        appender.start();
+        LoggerConfig loggerConfig = new LoggerConfig(LOGGER_NAME, Level.INFO, false); // synchronous, unlike the root
+        loggerConfig.addAppender(appender, null, null);
+        context.getConfiguration().addLogger(LOGGER_NAME, loggerConfig);
+        context.updateLoggers();
+    }
+
+    @AfterEach
+    void removeAppender() {
+        Configuration configuration = context.getConfiguration();
+        configuration.removeLogger(LOGGER_NAME);
+        context.updateLoggers();
+    }
+
+    @Test
+    void log_firstOccurrencesThenSummary() {
+        try (RepeatedMessage duplicates = new RepeatedMessage(LogManager.getLogger(LOGGER_NAME), Level.INFO, "duplicates skipped", 2)) {
+            for (int i = 0; i < 1532; i++) duplicates.log("Skipping duplicate {}", i);
+            assertEquals(1532, duplicates.count());
+        }
+        assertEquals(List.of("Skipping duplicate 0", "Skipping duplicate 1", "1,532 duplicates skipped (2 shown)"), messages);
+    }
+
+    @Test
+    void close_noSummaryIfAllLogged() {
+        try (RepeatedMessage duplicates = new RepeatedMessage(LogManager.getLogger(LOGGER_NAME), Level.INFO, "duplicates skipped", 3)) {
+            duplicates.log("Skipping duplicate {}", "a");
+        }
+        assertEquals(List.of("Skipping duplicate a"), messages);
+        assertThrows(IllegalArgumentException.class, () -> new RepeatedMessage(LogManager.getLogger(LOGGER_NAME), Level.INFO, "x", -1));
+    }
+}
@@ -0,0 +1,75 @@
+package nl.bioinf.dgsea.metrics;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the Prometheus text format of counters and histograms and writing it as textfile.
+ */
+public class MetricsRegistryTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void toText_counters() {
+        MetricsRegistry registry = new MetricsRegistry();
+        MetricFamily<Counter> bytes = registry.counter("test_bytes_total", "Bytes written.", "kind");
+        bytes.labels("png").add(10);
+        bytes.labels("csv").inc();
+        bytes.labels("png").add(5);
+        bytes.labels("say \"hi\"\\").inc();
+
+        assertEquals("""
+                # HELP test_bytes_total Bytes written.
+                # TYPE test_bytes_total counter
+                test_bytes_total{kind="csv"} 1
+                test_bytes_total{kind="png"} 15
+                test_bytes_total{kind="say \\"hi\\"\\\\"} 1
+                """, registry.toText());
+        assertThrows(IllegalArgumentException.class, () -> bytes.labels("png").add(-1));
+        assertThrows(IllegalArgumentException.class, () -> bytes.labels("png", "extra"));
+        assertThrows(IllegalArgumentException.class, () -> registry.counter("test_bytes_total", "Again."));
+        assertThrows(IllegalArgumentException.class, () -> registry.counter("test-bytes", "Invalid name."));
+    }
+
+    @Test
+    public void toText_cumulativeHistogram() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Histogram seconds = registry.histogram("test_seconds", "Durations.", new double[]{0.5, 1}).labels();
+        seconds.observe(0.25);
+        seconds.observe(1);
+        seconds.observe(3);
+
+        assertEquals("""
+                # HELP test_seconds Durations.
+                # TYPE test_seconds histogram
+                test_seconds_bucket{le="0.5"} 1
+                test_seconds_bucket{le="1"} 2
+                test_seconds_bucket{le="+Inf"} 3
+                test_seconds_sum 4.25
+                test_seconds_count 3
+                """, registry.toText());
+        assertThrows(IllegalArgumentException.class, () -> registry.histogram("test_other_seconds", "Unsorted.", new double[]{1, 0.5}));
+    }
+
+    @Test
+    public void writeTextfile_replacesFile() throws IOException {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter analyses = registry.counter("test_analyses_total", "Analyses.").labels();
+        Path file = tempDir.resolve("dgsea.prom");
+        registry.writeTextfile(file);
+        analyses.inc();
+        registry.writeTextfile(file);
+
+        assertTrue(Files.readString(file).endsWith("test_analyses_total 1\n"));
+        try (var files = Files.list(tempDir)) {
+            assertEquals(1, files.count()); // no temporary files left
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package nl.bioinf.dgsea.pipelines;
+
+import nl.bioinf.dgsea.Dgsea;
+import nl.bioinf.dgsea.DgseaExecutors;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks if a batch writes every contrast to its own directory and summarizes all contrasts, including failed ones.
+ */
+class BatchRunnerTest {
+    static final Path testResourcesFolder = Path.of("src/test/resources");
+    static Dgsea dgsea;
+
+    @BeforeAll
+    static void load() throws IOException {
+        dgsea = Dgsea.load("hsa", testResourcesFolder.resolve("hsa_pathways.csv"), testResourcesFolder.resolve("pathways.csv"));
+    }
+
+    private static ContrastAnalysis getContrastAnalysis() {
+        return new ContrastAnalysis(dgsea, new ContrastAnalysis.Settings(0.01, 5,
+                Set.of(ContrastAnalysis.Output.CON_TABLE, ContrastAnalysis.Output.ENRICHMENT)));
+    }
+
+    @Test
+    void run_directory(@TempDir Path tempDir) throws Exception {
+        Path degsDir = Files.createDirectory(tempDir.resolve("degs"));
+        List<String> degLines = Files.readAllLines(testResourcesFolder.resolve("degs.csv"));
+        Files.write(degsDir.resolve("contrast_a.csv"), degLines.subList(0, 1000));
+        Files.write(degsDir.resolve("contrast_b.csv"), degLines.subList(1000, 3000));
+        Files.writeString(degsDir.resolve("broken.csv"), "GENE1,1.0\n");
+        Files.writeString(degsDir.resolve("notes.txt"), "not a contrast");
+        Path outputDir = tempDir.resolve("out");
+
+        List<BatchRunner.Contrast> contrasts = BatchRunner.listDirectory(degsDir);
+        assertEquals(List.of("broken", "contrast_a", "contrast_b"), contrasts.stream().map(BatchRunner.Contrast::name).toList());
+
+        List<ContrastSummary> summaries = new BatchRunner(getContrastAnalysis(), DgseaExecutors.io()).run(contrasts, outputDir);
+        assertFalse(summaries.get(0).isOk());
+        assertTrue(summaries.get(1).isOk());
+        assertEquals(1000, summaries.get(1).degCount());
+        assertEquals(2000, summaries.get(2).degCount());
+        assertTrue(Files.exists(outputDir.resolve("contrast_a").resolve("con_table.txt")));
+        assertTrue(Files.exists(outputDir.resolve("contrast_b").resolve("enrichment.csv")));
+        assertFalse(Files.exists(outputDir.resolve("contrast_b").resolve("enrich_bar_chart.png")));
+        assertEquals(4, Files.readAllLines(outputDir.resolve(BatchRunner.SUMMARY_FILE_NAME)).size());
+    }
+
+    @Test
+    void run_tabSeparatedContrast(@TempDir Path tempDir) throws Exception {
+        Path degsDir = Files.createDirectory(tempDir.resolve("degs"));
+        List<String> degLines = Files.readAllLines(testResourcesFolder.resolve("degs.csv")).subList(0, 1000);
+        Files.write(degsDir.resolve("contrast_csv.csv"), degLines);
+        Files.write(degsDir.resolve("contrast_tsv.tsv"), degLines.stream().map(line -> line.replace(',', '\t')).toList());
+
+        List<ContrastSummary> summaries = new BatchRunner(getContrastAnalysis(), DgseaExecutors.io())
+                .run(BatchRunner.listDirectory(degsDir), tempDir.resolve("out"));
+        assertTrue(summaries.get(1).isOk(), summaries.get(1).status());
+        assertEquals(summaries.get(0).degCount(), summaries.get(1).degCount());
+        assertEquals(summaries.get(0).significantPathwayCount(), summaries.get(1).significantPathwayCount());
+    }
+
+    @Test
+    void readManifest(@TempDir Path tempDir) throws IOException {
+        Path manifest = tempDir.resolve("manifest.csv");
+        Files.writeString(manifest, """
+                # name, file
+                treated vs control,degs/a.csv
+                degs/b 1.tsv
+
+                """);
+        List<BatchRunner.Contrast> contrasts = BatchRunner.readManifest(manifest);
+        assertEquals(2, contrasts.size());
+        assertEquals("treated_vs_control", contrasts.get(0).name());
+        assertEquals(tempDir.resolve("degs/a.csv").toAbsolutePath(), contrasts.get(0).degsFile());
+        assertEquals("b_1", contrasts.get(1).name());
+
+        Files.writeString(manifest, "a.csv\nother/a.csv\n");
+        assertThrows(IllegalArgumentException.class, () -> BatchRunner.readManifest(manifest));
+    }
+
+    @Test
+    void readManifest_unsafeName_throws(@TempDir Path tempDir) throws IOException {
+        Path manifest = tempDir.resolve("manifest.csv");
+        for (String row : List.of("..,a.csv", ".,a.csv", ",a.csv", ".hidden,a.csv", "degs/.csv")) {
+            Files.writeString(manifest, "# name, file\n" + row + "\n");
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> BatchRunner.readManifest(manifest), row);
+            assertTrue(e.getMessage().contains("line 2 of manifest"), e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package nl.bioinf.dgsea.pipelines;
+
+import nl.bioinf.dgsea.Dgsea;
+import nl.bioinf.dgsea.data_processing.Deg;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks if rendering the charts on a pool gives the same outputs as rendering them one by one, and the HTML index.
+ */
+class ContrastAnalysisTest {
+    static final Path testResourcesFolder = Path.of("src/test/resources");
+    static Dgsea dgsea;
+    static List<Deg> degs;
+
+    @BeforeAll
+    static void load() throws IOException {
+        dgsea = Dgsea.load("hsa", testResourcesFolder.resolve("hsa_pathways.csv"), testResourcesFolder.resolve("pathways.csv"));
+        degs = Dgsea.readDegs(testResourcesFolder.resolve("degs.csv"));
+    }
+
+    @Test
+    void run_chartPool_sameAsSequential(@TempDir Path tempDir) throws IOException {
+        ContrastAnalysis.Settings settings = new ContrastAnalysis.Settings(0.01, 10, null, true);
+        Path sequentialDir = tempDir.resolve("sequential");
+        Path pooledDir = tempDir.resolve("pooled");
+
+        ContrastSummary sequential = new ContrastAnalysis(dgsea, settings).run("contrast", degs, sequentialDir);
+        ContrastSummary pooled;
+        try (ExecutorService chartPool = Executors.newFixedThreadPool(3)) {
+            pooled = new ContrastAnalysis(dgsea, settings, ContrastAnalysis.ChartOptions.DEFAULT, chartPool)
+                    .run("contrast", degs, pooledDir);
+        }
+
+        assertEquals(sequential, pooled);
+        for (ContrastAnalysis.Output output : ContrastAnalysis.Output.values()) {
+            assertArrayEquals(Files.readAllBytes(sequentialDir.resolve(output.getFileName())),
+                    Files.readAllBytes(pooledDir.resolve(output.getFileName())), output.getFileName());
+        }
+        String html = Files.readString(pooledDir.resolve(ContrastAnalysis.HTML_INDEX_FILE_NAME));
+        assertEquals(3, html.split("data:image/png;base64,", -1).length - 1);
+        assertTrue(html.contains(sequential.topPathwayId()));
+    }
+
+    @Test
+    void run_withoutHtmlIndex(@TempDir Path tempDir) throws IOException {
+        new ContrastAnalysis(dgsea, new ContrastAnalysis.Settings(0.01, 10, null)).run("contrast", degs, tempDir);
+        assertFalse(Files.exists(tempDir.resolve(ContrastAnalysis.HTML_INDEX_FILE_NAME)));
+    }
+
+    @Test
+    void escape() {
+        assertEquals("a &lt;b&gt; &amp; &quot;c&quot;", ReportPage.escape("a <b> & \"c\""));
+    }
+}
@@ -0,0 +1,125 @@
+package nl.bioinf.dgsea.pipelines;
+
+import nl.bioinf.dgsea.Dgsea;
+import nl.bioinf.dgsea.DgseaExecutors;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks if the watcher analyses existing and arriving files once, skipping files with already processed content.
+ */
+class DirectoryWatcherTest {
+    static final Path testResourcesFolder = Path.of("src/test/resources");
+    static Dgsea dgsea;
+
+    @BeforeAll
+    static void load() throws IOException {
+        dgsea = Dgsea.load("hsa", testResourcesFolder.resolve("hsa_pathways.csv"), testResourcesFolder.resolve("pathways.csv"));
+    }
+
+    @Test
+    void run_existingAndArrivingFiles(@TempDir Path tempDir) throws Exception {
+        Path watchDir = Files.createDirectory(tempDir.resolve("incoming"));
+        Path outputDir = tempDir.resolve("out");
+        Path summaryFile = outputDir.resolve(BatchRunner.SUMMARY_FILE_NAME);
+        List<String> degLines = Files.readAllLines(testResourcesFolder.resolve("degs.csv"));
+        Files.write(watchDir.resolve("existing.csv"), degLines.subList(0, 1000));
+
+        ContrastAnalysis contrastAnalysis = new ContrastAnalysis(dgsea, new ContrastAnalysis.Settings(0.01, 5,
+                Set.of(ContrastAnalysis.Output.ENRICHMENT)));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (DirectoryWatcher watcher = new DirectoryWatcher(contrastAnalysis, watchDir, outputDir, DgseaExecutors.io(), Duration.ofMillis(100))) {
+            Future<?> running = executor.submit(() -> {
+                watcher.run(true);
+                return null;
+            });
+            awaitSummaryRows(summaryFile, 1);
+
+            Files.write(watchDir.resolve("arrived.tsv"), degLines.subList(1000, 3000).stream().map(line -> line.replace(',', '\t')).toList());
+            awaitSummaryRows(summaryFile, 2);
+            Files.write(watchDir.resolve("copy.csv"), degLines.subList(0, 1000));
+            Files.write(watchDir.resolve("notes.txt"), List.of("not a contrast"));
+            Thread.sleep(1000);
+
+            watcher.close();
+            running.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<String> summary = Files.readAllLines(summaryFile);
+        assertEquals(3, summary.size());
+        assertEquals(BatchRunner.SUMMARY_HEADER, summary.get(0));
+        assertTrue(summary.get(1).startsWith("existing,1000,"));
+        assertTrue(summary.get(2).startsWith("arrived,2000,"));
+        assertEquals(2, Files.readAllLines(outputDir.resolve(DirectoryWatcher.PROCESSED_FILE_NAME)).size());
+        try (var contrastDirs = Files.list(outputDir)) {
+            assertEquals(2, contrastDirs.filter(Files::isDirectory)
+                    .filter(dir -> Files.exists(dir.resolve("enrichment.csv"))).count());
+        }
+    }
+
+    @Test
+    void run_failedContentAnalysedAgain(@TempDir Path tempDir) throws Exception {
+        Path watchDir = Files.createDirectory(tempDir.resolve("incoming"));
+        Path outputDir = Files.createDirectory(tempDir.resolve("out"));
+        Path summaryFile = outputDir.resolve(BatchRunner.SUMMARY_FILE_NAME);
+        Path first = Files.write(watchDir.resolve("first.csv"), Files.readAllLines(testResourcesFolder.resolve("degs.csv")).subList(0, 1000));
+        byte[] content = Files.readAllBytes(first);
+        // a file in place of the contrast directory makes the first analysis fail
+        Path blocking = Files.createFile(outputDir.resolve("first_" + DirectoryWatcher.sha256(content).substring(0, 8)));
+
+        ContrastAnalysis contrastAnalysis = new ContrastAnalysis(dgsea, new ContrastAnalysis.Settings(0.01, 5,
+                Set.of(ContrastAnalysis.Output.ENRICHMENT)));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (DirectoryWatcher watcher = new DirectoryWatcher(contrastAnalysis, watchDir, outputDir, DgseaExecutors.io(), Duration.ofMillis(100))) {
+            Future<?> running = executor.submit(() -> {
+                watcher.run(true);
+                return null;
+            });
+            awaitSummaryRows(summaryFile, 1);
+
+            Files.delete(blocking);
+            Files.write(watchDir.resolve("second.csv"), content);
+            awaitSummaryRows(summaryFile, 2);
+
+            watcher.close();
+            running.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        List<String> summary = Files.readAllLines(summaryFile);
+        assertTrue(summary.get(1).startsWith("first,0,"), summary.get(1));
+        assertTrue(summary.get(2).startsWith("second,1000,"), summary.get(2));
+        assertEquals(1, Files.readAllLines(outputDir.resolve(DirectoryWatcher.PROCESSED_FILE_NAME)).size());
+    }
+
+    @Test
+    void sha256() {
+        assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855", DirectoryWatcher.sha256(new byte[0]));
+    }
+
+    private static void awaitSummaryRows(Path summaryFile, int rows) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (System.nanoTime() < deadline) {
+            if (Files.exists(summaryFile) && Files.readAllLines(summaryFile).size() > rows) return;
+            Thread.sleep(50);
+        }
+        fail("Summary did not reach " + rows + " row(s) in time");
+    }
+}
@@ -0,0 +1,76 @@
+package nl.bioinf.dgsea.profiling;
+
+import nl.bioinf.dgsea.data_processing.*;
+import nl.bioinf.dgsea.table_outputs.EnrichmentTable;
+import nl.bioinf.dgsea.table_outputs.TwoByTwoContingencyTable;
+import nl.bioinf.dgsea.visualisations.EnrichmentBarChart;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests that the pipeline emits its JFR events with their fields when recorded.
+ */
+class JfrEventsTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void recording_containsPipelineEvents() throws IOException {
+        List<RecordedEvent> events;
+        EnrichmentTable enrichmentTable;
+        try (Recording recording = new Recording()) {
+            recording.enable(FileParseEvent.class);
+            recording.enable(PathwayEnrichmentEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(ContingencyTableEvent.class);
+            recording.enable(ChartRenderEvent.class);
+            recording.enable(OutputWriteEvent.class);
+            recording.start();
+
+            FileParseUtils fileParseUtils = new FileParseUtils();
+            List<Deg> degs = fileParseUtils.parseDegsFile(new File("src/test/resources/degs.csv"));
+            List<Pathway> pathways = fileParseUtils.parsePathwayFile(new File("src/test/resources/hsa_pathways.csv"));
+            List<PathwayGene> pathwayGenes = fileParseUtils.parsePathwayGeneFile(new File("src/test/resources/pathways.csv"));
+            enrichmentTable = new EnrichmentTable(pathways, degs, pathwayGenes);
+            enrichmentTable.calculateEnrichment(tempDir.resolve("output.csv").toString());
+            new TwoByTwoContingencyTable(degs, pathways, pathwayGenes, 0.01).getCounts();
+            new EnrichmentBarChart(null, enrichmentTable.getEnrichmentResults().subList(0, 5), PathwayIndex.of(pathways),
+                    tempDir.resolve("chart.png").toString(), null);
+
+            recording.stop();
+            Path dump = tempDir.resolve("recording.jfr");
+            recording.dump(dump);
+            events = RecordingFile.readAllEvents(dump);
+        }
+        Map<String, List<RecordedEvent>> byType = events.stream()
+                .collect(Collectors.groupingBy(event -> event.getEventType().getName()));
+
+        List<RecordedEvent> parses = byType.get("nl.bioinf.dgsea.FileParse");
+        assertEquals(List.of("degs", "pathways", "pathway genes"), parses.stream().map(event -> event.getString("kind")).toList());
+        assertTrue(parses.getFirst().getLong("bytes") > 0);
+        assertTrue(parses.getFirst().getInt("rows") > 0);
+
+        List<RecordedEvent> pathwayEvents = byType.get("nl.bioinf.dgsea.PathwayEnrichment");
+        assertEquals(enrichmentTable.getEnrichmentResults().size(), pathwayEvents.size());
+        assertTrue(pathwayEvents.stream().allMatch(event -> event.getInt("geneCount") > 0 && event.getString("pathwayId") != null));
+
+        assertEquals(1, byType.get("nl.bioinf.dgsea.ContingencyTable").size());
+        RecordedEvent render = byType.get("nl.bioinf.dgsea.ChartRender").getFirst();
+        assertEquals("png", render.getString("format"));
+        assertTrue(render.getLong("bytes") > 0);
+        assertEquals(List.of("enrichment csv", "chart"),
+                byType.get("nl.bioinf.dgsea.OutputWrite").stream().map(event -> event.getString("kind")).toList());
+    }
+}
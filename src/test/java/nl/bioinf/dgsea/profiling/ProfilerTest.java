@@ -0,0 +1,78 @@
+package nl.bioinf.dgsea.profiling;
+
+import nl.bioinf.dgsea.DgseaExecutors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests collecting stages and pathway times, and the text and JSON reports.
+ */
+class ProfilerTest {
+    @AfterEach
+    void tearDown() {
+        Profiler.reset();
+    }
+
+    @Test
+    void stage_disabledCollectsNothing() {
+        try (Profiler.Stage _ = Profiler.stage("parse degs")) {
+            Profiler.pathway("hsa00010", 1_000);
+        }
+        ProfileReport report = Profiler.report(10);
+        assertTrue(report.stages().isEmpty());
+        assertTrue(report.slowestPathways().isEmpty());
+    }
+
+    @Test
+    void stage_measuresAndSumsByName() {
+        Profiler.enable();
+        long[][] kept = new long[2][];
+        for (int i = 0; i < 2; i++) {
+            try (Profiler.Stage _ = Profiler.stage("enrichment")) {
+                kept[i] = new long[1 << 20]; // 8 MB
+            }
+        }
+        try (Profiler.Stage _ = Profiler.stage("render")) {
+            assertNotNull(kept[0]);
+        }
+
+        List<ProfileReport.StageStats> stages = Profiler.report(10).stages();
+        assertEquals(List.of("enrichment", "render"), stages.stream().map(ProfileReport.StageStats::name).toList());
+        ProfileReport.StageStats enrichment = stages.getFirst();
+        assertEquals(2, enrichment.count());
+        assertTrue(enrichment.wallNanos() > 0);
+        if (enrichment.allocatedBytes() >= 0) assertTrue(enrichment.allocatedBytes() >= 2 * 8 * (1 << 20));
+        assertTrue(enrichment.peakHeapBytes() > 0);
+    }
+
+    @Test
+    void stage_countsComputeThreads() {
+        Profiler.enable();
+        try (Profiler.Stage _ = Profiler.stage("enrichment")) {
+            long[] onWorker = DgseaExecutors.compute().submit(() -> new long[1 << 20]).join(); // 8 MB
+            assertNotNull(onWorker);
+        }
+        ProfileReport.StageStats enrichment = Profiler.report(10).stages().getFirst();
+        if (enrichment.allocatedBytes() >= 0) assertTrue(enrichment.allocatedBytes() >= 8 * (1 << 20));
+    }
+
+    @Test
+    void pathway_slowestFirst() {
+        Profiler.enable();
+        Profiler.pathway("hsa00010", 5);
+        Profiler.pathway("hsa00020", 30);
+        Profiler.pathway("hsa00010", 20);
+        Profiler.pathway("hsa00030", 1);
+
+        ProfileReport report = Profiler.report(2);
+        assertEquals(List.of(new ProfileReport.PathwayTime("hsa00020", 30), new ProfileReport.PathwayTime("hsa00010", 25)),
+                report.slowestPathways());
+        assertEquals("{\"stages\":[],\"slowestPathways\":[{\"pathwayId\":\"hsa00020\",\"nanos\":30},{\"pathwayId\":\"hsa00010\",\"nanos\":25}]}",
+                report.toJson());
+        assertTrue(report.toText().contains("hsa00020"));
+    }
+}
@@ -0,0 +1,101 @@
+package nl.bioinf.dgsea.server;
+
+import nl.bioinf.dgsea.data_processing.Deg;
+import nl.bioinf.dgsea.data_processing.FileParseUtils;
+import nl.bioinf.dgsea.data_processing.PathwayDatabase;
+import nl.bioinf.dgsea.table_outputs.TwoByTwoContingencyTable;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks if the analysis server answers like the sub-commands, on a free local port.
+ */
+class AnalysisServerTest {
+    static final String testResourcesFolder = "src/test/resources/";
+    static AnalysisServer server;
+    static PathwayDatabase database;
+    static byte[] degsBody;
+    static final HttpClient client = HttpClient.newHttpClient();
+
+    @BeforeAll
+    static void startServer() throws Exception {
+        database = PathwayDatabase.load("hsa", new File(testResourcesFolder + "hsa_pathways.csv"), new File(testResourcesFolder + "pathways.csv"));
+        degsBody = Files.readAllBytes(new File(testResourcesFolder + "degs.csv").toPath());
+        server = new AnalysisServer(new InetSocketAddress("127.0.0.1", 0), Map.of("hsa", database), 0.01);
+        server.start();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        server.close();
+    }
+
+    private HttpResponse<byte[]> post(String pathAndQuery, byte[] body) throws Exception {
+        URI uri = URI.create("http://127.0.0.1:%d%s".formatted(server.getAddress().getPort(), pathAndQuery));
+        return client.send(HttpRequest.newBuilder(uri).POST(HttpRequest.BodyPublishers.ofByteArray(body)).build(),
+                HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    /**
+     * Does the served contingency table equal the one made directly from the files?
+     */
+    @Test
+    void conTable_sameAsDirect() throws Exception {
+        List<Deg> degs = new FileParseUtils().parseDegsFile(new File(testResourcesFolder + "degs.csv"));
+        String expected = new TwoByTwoContingencyTable(degs, database.pathways(), database.pathwayGenes(), 0.05).getTable();
+        HttpResponse<byte[]> response = post("/con_table?db=hsa&pval=0.05", degsBody);
+        assertEquals(200, response.statusCode());
+        assertEquals(expected, new String(response.body()));
+    }
+
+    /**
+     * Do chart paths give PNG images, also without naming the only database?
+     */
+    @Test
+    void enrichBarChart_png() throws Exception {
+        HttpResponse<byte[]> response = post("/enrich_bar_chart?max-n-pathways=5", degsBody);
+        assertEquals(200, response.statusCode());
+        assertEquals("image/png", response.headers().firstValue("Content-Type").orElse(""));
+        assertEquals((byte) 0x89, response.body()[0]);
+        assertEquals('P', response.body()[1]);
+    }
+
+    /**
+     * Are unknown databases and invalid DEG lists answered with a client error?
+     */
+    @Test
+    void invalidRequests() throws Exception {
+        assertEquals(404, post("/enrichment?db=mmu", degsBody).statusCode());
+        assertEquals(400, post("/enrichment?db=hsa", "GENE1,not-a-number,0.01".getBytes()).statusCode());
+        assertEquals(400, post("/perc_lfc?db=hsa", "GENE1,1.0".getBytes()).statusCode());
+    }
+
+    /**
+     * Are served analyses and the pathways they tested counted on /metrics?
+     */
+    @Test
+    void metrics_countAnalyses() throws Exception {
+        assertEquals(200, post("/enrichment", degsBody).statusCode());
+        URI uri = URI.create("http://127.0.0.1:%d/metrics".formatted(server.getAddress().getPort()));
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, response.statusCode());
+        assertTrue(response.headers().firstValue("Content-Type").orElse("").startsWith("text/plain; version=0.0.4"));
+        assertTrue(response.body().contains("# TYPE dgsea_analyses_total counter"));
+        assertTrue(response.body().lines().anyMatch(line -> line.startsWith("dgsea_analyses_total{source=\"server\"} ")));
+        assertFalse(response.body().contains("dgsea_pathways_tested_total 0\n"));
+        assertEquals(405, post("/metrics", degsBody).statusCode());
+    }
+}
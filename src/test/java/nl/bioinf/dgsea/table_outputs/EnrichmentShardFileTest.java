@@ -0,0 +1,83 @@
+package nl.bioinf.dgsea.table_outputs;
+
+import nl.bioinf.dgsea.data_processing.*;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks if merging the shard files of all shards gives exactly the output of a single run.
+ */
+class EnrichmentShardFileTest {
+    static final String testResourcesFolder = "src/test/resources/";
+    static List<Pathway> pathways;
+    static List<PathwayGene> pathwayGenes;
+    static List<Deg> degs;
+
+    @BeforeAll
+    static void load() throws IOException {
+        FileParseUtils fileParseUtils = new FileParseUtils();
+        pathways = fileParseUtils.parsePathwayFile(new File(testResourcesFolder + "hsa_pathways.csv"));
+        pathwayGenes = fileParseUtils.parsePathwayGeneFile(new File(testResourcesFolder + "pathways.csv"));
+        degs = fileParseUtils.parseDegsFile(new File(testResourcesFolder + "degs.csv")).subList(0, 2000);
+    }
+
+    @Test
+    void merge_equalsSingleRun() throws IOException {
+        EnrichmentTable singleRun = new EnrichmentTable(pathways, degs, pathwayGenes);
+        StringWriter expected = new StringWriter();
+        singleRun.calculateEnrichment(expected);
+
+        List<EnrichmentShardFile.Part> parts = new ArrayList<>();
+        for (int i = 3; i >= 1; i--) { // merging must not depend on the order of the shards
+            parts.add(writeAndRead(new Shard(i, 3)));
+        }
+        EnrichmentShardFile.Part merged = EnrichmentShardFile.merge(parts);
+        StringWriter actual = new StringWriter();
+        List<EnrichmentResult> results = EnrichmentTable.writeEnrichment(pathways, merged.results(), merged.metadata().totalTests(), actual);
+
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(singleRun.getEnrichmentResults(), results);
+    }
+
+    @Test
+    void merge_missingOrDuplicateShard() throws IOException {
+        EnrichmentShardFile.Part first = writeAndRead(new Shard(1, 2));
+        assertThrows(IllegalArgumentException.class, () -> EnrichmentShardFile.merge(List.of(first)));
+        assertThrows(IllegalArgumentException.class, () -> EnrichmentShardFile.merge(List.of(first, first)));
+    }
+
+    @Test
+    void writeEnrichment_otherPathways() throws IOException {
+        EnrichmentShardFile.Part merged = EnrichmentShardFile.merge(List.of(writeAndRead(new Shard(1, 1))));
+        List<Pathway> reversed = pathways.reversed();
+        assertThrows(IllegalArgumentException.class,
+                () -> EnrichmentTable.writeEnrichment(reversed, merged.results(), reversed.size(), new StringWriter()));
+    }
+
+    @Test
+    void shard_parse() {
+        Shard shard = Shard.parse("2/4");
+        assertEquals(new Shard(2, 4), shard);
+        assertTrue(shard.contains(5));
+        assertFalse(shard.contains(4));
+        assertThrows(IllegalArgumentException.class, () -> Shard.parse("5/4"));
+        assertThrows(IllegalArgumentException.class, () -> Shard.parse("0/4"));
+        assertThrows(IllegalArgumentException.class, () -> Shard.parse("two"));
+    }
+
+    private static EnrichmentShardFile.Part writeAndRead(Shard shard) throws IOException {
+        StringWriter writer = new StringWriter();
+        EnrichmentShardFile.write(new EnrichmentTable(pathways, degs, pathwayGenes), shard, writer);
+        return EnrichmentShardFile.read(new BufferedReader(new StringReader(writer.toString())));
+    }
+}
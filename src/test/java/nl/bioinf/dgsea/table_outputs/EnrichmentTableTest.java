@@ -6,13 +6,19 @@
  */
 package nl.bioinf.dgsea.table_outputs;
 
+import nl.bioinf.dgsea.DgseaExecutors;
 import nl.bioinf.dgsea.data_processing.Deg;
 import nl.bioinf.dgsea.data_processing.Pathway;
 import nl.bioinf.dgsea.data_processing.PathwayGene;
 import nl.bioinf.dgsea.data_processing.EnrichmentResult;
+import nl.bioinf.dgsea.data_processing.RawEnrichmentResult;
+import nl.bioinf.dgsea.data_processing.SyntheticDataset;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -221,4 +227,65 @@ public class EnrichmentTableTest {
         List<EnrichmentResult> results = enrichmentTable.getEnrichmentResults();
         assertTrue(results.isEmpty(), "Expected no enrichment results when there are no pathways.");
     }
+
+    /**
+     * Are the CSV rows, written without String.join, still formatted like String.valueOf, and do the
+     * records made from the arena equal the raw results?
+     */
+    @Test
+    public void testCalculateEnrichmentCsvAndArena() throws IOException {
+        StringWriter csv = new StringWriter();
+        enrichmentTable.calculateEnrichment(csv);
+        List<RawEnrichmentResult> rawResults = enrichmentTable.calculateRawResults(null);
+        EnrichmentResult first = enrichmentTable.getEnrichmentResults().getFirst();
+        RawEnrichmentResult raw = rawResults.getFirst();
+
+        String expectedRow = String.join(",", "Glycolysis / Gluconeogenesis", String.valueOf(raw.observedDegCount()),
+                String.valueOf(raw.expectedDegCount()), String.valueOf(raw.enrichmentScore()),
+                String.valueOf(raw.pValue()), String.valueOf(first.adjustedPValue()));
+        assertEquals(expectedRow, csv.toString().lines().skip(1).findFirst().orElseThrow());
+        assertEquals(new EnrichmentResult(raw.pathwayId(), raw.enrichmentScore(), raw.pValue(), first.adjustedPValue()), first);
+        assertEquals(3, rawResults.size());
+    }
+
+    /**
+     * Does calculating into a reused arena allocate (next to) nothing per pathway?
+     */
+    @Test
+    public void testCalculateRawResultsAllocationFree() {
+        SyntheticDataset dataset = new SyntheticDataset.Builder().seed(7).geneCount(5000).pathwayCount(2000).build();
+        EnrichmentTable table = new EnrichmentTable(dataset.pathways(), dataset.degs(), dataset.pathwayGenes());
+        EnrichmentArena arena = new EnrichmentArena(0);
+        for (int i = 0; i < 5; i++) table.calculateRawResults(null, arena); // grow arena and memo, load classes
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        long before = threads.getThreadAllocatedBytes(threadId);
+        table.calculateRawResults(null, arena);
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        assertEquals(2000, arena.size());
+        assertTrue(allocated < 2000, "Expected no allocation per pathway, allocated bytes: " + allocated);
+    }
+
+    @Test
+    public void testCalculateEnrichmentParallelRanges() throws IOException {
+        SyntheticDataset dataset = new SyntheticDataset.Builder().seed(11).geneCount(5000).pathwayCount(5000).build();
+        EnrichmentTable table = new EnrichmentTable(dataset.pathways(), dataset.degs(), dataset.pathwayGenes());
+        StringWriter sequential = new StringWriter();
+        StringWriter parallel = new StringWriter();
+        int threads = DgseaExecutors.threads();
+        try {
+            DgseaExecutors.setThreads(1);
+            table.calculateEnrichment(sequential);
+            DgseaExecutors.setThreads(4); // 4 ranges of 1250 pathways
+            table.calculateEnrichment(parallel);
+        } finally {
+            DgseaExecutors.setThreads(threads);
+        }
+
+        assertEquals(5001, parallel.toString().lines().count());
+        assertEquals(sequential.toString(), parallel.toString());
+        assertEquals(5000, table.getEnrichmentResults().size());
+    }
 }
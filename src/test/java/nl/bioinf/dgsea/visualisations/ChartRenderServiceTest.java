@@ -0,0 +1,79 @@
+package nl.bioinf.dgsea.visualisations;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.ChartUtils;
+import org.jfree.chart.JFreeChart;
+import org.jfree.data.category.DefaultCategoryDataset;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks if charts rendered into pooled buffers, also on many threads at once, equal charts rendered by ChartUtils.
+ */
+public class ChartRenderServiceTest {
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 300;
+
+    private static JFreeChart createChart(String title, int bars) {
+        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+        for (int i = 0; i < bars; i++) {
+            dataset.addValue(i + 1, "pathway" + i, "pathway" + i);
+        }
+        return ChartFactory.createBarChart(title, "", "Enrichment Score", dataset);
+    }
+
+    @Test
+    public void write_sameAsChartUtils() throws IOException {
+        JFreeChart chart = createChart("first", 3);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        ChartUtils.writeChartAsPNG(expected, chart, WIDTH, HEIGHT);
+
+        // render another chart first, so the buffer is reused with other content in it
+        ChartRenderService.write(createChart("second", 8), WIDTH, HEIGHT, "png", new ByteArrayOutputStream());
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        ChartRenderService.write(chart, WIDTH, HEIGHT, "png", actual);
+        assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+
+        ByteArrayOutputStream expectedJpeg = new ByteArrayOutputStream();
+        ChartUtils.writeChartAsJPEG(expectedJpeg, 1.0f, chart, WIDTH, HEIGHT);
+        ByteArrayOutputStream actualJpeg = new ByteArrayOutputStream();
+        ChartRenderService.write(chart, WIDTH, HEIGHT, "jpg", actualJpeg);
+        assertArrayEquals(expectedJpeg.toByteArray(), actualJpeg.toByteArray());
+    }
+
+    @Test
+    public void write_manyChartsConcurrently() throws IOException {
+        List<ByteArrayOutputStream> outputs = IntStream.range(0, 12).mapToObj(_ -> new ByteArrayOutputStream()).toList();
+        IntStream.range(0, outputs.size()).parallel().forEach(i -> {
+            try {
+                ChartRenderService.write(createChart("chart " + i, i % 5 + 1), WIDTH, HEIGHT, "png", outputs.get(i));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        for (int i = 0; i < outputs.size(); i++) {
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(outputs.get(i).toByteArray()));
+            assertEquals(WIDTH, image.getWidth());
+            assertEquals(HEIGHT, image.getHeight());
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            ChartUtils.writeChartAsPNG(expected, createChart("chart " + i, i % 5 + 1), WIDTH, HEIGHT);
+            assertArrayEquals(expected.toByteArray(), outputs.get(i).toByteArray());
+        }
+    }
+
+    @Test
+    public void write_invalidFormat() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ChartRenderService.write(createChart("chart", 1), WIDTH, HEIGHT, "gif", new ByteArrayOutputStream()));
+    }
+}
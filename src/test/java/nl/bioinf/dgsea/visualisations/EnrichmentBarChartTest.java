@@ -8,6 +8,7 @@ package nl.bioinf.dgsea.visualisations;
 
 import nl.bioinf.dgsea.data_processing.EnrichmentResult;
 import nl.bioinf.dgsea.data_processing.Pathway;
+import nl.bioinf.dgsea.data_processing.PathwayIndex;
 import org.jfree.data.category.DefaultCategoryDataset;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -31,6 +32,7 @@ public class EnrichmentBarChartTest {
 
     private List<EnrichmentResult> enrichmentResults;
     private List<Pathway> pathways;
+    private PathwayIndex pathwayIndex;
 
     /**
      * Sets up the test environment before each test case.
@@ -50,6 +52,7 @@ public class EnrichmentBarChartTest {
                 new Pathway("pathway2", "Citrate Cycle"),
                 new Pathway("pathway3", "Fatty Acid Biosynthesis")
         );
+        pathwayIndex = PathwayIndex.of(pathways);
     }
 
     /**
@@ -62,7 +65,7 @@ public class EnrichmentBarChartTest {
             new EnrichmentBarChart(
                     "Enrichment Bar Chart",
                     enrichmentResults,
-                    pathways,
+                    pathwayIndex,
                     OUTPUT_FILE_PATH,
                     COLOR_MANUAL
             );
@@ -85,12 +88,12 @@ public class EnrichmentBarChartTest {
         EnrichmentBarChart chart = new EnrichmentBarChart(
                 "Enrichment Bar Chart",
                 enrichmentResults,
-                pathways,
+                pathwayIndex,
                 OUTPUT_FILE_PATH,
                 null
         );
 
-        DefaultCategoryDataset dataset = chart.createDataset(enrichmentResults, pathways);
+        DefaultCategoryDataset dataset = chart.createDataset(enrichmentResults, pathwayIndex);
 
         // Check if the dataset has the correct number of entries
         assertEquals(enrichmentResults.size(), dataset.getRowCount(), "Dataset should have correct number of rows.");
@@ -115,7 +118,7 @@ public class EnrichmentBarChartTest {
         new EnrichmentBarChart(
                 "Enrichment Bar Chart",
                 enrichmentResults,
-                pathways,
+                pathwayIndex,
                 OUTPUT_FILE_PATH,
                 null
         );
@@ -134,4 +137,22 @@ public class EnrichmentBarChartTest {
         assertEquals(Color.ORANGE, EnrichmentBarChart.getDefaultColor(3), "Index 3 should return Color.ORANGE.");
         assertEquals(Color.MAGENTA, EnrichmentBarChart.getDefaultColor(4), "Index 4 should return Color.MAGENTA.");
     }
+
+    /**
+     * Tests that every bar is labelled with the description of its result's pathway, also when the results are
+     * ordered differently from the pathways, and that results of unknown pathways are left out.
+     */
+    @Test
+    public void testLabelsMatchPathwayIds() {
+        List<EnrichmentResult> results = List.of(
+                new EnrichmentResult("pathway3", 3.0, 0.05, 0.003),
+                new EnrichmentResult("unknown", 2.0, 0.01, 0.001),
+                new EnrichmentResult("pathway1", 2.5, 0.01, 0.001));
+        EnrichmentBarChart chart = new EnrichmentBarChart("Labels", results, pathwayIndex, null);
+
+        DefaultCategoryDataset dataset = chart.createDataset(results, pathwayIndex);
+        assertEquals(List.of("Fatty Acid Biosynthesis", "Glycolysis"), dataset.getRowKeys());
+        assertEquals(3.0, dataset.getValue("Fatty Acid Biosynthesis", "Fatty Acid Biosynthesis"));
+        assertEquals(2.5, dataset.getValue("Glycolysis", "Glycolysis"));
+    }
 }
@@ -8,8 +8,11 @@ package nl.bioinf.dgsea.visualisations;
 
 import nl.bioinf.dgsea.data_processing.EnrichmentResult;
 import nl.bioinf.dgsea.data_processing.Pathway;
+import nl.bioinf.dgsea.data_processing.PathwayIndex;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.jfree.chart.plot.XYPlot;
+import org.jfree.data.xy.XYDataset;
 import org.jfree.data.xy.XYSeriesCollection;
 
 import java.awt.*;
@@ -33,6 +36,7 @@ public class EnrichmentDotPlotTest {
 
     private List<EnrichmentResult> enrichmentResults;
     private List<Pathway> pathways;
+    private PathwayIndex pathwayIndex;
     private static final double VALID_DOT_SIZE = 10.0;
 
     /**
@@ -55,6 +59,7 @@ public class EnrichmentDotPlotTest {
                 new Pathway("pathway3", "Fatty Acid Biosynthesis"),
                 new Pathway("pathway4", "Pathway with NaN") // To test the NaN case
         );
+        pathwayIndex = PathwayIndex.of(pathways);
 
     }
     /**
@@ -67,7 +72,7 @@ public class EnrichmentDotPlotTest {
             new EnrichmentDotPlot(
                     "Enrichment Dot Plot",
                     enrichmentResults,
-                    pathways,
+                    pathwayIndex,
                     OUTPUT_FILE_PATH,
                     COLOR_MANUAL,
                     DOT_SIZE,
@@ -92,14 +97,14 @@ public class EnrichmentDotPlotTest {
         EnrichmentDotPlot dotPlot = new EnrichmentDotPlot(
                 "Enrichment Dot Plot",
                 enrichmentResults,
-                pathways,
+                pathwayIndex,
                 OUTPUT_FILE_PATH,
                 null,
                 DOT_SIZE,
                 DOT_TRANSPARENCY
         );
 
-        XYSeriesCollection dataset = dotPlot.createDataset(enrichmentResults, pathways);
+        XYSeriesCollection dataset = dotPlot.createDataset(enrichmentResults, pathwayIndex);
 
         // Check that the dataset has the correct number of series
         assertEquals(4, dataset.getSeriesCount(), "Dataset should contain four series.");
@@ -123,7 +128,7 @@ public class EnrichmentDotPlotTest {
         EnrichmentDotPlot dotPlot = new EnrichmentDotPlot(
                 "Enrichment Dot Plot",
                 enrichmentResults,
-                pathways,
+                pathwayIndex,
                 OUTPUT_FILE_PATH,
                 null,
                 DOT_SIZE,
@@ -140,7 +145,7 @@ public class EnrichmentDotPlotTest {
         EnrichmentDotPlot dotPlot = new EnrichmentDotPlot(
                 "Enrichment Dot Plot",
                 enrichmentResults,
-                pathways,
+                pathwayIndex,
                 OUTPUT_FILE_PATH,
                 null,
                 DOT_SIZE,
@@ -164,7 +169,7 @@ public class EnrichmentDotPlotTest {
         EnrichmentDotPlot dotPlot = new EnrichmentDotPlot(
                 "Enrichment Dot Plot",
                 enrichmentResults,
-                pathways,
+                pathwayIndex,
                 OUTPUT_FILE_PATH,
                 null,
                 DOT_SIZE,
@@ -184,7 +189,7 @@ public class EnrichmentDotPlotTest {
         EnrichmentDotPlot dotPlot = new EnrichmentDotPlot(
                 "Enrichment Dot Plot",
                 enrichmentResults,
-                pathways,
+                pathwayIndex,
                 OUTPUT_FILE_PATH,
                 null,
                 DOT_SIZE,
@@ -200,4 +205,29 @@ public class EnrichmentDotPlotTest {
         assertEquals("Transparency must be between 0 and 1.", exception.getMessage());
     }
 
+    /**
+     * Tests that every dot and its label belong to the pathway of their result, also when the results are
+     * ordered differently from the pathways and non-significant results are left out.
+     */
+    @Test
+    public void testLabelsMatchPathwayIds() {
+        List<EnrichmentResult> results = List.of(
+                new EnrichmentResult("pathway3", 3.0, 0.05, 0.003),
+                new EnrichmentResult("pathway4", 1.2, 0.5, 0.2), // not significant, no dot
+                new EnrichmentResult("pathway1", 2.5, 0.01, 0.001),
+                new EnrichmentResult("pathway2", 1.8, 0.03, 0.002));
+        EnrichmentDotPlot dotPlot = new EnrichmentDotPlot("Labels", results, pathwayIndex, null, DOT_SIZE, DOT_TRANSPARENCY);
+
+        XYPlot plot = dotPlot.getChart().getXYPlot();
+        XYDataset dataset = plot.getDataset();
+        List<EnrichmentResult> significant = results.stream().filter(result -> result.adjustedPValue() < 0.05).toList();
+        assertEquals(significant.size(), dataset.getSeriesCount());
+        for (int series = 0; series < dataset.getSeriesCount(); series++) {
+            EnrichmentResult result = significant.get(series);
+            String description = pathwayIndex.description(result.pathwayId());
+            assertEquals(description, dataset.getSeriesKey(series));
+            assertEquals(result.enrichmentScore(), dataset.getYValue(series, 0));
+            assertEquals(description, plot.getRenderer().getItemLabelGenerator(series, 0).generateLabel(dataset, series, 0));
+        }
+    }
 }
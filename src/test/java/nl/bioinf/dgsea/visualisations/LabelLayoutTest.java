@@ -0,0 +1,70 @@
+package nl.bioinf.dgsea.visualisations;
+
+import nl.bioinf.dgsea.data_processing.EnrichmentResult;
+import nl.bioinf.dgsea.data_processing.Pathway;
+import nl.bioinf.dgsea.data_processing.PathwayIndex;
+import org.jfree.chart.JFreeChart;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests placing labels without overlap, on its own and in dot plots with many pathways.
+ */
+public class LabelLayoutTest {
+
+    @Test
+    public void tryPlace_rejectsOverlapAndOutOfBounds() {
+        LabelLayout layout = new LabelLayout(new Rectangle2D.Double(0, 0, 100, 100), 10);
+        assertTrue(layout.tryPlace(new Rectangle2D.Double(10, 10, 30, 10)));
+        assertFalse(layout.tryPlace(new Rectangle2D.Double(35, 15, 30, 10))); // overlaps the first
+        assertTrue(layout.tryPlace(new Rectangle2D.Double(41, 10, 30, 10))); // right next to it
+        assertFalse(layout.tryPlace(new Rectangle2D.Double(90, 90, 20, 5))); // partly out of bounds
+        layout.reserve(new Rectangle2D.Double(50, 50, 5, 5));
+        assertFalse(layout.tryPlace(new Rectangle2D.Double(45, 52, 20, 5)));
+        assertEquals(3, layout.getPlacedCount());
+    }
+
+    @Test
+    public void tryPlace_sameAsPairwiseCheck() {
+        Random random = new Random(3);
+        LabelLayout layout = new LabelLayout(new Rectangle2D.Double(0, 0, 1000, 800), 20);
+        List<Rectangle2D> placed = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Rectangle2D box = new Rectangle2D.Double(random.nextDouble() * 950, random.nextDouble() * 780,
+                    10 + random.nextDouble() * 120, 14);
+            boolean expected = new Rectangle2D.Double(0, 0, 1000, 800).contains(box)
+                    && placed.stream().noneMatch(other -> other.intersects(box));
+            assertEquals(expected, layout.tryPlace(box));
+            if (expected) placed.add(box);
+        }
+        assertEquals(placed.size(), layout.getPlacedCount());
+    }
+
+    @Test
+    public void dotPlot_suppressesOverlappingLabels() throws IOException {
+        List<EnrichmentResult> results = new ArrayList<>();
+        List<Pathway> pathways = new ArrayList<>();
+        Random random = new Random(5);
+        for (int i = 0; i < 120; i++) {
+            results.add(new EnrichmentResult("hsa" + i, random.nextDouble() * 4, 0.001, random.nextDouble() * 0.04));
+            pathways.add(new Pathway("hsa" + i, "Pathway number " + i));
+        }
+        EnrichmentDotPlot dotPlot = new EnrichmentDotPlot("many", results, PathwayIndex.of(pathways), new Color[0], 10.0, 0.5f);
+        dotPlot.writeChart(new ByteArrayOutputStream(), "png");
+
+        JFreeChart chart = dotPlot.getChart();
+        EnrichmentDotPlot.LabelPlacingRenderer renderer = (EnrichmentDotPlot.LabelPlacingRenderer) chart.getXYPlot().getRenderer();
+        int suppressed = renderer.getSuppressedLabelCount();
+        assertTrue(suppressed > 0);
+        assertTrue(suppressed < 120);
+    }
+}
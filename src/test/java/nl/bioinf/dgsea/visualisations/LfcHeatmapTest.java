@@ -0,0 +1,74 @@
+package nl.bioinf.dgsea.visualisations;
+
+import nl.bioinf.dgsea.data_processing.Deg;
+import nl.bioinf.dgsea.data_processing.Pathway;
+import nl.bioinf.dgsea.data_processing.PathwayGene;
+import nl.bioinf.dgsea.data_processing.PathwayIndex;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the log-fold-change heatmap: selecting the top pathways and rasterizing the sparse matrix.
+ */
+public class LfcHeatmapTest {
+    private static final PathwayIndex PATHWAYS = PathwayIndex.of(List.of(new Pathway("hsa1", "Pathway one"), new Pathway("hsa2", "Pathway two")));
+
+    @Test
+    public void rasterize_cellsAndAbsentGenes() {
+        List<Deg> degs = List.of(new Deg("A", 2, 0.001), new Deg("B", -2, 0.001));
+        List<PathwayGene> pathwayGenes = List.of(new PathwayGene("hsa1", 1, "A", ""), new PathwayGene("hsa2", 2, "B", ""));
+        LfcHeatmap heatmap = new LfcHeatmap.Builder(degs, PATHWAYS, pathwayGenes, null)
+                .colorManual(new Color[]{Color.BLUE, Color.RED})
+                .build();
+        LfcHeatmap.HeatmapPlot plot = (LfcHeatmap.HeatmapPlot) heatmap.getChart().getPlot();
+        int[] pixels = new int[4 * 2];
+        plot.rasterize(pixels, 4, 2);
+        // rows: hsa1 with A, hsa2 with B; columns: A, B
+        assertEquals(Color.RED.getRGB(), pixels[0]);
+        assertEquals(Color.RED.getRGB(), pixels[1]);
+        assertEquals(new Color(0xf0f0f0).getRGB(), pixels[2]);
+        assertEquals(new Color(0xf0f0f0).getRGB(), pixels[4]);
+        assertEquals(Color.BLUE.getRGB(), pixels[7]);
+    }
+
+    @Test
+    public void build_topPathways() {
+        List<Deg> degs = List.of(new Deg("A", 0.5, 0.001), new Deg("B", -3, 0.001));
+        List<PathwayGene> pathwayGenes = List.of(new PathwayGene("hsa1", 1, "A", ""), new PathwayGene("hsa2", 2, "B", ""));
+        LfcHeatmap heatmap = new LfcHeatmap.Builder(degs, PATHWAYS, pathwayGenes, null).maxNPathways(1).build();
+        assertEquals(1, heatmap.getMatrix().getRowCount());
+        assertEquals("hsa2", heatmap.getMatrix().getPathwayId(0));
+    }
+
+    @Test
+    public void writeChart_largeMatrix() throws IOException {
+        Random random = new Random(7);
+        List<Deg> degs = new ArrayList<>();
+        List<PathwayGene> pathwayGenes = new ArrayList<>();
+        for (int gene = 0; gene < 5000; gene++) {
+            degs.add(new Deg("G" + gene, random.nextGaussian() * 2, 0.001));
+        }
+        for (int pathway = 0; pathway < 200; pathway++) {
+            for (int i = 0; i < 60; i++) {
+                pathwayGenes.add(new PathwayGene("hsa" + pathway, i, "G" + random.nextInt(5000), ""));
+            }
+        }
+        LfcHeatmap heatmap = new LfcHeatmap.Builder(degs, PATHWAYS, pathwayGenes, null).maxNPathways(200).build();
+        assertEquals(200, heatmap.getMatrix().getRowCount());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        heatmap.writeChart(out);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(1200, image.getWidth());
+    }
+}
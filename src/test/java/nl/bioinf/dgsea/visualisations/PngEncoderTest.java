@@ -0,0 +1,85 @@
+package nl.bioinf.dgsea.visualisations;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.data.category.DefaultCategoryDataset;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks if every compression and chunking gives a PNG that decodes to exactly the encoded image.
+ */
+public class PngEncoderTest {
+    private static BufferedImage chartImage;
+
+    @BeforeAll
+    static void render() {
+        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+        for (int i = 0; i < 10; i++) {
+            dataset.addValue(i + 1, "pathway" + i, "pathway" + i);
+        }
+        JFreeChart chart = ChartFactory.createBarChart("Enrichment", "", "Enrichment Score", dataset);
+        chartImage = chart.createBufferedImage(1200, 800);
+    }
+
+    @Test
+    public void encode_allCompressions() throws IOException {
+        Map<PngEncoder.Compression, Integer> sizes = new EnumMap<>(PngEncoder.Compression.class);
+        for (PngEncoder.Compression compression : PngEncoder.Compression.values()) {
+            byte[] png = encode(chartImage, compression, Integer.MAX_VALUE);
+            assertSamePixels(chartImage, ImageIO.read(new ByteArrayInputStream(png)));
+            sizes.put(compression, png.length);
+        }
+        assertTrue(sizes.get(PngEncoder.Compression.STORE) > 1200 * 800 * 3);
+        assertTrue(sizes.get(PngEncoder.Compression.FAST) < sizes.get(PngEncoder.Compression.STORE) / 10);
+        assertTrue(sizes.get(PngEncoder.Compression.BEST) <= sizes.get(PngEncoder.Compression.FAST));
+    }
+
+    @Test
+    public void encode_parallelChunks() throws IOException {
+        for (PngEncoder.Compression compression : PngEncoder.Compression.values()) {
+            byte[] single = encode(chartImage, compression, Integer.MAX_VALUE);
+            byte[] chunked = encode(chartImage, compression, 100_000); // 29 chunks
+            assertSamePixels(chartImage, ImageIO.read(new ByteArrayInputStream(chunked)));
+            // the preset dictionaries keep the ratio close to a single stream
+            assertTrue(chunked.length < single.length * 1.1 + 1024, compression + ": " + chunked.length + " vs " + single.length);
+        }
+    }
+
+    @Test
+    public void encode_transparentPixels() throws IOException {
+        BufferedImage image = new BufferedImage(300, 200, BufferedImage.TYPE_INT_ARGB);
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                image.setRGB(x, y, (x * 7 + y) << 24 | x << 16 | y << 8 | (x ^ y) & 0xff);
+            }
+        }
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(encode(image, PngEncoder.Compression.FAST, 20_000)));
+        assertTrue(decoded.getColorModel().hasAlpha());
+        assertSamePixels(image, decoded);
+    }
+
+    private static byte[] encode(BufferedImage image, PngEncoder.Compression compression, int chunkSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PngEncoder.encode(image, compression, out, chunkSize);
+        return out.toByteArray();
+    }
+
+    private static void assertSamePixels(BufferedImage expected, BufferedImage actual) {
+        assertEquals(expected.getWidth(), actual.getWidth());
+        assertEquals(expected.getHeight(), actual.getHeight());
+        int[] expectedPixels = expected.getRGB(0, 0, expected.getWidth(), expected.getHeight(), null, 0, expected.getWidth());
+        int[] actualPixels = actual.getRGB(0, 0, actual.getWidth(), actual.getHeight(), null, 0, actual.getWidth());
+        assertArrayEquals(expectedPixels, actualPixels);
+    }
+}
@@ -0,0 +1,117 @@
+package nl.bioinf.dgsea.visualisations;
+
+import nl.bioinf.dgsea.data_processing.PathwayIndex;
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.data.category.DefaultCategoryDataset;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import java.awt.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Checks if charts are written as valid SVG, with shapes as paths and text as text.
+ */
+public class SvgGraphics2DTest {
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+
+    private static JFreeChart createChart(String title) {
+        DefaultCategoryDataset dataset = new DefaultCategoryDataset();
+        for (int i = 0; i < 5; i++) {
+            dataset.addValue(i + 1, "pathway" + i, "pathway" + i);
+        }
+        return ChartFactory.createBarChart(title, "", "Enrichment Score", dataset);
+    }
+
+    private static Document parse(byte[] svg) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(svg));
+    }
+
+    private static boolean containsText(Document document, String text) {
+        NodeList texts = document.getElementsByTagName("text");
+        for (int i = 0; i < texts.getLength(); i++) {
+            if (texts.item(i).getTextContent().equals(text)) return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void write_chartAsSvg() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChartRenderService.write(createChart("Enrichment <A & B>"), WIDTH, HEIGHT, "svg", out);
+
+        Document document = parse(out.toByteArray());
+        Element root = document.getDocumentElement();
+        assertEquals("svg", root.getTagName());
+        assertEquals(String.valueOf(WIDTH), root.getAttribute("width"));
+        assertEquals(String.valueOf(HEIGHT), root.getAttribute("height"));
+        assertTrue(document.getElementsByTagName("path").getLength() > 5);
+        assertTrue(containsText(document, "Enrichment <A & B>"));
+        assertTrue(containsText(document, "pathway3"));
+        assertTrue(out.size() < WIDTH * HEIGHT); // far smaller than an uncompressed 8-bit image
+    }
+
+    @Test
+    public void write_enrichmentChartAsSvg() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new EnrichmentDotPlot("dot plot", List.of(), PathwayIndex.of(List.of()), new Color[0], 10.0, 0.5f)
+                .writeChart(out, "svg");
+        assertEquals("svg", parse(out.toByteArray()).getDocumentElement().getTagName());
+    }
+
+    @Test
+    public void fill_clipAndTransparency() throws Exception {
+        StringWriter writer = new StringWriter();
+        SvgGraphics2D g2 = new SvgGraphics2D(writer, 100, 100);
+        g2.clipRect(10, 10, 50, 50);
+        g2.translate(5, 5);
+        g2.setColor(new Color(255, 0, 0, 128));
+        g2.fillRect(0, 0, 20, 20);
+        g2.finish();
+
+        Document document = parse(writer.toString().getBytes());
+        assertEquals(1, document.getElementsByTagName("clipPath").getLength());
+        Element path = (Element) document.getElementsByTagName("path").item(1);
+        assertEquals("M5 5L25 5L25 25L5 25L5 5Z", path.getAttribute("d"));
+        assertEquals("#ff0000", path.getAttribute("fill"));
+        assertEquals("0.502", path.getAttribute("fill-opacity"));
+        assertEquals(new Rectangle(5, 5, 50, 50), g2.getClipBounds());
+    }
+
+    @Test
+    public void drawGlyphVector_asText() throws Exception {
+        StringWriter writer = new StringWriter();
+        SvgGraphics2D g2 = new SvgGraphics2D(writer, 100, 100);
+        g2.rotate(-Math.PI / 2);
+        Font font = new Font(Font.SANS_SERIF, Font.BOLD, 14);
+        g2.drawGlyphVector(font.createGlyphVector(g2.getFontRenderContext(), "Th1 & Th2"), 10, 20);
+        g2.finish();
+
+        Document document = parse(writer.toString().getBytes());
+        assertEquals(0, document.getElementsByTagName("path").getLength());
+        Element text = (Element) document.getElementsByTagName("text").item(0);
+        assertEquals("Th1 & Th2", text.getTextContent());
+        assertEquals("bold", text.getAttribute("font-weight"));
+        assertEquals("matrix(0 -1 1 0 0 0)", text.getAttribute("transform"));
+    }
+
+    @Test
+    public void appendNumber_compact() {
+        StringBuilder numbers = new StringBuilder();
+        for (double value : new double[]{0, 1, -1.5, 0.25, 12.0004, -0.001, 3.14159}) {
+            SvgGraphics2D.appendNumber(numbers, value);
+            numbers.append(' ');
+        }
+        assertEquals("0 1 -1.5 0.25 12 -0.001 3.142 ", numbers.toString());
+    }
+}
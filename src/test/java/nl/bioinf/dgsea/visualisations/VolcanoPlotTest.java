@@ -0,0 +1,93 @@
+package nl.bioinf.dgsea.visualisations;
+
+import nl.bioinf.dgsea.data_processing.Deg;
+import nl.bioinf.dgsea.data_processing.Pathway;
+import nl.bioinf.dgsea.data_processing.PathwayGene;
+import nl.bioinf.dgsea.data_processing.PathwayIndex;
+import org.jfree.chart.LegendItemCollection;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests the volcano plot: coloring by pathway membership, rasterizing the points and rendering many genes.
+ */
+public class VolcanoPlotTest {
+    private static final PathwayIndex PATHWAYS = PathwayIndex.of(List.of(new Pathway("hsa1", "Pathway one"), new Pathway("hsa2", "Pathway two")));
+    private static final List<PathwayGene> PATHWAY_GENES = List.of(
+            new PathwayGene("hsa1", 1, "A", "E1"),
+            new PathwayGene("hsa1", 2, "B", "E2"),
+            new PathwayGene("hsa2", 2, "B", "E2"),
+            new PathwayGene("hsa2", 3, "C", "E3"));
+
+    private static List<Deg> randomDegs(int n) {
+        Random random = new Random(42);
+        List<Deg> degs = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            degs.add(new Deg("G" + i, random.nextGaussian() * 2, Math.pow(10, -random.nextDouble() * 12)));
+        }
+        return degs;
+    }
+
+    @Test
+    public void legend_countsPerPathway() {
+        List<Deg> degs = List.of(new Deg("A", 1, 0.001), new Deg("B", -1, 0.001), new Deg("C", 2, 0.5),
+                new Deg("D", 0.5, 0.001), new Deg("E", 0.1, 0.9));
+        VolcanoPlot volcanoPlot = new VolcanoPlot.Builder(degs, PATHWAYS, PATHWAY_GENES, null)
+                .pathwayIds(new String[]{"hsa1", "hsa2"})
+                .build();
+        LegendItemCollection legend = volcanoPlot.getChart().getPlot().getLegendItems();
+        assertEquals(4, legend.getItemCount());
+        assertEquals("p > 0.01 (1)", legend.get(0).getLabel());
+        assertEquals("p <= 0.01 (1)", legend.get(1).getLabel());
+        assertEquals("Pathway one (2)", legend.get(2).getLabel()); // B is in both, the first selected pathway wins
+        assertEquals("Pathway two (1)", legend.get(3).getLabel());
+        assertEquals(Color.RED, legend.get(2).getFillPaint());
+    }
+
+    @Test
+    public void rasterize_pointsInDataArea() {
+        List<Deg> degs = List.of(new Deg("A", -2, 1e-10), new Deg("D", 2, 1));
+        VolcanoPlot volcanoPlot = new VolcanoPlot.Builder(degs, PATHWAYS, PATHWAY_GENES, null)
+                .pathwayIds(new String[]{"hsa1"})
+                .colorManual(new Color[]{Color.BLUE})
+                .build();
+        VolcanoPlot.RasterScatterPlot plot = (VolcanoPlot.RasterScatterPlot) volcanoPlot.getChart().getPlot();
+        plot.getDomainAxis().setRange(-4, 4);
+        plot.getRangeAxis().setRange(0, 20);
+        int[] pixels = new int[100 * 100];
+        plot.rasterize(pixels, 100, 100);
+        assertEquals(Color.BLUE.getRGB(), pixels[50 * 100 + 25]); // lfc -2, -log10(p) 10
+        assertEquals(new Color(0xcccccc).getRGB(), pixels[99 * 100 + 75]); // lfc 2, -log10(p) 0
+        assertEquals(0, pixels[0]);
+    }
+
+    @Test
+    public void mostSignificantPathways_byCount() {
+        List<Deg> degs = List.of(new Deg("A", 1, 0.001), new Deg("B", -1, 0.001), new Deg("C", 2, 0.001));
+        assertArrayEquals(new String[]{"hsa1", "hsa2"}, VolcanoPlot.mostSignificantPathways(degs, PATHWAY_GENES, 0.01, 5));
+        assertArrayEquals(new String[]{"hsa1"}, VolcanoPlot.mostSignificantPathways(degs, PATHWAY_GENES, 0.01, 1));
+        assertEquals(Double.MIN_VALUE, Math.pow(10, -VolcanoPlot.toMinusLog10(0)), 1e-320);
+    }
+
+    @Test
+    public void writeChart_manyGenes() throws IOException {
+        List<Deg> degs = randomDegs(60_000);
+        VolcanoPlot volcanoPlot = new VolcanoPlot.Builder(degs, PATHWAYS, PATHWAY_GENES, null).build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        volcanoPlot.writeChart(out);
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(1000, image.getWidth());
+        assertEquals(800, image.getHeight());
+    }
+}